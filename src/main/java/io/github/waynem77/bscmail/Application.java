@@ -24,6 +24,7 @@ import io.github.waynem77.bscmail.help.HelpDisplay;
 import io.github.waynem77.bscmail.help.HelpDisplayFactory;
 import io.github.waynem77.bscmail.iolayer.IOLayer;
 import io.github.waynem77.bscmail.iolayer.IOLayerFactory;
+import io.github.waynem77.bscmail.mail.AddressCache;
 import io.github.waynem77.bscmail.persistent.EmailServerProperties;
 import io.github.waynem77.bscmail.persistent.EmailServerPropertiesObserver;
 import io.github.waynem77.bscmail.persistent.EmailTemplate;
@@ -40,16 +41,34 @@ import io.github.waynem77.bscmail.util.parser.CsvStringParser;
 import java.awt.Frame;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import javax.swing.JFrame;
 
 /**
  * An application controls application-wide properties and objects.
  *
+ * Applications are thread-safe. Each collection managed by the application is
+ * guarded by its own read/write lock, so that readers of a collection never
+ * block one another, and readers of one collection are never blocked by
+ * writers of another. Observers are notified after the corresponding write
+ * lock has been released.
+ *
  * @since 2.0
  * @author Wayne Miller
  */
@@ -221,6 +240,52 @@ public class Application {
         }    // toString()
     }    // PropertyKey
 
+    /**
+     * The sets of data managed by an application. These are used to report
+     * which data has been loaded when loading is deferred.
+     *
+     * @see Application#loadData(Executor)
+     * @since 4.0
+     */
+    public static enum DataSet {
+
+        /**
+         * The defined shifts.
+         */
+        SHIFTS,
+
+        /**
+         * The defined volunteers.
+         */
+        VOLUNTEERS,
+
+        /**
+         * The defined roles.
+         */
+        ROLES,
+
+        /**
+         * The email template.
+         */
+        EMAIL_TEMPLATE,
+
+        /**
+         * The email server properties.
+         */
+        EMAIL_SERVER_PROPERTIES,
+
+        /**
+         * The defined event properties.
+         */
+        EVENT_PROPERTIES;
+
+    }    // DataSet
+
+    /**
+     * The logger used to report load times.
+     */
+    private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+
     /**
      * Creates and returns a new application from the given arguments.
      *
@@ -299,6 +364,28 @@ public class Application {
      * @see PropertyKey
      */
     public static Application createApplication(Properties applicationProperties) {
+        return createApplication(applicationProperties, false);
+    }    // createApplication()
+
+    /**
+     * Creates a new Application from the given properties, optionally
+     * deferring the loading of its data. The properties object must meet the
+     * specification given in {@link #createApplication(Properties)}. If loading
+     * is deferred, the data is read by a later call to
+     * {@link #loadData(Executor)}; until then, the application's collections
+     * are empty.
+     *
+     * @param applicationProperties the application properties; may not be null;
+     * must meet the specification above
+     * @param deferLoading true if the data should not be read until
+     * {@link #loadData(Executor)} is called; false if it should be read now
+     * @return a new Application
+     * @throws NullPointerException if applicationProperties is null
+     * @throws IllegalArgumentException if applicationProperties does not match
+     * the above specification
+     * @since 4.0
+     */
+    public static Application createApplication(Properties applicationProperties, boolean deferLoading) {
         if (applicationProperties == null) {
             throw new NullPointerException("applicationProperties may not be null");
         }    // if
@@ -388,7 +475,8 @@ public class Application {
                     emailTemplateIOLayer,
                     emailServerPropertiesIOLayer,
                     eventPropertiesIOLayer,
-                    helpDisplay);
+                    helpDisplay,
+                    deferLoading);
         } catch (Exception e) {    // try
             throw new ApplicationInitializationException(e);
         }    // catch
@@ -406,32 +494,67 @@ public class Application {
     /**
      * The list of defined shifts.
      */
-    private List<Shift> shifts;
+    private volatile List<Shift> shifts;
 
     /**
      * The list of defined volunteers.
      */
-    private List<Volunteer> volunteers;
+    private volatile List<Volunteer> volunteers;
 
     /**
      * The list of defined roles.
      */
-    private List<Role> roles;
+    private volatile List<Role> roles;
 
     /**
      * The email template.
      */
-    private EmailTemplate emailTemplate;
+    private volatile EmailTemplate emailTemplate;
 
     /**
      * The email server properties.
      */
-    private EmailServerProperties emailServerProperties;
+    private volatile EmailServerProperties emailServerProperties;
 
     /**
      * The list of defined event properties.
      */
-    private List<EventProperty> eventProperties;
+    private volatile List<EventProperty> eventProperties;
+
+    /**
+     * The data sets that have been loaded.
+     */
+    private final Set<DataSet> loadedData;
+
+    /**
+     * The lock guarding the shifts.
+     */
+    private final ReadWriteLock shiftsLock;
+
+    /**
+     * The lock guarding the volunteers.
+     */
+    private final ReadWriteLock volunteersLock;
+
+    /**
+     * The lock guarding the roles.
+     */
+    private final ReadWriteLock rolesLock;
+
+    /**
+     * The lock guarding the email template.
+     */
+    private final ReadWriteLock emailTemplateLock;
+
+    /**
+     * The lock guarding the email server properties.
+     */
+    private final ReadWriteLock emailServerPropertiesLock;
+
+    /**
+     * The lock guarding the event properties.
+     */
+    private final ReadWriteLock eventPropertiesLock;
 
     /**
      * The shifts I/O layer.
@@ -498,6 +621,11 @@ public class Application {
      */
     private final HelpDisplay helpDisplay;
 
+    /**
+     * The cache of volunteer email addresses.
+     */
+    private final AddressCache addressCache;
+
     /*
      * Class methods
      */
@@ -529,6 +657,51 @@ public class Application {
             IOLayer<EmailServerProperties> emailServerPropertiesIOLayer,
             IOLayer<EventProperty> eventPropertiesIOLayer,
             HelpDisplay helpDisplay) {
+        this(applicationInfo,
+                shiftsIOLayer,
+                volunteersIOLayer,
+                rolesIOLayer,
+                emailTemplateIOLayer,
+                emailServerPropertiesIOLayer,
+                eventPropertiesIOLayer,
+                helpDisplay,
+                false);
+    }    // Application()
+
+    /**
+     * Constructs a new application, optionally deferring the loading of its
+     * data. If loading is deferred, the application starts out with empty
+     * collections, a blank email template, and blank email server properties,
+     * and the data is read by a later call to {@link #loadData(Executor)}.
+     *
+     * @param applicationInfo the application info object for this application;
+     * may not be null
+     * @param shiftsIOLayer the I/O layer used for storing shifts; may not be
+     * null
+     * @param volunteersIOLayer the I/O layer used for storing volunteers; may
+     * not be null
+     * @param rolesIOLayer the I/O layer used for storing roles; may not be null
+     * @param emailTemplateIOLayer the I/O layer used for storing the email
+     * template; may not be null
+     * @param emailServerPropertiesIOLayer the I/O layer used for storing the
+     * email server properties; may not be null
+     * @param eventPropertiesIOLayer the I/O layer used for storing the event
+     * properties; may not be null
+     * @param helpDisplay the help displayer; may not be null
+     * @param deferLoading true if the data should not be read until
+     * {@link #loadData(Executor)} is called; false if it should be read now
+     * @throws NullPointerException if any parameter is null
+     * @since 4.0
+     */
+    protected Application(ApplicationInfo applicationInfo,
+            IOLayer<Shift> shiftsIOLayer,
+            IOLayer<Volunteer> volunteersIOLayer,
+            IOLayer<Role> rolesIOLayer,
+            IOLayer<EmailTemplate> emailTemplateIOLayer,
+            IOLayer<EmailServerProperties> emailServerPropertiesIOLayer,
+            IOLayer<EventProperty> eventPropertiesIOLayer,
+            HelpDisplay helpDisplay,
+            boolean deferLoading) {
         if (applicationInfo == null) {
             throw new NullPointerException("applicationInfo may not be null");
         }    // if
@@ -562,55 +735,41 @@ public class Application {
         }    // if
         this.helpDisplay = helpDisplay;
 
-        try {
-            shifts = shiftsIOLayer.getAll();
-        } catch (IOException e) {    // try
-            shifts = new ArrayList<>();
-        }    // catch
-        for (Shift shift : shifts) {
-            shift.setVolunteer(null);
-        }    // for
+        shiftsLock = new ReentrantReadWriteLock();
+        volunteersLock = new ReentrantReadWriteLock();
+        rolesLock = new ReentrantReadWriteLock();
+        emailTemplateLock = new ReentrantReadWriteLock();
+        emailServerPropertiesLock = new ReentrantReadWriteLock();
+        eventPropertiesLock = new ReentrantReadWriteLock();
 
-        try {
-            volunteers = volunteersIOLayer.getAll();
-        } catch (IOException e) {    // try
+        loadedData = Collections.synchronizedSet(EnumSet.noneOf(DataSet.class));
+        if (deferLoading) {
+            shifts = new ArrayList<>();
             volunteers = new ArrayList<>();
-        }    // catch
-
-        try {
-            roles = rolesIOLayer.getAll();
-        } catch (IOException e) {    // try
             roles = new ArrayList<>();
-        }    // catch
-
-        List<EmailTemplate> emailTemplates;
-        try {
-            emailTemplates = emailTemplateIOLayer.getAll();
-        } catch (IOException e) {    // try
-            emailTemplates = new ArrayList<>();
-        }    // catch
-        emailTemplate = ((emailTemplates != null) && !emailTemplates.isEmpty()) ? emailTemplates.get(0) : new EmailTemplate(EmailTemplate.SendType.TO, "", "", "", "");
-
-        List<EmailServerProperties> emailServerPropertiesList;
-        try {
-            emailServerPropertiesList = emailServerPropertiesIOLayer.getAll();
-        } catch (IOException e) {    // try
-            emailServerPropertiesList = new ArrayList<>();
-        }    // catch
-        emailServerProperties = ((emailServerPropertiesList != null) && !emailServerPropertiesList.isEmpty()) ? emailServerPropertiesList.get(0) : new EmailServerProperties("", "", "", false);
-
-        try {
-            eventProperties = eventPropertiesIOLayer.getAll();
-        } catch (IOException e) {    // try
+            emailTemplate = createDefaultEmailTemplate();
+            emailServerProperties = createDefaultEmailServerProperties();
             eventProperties = new ArrayList<>();
-        }    // catch
-
-        shiftsObservers = new LinkedList<>();
-        volunteersObservers = new LinkedList<>();
-        rolesObservers = new LinkedList<>();
-        emailTemplateObservers = new LinkedList<>();
-        emailServerPropertiesObservers = new LinkedList<>();
-        eventPropertiesObservers = new LinkedList<>();
+        } else {    // if
+            shifts = readShifts();
+            volunteers = readVolunteers();
+            roles = readRoles();
+            emailTemplate = readEmailTemplate();
+            emailServerProperties = readEmailServerProperties();
+            eventProperties = readEventProperties();
+            loadedData.addAll(EnumSet.allOf(DataSet.class));
+        }    // else
+
+        shiftsObservers = new CopyOnWriteArrayList<>();
+        volunteersObservers = new CopyOnWriteArrayList<>();
+        rolesObservers = new CopyOnWriteArrayList<>();
+        emailTemplateObservers = new CopyOnWriteArrayList<>();
+        emailServerPropertiesObservers = new CopyOnWriteArrayList<>();
+        eventPropertiesObservers = new CopyOnWriteArrayList<>();
+
+        addressCache = new AddressCache();
+        updateAddressCache();
+        volunteersObservers.add(this::updateAddressCache);
 
         assertInvariant();
     }    // Application()
@@ -682,6 +841,57 @@ public class Application {
         }    // catch
     }    // displayHelp()
 
+    /**
+     * Reads the application's data from its I/O layers, using the given
+     * executor. Each data set is read by a separate task, and the
+     * corresponding observers are notified as soon as it is available, so that
+     * the user interface can enable the features that depend on it. A data
+     * set that has already been loaded, or that has been set since the
+     * application was created, is not overwritten. The time taken to read each
+     * data set is logged.
+     *
+     * @param executor the executor on which to read the data; may not be null
+     * @return a future that completes when all the data has been read
+     * @throws NullPointerException if {@code executor} is null
+     * @since 4.0
+     */
+    public CompletableFuture<Void> loadData(Executor executor) {
+        assertInvariant();
+        if (executor == null) {
+            throw new NullPointerException("executor may not be null");
+        }    // if
+
+        return CompletableFuture.allOf(
+                CompletableFuture.runAsync(() -> load(DataSet.SHIFTS, shiftsLock, this::readShifts,
+                        value -> shifts = value, this::notifyShiftsObservers), executor),
+                CompletableFuture.runAsync(() -> load(DataSet.VOLUNTEERS, volunteersLock, this::readVolunteers,
+                        value -> volunteers = value, this::notifyVolunteersObservers), executor),
+                CompletableFuture.runAsync(() -> load(DataSet.ROLES, rolesLock, this::readRoles,
+                        value -> roles = value, this::notifyRolesObservers), executor),
+                CompletableFuture.runAsync(() -> load(DataSet.EMAIL_TEMPLATE, emailTemplateLock, this::readEmailTemplate,
+                        value -> emailTemplate = value, this::notifyEmailTemplateObservers), executor),
+                CompletableFuture.runAsync(() -> load(DataSet.EMAIL_SERVER_PROPERTIES, emailServerPropertiesLock, this::readEmailServerProperties,
+                        value -> emailServerProperties = value, this::notifyEmailServerPropertiesObservers), executor),
+                CompletableFuture.runAsync(() -> load(DataSet.EVENT_PROPERTIES, eventPropertiesLock, this::readEventProperties,
+                        value -> eventProperties = value, this::notifyEventPropertiesObservers), executor));
+    }    // loadData()
+
+    /**
+     * Returns true if the given data set has been loaded.
+     *
+     * @param dataSet the data set; may not be null
+     * @return true if the given data set has been loaded; false otherwise
+     * @throws NullPointerException if {@code dataSet} is null
+     * @since 4.0
+     */
+    public boolean isLoaded(DataSet dataSet) {
+        assertInvariant();
+        if (dataSet == null) {
+            throw new NullPointerException("dataSet may not be null");
+        }    // if
+        return loadedData.contains(dataSet);
+    }    // isLoaded()
+
     /**
      * Returns the list of defined volunteer shifts. The list returned is a copy
      * of the master, so changes to it do not affect the master and vice-versa.
@@ -691,9 +901,14 @@ public class Application {
      */
     public List<Shift> getShifts() {
         assertInvariant();
-        return shifts.stream()
-                .map(Shift::clone)
-                .collect(Collectors.toList());
+        shiftsLock.readLock().lock();
+        try {
+            return shifts.stream()
+                    .map(Shift::clone)
+                    .collect(Collectors.toList());
+        } finally {    // try
+            shiftsLock.readLock().unlock();
+        }    // finally
     }    // getShifts()
 
     /**
@@ -716,16 +931,21 @@ public class Application {
         if (shifts.contains(null)) {
             throw new NullPointerException("shifts may not contain null");
         }    // if
-        this.shifts = shifts.stream()
+        List<Shift> master = shifts.stream()
                 .map(Shift::clone)
                 .collect(Collectors.toList());
-        this.shifts.stream()
+        master.stream()
                 .forEach(shift -> shift.setVolunteer(null));
-        for (ShiftsObserver observer : shiftsObservers) {
-            observer.shiftsChanged();
-        }    // for
 
-        shiftsIOLayer.setAll(shifts);
+        shiftsLock.writeLock().lock();
+        try {
+            this.shifts = master;
+            loadedData.add(DataSet.SHIFTS);
+            shiftsIOLayer.setAll(shifts);
+        } finally {    // try
+            shiftsLock.writeLock().unlock();
+            notifyShiftsObservers();
+        }    // finally
         assertInvariant();
     }    // setShifts()
 
@@ -737,9 +957,14 @@ public class Application {
      */
     public List<Volunteer> getVolunteers() {
         assertInvariant();
-        return volunteers.stream()
-                .map(Volunteer::clone)
-                .collect(Collectors.toList());
+        volunteersLock.readLock().lock();
+        try {
+            return volunteers.stream()
+                    .map(Volunteer::clone)
+                    .collect(Collectors.toList());
+        } finally {    // try
+            volunteersLock.readLock().unlock();
+        }    // finally
     }    // getVolunteers()
 
     /**
@@ -761,17 +986,35 @@ public class Application {
         if (volunteers.contains(null)) {
             throw new NullPointerException("volunteers may not contain null");
         }    // if
-        this.volunteers = volunteers.stream()
+        List<Volunteer> master = volunteers.stream()
                 .map(Volunteer::clone)
                 .collect(Collectors.toList());
-        for (VolunteersObserver observer : volunteersObservers) {
-            observer.volunteersChanged();
-        }    // for
 
-        volunteersIOLayer.setAll(volunteers);
+        volunteersLock.writeLock().lock();
+        try {
+            this.volunteers = master;
+            loadedData.add(DataSet.VOLUNTEERS);
+            volunteersIOLayer.setAll(volunteers);
+        } finally {    // try
+            volunteersLock.writeLock().unlock();
+            notifyVolunteersObservers();
+        }    // finally
         assertInvariant();
     }    // setVolunteers()
 
+    /**
+     * Returns the cache of volunteer email addresses. The cache is brought up
+     * to date whenever the list of defined volunteers changes, before any
+     * volunteers observer is notified.
+     *
+     * @return the cache of volunteer email addresses
+     * @since 4.0
+     */
+    public AddressCache getAddressCache() {
+        assertInvariant();
+        return addressCache;
+    }    // getAddressCache()
+
     /**
      * Returns the list of defined roles. The list returned is a copy of
      * the master, so changes to it do not affect the master and vice-versa.
@@ -780,9 +1023,14 @@ public class Application {
      */
     public List<Role> getRoles() {
         assertInvariant();
-        return roles.stream()
-                .map(Role::clone)
-                .collect(Collectors.toList());
+        rolesLock.readLock().lock();
+        try {
+            return roles.stream()
+                    .map(Role::clone)
+                    .collect(Collectors.toList());
+        } finally {    // try
+            rolesLock.readLock().unlock();
+        }    // finally
     }    // getRoles()
 
     /**
@@ -809,14 +1057,19 @@ public class Application {
         if (roles.size() != (new HashSet<Role>(roles).size())) {
             throw new IllegalArgumentException("roles may not contain duplicates");
         }    // if
-        this.roles = roles.stream()
+        List<Role> master = roles.stream()
                 .map(Role::clone)
                 .collect(Collectors.toList());
-        for (RolesObserver observer : rolesObservers) {
-            observer.rolesChanged();
-        }    // for
 
-        rolesIOLayer.setAll(roles);
+        rolesLock.writeLock().lock();
+        try {
+            this.roles = master;
+            loadedData.add(DataSet.ROLES);
+            rolesIOLayer.setAll(roles);
+        } finally {    // try
+            rolesLock.writeLock().unlock();
+            notifyRolesObservers();
+        }    // finally
         assertInvariant();
     }    // setRoles()
 
@@ -827,7 +1080,12 @@ public class Application {
      */
     public EmailTemplate getEmailTemplate() {
         assertInvariant();
-        return emailTemplate.clone();
+        emailTemplateLock.readLock().lock();
+        try {
+            return emailTemplate.clone();
+        } finally {    // try
+            emailTemplateLock.readLock().unlock();
+        }    // finally
     }    // getEmailTemplate()
 
     /**
@@ -842,14 +1100,19 @@ public class Application {
         if (emailTemplate == null) {
             throw new NullPointerException("emailTemplate may not be null");
         }    // if
-        this.emailTemplate = emailTemplate.clone();
+        EmailTemplate master = emailTemplate.clone();
         List<EmailTemplate> wrapper = new LinkedList<>();
-        wrapper.add(this.emailTemplate);
-        for (EmailTemplateObserver observer : emailTemplateObservers) {
-            observer.emailTemplateChanged();
-        }    // for
+        wrapper.add(master);
 
-        emailTemplateIOLayer.setAll(wrapper);
+        emailTemplateLock.writeLock().lock();
+        try {
+            this.emailTemplate = master;
+            loadedData.add(DataSet.EMAIL_TEMPLATE);
+            emailTemplateIOLayer.setAll(wrapper);
+        } finally {    // try
+            emailTemplateLock.writeLock().unlock();
+            notifyEmailTemplateObservers();
+        }    // finally
         assertInvariant();
     }    // setEmailTemplate()
 
@@ -860,7 +1123,12 @@ public class Application {
      */
     public EmailServerProperties getEmailServerProperties() {
         assertInvariant();
-        return emailServerProperties.clone();
+        emailServerPropertiesLock.readLock().lock();
+        try {
+            return emailServerProperties.clone();
+        } finally {    // try
+            emailServerPropertiesLock.readLock().unlock();
+        }    // finally
     }    // getEmailServerProperties()
 
     /**
@@ -876,14 +1144,19 @@ public class Application {
         if (emailServerProperties == null) {
             throw new NullPointerException("emailServerProperties may not be null");
         }    // if
-        this.emailServerProperties = emailServerProperties.clone();
+        EmailServerProperties master = emailServerProperties.clone();
         List<EmailServerProperties> wrapper = new LinkedList<>();
-        wrapper.add(this.emailServerProperties);
-        for (EmailServerPropertiesObserver observer : emailServerPropertiesObservers) {
-            observer.emailServerPropertiesChanged();
-        }    // for
+        wrapper.add(master);
 
-        emailServerPropertiesIOLayer.setAll(wrapper);
+        emailServerPropertiesLock.writeLock().lock();
+        try {
+            this.emailServerProperties = master;
+            loadedData.add(DataSet.EMAIL_SERVER_PROPERTIES);
+            emailServerPropertiesIOLayer.setAll(wrapper);
+        } finally {    // try
+            emailServerPropertiesLock.writeLock().unlock();
+            notifyEmailServerPropertiesObservers();
+        }    // finally
         assertInvariant();
     }    // setEmailServerProperties()
 
@@ -895,9 +1168,14 @@ public class Application {
      */
     public List<EventProperty> getEventProperties() {
         assertInvariant();
-        return eventProperties.stream()
-                .map(EventProperty::clone)
-                .collect(Collectors.toList());
+        eventPropertiesLock.readLock().lock();
+        try {
+            return eventProperties.stream()
+                    .map(EventProperty::clone)
+                    .collect(Collectors.toList());
+        } finally {    // try
+            eventPropertiesLock.readLock().unlock();
+        }    // finally
     }    // getEventProperties()
 
     /**
@@ -920,14 +1198,19 @@ public class Application {
         if (eventProperties.contains(null)) {
             throw new NullPointerException("Event Properties may not contain null");
         }    // if
-        this.eventProperties = eventProperties.stream()
+        List<EventProperty> master = eventProperties.stream()
                 .map(EventProperty::clone)
                 .collect(Collectors.toList());
-        for (EventPropertiesObserver observer : eventPropertiesObservers) {
-            observer.eventPropertiesChanged();
-        }    // for
 
-        eventPropertiesIOLayer.setAll(eventProperties);
+        eventPropertiesLock.writeLock().lock();
+        try {
+            this.eventProperties = master;
+            loadedData.add(DataSet.EVENT_PROPERTIES);
+            eventPropertiesIOLayer.setAll(eventProperties);
+        } finally {    // try
+            eventPropertiesLock.writeLock().unlock();
+            notifyEventPropertiesObservers();
+        }    // finally
         assertInvariant();
     }    // setEventProperties()
 
@@ -1055,6 +1338,226 @@ public class Application {
      * Private class methods.
      */
 
+    /**
+     * Notifies the shifts observers that the shifts have changed.
+     */
+    private void notifyShiftsObservers() {
+        for (ShiftsObserver observer : shiftsObservers) {
+            observer.shiftsChanged();
+        }    // for
+    }    // notifyShiftsObservers()
+
+    /**
+     * Notifies the volunteers observers that the volunteers have changed.
+     */
+    private void notifyVolunteersObservers() {
+        for (VolunteersObserver observer : volunteersObservers) {
+            observer.volunteersChanged();
+        }    // for
+    }    // notifyVolunteersObservers()
+
+    /**
+     * Brings the address cache up to date with the email addresses of the
+     * defined volunteers.
+     */
+    private void updateAddressCache() {
+        volunteersLock.readLock().lock();
+        try {
+            addressCache.update(volunteers.stream()
+                    .map(Volunteer::getEmail)
+                    .collect(Collectors.toList()));
+        } finally {    // try
+            volunteersLock.readLock().unlock();
+        }    // finally
+    }    // updateAddressCache()
+
+    /**
+     * Notifies the roles observers that the roles have changed.
+     */
+    private void notifyRolesObservers() {
+        for (RolesObserver observer : rolesObservers) {
+            observer.rolesChanged();
+        }    // for
+    }    // notifyRolesObservers()
+
+    /**
+     * Notifies the email template observers that the email template has
+     * changed.
+     */
+    private void notifyEmailTemplateObservers() {
+        for (EmailTemplateObserver observer : emailTemplateObservers) {
+            observer.emailTemplateChanged();
+        }    // for
+    }    // notifyEmailTemplateObservers()
+
+    /**
+     * Notifies the email server properties observers that the email server
+     * properties have changed.
+     */
+    private void notifyEmailServerPropertiesObservers() {
+        for (EmailServerPropertiesObserver observer : emailServerPropertiesObservers) {
+            observer.emailServerPropertiesChanged();
+        }    // for
+    }    // notifyEmailServerPropertiesObservers()
+
+    /**
+     * Notifies the event properties observers that the event properties have
+     * changed.
+     */
+    private void notifyEventPropertiesObservers() {
+        for (EventPropertiesObserver observer : eventPropertiesObservers) {
+            observer.eventPropertiesChanged();
+        }    // for
+    }    // notifyEventPropertiesObservers()
+
+    /**
+     * Reads a data set and installs it, unless it has already been loaded.
+     * Observers are notified if the data set is installed.
+     *
+     * @param <T> the type of the data set
+     * @param dataSet the data set; may not be null
+     * @param lock the lock guarding the data set; may not be null
+     * @param reader reads the data set; may not be null
+     * @param installer installs the data set; may not be null
+     * @param notifier notifies the data set's observers; may not be null
+     */
+    private <T> void load(DataSet dataSet, ReadWriteLock lock, Supplier<T> reader, Consumer<T> installer, Runnable notifier) {
+        assert (dataSet != null);
+        assert (lock != null);
+        assert (reader != null);
+        assert (installer != null);
+        assert (notifier != null);
+
+        long start = System.nanoTime();
+        T value = reader.get();
+        boolean installed = false;
+        lock.writeLock().lock();
+        try {
+            if (!loadedData.contains(dataSet)) {
+                installer.accept(value);
+                loadedData.add(dataSet);
+                installed = true;
+            }    // if
+        } finally {    // try
+            lock.writeLock().unlock();
+        }    // finally
+        LOGGER.log(Level.INFO, "Read {0} in {1} ms", new Object[] {dataSet, (System.nanoTime() - start) / 1000000});
+        if (installed) {
+            notifier.run();
+        }    // if
+    }    // load()
+
+    /**
+     * Reads the shifts from their I/O layer. The shifts returned have no
+     * volunteers. If the shifts cannot be read, an empty list is returned.
+     *
+     * @return the shifts
+     */
+    private List<Shift> readShifts() {
+        List<Shift> value;
+        try {
+            value = shiftsIOLayer.getAll();
+        } catch (IOException e) {    // try
+            value = new ArrayList<>();
+        }    // catch
+        for (Shift shift : value) {
+            shift.setVolunteer(null);
+        }    // for
+        return value;
+    }    // readShifts()
+
+    /**
+     * Reads the volunteers from their I/O layer. If the volunteers cannot be
+     * read, an empty list is returned.
+     *
+     * @return the volunteers
+     */
+    private List<Volunteer> readVolunteers() {
+        try {
+            return volunteersIOLayer.getAll();
+        } catch (IOException e) {    // try
+            return new ArrayList<>();
+        }    // catch
+    }    // readVolunteers()
+
+    /**
+     * Reads the roles from their I/O layer. If the roles cannot be read, an
+     * empty list is returned.
+     *
+     * @return the roles
+     */
+    private List<Role> readRoles() {
+        try {
+            return rolesIOLayer.getAll();
+        } catch (IOException e) {    // try
+            return new ArrayList<>();
+        }    // catch
+    }    // readRoles()
+
+    /**
+     * Reads the email template from its I/O layer. If the email template
+     * cannot be read, a blank template is returned.
+     *
+     * @return the email template
+     */
+    private EmailTemplate readEmailTemplate() {
+        List<EmailTemplate> emailTemplates;
+        try {
+            emailTemplates = emailTemplateIOLayer.getAll();
+        } catch (IOException e) {    // try
+            emailTemplates = new ArrayList<>();
+        }    // catch
+        return ((emailTemplates != null) && !emailTemplates.isEmpty()) ? emailTemplates.get(0) : createDefaultEmailTemplate();
+    }    // readEmailTemplate()
+
+    /**
+     * Reads the email server properties from their I/O layer. If the
+     * properties cannot be read, blank properties are returned.
+     *
+     * @return the email server properties
+     */
+    private EmailServerProperties readEmailServerProperties() {
+        List<EmailServerProperties> emailServerPropertiesList;
+        try {
+            emailServerPropertiesList = emailServerPropertiesIOLayer.getAll();
+        } catch (IOException e) {    // try
+            emailServerPropertiesList = new ArrayList<>();
+        }    // catch
+        return ((emailServerPropertiesList != null) && !emailServerPropertiesList.isEmpty()) ? emailServerPropertiesList.get(0) : createDefaultEmailServerProperties();
+    }    // readEmailServerProperties()
+
+    /**
+     * Reads the event properties from their I/O layer. If the event properties
+     * cannot be read, an empty list is returned.
+     *
+     * @return the event properties
+     */
+    private List<EventProperty> readEventProperties() {
+        try {
+            return eventPropertiesIOLayer.getAll();
+        } catch (IOException e) {    // try
+            return new ArrayList<>();
+        }    // catch
+    }    // readEventProperties()
+
+    /**
+     * Returns a blank email template.
+     *
+     * @return a blank email template
+     */
+    private EmailTemplate createDefaultEmailTemplate() {
+        return new EmailTemplate(EmailTemplate.SendType.TO, "", "", "", "");
+    }    // createDefaultEmailTemplate()
+
+    /**
+     * Returns blank email server properties.
+     *
+     * @return blank email server properties
+     */
+    private EmailServerProperties createDefaultEmailServerProperties() {
+        return new EmailServerProperties("", "", "", false);
+    }    // createDefaultEmailServerProperties()
+
     /**
      * Asserts the correctness of the object's internal state.
      */
@@ -1065,6 +1568,14 @@ public class Application {
         assert (emailTemplateIOLayer != null);
         assert (emailServerPropertiesIOLayer != null);
         assert (eventPropertiesIOLayer != null);
+        assert (loadedData != null);
+        assert (shiftsLock != null);
+        assert (volunteersLock != null);
+        assert (rolesLock != null);
+        assert (emailTemplateLock != null);
+        assert (emailServerPropertiesLock != null);
+        assert (eventPropertiesLock != null);
+        assert (addressCache != null);
         assert (shifts != null);
         assert (! shifts.contains(null));
         assert (shiftsHasNoVolunteers());
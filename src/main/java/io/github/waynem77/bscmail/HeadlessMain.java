@@ -0,0 +1,597 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail;
+
+import io.github.waynem77.bscmail.http.ApiServer;
+import io.github.waynem77.bscmail.mail.DryRunSpool;
+import io.github.waynem77.bscmail.mail.MailMerger;
+import io.github.waynem77.bscmail.mail.MailMessage;
+import io.github.waynem77.bscmail.mail.MailQueue;
+import io.github.waynem77.bscmail.mail.Mailer;
+import io.github.waynem77.bscmail.mail.Outbox;
+import io.github.waynem77.bscmail.mail.TokenBucket;
+import io.github.waynem77.bscmail.mail.TransportPool;
+import io.github.waynem77.bscmail.persistent.EmailTemplate;
+import io.github.waynem77.bscmail.persistent.Event;
+import io.github.waynem77.bscmail.util.format.EventEmailRenderer;
+import io.github.waynem77.bscmail.util.parser.ScheduleParser;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import javax.mail.MessagingException;
+
+/**
+ * Headless batch program. This program generates event emails from a schedule
+ * file without any GUI, and either sends them or spools them to disk.
+ * It never initializes AWT, so it may be run on a server without a display,
+ * e.g. from cron.
+ *
+ * <pre>
+ * usage: HeadlessMain --schedule FILE (--send | --spool DIR | --mbox FILE)
+ *                     [--properties FILE] [--password-env NAME]
+ *                     [--workers COUNT] [--rate PER_MINUTE] [--outbox DIR]
+ *                     [--merge]
+ *        HeadlessMain --serve PORT [--bind ADDRESS] [--properties FILE]
+ * </pre>
+ *
+ * <ul>
+ * <li><strong>--schedule</strong> the schedule file, in the format described
+ * by {@link ScheduleParser}</li>
+ * <li><strong>--send</strong> sends the emails via the configured email
+ * server</li>
+ * <li><strong>--spool</strong> writes each email to the given directory as an
+ * RFC 822 (".eml") file, without sending it</li>
+ * <li><strong>--mbox</strong> writes every email to the given mbox file,
+ * without sending it</li>
+ * <li><strong>--properties</strong> the application properties file; defaults
+ * to the application properties resource used by {@link Main}</li>
+ * <li><strong>--password-env</strong> the environment variable holding the
+ * email server password; defaults to "BSCMAIL_PASSWORD"</li>
+ * <li><strong>--workers</strong> the number of connections over which emails
+ * are sent in parallel, or with --spool or --mbox the number of threads
+ * rendering emails in parallel; defaults to
+ * {@link MailQueue#DEFAULT_WORKERS}</li>
+ * <li><strong>--rate</strong> the maximum number of emails sent per minute;
+ * by default, sending is not rate limited</li>
+ * <li><strong>--outbox</strong> with --send, sends the emails through a
+ * durable {@link Outbox} in the given directory, retrying failures; emails
+ * left unsent by an earlier run on the same directory are sent as well</li>
+ * <li><strong>--merge</strong> instead of one email per event, generates a
+ * personal email for each volunteer, as described by {@link MailMerger}</li>
+ * <li><strong>--serve</strong> instead of generating emails, serves the
+ * {@link ApiServer HTTP API} on the given port until the program is
+ * terminated</li>
+ * <li><strong>--bind</strong> with --serve, the address on which to serve,
+ * e.g. the host's intranet address; the API is unauthenticated and exposes
+ * volunteers' contact details, so by default it is served on the loopback
+ * address only</li>
+ * </ul>
+ *
+ * The program exits with status 0 on success, 1 if any email could not be
+ * sent or spooled, and 2 on a usage or initialization error.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public class HeadlessMain {
+
+    /*
+     * Static methods
+     */
+
+    /**
+     * Main program.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        HeadlessMain main = new HeadlessMain();
+        System.exit(main.run(args, System.out, System.err));
+    }    // main()
+
+    /*
+     * Class properties and methods
+     */
+
+    /**
+     * The name of the application properties resource.
+     */
+    private final String APPLICATION_PROPERTIES_FILE = "application.properties";
+
+    /**
+     * The default environment variable holding the email server password.
+     */
+    private final String DEFAULT_PASSWORD_ENVIRONMENT_VARIABLE = "BSCMAIL_PASSWORD";
+
+    /**
+     * The exit status on success.
+     */
+    static final int EXIT_SUCCESS = 0;
+
+    /**
+     * The exit status when any email could not be sent or spooled.
+     */
+    static final int EXIT_FAILURE = 1;
+
+    /**
+     * The exit status on a usage or initialization error.
+     */
+    static final int EXIT_USAGE = 2;
+
+    /**
+     * Runs the program.
+     *
+     * @param args the command line arguments; may not be null
+     * @param out the stream for progress messages; may not be null
+     * @param err the stream for error messages; may not be null
+     * @return the exit status
+     */
+    int run(String[] args, PrintStream out, PrintStream err) {
+        assert (args != null);
+        assert (out != null);
+        assert (err != null);
+
+        String scheduleFile = null;
+        String spoolDirectory = null;
+        String mboxFile = null;
+        String propertiesFile = null;
+        String passwordVariable = DEFAULT_PASSWORD_ENVIRONMENT_VARIABLE;
+        String servePort = null;
+        String bindAddress = null;
+        String workers = null;
+        String rate = null;
+        String outboxDirectory = null;
+        boolean send = false;
+        boolean merge = false;
+        for (int i = 0; i < args.length; ++i) {
+            String arg = args[i];
+            boolean hasValue = (i + 1 < args.length);
+            if (arg.equals("--send")) {
+                send = true;
+            } else if (arg.equals("--merge")) {    // if
+                merge = true;
+            } else if (arg.equals("--schedule") && hasValue) {    // if
+                scheduleFile = args[++i];
+            } else if (arg.equals("--spool") && hasValue) {    // else if
+                spoolDirectory = args[++i];
+            } else if (arg.equals("--mbox") && hasValue) {    // else if
+                mboxFile = args[++i];
+            } else if (arg.equals("--properties") && hasValue) {    // else if
+                propertiesFile = args[++i];
+            } else if (arg.equals("--password-env") && hasValue) {    // else if
+                passwordVariable = args[++i];
+            } else if (arg.equals("--serve") && hasValue) {    // else if
+                servePort = args[++i];
+            } else if (arg.equals("--bind") && hasValue) {    // else if
+                bindAddress = args[++i];
+            } else if (arg.equals("--workers") && hasValue) {    // else if
+                workers = args[++i];
+            } else if (arg.equals("--rate") && hasValue) {    // else if
+                rate = args[++i];
+            } else if (arg.equals("--outbox") && hasValue) {    // else if
+                outboxDirectory = args[++i];
+            } else {    // else if
+                return usage(err, "unrecognized argument \"" + arg + "\"");
+            }    // else
+        }    // for
+        if (servePort != null) {
+            if ((scheduleFile != null) || send || (spoolDirectory != null) || (mboxFile != null) || merge) {
+                return usage(err, "--serve may not be combined with --schedule, --send, --spool, --mbox, or --merge");
+            }    // if
+            return serve(servePort, bindAddress, propertiesFile, out, err);
+        }    // if
+        if (bindAddress != null) {
+            return usage(err, "--bind requires --serve");
+        }    // if
+        if (scheduleFile == null) {
+            return usage(err, "--schedule is required");
+        }    // if
+        if ((send ? 1 : 0) + ((spoolDirectory != null) ? 1 : 0) + ((mboxFile != null) ? 1 : 0) != 1) {
+            return usage(err, "exactly one of --send, --spool, and --mbox is required");
+        }    // if
+        if ((outboxDirectory != null) && !send) {
+            return usage(err, "--outbox requires --send");
+        }    // if
+        int workerCount = MailQueue.DEFAULT_WORKERS;
+        TokenBucket rateLimiter = null;
+        try {
+            if (workers != null) {
+                workerCount = Integer.parseInt(workers);
+            }    // if
+            if (rate != null) {
+                rateLimiter = new TokenBucket(1, Double.parseDouble(rate));
+            }    // if
+        } catch (IllegalArgumentException e) {    // try
+            return usage(err, "invalid --workers or --rate: " + e.getMessage());
+        }    // catch
+        if (workerCount <= 0) {
+            return usage(err, "--workers must be positive");
+        }    // if
+
+        Application application;
+        List<Event> events;
+        try {
+            application = getApplication(propertiesFile);
+            ScheduleParser parser = new ScheduleParser(application.getShifts(), application.getVolunteers());
+            try (Reader reader = Files.newBufferedReader(Paths.get(scheduleFile), StandardCharsets.UTF_8)) {
+                events = parser.parse(reader);
+            }    // try
+        } catch (Exception e) {    // try
+            err.println("Unable to initialize: " + e.getMessage());
+            return EXIT_USAGE;
+        }    // catch
+
+        boolean mergeEvents = merge;
+        ToIntFunction<Consumer<MailMessage>> generator = consumer -> generateMessages(application, events, mergeEvents, consumer);
+        if (spoolDirectory != null) {
+            return spoolMessages(new Mailer(application), generator, Paths.get(spoolDirectory), DryRunSpool.Format.EML, workerCount, out, err);
+        } else if (mboxFile != null) {    // if
+            return spoolMessages(new Mailer(application), generator, Paths.get(mboxFile), DryRunSpool.Format.MBOX, workerCount, out, err);
+        } else if (outboxDirectory == null) {    // else if
+            return sendMessages(application, generator, System.getenv(passwordVariable), workerCount, rateLimiter, out, err);
+        } else {    // else if
+            return sendThroughOutbox(application, generator, System.getenv(passwordVariable), workerCount, rateLimiter, Paths.get(outboxDirectory), out, err);
+        }    // else
+    }    // run()
+
+    /**
+     * Generates the emails for the given events, and passes each to the given
+     * consumer as soon as it is generated, in order. Unless the emails are
+     * merged, there is one email per event; otherwise, there is a personal
+     * email for each volunteer of each event, as described by
+     * {@link MailMerger}, and the consumer may be called on a rendering
+     * thread.
+     *
+     * @param application the application; may not be null
+     * @param events the events; may not be null
+     * @param merge true to generate personal emails
+     * @param consumer the consumer; may not be null
+     * @return the number of emails generated
+     */
+    private int generateMessages(Application application, List<Event> events, boolean merge, Consumer<MailMessage> consumer) {
+        assert (application != null);
+        assert (events != null);
+        assert (consumer != null);
+
+        if (merge) {
+            MailMerger mailMerger = new MailMerger(application.getEmailTemplate());
+            int count = 0;
+            for (Event event : events) {
+                count += mailMerger.merge(event, consumer);
+            }    // for
+            return count;
+        }    // if
+
+        EventEmailRenderer renderer = new EventEmailRenderer(application.getEmailTemplate());
+        for (Event event : events) {
+            consumer.accept(createMailMessage(renderer, event));
+        }    // for
+        return events.size();
+    }    // generateMessages()
+
+    /**
+     * Serves the HTTP API on the given port until the program is terminated.
+     *
+     * @param port the port, as given on the command line; may not be null
+     * @param bindAddress the address on which to serve, as given on the
+     * command line, or null to serve on the loopback address
+     * @param propertiesFile the application properties file, or null to use
+     * the application properties resource
+     * @param out the stream for progress messages; may not be null
+     * @param err the stream for error messages; may not be null
+     * @return the exit status
+     */
+    private int serve(String port, String bindAddress, String propertiesFile, PrintStream out, PrintStream err) {
+        assert (port != null);
+        assert (out != null);
+        assert (err != null);
+
+        InetAddress address;
+        ApiServer server;
+        try {
+            address = (bindAddress == null) ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bindAddress);
+            server = new ApiServer(getApplication(propertiesFile), new InetSocketAddress(address, Integer.parseInt(port)), ApiServer.DEFAULT_WORKER_THREADS);
+        } catch (Exception e) {    // try
+            err.println("Unable to initialize: " + e.getMessage());
+            return EXIT_USAGE;
+        }    // catch
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            stopped.countDown();
+        }));
+        server.start();
+        out.println("Serving on " + address.getHostAddress() + " port " + server.getPort());
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {    // try
+            Thread.currentThread().interrupt();
+        }    // catch
+        return EXIT_SUCCESS;
+    }    // serve()
+
+    /**
+     * Creates the mail message for the given event, with both a plain text
+     * and an HTML body.
+     *
+     * @param renderer the event email renderer; may not be null
+     * @param event the event; may not be null
+     * @return the mail message for the event
+     */
+    private MailMessage createMailMessage(EventEmailRenderer renderer, Event event) {
+        assert (renderer != null);
+        assert (event != null);
+
+        String recipients = renderer.renderRecipients(event);
+        EmailTemplate.SendType sendType = renderer.getEmailTemplate().getSendType();
+        String toAddresses = (sendType == EmailTemplate.SendType.TO) ? recipients : "";
+        String ccAddresses = (sendType == EmailTemplate.SendType.CC) ? recipients : "";
+        String bccAddresses = (sendType == EmailTemplate.SendType.BCC) ? recipients : "";
+        return new MailMessage(toAddresses, ccAddresses, bccAddresses, renderer.renderSubject(event), renderer.renderBody(event), renderer.renderHtmlBody(event));
+    }    // createMailMessage()
+
+    /**
+     * Sends the generated messages through a {@link MailQueue}, submitting
+     * each as soon as it is generated, and reporting progress as each message
+     * is sent or fails.
+     *
+     * @param application the application; may not be null
+     * @param generator generates the messages, passing each to the consumer
+     * it is given, and returns the number generated; may not be null
+     * @param password the email server password; may be null
+     * @param workerCount the number of worker connections; must be positive
+     * @param rateLimiter the rate limiter; may be null
+     * @param out the stream for progress messages; may not be null
+     * @param err the stream for error messages; may not be null
+     * @return the exit status
+     */
+    private int sendMessages(Application application, ToIntFunction<Consumer<MailMessage>> generator, String password, int workerCount, TokenBucket rateLimiter, PrintStream out, PrintStream err) {
+        assert (application != null);
+        assert (generator != null);
+        assert (workerCount > 0);
+        assert (out != null);
+        assert (err != null);
+
+        MailQueue queue = new MailQueue(application, password, workerCount, rateLimiter);
+        queue.registerObserver(() -> out.println("Progress: " + (queue.getSentCount() + queue.getFailedCount()) + " of " + queue.getSubmittedCount()));
+        int generated = generator.applyAsInt(queue::submit);
+        queue.close();
+        if (Thread.currentThread().isInterrupted()) {
+            err.println("Interrupted with " + queue.getPendingCount() + " emails unsent");
+            return finish(out, generated, generated - queue.getSentCount(), "sent");
+        }    // if
+        for (Map.Entry<MailMessage, Exception> failure : queue.getFailures().entrySet()) {
+            err.println("Unable to send \"" + failure.getKey().getSubject() + "\": " + failure.getValue());
+        }    // for
+        return finish(out, generated, queue.getFailedCount(), "sent");
+    }    // sendMessages()
+
+    /**
+     * Sends the generated messages through a durable {@link Outbox} in the
+     * given directory, enqueueing each as soon as it is generated, and waits
+     * until the outbox has drained. Messages left unsent by an earlier run on
+     * the same directory are sent as well.
+     *
+     * @param application the application; may not be null
+     * @param generator generates the messages, passing each to the consumer
+     * it is given, and returns the number generated; may not be null
+     * @param password the email server password; may be null
+     * @param workerCount the number of worker connections; must be positive
+     * @param rateLimiter the rate limiter; may be null
+     * @param directory the outbox directory; may not be null
+     * @param out the stream for progress messages; may not be null
+     * @param err the stream for error messages; may not be null
+     * @return the exit status
+     */
+    private int sendThroughOutbox(Application application, ToIntFunction<Consumer<MailMessage>> generator, String password, int workerCount, TokenBucket rateLimiter, Path directory, PrintStream out, PrintStream err) {
+        assert (application != null);
+        assert (generator != null);
+        assert (workerCount > 0);
+        assert (directory != null);
+        assert (out != null);
+        assert (err != null);
+
+        TransportPool transportPool = new TransportPool(TransportPool.DEFAULT_IDLE_TIMEOUT_MILLIS, workerCount);
+        int generated = 0;
+        try (Outbox outbox = new Outbox(application, directory, transportPool, Outbox.DEFAULT_MAXIMUM_ATTEMPTS, Outbox.DEFAULT_INITIAL_BACKOFF_MILLIS, Outbox.DEFAULT_MAXIMUM_BACKOFF_MILLIS)) {
+            int resumed = outbox.getCount(Outbox.State.QUEUED) + outbox.getCount(Outbox.State.RETRYING);
+            if (resumed > 0) {
+                out.println("Resuming " + resumed + " unsent emails");
+            }    // if
+            outbox.registerObserver(() -> out.println("Progress: " + outbox.getCount(Outbox.State.SENT) + " sent, " + outbox.getCount(Outbox.State.RETRYING) + " retrying, " + outbox.getCount(Outbox.State.FAILED) + " failed"));
+            outbox.start(password, workerCount, rateLimiter);
+            // The generator passes messages one at a time, so these need no
+            // further synchronization.
+            Map<Long, String> subjects = new LinkedHashMap<>();
+            List<String> unenqueued = new ArrayList<>();
+            generated = generator.applyAsInt(mailMessage -> {
+                try {
+                    subjects.put(outbox.enqueue(mailMessage), mailMessage.getSubject());
+                } catch (MessagingException | IOException e) {    // try
+                    unenqueued.add("Unable to enqueue \"" + mailMessage.getSubject() + "\": " + e);
+                }    // catch
+            });
+            while (!outbox.awaitDrained(1, TimeUnit.MINUTES)) {
+                // Keep waiting; retries may be minutes apart.
+            }    // while
+
+            for (String problem : unenqueued) {
+                err.println(problem);
+            }    // for
+            Map<Long, Exception> failed = outbox.getFailures();
+            int failures = unenqueued.size();
+            for (Map.Entry<Long, String> subject : subjects.entrySet()) {
+                if (outbox.getState(subject.getKey()) == Outbox.State.FAILED) {
+                    err.println("Unable to send \"" + subject.getValue() + "\": " + failed.get(subject.getKey()));
+                    ++failures;
+                }    // if
+            }    // for
+            return finish(out, generated, failures, "sent");
+        } catch (InterruptedException e) {    // try
+            Thread.currentThread().interrupt();
+            err.println("Interrupted; unsent emails remain in " + directory);
+            return finish(out, generated, generated, "sent");
+        } catch (Exception e) {    // catch
+            err.println("Unable to use outbox: " + e.getMessage());
+            return finish(out, generated, generated, "sent");
+        } finally {    // catch
+            transportPool.close();
+        }    // finally
+    }    // sendThroughOutbox()
+
+    /**
+     * Writes the generated messages to disk through a {@link DryRunSpool},
+     * submitting each as soon as it is generated, without sending them.
+     *
+     * @param mailer the mailer; may not be null
+     * @param generator generates the messages, passing each to the consumer
+     * it is given, and returns the number generated; may not be null
+     * @param path the spool directory or mbox file; may not be null
+     * @param format the spool format; may not be null
+     * @param workerCount the number of render threads; must be positive
+     * @param out the stream for progress messages; may not be null
+     * @param err the stream for error messages; may not be null
+     * @return the exit status
+     */
+    private int spoolMessages(Mailer mailer, ToIntFunction<Consumer<MailMessage>> generator, Path path, DryRunSpool.Format format, int workerCount, PrintStream out, PrintStream err) {
+        assert (mailer != null);
+        assert (generator != null);
+        assert (path != null);
+        assert (format != null);
+        assert (workerCount > 0);
+        assert (out != null);
+        assert (err != null);
+
+        DryRunSpool spool;
+        try {
+            spool = new DryRunSpool(mailer, path, format, workerCount);
+        } catch (IOException e) {    // try
+            err.println("Unable to create spool: " + e.getMessage());
+            return EXIT_FAILURE;
+        }    // catch
+        AtomicBoolean interrupted = new AtomicBoolean(false);
+        int generated = generator.applyAsInt(mailMessage -> {
+            try {
+                if (!interrupted.get()) {
+                    spool.submit(mailMessage);
+                }    // if
+            } catch (InterruptedException e) {    // try
+                interrupted.set(true);
+            }    // catch
+        });
+        if (interrupted.get()) {
+            // The consumer may have run on a rendering thread; the interrupt
+            // belongs to this one.
+            Thread.currentThread().interrupt();
+        }    // if
+        try {
+            spool.close();
+        } catch (IOException e) {    // try
+            err.println("Unable to finish spool: " + e.getMessage());
+            return finish(out, generated, generated, "spooled");
+        }    // catch
+        if (Thread.currentThread().isInterrupted()) {
+            err.println("Interrupted with " + (generated - spool.getWrittenCount() - spool.getFailedCount()) + " emails unspooled");
+            return finish(out, generated, generated - spool.getWrittenCount(), "spooled");
+        }    // if
+        for (Map.Entry<MailMessage, Exception> failure : spool.getFailures().entrySet()) {
+            err.println("Unable to spool \"" + failure.getKey().getSubject() + "\": " + failure.getValue());
+        }    // for
+        out.println("Spooled " + spool.getWrittenCount() + " emails to " + path);
+        return finish(out, generated, spool.getFailedCount(), "spooled");
+    }    // spoolMessages()
+
+    /**
+     * Prints how many of the generated emails were sent or spooled, and
+     * returns the exit status.
+     *
+     * @param out the stream for progress messages; may not be null
+     * @param generated the number of emails generated
+     * @param failures the number of emails that could not be sent or spooled
+     * @param verb "sent" or "spooled"; may not be null
+     * @return {@link #EXIT_SUCCESS} if every email was sent or spooled;
+     * {@link #EXIT_FAILURE} otherwise
+     */
+    private int finish(PrintStream out, int generated, int failures, String verb) {
+        assert (out != null);
+        assert (verb != null);
+        out.println((generated - failures) + " of " + generated + " emails " + verb);
+        return (failures == 0) ? EXIT_SUCCESS : EXIT_FAILURE;
+    }    // finish()
+
+    /**
+     * Prints a usage message.
+     *
+     * @param err the stream for error messages; may not be null
+     * @param problem a description of the usage problem; may not be null
+     * @return {@link #EXIT_USAGE}
+     */
+    private int usage(PrintStream err, String problem) {
+        assert (err != null);
+        assert (problem != null);
+        err.println(problem);
+        err.println("usage: " + HeadlessMain.class.getName() + " --schedule FILE (--send | --spool DIR | --mbox FILE) [--properties FILE] [--password-env NAME] [--workers COUNT] [--rate PER_MINUTE] [--outbox DIR] [--merge]");
+        err.println("       " + HeadlessMain.class.getName() + " --serve PORT [--bind ADDRESS] [--properties FILE]");
+        return EXIT_USAGE;
+    }    // usage()
+
+    /**
+     * Returns the application used in this program. This method is
+     * package-private so that tests can supply their own application.
+     *
+     * @param propertiesFile the application properties file, or null to use
+     * the application properties resource
+     * @return the application used in this program
+     * @throws IOException if the method is unable to read the application
+     * properties
+     */
+    Application getApplication(String propertiesFile) throws IOException {
+        try (InputStream applicationPropertiesInputStream = (propertiesFile == null)
+                ? ClassLoader.getSystemResourceAsStream(APPLICATION_PROPERTIES_FILE)
+                : Files.newInputStream(Paths.get(propertiesFile))) {
+            if (applicationPropertiesInputStream == null) {
+                throw new IOException("Missing resource " + APPLICATION_PROPERTIES_FILE);
+            }    // if
+            Properties applicationProperties = new Properties();
+            applicationProperties.load(applicationPropertiesInputStream);
+            return Application.createApplication(applicationProperties);
+        }    // try
+    }    // getApplication()
+
+}    // HeadlessMain
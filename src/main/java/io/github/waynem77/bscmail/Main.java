@@ -23,7 +23,12 @@ import io.github.waynem77.bscmail.gui.MainFrame;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
 
 /**
  * Main program.
@@ -55,27 +60,78 @@ public class Main {
      * Class properties and methods
      */
 
+    /**
+     * The logger used to report startup times.
+     */
+    private static final Logger LOGGER = Logger.getLogger(Main.class.getName());
+
+    /**
+     * The number of threads used to load the application data.
+     */
+    private static final int LOADER_THREADS = 3;
+
     /**
      * The name of the application properties resource.
      */
     private final String APPLICATION_PROPERTIES_FILE = "application.properties";
 
     /**
-     * Runs the system.
+     * The system property that, when "true", causes the management frames to be
+     * built in the background once the main window is showing.
+     */
+    private final String PREWARM_FRAMES_PROPERTY = "bscmail.prewarmFrames";
+
+    /**
+     * Runs the system. The main window is shown before the application data
+     * is read, and its buttons are enabled as the data they require arrives.
+     * The time taken by each startup phase is logged.
      */
     private void run() {
+        long startTime = System.nanoTime();
         try {
             Application application = getApplication();
-            JFrame frame = new MainFrame(application);
+            logPhase("Created application", startTime);
+
+            MainFrame frame = new MainFrame(application);
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
             frame.setVisible(true);
+            logPhase("Showed main window", startTime);
+
+            ExecutorService loader = Executors.newFixedThreadPool(LOADER_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "bscmail-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            application.loadData(loader).whenComplete((result, e) -> {
+                loader.shutdown();
+                if (e != null) {
+                    e.printStackTrace();
+                }    // if
+                logPhase("Loaded application data", startTime);
+                if (Boolean.getBoolean(PREWARM_FRAMES_PROPERTY)) {
+                    SwingUtilities.invokeLater(frame::prewarmFrames);
+                }    // if
+            });
         } catch (Exception e) {
             e.printStackTrace();
         }
     }    // run()
 
     /**
-     * Returns the application used in this program.
+     * Logs the completion of a startup phase.
+     *
+     * @param phase a description of the phase; may not be null
+     * @param startTime the value of {@link System#nanoTime()} when the program
+     * started
+     */
+    private void logPhase(String phase, long startTime) {
+        assert (phase != null);
+        LOGGER.log(Level.INFO, "{0} at {1} ms", new Object[] {phase, (System.nanoTime() - startTime) / 1000000});
+    }    // logPhase()
+
+    /**
+     * Returns the application used in this program. The application's data is
+     * not loaded; see {@link Application#loadData(java.util.concurrent.Executor)}.
      *
      * @return the application used in this program
      * @throws IOException if the method is unable to read the application
@@ -86,7 +142,7 @@ public class Main {
         try (InputStream applicationPropertiesInputStream = ClassLoader.getSystemResourceAsStream(APPLICATION_PROPERTIES_FILE)) {
             Properties applicationProperties = new Properties();
             applicationProperties.load(applicationPropertiesInputStream);
-            return Application.createApplication(applicationProperties);
+            return Application.createApplication(applicationProperties, true);
         }    // try
     }    // getApplication()
 }
@@ -21,15 +21,17 @@ package io.github.waynem77.bscmail.gui;
 
 import io.github.waynem77.bscmail.gui.util.ComponentFactory;
 import io.github.waynem77.bscmail.gui.util.LabeledGrid;
+import io.github.waynem77.bscmail.mail.AddressCache;
+import io.github.waynem77.bscmail.mail.MailMerger;
 import io.github.waynem77.bscmail.mail.MailMessage;
 import io.github.waynem77.bscmail.mail.Mailer;
 import io.github.waynem77.bscmail.Application;
 import io.github.waynem77.bscmail.persistent.EmailTemplate;
 import io.github.waynem77.bscmail.persistent.Event;
-import io.github.waynem77.bscmail.persistent.EventProperty;
 import io.github.waynem77.bscmail.persistent.Shift;
 import io.github.waynem77.bscmail.persistent.Volunteer;
-import io.github.waynem77.bscmail.util.format.EmailFormatter;
+import io.github.waynem77.bscmail.util.format.EventEmailRenderer;
+import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.util.Objects;
@@ -37,14 +39,22 @@ import java.util.stream.Collectors;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
 import javax.swing.JPasswordField;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 /**
  * Constructs and displays an email.  The email is constructed from an email
- * template, with values filled in from an {@link Event}.
+ * template, with values filled in from an {@link Event}. Instead of the
+ * displayed email, the user may send each volunteer a personal email, as
+ * described by {@link MailMerger}. Personal emails are rendered from the
+ * email template, so they cannot carry the user's edits to the displayed
+ * email; once the user edits the subject or text, they are no longer
+ * offered.
  *
  * @author Wayne Miller
  */
@@ -55,6 +65,11 @@ public class DisplayEmailFrame extends JFrame {
      */
     private final Application application;
 
+    /**
+     * The event.
+     */
+    private final Event event;
+
     /**
      * The layout grid for the frame.
      */
@@ -90,6 +105,28 @@ public class DisplayEmailFrame extends JFrame {
      */
     private final JButton sendEmail;
 
+    /**
+     * The send personal emails button.
+     */
+    private final JButton sendPersonalEmails;
+
+    /**
+     * The rendered email body. This is sent as is unless the user edits the
+     * text area.
+     */
+    private String renderedBody;
+
+    /**
+     * The rendered HTML email body. This is sent alongside the rendered body
+     * unless the user edits the text area.
+     */
+    private String renderedHtmlBody;
+
+    /**
+     * True if the user has edited the email body in the text area.
+     */
+    private boolean bodyEdited;
+
     /**
      * Constructs a new display email frame displaying an email constructed from
      * the given template and list of shifts.
@@ -107,6 +144,7 @@ public class DisplayEmailFrame extends JFrame {
         }    // if
 
         this.application = application;
+        this.event = event;
 
         setTitle(application.createWindowTitle("Event Email Text"));
 
@@ -124,16 +162,24 @@ public class DisplayEmailFrame extends JFrame {
         subjectLine = new JTextField(MIN_TEXT_AREA_COLS);
         sendEmail = new JButton("Generate Email");
         sendEmail.addActionListener(this::sendEmailButtonClicked);
+        sendPersonalEmails = new JButton("Send Personal Emails");
+        sendPersonalEmails.addActionListener(this::sendPersonalEmailsButtonClicked);
 
         textArea = new JTextArea(MIN_TEXT_AREA_ROWS, MIN_TEXT_AREA_COLS);
         textArea.setLineWrap(true);
+        renderedBody = "";
+        renderedHtmlBody = "";
+        bodyEdited = false;
 
         mainPanel.addLabelAndComponent("To: ", toRecipientLine);
         mainPanel.addLabelAndComponent("Cc: ", ccRecipientLine);
         mainPanel.addLabelAndComponent("Bcc: ", bccRecipientLine);
         mainPanel.addLabelAndComponent("Subject: ", subjectLine);
         mainPanel.addLabelAndComponent("Text: ", new JScrollPane(textArea), true);
-        mainPanel.addLabelAndComponent("Actions: ", sendEmail);
+        JPanel actionPanel = new JPanel();
+        actionPanel.add(sendEmail);
+        actionPanel.add(sendPersonalEmails);
+        mainPanel.addLabelAndComponent("Actions: ", actionPanel);
 
         add(mainPanel);
 
@@ -154,118 +200,115 @@ public class DisplayEmailFrame extends JFrame {
         pack();
         textArea.setRows(MIN_TEXT_AREA_ROWS);
 
-        populateRecipientLines(application.getEmailTemplate(), event);
-        populateSubjectLine(application.getEmailTemplate(), event);
-        populateEmailBody(application.getEmailTemplate(), event);
+        EventEmailRenderer renderer = new EventEmailRenderer(application.getEmailTemplate());
+        populateRecipientLines(renderer, event);
+        populateSubjectLine(renderer, event);
+        populateEmailBody(renderer, event);
+        textArea.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) {
+                bodyEdited = true;
+                disablePersonalEmails();
+            }    // insertUpdate()
+            @Override public void removeUpdate(DocumentEvent e) {
+                bodyEdited = true;
+                disablePersonalEmails();
+            }    // removeUpdate()
+            @Override public void changedUpdate(DocumentEvent e) {
+                // Attribute changes do not alter the text.
+            }    // changedUpdate()
+        });    // addDocumentListener()
+        subjectLine.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) {
+                disablePersonalEmails();
+            }    // insertUpdate()
+            @Override public void removeUpdate(DocumentEvent e) {
+                disablePersonalEmails();
+            }    // removeUpdate()
+            @Override public void changedUpdate(DocumentEvent e) {
+                // Attribute changes do not alter the text.
+            }    // changedUpdate()
+        });    // addDocumentListener()
 
         assertInvariant();
     }    // DisplayEmailFrame()
 
     /**
-     * Populates the recipient lines with the appropriate email addresses.
+     * Populates the recipient lines with the appropriate email addresses. If
+     * any of the addresses is invalid, the recipient line is flagged and the
+     * invalid addresses are listed in its tool tip.
      *
-     * @param emailTemplate the email template; may not be null
+     * @param renderer the event email renderer; may not be null
      * @param event the event; may not be null
      */
-    private void populateRecipientLines(EmailTemplate emailTemplate, Event event) {
-        assert (emailTemplate != null);
+    private void populateRecipientLines(EventEmailRenderer renderer, Event event) {
+        assert (renderer != null);
         assert (event != null);
 
-        String recipients = event.getShifts().stream()
-                .map(Shift::getVolunteer)
-                .filter(Objects::nonNull)
-                .map(Volunteer::getEmail)
-                .distinct()
-                .collect(Collectors.joining(", "));
+        String recipients = renderer.renderRecipients(event);
 
-        EmailTemplate.SendType sendType = emailTemplate.getSendType();
+        EmailTemplate.SendType sendType = renderer.getEmailTemplate().getSendType();
         assert (sendType != null);
+        JTextField recipientLine;
         if (sendType == EmailTemplate.SendType.CC) {
-            ccRecipientLine.setText(recipients);
+            recipientLine = ccRecipientLine;
         } else if (sendType == EmailTemplate.SendType.BCC) {    // if
-            bccRecipientLine.setText(recipients);
+            recipientLine = bccRecipientLine;
         } else {    // else if
-            toRecipientLine.setText(recipients);
+            recipientLine = toRecipientLine;
         }    // else
+        recipientLine.setText(recipients);
+
+        AddressCache addressCache = application.getAddressCache();
+        String invalidRecipients = event.getShifts().stream()
+                .map(Shift::getVolunteer)
+                .filter(Objects::nonNull)
+                .map(Volunteer::getEmail)
+                .filter(email -> !email.trim().isEmpty())
+                .distinct()
+                .filter(email -> !addressCache.isValid(email))
+                .collect(Collectors.joining(", "));
+        if (!invalidRecipients.isEmpty()) {
+            recipientLine.setBackground(Color.PINK);
+            recipientLine.setToolTipText("Invalid email addresses: " + invalidRecipients);
+        }    // if
     }    // populateRecipientLines()
 
     /**
      * Populates the subject line with appropriate text.
      *
-     * @param emailTemplate the email template; may not be null
+     * @param renderer the event email renderer; may not be null
      * @param event the event; may not be null
      */
-    private void populateSubjectLine(EmailTemplate emailTemplate, Event event) {
-        assert(emailTemplate != null);
+    private void populateSubjectLine(EventEmailRenderer renderer, Event event) {
+        assert(renderer != null);
         assert(event != null);
-        EmailFormatter emailFormatter = new EmailFormatter(emailTemplate.getDateFormatString());
-        String subject = emailFormatter.formatString(emailTemplate.getSubjectLineTemplate(), event);
-        subjectLine.setText(subject);
+        subjectLine.setText(renderer.renderSubject(event));
     }    // populateSubjectLine()
 
     /**
-     * Populates the email body with appropriate text.  This method places text
-     * in the following order.
-     * <ul>
-     *   <li>the pre-schedule text defined in the email template</li>
-     *   <li>a list of the event properties defined in the event</li>
-     *   <li>the volunteer schedule defined in the shifts of the event</li>
-     *   <li>the post-schedule text defined in the email template</li>
-     * </ul>
+     * Populates the email body with appropriate text. The body is rendered as
+     * described in {@link EventEmailRenderer#renderBody(Event)}, and placed
+     * in the text area in a single update, so that even large events are
+     * displayed without repeated relayout. The HTML body is rendered at the
+     * same time, for sending.
      *
-     * @param emailTemplate the email template; may not be null
+     * @param renderer the event email renderer; may not be null
      * @param event the event; may not be null
      */
-    private void populateEmailBody(EmailTemplate emailTemplate, Event event) {
-        // Pre-schedule text
-        appendText(emailTemplate.getPreScheduleText());
-        appendText("");
-
-        // Event properties
-        if (event.hasDate()) {
-            String datePropertyFormat = "Date: {date}";
-            EmailFormatter emailFormatter = new EmailFormatter(emailTemplate.getDateFormatString());
-            appendText(emailFormatter.formatString(datePropertyFormat, event));
-        }    // if
-        for (EventProperty eventProperty : event.getEventProperties()) {
-            appendText(eventProperty.getPropertyName() + ": " + eventProperty.getValue());
-        }    // for
-        appendText("");
-
-        // Schedule
-        for (Shift shift : event.getShifts()) {
-            String shiftLine = shift.getDescription() + ":";
-            Volunteer volunteer = shift.getVolunteer();
-            if (volunteer != null) {
-                shiftLine += " " + volunteer.getName();
-
-                String extraInfo = null;
-                if (shift.getDisplayVolunteerEmail()) {
-                    extraInfo = (extraInfo == null) ? volunteer.getEmail() : (extraInfo + ", " + volunteer.getEmail());
-                }    // if
-                if (shift.getDisplayVolunteerPhone()) {
-                    extraInfo = (extraInfo == null) ? volunteer.getPhone() : (extraInfo + ", " + volunteer.getPhone());
-                }    // if
-                if (shift.getDisplayVolunteerNotes()) {
-                    extraInfo = (extraInfo == null) ? volunteer.getNotes() : (extraInfo + ", " + volunteer.getNotes());
-                }    // if
-
-                if (extraInfo != null) {
-                    shiftLine += " (" + extraInfo + ")";
-                }    // if
-            }    // if
-            appendText(shiftLine);
-        }    // for
-        appendText("");
-
-        // Post-schedule text
-        appendText(emailTemplate.getPostScheduleText());
-
+    private void populateEmailBody(EventEmailRenderer renderer, Event event) {
+        assert(renderer != null);
+        assert(event != null);
+        renderedBody = renderer.renderBody(event);
+        renderedHtmlBody = renderer.renderHtmlBody(event);
+        textArea.setText(renderedBody);
         scrollToTop();
     }    // populateEmailBody()
 
     /**
-     * Event fired when the send email button is clicked.
+     * Event fired when the send email button is clicked. Unless the user has
+     * edited the email body, the rendered body is sent directly, along with
+     * its HTML alternative, rather than read back from the text area. An
+     * edited body is sent as plain text only.
      */
     private void sendEmailButtonClicked(ActionEvent e) {
         JPasswordField passwordField = new JPasswordField();
@@ -277,7 +320,9 @@ public class DisplayEmailFrame extends JFrame {
             mailerFrame.setVisible(true);
             mailerFrame.mailerStatusChanged();
 
-            MailMessage message = new MailMessage(toRecipientLine.getText(), ccRecipientLine.getText(), bccRecipientLine.getText(), subjectLine.getText(), textArea.getText());
+            String body = bodyEdited ? textArea.getText() : renderedBody;
+            String htmlBody = bodyEdited ? null : renderedHtmlBody;
+            MailMessage message = new MailMessage(toRecipientLine.getText(), ccRecipientLine.getText(), bccRecipientLine.getText(), subjectLine.getText(), body, htmlBody);
 
             Thread mailerThread = new Thread(){
                 public void run() {
@@ -288,6 +333,53 @@ public class DisplayEmailFrame extends JFrame {
         }    // if
     }    // sendEmailButtonClicked()
 
+    /**
+     * Event fired when the send personal emails button is clicked. Each
+     * volunteer assigned to the event is sent a personal email, with both a
+     * plain text and an HTML body, rendered from the email template by a
+     * {@link MailMerger}. The recipient lines, subject line, and text area
+     * are ignored. The emails are rendered and sent on a separate thread,
+     * each sent as soon as it is rendered, and the mailer frame follows the
+     * whole batch.
+     */
+    private void sendPersonalEmailsButtonClicked(ActionEvent e) {
+        MailMerger mailMerger = new MailMerger(application.getEmailTemplate());
+        int messageCount = mailMerger.countRecipients(event);
+        if (messageCount == 0) {
+            JOptionPane.showMessageDialog(this, "No volunteer assigned to the event has an email address.", application.createWindowTitle("No Recipients"), JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }    // if
+
+        JPasswordField passwordField = new JPasswordField();
+        int selection = JOptionPane.showConfirmDialog(this, passwordField, application.createWindowTitle("Enter Password"), JOptionPane.OK_CANCEL_OPTION);
+
+        if (selection == JOptionPane.OK_OPTION) {
+            Mailer mailer = new Mailer(application);
+            MailerFrame mailerFrame = new MailerFrame(application, mailer, messageCount);
+            mailerFrame.setVisible(true);
+            mailerFrame.mailerStatusChanged();
+
+            String password = new String(passwordField.getPassword());
+            Thread mailerThread = new Thread(){
+                public void run() {
+                    mailMerger.merge(event, message -> mailer.send(message, password));
+                }
+            };
+            mailerThread.start();
+        }    // if
+    }    // sendPersonalEmailsButtonClicked()
+
+    /**
+     * Disables the send personal emails button, since personal emails would
+     * not carry the user's edits to the displayed email.
+     */
+    private void disablePersonalEmails() {
+        if (sendPersonalEmails.isEnabled()) {
+            sendPersonalEmails.setEnabled(false);
+            sendPersonalEmails.setToolTipText("Personal emails are rendered from the email template, and would not include your edits.");
+        }    // if
+    }    // disablePersonalEmails()
+
     /**
      * Appends a line of text to the text area.
      *
@@ -328,6 +420,11 @@ public class DisplayEmailFrame extends JFrame {
         assert (isAncestorOf(subjectLine));
         assert (sendEmail != null);
         assert (isAncestorOf(sendEmail));
+        assert (sendPersonalEmails != null);
+        assert (isAncestorOf(sendPersonalEmails));
+        assert (event != null);
+        assert (renderedBody != null);
+        assert (renderedHtmlBody != null);
     }    // assertInvariant()
 
 }    // DisplayEmailFrame
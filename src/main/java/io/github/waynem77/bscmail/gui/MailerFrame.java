@@ -23,23 +23,39 @@ import io.github.waynem77.bscmail.mail.Mailer;
 import io.github.waynem77.bscmail.mail.MailerObserver;
 import io.github.waynem77.bscmail.mail.MailerStatus;
 import io.github.waynem77.bscmail.Application;
+import io.github.waynem77.bscmail.gui.util.MailerStatusStream;
 import java.awt.Cursor;
 import java.awt.event.ActionEvent;
 import java.awt.event.WindowEvent;
 import javax.swing.Box;
 import javax.swing.JButton;
 import javax.swing.JFrame;
+import javax.swing.JLabel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 
 /**
  * Displays the progress of sending an email via the {@link Mailer} class.
+ * Rather than a line for every status change, the frame shows the mailer's
+ * current status, the number of messages sent and failed, and the rate at
+ * which they are sent, refreshed a few times a second through a
+ * {@link MailerStatusStream}. Once an email has been sent, or has failed, the
+ * frame also shows the last server response or error, and a report of the
+ * mailer's {@link io.github.waynem77.bscmail.mail.MailerMetrics metrics}, so
+ * that the user can see which stage of sending is slow. A frame following a
+ * batch of emails sent one after another through the same mailer is told the
+ * size of the batch, and waits for the whole batch before showing these.
  *
  * @author Wayne Miller (waynem77@yahoo.com)
  * @since 3.4
  */
 public class MailerFrame extends JFrame implements MailerObserver {
 
+    /**
+     * The counters label.
+     */
+    private final JLabel countersLabel;
+
     /**
      * The messages area.
      */
@@ -55,10 +71,19 @@ public class MailerFrame extends JFrame implements MailerObserver {
      */
     private final Mailer mailer;
 
+    /**
+     * The stream carrying the mailer's status changes to the frame.
+     */
+    private final MailerStatusStream statusStream;
+
+    /**
+     * The number of emails to be sent.
+     */
+    private final int messageCount;
 
     /**
-     * Constructs a new MailerFrame. The MailerFrame automatically registers
-     * itself as an observer of the given Mailer.
+     * Constructs a new MailerFrame following a single email. The MailerFrame
+     * automatically registers itself as an observer of the given Mailer.
      *
      * @param application the underlying application; may not be
      * null
@@ -66,19 +91,45 @@ public class MailerFrame extends JFrame implements MailerObserver {
      * @throws NullPointerException if either parameter is null
      */
     public MailerFrame(Application application, Mailer mailer) {
+        this(application, mailer, 1);
+    }    // MailerFrame()
+
+    /**
+     * Constructs a new MailerFrame following a batch of the given number of
+     * emails, sent one after another. The MailerFrame automatically registers
+     * itself as an observer of the given Mailer.
+     *
+     * @param application the underlying application; may not be
+     * null
+     * @param mailer the mailer; may not be null
+     * @param messageCount the number of emails to be sent; may not be
+     * negative
+     * @throws NullPointerException if either {@code application} or
+     * {@code mailer} is null
+     * @throws IllegalArgumentException if {@code messageCount} is negative
+     * @since 4.0
+     */
+    public MailerFrame(Application application, Mailer mailer, int messageCount) {
         if (application == null) {
             throw new NullPointerException("application may not be null");
         }    // if
-        if (application == null) {
+        if (mailer == null) {
             throw new NullPointerException("mailer may not be null");
         }    // if
+        if (messageCount < 0) {
+            throw new IllegalArgumentException("messageCount may not be negative");
+        }    // if
 
         setTitle(application.createWindowTitle("Mail Status"));
         setContentPane(Box.createVerticalBox());
 
-        final int MIN_TEXT_AREA_COLS = 40;
+        final int MIN_TEXT_AREA_COLS = 70;
         final int MIN_TEXT_AREA_ROWS = 8;
 
+        this.messageCount = messageCount;
+        countersLabel = new JLabel(formatCounters(mailer.getStatus(), 0, 0, messageCount, 0));
+        add(countersLabel);
+
         messagesTextArea = new JTextArea(MIN_TEXT_AREA_ROWS, MIN_TEXT_AREA_COLS);
         messagesTextArea.setLineWrap(true);
         messagesTextArea.setEditable(false);
@@ -93,7 +144,9 @@ public class MailerFrame extends JFrame implements MailerObserver {
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 
         this.mailer = mailer;
+        statusStream = new MailerStatusStream(mailer, this::progressDelivered);
         mailer.registerObserver(this);
+        statusStream.start();
 
         setCursor(new Cursor(Cursor.WAIT_CURSOR));
         assertInvariant();
@@ -101,23 +154,68 @@ public class MailerFrame extends JFrame implements MailerObserver {
 
     /**
      * {@inheritDoc}
+     *
+     * The status is recorded, and shown at the frame's next refresh. This
+     * method may be called from any thread.
      */
     @Override
     public void mailerStatusChanged() {
         assertInvariant();
-        MailerStatus status = mailer.getStatus();
-        if (status.equals(MailerStatus.MAIL_SENT)) {
-            messagesTextArea.append(status + ": " + mailer.getLastServerResponse() + "\n");
-            setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
-            closeButton.setEnabled(true);
-        } else if (status.equals(MailerStatus.ERROR)) {
-            messagesTextArea.append(status + ": " + mailer.getLastError().toString() + "\n");
+        statusStream.mailerStatusChanged();
+    }    // mailerStatusChanged()
+
+    /**
+     * Stops refreshing the frame, and disposes of it.
+     */
+    @Override
+    public void dispose() {
+        statusStream.stop();
+        super.dispose();
+    }    // dispose()
+
+    /**
+     * Event fired on the event dispatch thread when the status stream
+     * delivers the mailer's progress.
+     *
+     * @param progress the mailer's progress
+     */
+    private void progressDelivered(MailerStatusStream.Progress progress) {
+        assertInvariant();
+        assert (progress != null);
+
+        long finishedCount = progress.getSentCount() + progress.getErrorCount();
+        countersLabel.setText(formatCounters(progress.getStatus(), progress.getSentCount(), progress.getErrorCount(), messageCount, progress.getMessagesPerSecond()));
+        if (progress.isFinished() && (finishedCount >= messageCount)) {
+            StringBuilder messages = new StringBuilder();
+            if (progress.getLastServerResponse() != null) {
+                messages.append(MailerStatus.MAIL_SENT).append(": ").append(progress.getLastServerResponse()).append("\n");
+            }    // if
+            if (progress.getLastError() != null) {
+                messages.append(MailerStatus.ERROR).append(": ").append(progress.getLastError()).append("\n");
+            }    // if
+            messages.append("\n").append(mailer.getMetrics().getReport());
+            messagesTextArea.setText(messages.toString());
             setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
             closeButton.setEnabled(true);
-        } else {
-            messagesTextArea.append(status + "...\n");
-        }
-    }    // mailerStatusChanged()
+        } else {    // if
+            setCursor(new Cursor(Cursor.WAIT_CURSOR));
+        }    // else
+    }    // progressDelivered()
+
+    /**
+     * Returns the text of the counters label.
+     *
+     * @param status the mailer's status; may not be null
+     * @param sentCount the number of messages sent
+     * @param errorCount the number of messages that could not be sent
+     * @param messageCount the number of messages to be sent
+     * @param messagesPerSecond the number of messages finished per second
+     * @return the text of the counters label
+     */
+    private static String formatCounters(MailerStatus status, long sentCount, long errorCount, int messageCount, double messagesPerSecond) {
+        assert (status != null);
+        return String.format("%s    Sent: %d    Errors: %d    of %d    %.1f msg/s", status, sentCount, errorCount, messageCount, messagesPerSecond);
+    }    // formatCounters()
 
     /**
      * Event fired when the close button is clicked.
@@ -133,11 +231,15 @@ public class MailerFrame extends JFrame implements MailerObserver {
      * Asserts the correctness of the object's internal state.
      */
     private void assertInvariant() {
+        assert (countersLabel != null);
+        assert (isAncestorOf(countersLabel));
         assert (messagesTextArea != null);
         assert (isAncestorOf(messagesTextArea));
         assert (closeButton != null);
         assert (isAncestorOf(closeButton));
         assert (mailer != null);
+        assert (statusStream != null);
+        assert (messageCount >= 0);
     }    // assertInvariant()
 
 }    // MailerFrame
@@ -21,15 +21,25 @@ package io.github.waynem77.bscmail.gui;
 
 import io.github.waynem77.bscmail.gui.util.ComponentFactory;
 import io.github.waynem77.bscmail.Application;
+import io.github.waynem77.bscmail.Application.DataSet;
+import io.github.waynem77.bscmail.persistent.EmailServerPropertiesObserver;
+import io.github.waynem77.bscmail.persistent.EmailTemplateObserver;
 import io.github.waynem77.bscmail.persistent.Event;
+import io.github.waynem77.bscmail.persistent.EventPropertiesObserver;
+import io.github.waynem77.bscmail.persistent.RolesObserver;
+import io.github.waynem77.bscmail.persistent.ShiftsObserver;
+import io.github.waynem77.bscmail.persistent.VolunteersObserver;
 import java.awt.Dimension;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.JButton;
@@ -37,6 +47,7 @@ import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
 
 /**
  * The main window for BSCMail.
@@ -91,23 +102,34 @@ public class MainFrame extends JFrame {
          */
         private final Map<String, List<JButton>> buttons;
 
+        /**
+         * The data sets each button requires.
+         */
+        private final Map<JButton, Set<Application.DataSet>> requiredData;
+
         /**
          * Constructs a new button collection.
          */
         public ButtonCollection() {
             buttons = new LinkedHashMap<>();
+            requiredData = new LinkedHashMap<>();
         }    // ButtonCollection()
 
         /**
          * Adds a button to the given group with the given name and action listener.
+         * The button is enabled only once the given data sets have been loaded.
+         *
          * @param groupName the name of the group; may not be null
          * @param buttonName the name of the button; may not be null
          * @param actionListener the action listener; may not be null
+         * @param requiredData the data sets the button requires; may not be
+         * null
          */
-        public void addButton(String groupName, String buttonName, ActionListener actionListener) {
+        public void addButton(String groupName, String buttonName, ActionListener actionListener, Application.DataSet... requiredData) {
             assert (groupName != null);
             assert (buttonName != null);
             assert (actionListener != null);
+            assert (requiredData != null);
             List<JButton> buttonGroup = buttons.get(groupName);
             if (buttonGroup == null) {
                 buttonGroup = new LinkedList<>();
@@ -116,8 +138,19 @@ public class MainFrame extends JFrame {
             button.addActionListener(actionListener);
             buttonGroup.add(button);
             buttons.put(groupName, buttonGroup);
+            this.requiredData.put(button, new HashSet<>(Arrays.asList(requiredData)));
         }    // addButton()
 
+        /**
+         * Enables each button whose required data sets have been loaded, and
+         * disables the others.
+         */
+        public void updateEnabled() {
+            for (Map.Entry<JButton, Set<Application.DataSet>> entry : requiredData.entrySet()) {
+                entry.getKey().setEnabled(entry.getValue().stream().allMatch(application::isLoaded));
+            }    // for
+        }    // updateEnabled()
+
         /**
          * Returns the number of groups.
          *
@@ -161,40 +194,52 @@ public class MainFrame extends JFrame {
      */
     private final Application application;
 
+    /**
+     * The buttons on the main window.
+     */
+    private final ButtonCollection buttonCollection;
+
+    /*
+     * The frames below are built the first time they are opened, so that the
+     * cost of opening the main window does not depend on the size of the
+     * application data. Each is null until then. They are only accessed on the
+     * event dispatch thread.
+     */
+
     /**
      * A frame to manage shifts.
      */
-    private final ManageShiftsFrame manageShiftsFrame;
+    private ManageShiftsFrame manageShiftsFrame;
 
     /**
      * A frame to manage volunteers.
      */
-    private final ManageVolunteersFrame manageVolunteersFrame;
+    private ManageVolunteersFrame manageVolunteersFrame;
 
     /**
      * A frame to manage the email template.
      */
-    private final ManageEmailTemplateFrame manageEmailTemplateFrame;
+    private ManageEmailTemplateFrame manageEmailTemplateFrame;
 
     /**
      * A frame to manage the email server properties.
      */
-    private final ManageEmailServerPropertiesFrame manageEmailServerPropertiesFrame;
+    private ManageEmailServerPropertiesFrame manageEmailServerPropertiesFrame;
 
     /**
      * A frame to manage roles.
      */
-    private final ManageRolesFrame manageRolesFrame;
+    private ManageRolesFrame manageRolesFrame;
 
     /**
      * A frame to manage event properties.
      */
-    private final ManageEventPropertiesFrame manageEventPropertiesFrame;
+    private ManageEventPropertiesFrame manageEventPropertiesFrame;
 
     /**
      * A frame to create an event.
      */
-    private final EventFrame eventFrame;
+    private EventFrame eventFrame;
 
     /**
      * Constructs a new main frame.
@@ -212,15 +257,17 @@ public class MainFrame extends JFrame {
 
         // These are the buttons we want on the form. Using the ButtonCollection
         // class helps streamline the addition and removal of buttons.
-        ButtonCollection buttonCollection = new ButtonCollection();
-        buttonCollection.addButton("Manage", "Shifts", this::manageShiftsButtonClicked);
-        buttonCollection.addButton("Manage", "Volunteers", this::manageVolunteersButtonClicked);
-        buttonCollection.addButton("Manage", "Roles", this::manageRolesButtonClicked);
-        buttonCollection.addButton("Manage", "Email Template", this::manageEmailTemplateButtonClicked);
-        buttonCollection.addButton("Manage", "Email Server", this::manageEmailServerButtonClicked);
-        buttonCollection.addButton("Manage", "Event Properties", this::manageEventPropertiesButtonClicked);
-        buttonCollection.addButton("Create", "Event", this::createEventButtonClicked);
-        buttonCollection.addButton("Create", "Email", this::createEmailButtonClicked);
+        // Buttons are disabled until the data they require has been loaded;
+        // see Application.loadData().
+        buttonCollection = new ButtonCollection();
+        buttonCollection.addButton("Manage", "Shifts", this::manageShiftsButtonClicked, DataSet.SHIFTS, DataSet.ROLES);
+        buttonCollection.addButton("Manage", "Volunteers", this::manageVolunteersButtonClicked, DataSet.VOLUNTEERS, DataSet.ROLES);
+        buttonCollection.addButton("Manage", "Roles", this::manageRolesButtonClicked, DataSet.ROLES);
+        buttonCollection.addButton("Manage", "Email Template", this::manageEmailTemplateButtonClicked, DataSet.EMAIL_TEMPLATE);
+        buttonCollection.addButton("Manage", "Email Server", this::manageEmailServerButtonClicked, DataSet.EMAIL_SERVER_PROPERTIES);
+        buttonCollection.addButton("Manage", "Event Properties", this::manageEventPropertiesButtonClicked, DataSet.EVENT_PROPERTIES);
+        buttonCollection.addButton("Create", "Event", this::createEventButtonClicked, DataSet.SHIFTS, DataSet.VOLUNTEERS, DataSet.EVENT_PROPERTIES);
+        buttonCollection.addButton("Create", "Email", this::createEmailButtonClicked, DataSet.values());
         buttonCollection.addButton("Help", "Help", this::helpHelpButtonClicked);
         buttonCollection.addButton("Help", "About", this::helpAboutButtonClicked);
 
@@ -243,29 +290,146 @@ public class MainFrame extends JFrame {
         Dimension packedSize = this.getSize();
         setMinimumSize(packedSize);
 
-        manageShiftsFrame = new ManageShiftsFrame(application);
-        manageShiftsFrame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+        buttonCollection.updateEnabled();
+        application.registerObserver((ShiftsObserver) this::dataChanged);
+        application.registerObserver((VolunteersObserver) this::dataChanged);
+        application.registerObserver((RolesObserver) this::dataChanged);
+        application.registerObserver((EmailTemplateObserver) this::dataChanged);
+        application.registerObserver((EmailServerPropertiesObserver) this::dataChanged);
+        application.registerObserver((EventPropertiesObserver) this::dataChanged);
+
+        // The management frames are built on first use; see prewarmFrames().
+        manageShiftsFrame = null;
+        manageVolunteersFrame = null;
+        manageEmailTemplateFrame = null;
+        manageEmailServerPropertiesFrame = null;
+        manageRolesFrame = null;
+        manageEventPropertiesFrame = null;
+        eventFrame = null;
 
-        manageVolunteersFrame = new ManageVolunteersFrame(application);
-        manageVolunteersFrame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+        assertInvariant();
+    }    // MainFrame()
+
+    /**
+     * Event fired when any application data changes, including when it is
+     * first loaded. Observers may be notified on any thread, so the buttons
+     * are updated on the event dispatch thread.
+     */
+    private void dataChanged() {
+        SwingUtilities.invokeLater(buttonCollection::updateEnabled);
+    }    // dataChanged()
+
+    /**
+     * Builds, on the event dispatch thread, any frames that have not yet been
+     * opened. Each frame is built in a separate event, so the main window
+     * remains responsive. Calling this method after the main window is shown
+     * hides the cost of building the frames from the user.
+     */
+    public void prewarmFrames() {
+        assertInvariant();
+        List<Runnable> builders = Arrays.asList(
+                this::getManageShiftsFrame,
+                this::getManageVolunteersFrame,
+                this::getManageRolesFrame,
+                this::getManageEmailTemplateFrame,
+                this::getManageEmailServerPropertiesFrame,
+                this::getManageEventPropertiesFrame,
+                this::getEventFrame);
+        for (Runnable builder : builders) {
+            SwingUtilities.invokeLater(builder);
+        }    // for
+    }    // prewarmFrames()
+
+    /**
+     * Returns the frame to manage shifts, building it if necessary.
+     *
+     * @return the frame to manage shifts
+     */
+    private ManageShiftsFrame getManageShiftsFrame() {
+        if (manageShiftsFrame == null) {
+            manageShiftsFrame = new ManageShiftsFrame(application);
+            manageShiftsFrame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+        }    // if
+        return manageShiftsFrame;
+    }    // getManageShiftsFrame()
 
-        manageEmailTemplateFrame = new ManageEmailTemplateFrame(application);
-        manageEmailTemplateFrame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+    /**
+     * Returns the frame to manage volunteers, building it if necessary.
+     *
+     * @return the frame to manage volunteers
+     */
+    private ManageVolunteersFrame getManageVolunteersFrame() {
+        if (manageVolunteersFrame == null) {
+            manageVolunteersFrame = new ManageVolunteersFrame(application);
+            manageVolunteersFrame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+        }    // if
+        return manageVolunteersFrame;
+    }    // getManageVolunteersFrame()
 
-        manageEmailServerPropertiesFrame = new ManageEmailServerPropertiesFrame(application);
-        manageEmailServerPropertiesFrame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+    /**
+     * Returns the frame to manage the email template, building it if necessary.
+     *
+     * @return the frame to manage the email template
+     */
+    private ManageEmailTemplateFrame getManageEmailTemplateFrame() {
+        if (manageEmailTemplateFrame == null) {
+            manageEmailTemplateFrame = new ManageEmailTemplateFrame(application);
+            manageEmailTemplateFrame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+        }    // if
+        return manageEmailTemplateFrame;
+    }    // getManageEmailTemplateFrame()
 
-        manageRolesFrame = new ManageRolesFrame(application);
-        manageRolesFrame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+    /**
+     * Returns the frame to manage the email server properties, building it if necessary.
+     *
+     * @return the frame to manage the email server properties
+     */
+    private ManageEmailServerPropertiesFrame getManageEmailServerPropertiesFrame() {
+        if (manageEmailServerPropertiesFrame == null) {
+            manageEmailServerPropertiesFrame = new ManageEmailServerPropertiesFrame(application);
+            manageEmailServerPropertiesFrame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+        }    // if
+        return manageEmailServerPropertiesFrame;
+    }    // getManageEmailServerPropertiesFrame()
 
-        manageEventPropertiesFrame = new ManageEventPropertiesFrame(application);
-        manageEventPropertiesFrame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+    /**
+     * Returns the frame to manage roles, building it if necessary.
+     *
+     * @return the frame to manage roles
+     */
+    private ManageRolesFrame getManageRolesFrame() {
+        if (manageRolesFrame == null) {
+            manageRolesFrame = new ManageRolesFrame(application);
+            manageRolesFrame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+        }    // if
+        return manageRolesFrame;
+    }    // getManageRolesFrame()
 
-        eventFrame = new EventFrame(application);
-        eventFrame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+    /**
+     * Returns the frame to manage event properties, building it if necessary.
+     *
+     * @return the frame to manage event properties
+     */
+    private ManageEventPropertiesFrame getManageEventPropertiesFrame() {
+        if (manageEventPropertiesFrame == null) {
+            manageEventPropertiesFrame = new ManageEventPropertiesFrame(application);
+            manageEventPropertiesFrame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+        }    // if
+        return manageEventPropertiesFrame;
+    }    // getManageEventPropertiesFrame()
 
-        assertInvariant();
-    }    // MainFrame()
+    /**
+     * Returns the frame to create an event, building it if necessary.
+     *
+     * @return the frame to create an event
+     */
+    private EventFrame getEventFrame() {
+        if (eventFrame == null) {
+            eventFrame = new EventFrame(application);
+            eventFrame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
+        }    // if
+        return eventFrame;
+    }    // getEventFrame()
 
     /**
      * Event fired when the manage shifts button is clicked.
@@ -274,7 +438,7 @@ public class MainFrame extends JFrame {
      */
     private void manageShiftsButtonClicked(ActionEvent e) {
         assertInvariant();
-        manageShiftsFrame.setVisible(true);
+        getManageShiftsFrame().setVisible(true);
         assertInvariant();
     }    // manageShiftsButtonClicked()
 
@@ -285,7 +449,7 @@ public class MainFrame extends JFrame {
      */
     private void manageVolunteersButtonClicked(ActionEvent e) {
         assertInvariant();
-        manageVolunteersFrame.setVisible(true);
+        getManageVolunteersFrame().setVisible(true);
         assertInvariant();
     }    // manageVolunteersButtonClicked()
 
@@ -296,7 +460,7 @@ public class MainFrame extends JFrame {
      */
     private void manageRolesButtonClicked(ActionEvent e) {
         assertInvariant();
-        manageRolesFrame.setVisible(true);
+        getManageRolesFrame().setVisible(true);
         assertInvariant();
     }    // manageRolesButtonClicked()
 
@@ -307,7 +471,7 @@ public class MainFrame extends JFrame {
      */
     private void manageEmailTemplateButtonClicked(ActionEvent e) {
         assertInvariant();
-        manageEmailTemplateFrame.setVisible(true);
+        getManageEmailTemplateFrame().setVisible(true);
         assertInvariant();
     }    // manageEmailTemplateButtonClicked()
 
@@ -318,7 +482,7 @@ public class MainFrame extends JFrame {
      */
     private void manageEmailServerButtonClicked(ActionEvent e) {
         assertInvariant();
-        manageEmailServerPropertiesFrame.setVisible(true);
+        getManageEmailServerPropertiesFrame().setVisible(true);
         assertInvariant();
     }    // manageEmailTemplateButtonClicked()
 
@@ -329,7 +493,7 @@ public class MainFrame extends JFrame {
      */
     private void manageEventPropertiesButtonClicked(ActionEvent e) {
         assertInvariant();
-        manageEventPropertiesFrame.setVisible(true);
+        getManageEventPropertiesFrame().setVisible(true);
         assertInvariant();
     }    // manageEventPropertiesButtonClicked()
 
@@ -340,7 +504,7 @@ public class MainFrame extends JFrame {
      */
     private void createEventButtonClicked(ActionEvent e) {
         assertInvariant();
-        eventFrame.setVisible(true);
+        getEventFrame().setVisible(true);
         assertInvariant();
     }    // createEventButtonClicked()
 
@@ -351,7 +515,7 @@ public class MainFrame extends JFrame {
      */
     private void createEmailButtonClicked(ActionEvent e) {
         assertInvariant();
-        Event event = eventFrame.getEvent();
+        Event event = getEventFrame().getEvent();
         DisplayEmailFrame displayFrame = new DisplayEmailFrame(application, event);
         displayFrame.setDefaultCloseOperation(JFrame.HIDE_ON_CLOSE);
         displayFrame.setVisible(true);
@@ -411,12 +575,6 @@ public class MainFrame extends JFrame {
      */
     private void assertInvariant() {
         assert(application != null);
-        assert(manageShiftsFrame != null);
-        assert(manageVolunteersFrame != null);
-        assert(manageEmailTemplateFrame != null);
-        assert(manageEmailServerPropertiesFrame != null);
-        assert(manageRolesFrame != null);
-        assert(manageEventPropertiesFrame != null);
-        assert(eventFrame != null);
+        assert(buttonCollection != null);
     }    // assertInvariant()
 }    // MainFrame
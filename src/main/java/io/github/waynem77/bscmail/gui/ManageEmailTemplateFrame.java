@@ -23,11 +23,15 @@ import io.github.waynem77.bscmail.gui.util.EnumRadioPanel;
 import io.github.waynem77.bscmail.gui.util.LabeledGrid;
 import io.github.waynem77.bscmail.Application;
 import io.github.waynem77.bscmail.persistent.EmailTemplate;
+import io.github.waynem77.bscmail.util.format.CompiledTemplate;
+import io.github.waynem77.bscmail.util.format.DateFormatter;
+import io.github.waynem77.bscmail.util.format.TemplateSyntaxException;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
+import java.util.Locale;
 import javax.swing.BoxLayout;
 import javax.swing.JFrame;
 import javax.swing.JScrollPane;
@@ -46,6 +50,11 @@ import javax.swing.event.DocumentListener;
  */
 public class ManageEmailTemplateFrame extends JFrame {
 
+    /**
+     * The tool tip of the locale text field.
+     */
+    private static final String LOCALE_TOOL_TIP = "The language of month and day names in dates; leave blank for the default";
+
     /**
      * The capping application.
      */
@@ -75,6 +84,12 @@ public class ManageEmailTemplateFrame extends JFrame {
      * The date format string text field.
      */
     final JTextField dateFormatStringTextField;
+
+    /**
+     * The locale text field, holding an IETF BCP 47 language tag.
+     */
+    final JTextField localeTextField;
+
     /**
      * Constructs a new manage email template frame.
      *
@@ -120,6 +135,10 @@ public class ManageEmailTemplateFrame extends JFrame {
         dateFormatStringTextField = new JTextField();
         labeledGrid.addLabelAndComponent("Date format string:", dateFormatStringTextField);
 
+        localeTextField = new JTextField();
+        localeTextField.setToolTipText(LOCALE_TOOL_TIP);
+        labeledGrid.addLabelAndComponent("Language (e.g. fr-FR):", localeTextField);
+
         // Setting frame and text area sizes.
         //   1. Create the text areas at their desired minimum rows and columns
         //      and set the minimum size of the frame. (Other techniques for
@@ -146,6 +165,7 @@ public class ManageEmailTemplateFrame extends JFrame {
         postScheduleTextArea.setText(emailTemplate.getPostScheduleText());
         subjectLineTemplateTextField.setText(emailTemplate.getSubjectLineTemplate());
         dateFormatStringTextField.setText(emailTemplate.getDateFormatString());
+        localeTextField.setText((emailTemplate.getLocale() != null) ? emailTemplate.getLocale().toLanguageTag() : "");
 
         sendTypePanel.addActionListener(new ActionListener(){
             @Override public void actionPerformed(ActionEvent e) {
@@ -196,11 +216,30 @@ public class ManageEmailTemplateFrame extends JFrame {
                 valuesChanged();
             }    // changedUpdate()
         });    // addDocumentListener()
+        localeTextField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override public void insertUpdate(DocumentEvent e) {
+                valuesChanged();
+            }    // insertUpdate()
+            @Override public void removeUpdate(DocumentEvent e) {
+                valuesChanged();
+            }    // removeUpdate()
+            @Override public void changedUpdate(DocumentEvent e) {
+                valuesChanged();
+            }    // changedUpdate()
+        });    // addDocumentListener()
     }    // ManageEmailTemplateFrame()
 
     /**
      * Event fired when either of the text areas change.  All changes are passed
      * back to the {@link Application}.
+     *
+     * The date format string and subject line template are checked first. An
+     * invalid date format string is highlighted and replaced by the default.
+     * A subject line template that {@link CompiledTemplate#validate(String)}
+     * finds malformed is highlighted, with the error and its
+     * position shown in the field's tool tip, and the template is not saved
+     * until it is corrected. A language tag that is not well-formed is
+     * highlighted and replaced by the default locale.
      */
     private void valuesChanged() {
         EmailTemplate.SendType sendType = sendTypePanel.getSelection();
@@ -208,13 +247,34 @@ public class ManageEmailTemplateFrame extends JFrame {
         String postScheduleText = postScheduleTextArea.getText();
         String subjectLineTemplate = subjectLineTemplateTextField.getText();
         String dateFormatString = dateFormatStringTextField.getText();
+        String languageTag = localeTextField.getText();
+        Locale locale = EmailTemplate.parseLocale(languageTag);
+        if ((locale == null) && !languageTag.trim().isEmpty()) {
+            localeTextField.setBackground(Color.PINK);
+            localeTextField.setToolTipText("\"" + languageTag + "\" is not a valid language tag");
+        } else {    // if
+            localeTextField.setBackground(Color.WHITE);
+            localeTextField.setToolTipText(LOCALE_TOOL_TIP);
+        }    // else
         try {
+            DateFormatter.forPattern(dateFormatString);
             dateFormatStringTextField.setBackground(Color.WHITE);
-        } catch (Exception e) {    // try
+            dateFormatStringTextField.setToolTipText(null);
+        } catch (IllegalArgumentException e) {    // try
             dateFormatString = "";
             dateFormatStringTextField.setBackground(Color.PINK);
+            dateFormatStringTextField.setToolTipText(e.getMessage());
+        }    // catch
+        try {
+            CompiledTemplate.validate(subjectLineTemplate);
+            subjectLineTemplateTextField.setBackground(Color.WHITE);
+            subjectLineTemplateTextField.setToolTipText(null);
+        } catch (TemplateSyntaxException e) {    // try
+            subjectLineTemplateTextField.setBackground(Color.PINK);
+            subjectLineTemplateTextField.setToolTipText(e.getMessage());
+            return;
         }    // catch
-        EmailTemplate emailTemplate = new EmailTemplate(sendType, preScheduleText, postScheduleText, subjectLineTemplate, dateFormatString);
+        EmailTemplate emailTemplate = new EmailTemplate(sendType, preScheduleText, postScheduleText, subjectLineTemplate, dateFormatString, locale);
         try {
             application.setEmailTemplate(emailTemplate);
         } catch (IOException e) {
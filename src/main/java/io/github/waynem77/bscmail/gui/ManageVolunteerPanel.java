@@ -25,6 +25,7 @@ import io.github.waynem77.bscmail.persistent.Role;
 import io.github.waynem77.bscmail.persistent.RolesObserver;
 import io.github.waynem77.bscmail.persistent.Volunteer;
 import io.github.waynem77.bscmail.gui.util.LabeledGrid;
+import java.awt.Color;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -134,6 +135,22 @@ class ManageVolunteerPanel extends ManageElementPanel<Volunteer> implements Role
         });
         labeledGrid.addLabelAndComponent("Name: ", nameTextField);
         emailTextField = new JTextField();
+        emailTextField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                emailTextFieldChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                emailTextFieldChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                emailTextFieldChanged();
+            }
+        });
         labeledGrid.addLabelAndComponent("Email: ", emailTextField);
         phoneTextField = new JTextField();
         labeledGrid.addLabelAndComponent("Phone: ", phoneTextField);
@@ -250,6 +267,24 @@ class ManageVolunteerPanel extends ManageElementPanel<Volunteer> implements Role
         volunteerIsValid = newValidity;
     }    // nameTextFieldChanged()
 
+    /**
+     * Event that fires when the text in {@link #emailTextField} changes. An
+     * invalid email address is flagged, with the problem given in the tool
+     * tip, so that it can be corrected before any email is sent. A volunteer
+     * with an invalid or empty email address may still be saved.
+     */
+    private void emailTextFieldChanged() {
+        String email = emailTextField.getText();
+        String problem = email.trim().isEmpty() ? null : application.getAddressCache().getProblem(email);
+        if (problem == null) {
+            emailTextField.setBackground(Color.WHITE);
+            emailTextField.setToolTipText(null);
+        } else {    // if
+            emailTextField.setBackground(Color.PINK);
+            emailTextField.setToolTipText("Invalid email address: " + problem);
+        }    // else
+    }    // emailTextFieldChanged()
+
     /**
      * Selects the current roles of the volunteer.
      * This method assumes that each role on a volunteer
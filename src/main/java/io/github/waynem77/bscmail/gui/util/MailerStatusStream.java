@@ -0,0 +1,463 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.gui.util;
+
+import io.github.waynem77.bscmail.mail.Mailer;
+import io.github.waynem77.bscmail.mail.MailerObserver;
+import io.github.waynem77.bscmail.mail.MailerStatus;
+import java.awt.event.ActionEvent;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.swing.Timer;
+
+/**
+ * Carries the status changes of a {@link Mailer} to the event dispatch
+ * thread. A Mailer notifies its observers on the sending thread, once for
+ * every status a message passes through; a bulk send raises thousands of
+ * notifications a minute, far more than a window can usefully repaint. A
+ * MailerStatusStream records each notification in a few counters and
+ * returns at once. At a fixed interval, if anything has been recorded since
+ * the last delivery, it hands a {@link Progress} summing up the mailer's
+ * progress to its listener on the event dispatch thread. The numbers of
+ * messages sent and failed are the mailer's own counts since the stream was
+ * constructed, so they are exact however the notifications are coalesced.
+ *
+ * The stream is an observer; it may be registered with the mailer directly,
+ * or notified by another observer. It may be notified from any thread. The
+ * stream delivers nothing until it is {@link #start() started}, and should
+ * be {@link #stop() stopped} when no longer needed.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public class MailerStatusStream implements MailerObserver {
+
+    /**
+     * The default interval between deliveries, in milliseconds.
+     */
+    public static final int DEFAULT_INTERVAL_MILLIS = 100;
+
+    /**
+     * A summary of a mailer's progress, as of a delivery. Progress is
+     * immutable.
+     *
+     * @since 4.0
+     */
+    public static final class Progress {
+
+        /**
+         * The mailer's latest status.
+         */
+        private final MailerStatus status;
+
+        /**
+         * The number of notifications recorded.
+         */
+        private final long eventCount;
+
+        /**
+         * The number of notifications recorded since the previous delivery.
+         */
+        private final long batchEventCount;
+
+        /**
+         * The number of messages sent.
+         */
+        private final long sentCount;
+
+        /**
+         * The number of messages that could not be sent.
+         */
+        private final long errorCount;
+
+        /**
+         * The time from the first notification to the latest, in
+         * nanoseconds.
+         */
+        private final long elapsedNanos;
+
+        /**
+         * The mailer's last server response; may be null.
+         */
+        private final String lastServerResponse;
+
+        /**
+         * The mailer's last error; may be null.
+         */
+        private final Exception lastError;
+
+        /**
+         * Constructs a new Progress.
+         *
+         * @param status the mailer's latest status; may not be null
+         * @param eventCount the number of notifications recorded
+         * @param batchEventCount the number of notifications recorded since
+         * the previous delivery
+         * @param sentCount the number of messages sent
+         * @param errorCount the number of messages that could not be sent
+         * @param elapsedNanos the time from the first notification to the
+         * latest, in nanoseconds
+         * @param lastServerResponse the mailer's last server response; may be
+         * null
+         * @param lastError the mailer's last error; may be null
+         */
+        private Progress(MailerStatus status, long eventCount, long batchEventCount, long sentCount, long errorCount, long elapsedNanos, String lastServerResponse, Exception lastError) {
+            assert (status != null);
+            assert (eventCount >= batchEventCount);
+            assert (batchEventCount >= 0);
+            assert (sentCount >= 0);
+            assert (errorCount >= 0);
+            assert (elapsedNanos >= 0);
+
+            this.status = status;
+            this.eventCount = eventCount;
+            this.batchEventCount = batchEventCount;
+            this.sentCount = sentCount;
+            this.errorCount = errorCount;
+            this.elapsedNanos = elapsedNanos;
+            this.lastServerResponse = lastServerResponse;
+            this.lastError = lastError;
+        }    // Progress()
+
+        /**
+         * Returns the mailer's latest status.
+         *
+         * @return the mailer's latest status
+         */
+        public MailerStatus getStatus() {
+            return status;
+        }    // getStatus()
+
+        /**
+         * Returns true if the mailer's latest status is final: either
+         * {@link MailerStatus#MAIL_SENT} or {@link MailerStatus#ERROR}.
+         *
+         * @return true if the mailer's latest status is final; false
+         * otherwise
+         */
+        public boolean isFinished() {
+            return (status == MailerStatus.MAIL_SENT) || (status == MailerStatus.ERROR);
+        }    // isFinished()
+
+        /**
+         * Returns the number of notifications recorded.
+         *
+         * @return the number of notifications recorded
+         */
+        public long getEventCount() {
+            return eventCount;
+        }    // getEventCount()
+
+        /**
+         * Returns the number of notifications recorded since the previous
+         * delivery: the number of status changes this progress stands for.
+         *
+         * @return the number of notifications recorded since the previous
+         * delivery
+         */
+        public long getBatchEventCount() {
+            return batchEventCount;
+        }    // getBatchEventCount()
+
+        /**
+         * Returns the number of messages sent.
+         *
+         * @return the number of messages sent
+         */
+        public long getSentCount() {
+            return sentCount;
+        }    // getSentCount()
+
+        /**
+         * Returns the number of messages that could not be sent.
+         *
+         * @return the number of messages that could not be sent
+         */
+        public long getErrorCount() {
+            return errorCount;
+        }    // getErrorCount()
+
+        /**
+         * Returns the time from the first notification to the latest, in
+         * nanoseconds.
+         *
+         * @return the time from the first notification to the latest
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }    // getElapsedNanos()
+
+        /**
+         * Returns the number of messages finished, whether sent or not, per
+         * second from the first notification to the latest, or 0 if no time
+         * has elapsed.
+         *
+         * @return the number of messages finished per second, or 0
+         */
+        public double getMessagesPerSecond() {
+            return (elapsedNanos == 0) ? 0 : (double)(sentCount + errorCount) * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }    // getMessagesPerSecond()
+
+        /**
+         * Returns the mailer's last server response, or null if no message
+         * has been sent.
+         *
+         * @return the mailer's last server response, or null
+         */
+        public String getLastServerResponse() {
+            return lastServerResponse;
+        }    // getLastServerResponse()
+
+        /**
+         * Returns the mailer's last error, or null if no message has failed.
+         *
+         * @return the mailer's last error, or null
+         */
+        public Exception getLastError() {
+            return lastError;
+        }    // getLastError()
+
+    }    // Progress
+
+    /**
+     * The mailer.
+     */
+    private final Mailer mailer;
+
+    /**
+     * The listener to which progress is delivered.
+     */
+    private final Consumer<Progress> listener;
+
+    /**
+     * The timer that delivers progress.
+     */
+    private final Timer timer;
+
+    /**
+     * The mailer's latest status.
+     */
+    private MailerStatus status;
+
+    /**
+     * The number of notifications recorded.
+     */
+    private long eventCount;
+
+    /**
+     * The number of notifications recorded when progress was last delivered.
+     */
+    private long deliveredEventCount;
+
+    /**
+     * The mailer's count of messages sent when the stream was constructed.
+     */
+    private final long initialSentCount;
+
+    /**
+     * The mailer's count of messages that could not be sent when the stream
+     * was constructed.
+     */
+    private final long initialErrorCount;
+
+    /**
+     * The number of messages sent since the stream was constructed.
+     */
+    private long sentCount;
+
+    /**
+     * The number of messages that could not be sent since the stream was
+     * constructed.
+     */
+    private long errorCount;
+
+    /**
+     * The time of the first notification, as given by
+     * {@link System#nanoTime()}.
+     */
+    private long firstEventNanos;
+
+    /**
+     * The time of the latest notification, as given by
+     * {@link System#nanoTime()}.
+     */
+    private long lastEventNanos;
+
+    /**
+     * The mailer's last server response; may be null.
+     */
+    private String lastServerResponse;
+
+    /**
+     * The mailer's last error; may be null.
+     */
+    private Exception lastError;
+
+    /**
+     * Constructs a new MailerStatusStream for the given mailer, delivering at
+     * the {@link #DEFAULT_INTERVAL_MILLIS default interval}.
+     *
+     * @param mailer the mailer; may not be null
+     * @param listener the listener to which progress is delivered; may not
+     * be null
+     * @throws NullPointerException if either parameter is null
+     */
+    public MailerStatusStream(Mailer mailer, Consumer<Progress> listener) {
+        this(mailer, listener, DEFAULT_INTERVAL_MILLIS);
+    }    // MailerStatusStream()
+
+    /**
+     * Constructs a new MailerStatusStream for the given mailer, delivering at
+     * the given interval.
+     *
+     * @param mailer the mailer; may not be null
+     * @param listener the listener to which progress is delivered; may not
+     * be null
+     * @param intervalMillis the interval between deliveries, in milliseconds;
+     * must be positive
+     * @throws NullPointerException if either {@code mailer} or
+     * {@code listener} is null
+     * @throws IllegalArgumentException if {@code intervalMillis} is not
+     * positive
+     */
+    public MailerStatusStream(Mailer mailer, Consumer<Progress> listener, int intervalMillis) {
+        if (mailer == null) {
+            throw new NullPointerException("mailer may not be null");
+        }    // if
+        if (listener == null) {
+            throw new NullPointerException("listener may not be null");
+        }    // if
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("intervalMillis must be positive");
+        }    // if
+
+        this.mailer = mailer;
+        this.listener = listener;
+        timer = new Timer(intervalMillis, this::timerFired);
+        status = mailer.getStatus();
+        initialSentCount = mailer.getSentCount();
+        initialErrorCount = mailer.getErrorCount();
+        eventCount = 0;
+        deliveredEventCount = 0;
+        sentCount = 0;
+        errorCount = 0;
+        firstEventNanos = 0;
+        lastEventNanos = 0;
+        lastServerResponse = null;
+        lastError = null;
+        assertInvariant();
+    }    // MailerStatusStream()
+
+    /**
+     * Records the mailer's current status and counts, to be delivered with
+     * the next progress. This method may be called from any thread, and
+     * returns at once.
+     */
+    @Override
+    public void mailerStatusChanged() {
+        // The mailer is read under the lock, so that a notification recorded
+        // later never records an older snapshot.
+        synchronized (this) {
+            assertInvariant();
+            long now = System.nanoTime();
+            if (eventCount == 0) {
+                firstEventNanos = now;
+            }    // if
+            lastEventNanos = now;
+            ++eventCount;
+            status = mailer.getStatus();
+            sentCount = mailer.getSentCount() - initialSentCount;
+            errorCount = mailer.getErrorCount() - initialErrorCount;
+            lastServerResponse = mailer.getLastServerResponse();
+            lastError = mailer.getLastError();
+        }    // synchronized
+    }    // mailerStatusChanged()
+
+    /**
+     * Starts delivering progress. This method may be called from any
+     * thread.
+     */
+    public void start() {
+        timer.start();
+    }    // start()
+
+    /**
+     * Stops delivering progress. Notifications recorded afterward are kept,
+     * and delivered if the stream is started again. This method may be
+     * called from any thread.
+     */
+    public void stop() {
+        timer.stop();
+    }    // stop()
+
+    /**
+     * Returns true if the stream is delivering progress.
+     *
+     * @return true if the stream is delivering progress; false otherwise
+     */
+    public boolean isRunning() {
+        return timer.isRunning();
+    }    // isRunning()
+
+    /**
+     * Returns the progress recorded so far, and marks it delivered. Returns
+     * null if nothing has been recorded since progress was last delivered.
+     *
+     * @return the progress recorded so far, or null
+     */
+    synchronized Progress takeProgress() {
+        assertInvariant();
+        if (eventCount == deliveredEventCount) {
+            return null;
+        }    // if
+
+        Progress progress = new Progress(status, eventCount, eventCount - deliveredEventCount, sentCount, errorCount, lastEventNanos - firstEventNanos, lastServerResponse, lastError);
+        deliveredEventCount = eventCount;
+        return progress;
+    }    // takeProgress()
+
+    /**
+     * Event fired on the event dispatch thread when the timer fires.
+     * Delivers the progress recorded since the last delivery, if any.
+     *
+     * @param e the event
+     */
+    private void timerFired(ActionEvent e) {
+        Progress progress = takeProgress();
+        if (progress != null) {
+            listener.accept(progress);
+        }    // if
+    }    // timerFired()
+
+    /**
+     * Asserts the correctness of the object's internal state.
+     */
+    private void assertInvariant() {
+        assert (mailer != null);
+        assert (listener != null);
+        assert (timer != null);
+        assert (status != null);
+        assert (eventCount >= deliveredEventCount);
+        assert (deliveredEventCount >= 0);
+        assert (sentCount >= 0);
+        assert (errorCount >= 0);
+    }    // assertInvariant()
+
+}    // MailerStatusStream
@@ -0,0 +1,716 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.github.waynem77.bscmail.Application;
+import io.github.waynem77.bscmail.persistent.EmailTemplate;
+import io.github.waynem77.bscmail.persistent.EmailTemplateObserver;
+import io.github.waynem77.bscmail.persistent.Event;
+import io.github.waynem77.bscmail.persistent.EventPropertiesObserver;
+import io.github.waynem77.bscmail.persistent.EventProperty;
+import io.github.waynem77.bscmail.persistent.Role;
+import io.github.waynem77.bscmail.persistent.RolesObserver;
+import io.github.waynem77.bscmail.persistent.Shift;
+import io.github.waynem77.bscmail.persistent.ShiftsObserver;
+import io.github.waynem77.bscmail.persistent.Volunteer;
+import io.github.waynem77.bscmail.persistent.VolunteersObserver;
+import io.github.waynem77.bscmail.util.format.EventEmailRenderer;
+import io.github.waynem77.bscmail.util.parser.ScheduleParser;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * An embedded HTTP server exposing application data as JSON. The server
+ * answers the following requests.
+ * <table style="border: 1px solid black">
+ * <caption>API Endpoints</caption>
+ * <tr><th>GET /api/volunteers</th><td>the volunteer roster</td></tr>
+ * <tr><th>GET /api/roles</th><td>the defined roles</td></tr>
+ * <tr><th>GET /api/shifts</th><td>the defined shifts</td></tr>
+ * <tr><th>GET /api/eventProperties</th><td>the defined event
+ * properties</td></tr>
+ * <tr><th>GET /api/qualifiedVolunteers?shift=<i>description</i></th><td>the
+ * active volunteers having all the roles required by the given shift</td></tr>
+ * <tr><th>POST /api/preview</th><td>email previews for the events in the
+ * posted schedule, which must be in the format described by
+ * {@link ScheduleParser}</td></tr>
+ * </table>
+ *
+ * Requests are served by a bounded pool of worker threads. Responses are
+ * produced from an immutable snapshot of the application data, which is
+ * rebuilt lazily after the application reports a change; readers therefore
+ * neither copy the roster on every request nor block one another.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public class ApiServer implements ShiftsObserver, VolunteersObserver, RolesObserver, EmailTemplateObserver, EventPropertiesObserver {
+
+    /**
+     * An input stream that fails once more than a given number of bytes have
+     * been read from it. The request body of a chunked request carries no
+     * Content-Length, so its size can only be limited as it is read.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+
+        /**
+         * The maximum number of bytes that may be read.
+         */
+        private final long limit;
+
+        /**
+         * The number of bytes read.
+         */
+        private long count;
+
+        /**
+         * True if more than the maximum number of bytes were available.
+         */
+        private boolean limitExceeded;
+
+        /**
+         * Constructs a new LimitedInputStream.
+         *
+         * @param in the underlying input stream; may not be null
+         * @param limit the maximum number of bytes that may be read; may not
+         * be negative
+         */
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            assert (in != null);
+            assert (limit >= 0);
+            this.limit = limit;
+            count = 0;
+            limitExceeded = false;
+        }    // LimitedInputStream()
+
+        /**
+         * Returns true if the underlying stream held more than the maximum
+         * number of bytes.
+         *
+         * @return true if the limit was exceeded; false otherwise
+         */
+        boolean isLimitExceeded() {
+            return limitExceeded;
+        }    // isLimitExceeded()
+
+        /**
+         * {@inheritDoc}
+         *
+         * @throws IOException if the limit is exceeded, or an I/O error occurs
+         */
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }    // if
+            return b;
+        }    // read()
+
+        /**
+         * {@inheritDoc}
+         *
+         * @throws IOException if the limit is exceeded, or an I/O error occurs
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, (int)Math.min(len, limit - count + 1));
+            if (read > 0) {
+                count(read);
+            }    // if
+            return read;
+        }    // read()
+
+        /**
+         * {@inheritDoc}
+         *
+         * @throws IOException if the limit is exceeded, or an I/O error occurs
+         */
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, limit - count + 1));
+            count(skipped);
+            return skipped;
+        }    // skip()
+
+        /**
+         * Counts the given number of bytes as read.
+         *
+         * @param read the number of bytes read
+         * @throws IOException if the limit is exceeded
+         */
+        private void count(long read) throws IOException {
+            count += read;
+            if (count > limit) {
+                limitExceeded = true;
+                throw new IOException("Request body exceeds " + limit + " bytes");
+            }    // if
+        }    // count()
+
+    }    // LimitedInputStream
+
+    /**
+     * An immutable snapshot of the application data, with pre-rendered JSON
+     * for the list endpoints.
+     */
+    private static class Snapshot {
+
+        /**
+         * The generation of the application data captured by the snapshot.
+         */
+        private final long generation;
+
+        /**
+         * The defined shifts.
+         */
+        private final List<Shift> shifts;
+
+        /**
+         * The defined volunteers.
+         */
+        private final List<Volunteer> volunteers;
+
+        /**
+         * The email template.
+         */
+        private final EmailTemplate emailTemplate;
+
+        /**
+         * The JSON representation of the volunteers.
+         */
+        private final String volunteersJson;
+
+        /**
+         * The JSON representation of the roles.
+         */
+        private final String rolesJson;
+
+        /**
+         * The JSON representation of the shifts.
+         */
+        private final String shiftsJson;
+
+        /**
+         * The JSON representation of the event properties.
+         */
+        private final String eventPropertiesJson;
+
+        /**
+         * The JSON representation of the qualified volunteers, keyed by shift
+         * description. Populated on demand.
+         */
+        private final Map<String, String> qualifiedVolunteersJson;
+
+        /**
+         * Captures a snapshot of the given application.
+         *
+         * @param generation the generation being captured
+         * @param application the application; may not be null
+         */
+        Snapshot(long generation, Application application) {
+            assert (application != null);
+            this.generation = generation;
+            shifts = application.getShifts();
+            volunteers = application.getVolunteers();
+            emailTemplate = application.getEmailTemplate();
+            List<Role> roles = application.getRoles();
+            List<EventProperty> eventProperties = application.getEventProperties();
+
+            volunteersJson = writeVolunteers(volunteers);
+
+            JsonWriter json = new JsonWriter().beginArray();
+            for (Role role : roles) {
+                json.beginObject().name("name").value(role.getName()).endObject();
+            }    // for
+            rolesJson = json.endArray().toString();
+
+            json = new JsonWriter().beginArray();
+            for (Shift shift : shifts) {
+                json.beginObject()
+                        .name("description").value(shift.getDescription())
+                        .name("roles");
+                writeRoleNames(json, shift.getRoles());
+                json.name("displayVolunteerEmail").value(shift.getDisplayVolunteerEmail())
+                        .name("displayVolunteerPhone").value(shift.getDisplayVolunteerPhone())
+                        .name("displayVolunteerNotes").value(shift.getDisplayVolunteerNotes())
+                        .endObject();
+            }    // for
+            shiftsJson = json.endArray().toString();
+
+            json = new JsonWriter().beginArray();
+            for (EventProperty eventProperty : eventProperties) {
+                json.beginObject()
+                        .name("name").value(eventProperty.getPropertyName())
+                        .name("defaultValue").value(eventProperty.getDefaultValue())
+                        .endObject();
+            }    // for
+            eventPropertiesJson = json.endArray().toString();
+
+            qualifiedVolunteersJson = new ConcurrentHashMap<>();
+        }    // Snapshot()
+
+        /**
+         * Returns the JSON representation of the active volunteers qualified
+         * for the shift with the given description, or null if there is no
+         * such shift.
+         *
+         * @param description the shift description; may not be null
+         * @return the qualified volunteers, or null
+         */
+        String getQualifiedVolunteersJson(String description) {
+            assert (description != null);
+            Shift shift = shifts.stream()
+                    .filter(s -> s.getDescription().equals(description))
+                    .findFirst()
+                    .orElse(null);
+            if (shift == null) {
+                return null;
+            }    // if
+            return qualifiedVolunteersJson.computeIfAbsent(description, d -> writeVolunteers(volunteers.stream()
+                    .filter(Volunteer::isActive)
+                    .filter(shift::rolesAreCompatible)
+                    .collect(Collectors.toList())));
+        }    // getQualifiedVolunteersJson()
+
+        /**
+         * Returns the JSON representation of the given volunteers.
+         *
+         * @param volunteers the volunteers; may not be null
+         * @return the JSON representation of the volunteers
+         */
+        private static String writeVolunteers(List<Volunteer> volunteers) {
+            assert (volunteers != null);
+            JsonWriter json = new JsonWriter().beginArray();
+            for (Volunteer volunteer : volunteers) {
+                json.beginObject()
+                        .name("name").value(volunteer.getName())
+                        .name("email").value(volunteer.getEmail())
+                        .name("phone").value(volunteer.getPhone())
+                        .name("notes").value(volunteer.getNotes())
+                        .name("active").value(volunteer.isActive())
+                        .name("roles");
+                writeRoleNames(json, volunteer.getRoles());
+                json.endObject();
+            }    // for
+            return json.endArray().toString();
+        }    // writeVolunteers()
+
+        /**
+         * Writes the names of the given roles as a JSON array.
+         *
+         * @param json the JSON writer; may not be null
+         * @param roles the roles; may not be null
+         */
+        private static void writeRoleNames(JsonWriter json, List<Role> roles) {
+            assert (json != null);
+            assert (roles != null);
+            json.beginArray();
+            for (Role role : roles) {
+                json.value(role.getName());
+            }    // for
+            json.endArray();
+        }    // writeRoleNames()
+
+    }    // Snapshot
+
+    /**
+     * The default number of worker threads.
+     */
+    public static final int DEFAULT_WORKER_THREADS = 8;
+
+    /**
+     * The number of requests that may wait for a worker thread before the
+     * dispatcher thread starts serving requests itself.
+     */
+    private static final int WORK_QUEUE_CAPACITY = 256;
+
+    /**
+     * The maximum size, in bytes, of a posted schedule.
+     */
+    private static final int MAX_REQUEST_BYTES = 1 << 20;
+
+    /**
+     * The underlying application.
+     */
+    private final Application application;
+
+    /**
+     * The HTTP server.
+     */
+    private final HttpServer server;
+
+    /**
+     * The worker pool.
+     */
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * The generation of the application data; incremented on every change.
+     */
+    private final AtomicLong generation;
+
+    /**
+     * The most recent snapshot of the application data, or null if none has
+     * been taken.
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * Constructs a new API server for the given application, bound to the
+     * given address. The server does not accept requests until
+     * {@link #start()} is called.
+     *
+     * @param application the underlying application; may not be null
+     * @param address the address to bind to; may not be null; a port of 0
+     * binds to an ephemeral port
+     * @param workerThreads the number of worker threads; must be positive
+     * @throws NullPointerException if either application or address is null
+     * @throws IllegalArgumentException if workerThreads is not positive
+     * @throws IOException if the server cannot be bound
+     */
+    public ApiServer(Application application, InetSocketAddress address, int workerThreads) throws IOException {
+        if (application == null) {
+            throw new NullPointerException("application may not be null");
+        }    // if
+        if (address == null) {
+            throw new NullPointerException("address may not be null");
+        }    // if
+        if (workerThreads <= 0) {
+            throw new IllegalArgumentException("workerThreads must be positive");
+        }    // if
+
+        this.application = application;
+        generation = new AtomicLong();
+        snapshot = null;
+
+        workers = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(WORK_QUEUE_CAPACITY),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "bscmail-http");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        workers.allowCoreThreadTimeOut(true);
+
+        server = HttpServer.create(address, 0);
+        server.setExecutor(workers);
+        server.createContext("/api/volunteers", getHandler(snapshot -> snapshot.volunteersJson));
+        server.createContext("/api/roles", getHandler(snapshot -> snapshot.rolesJson));
+        server.createContext("/api/shifts", getHandler(snapshot -> snapshot.shiftsJson));
+        server.createContext("/api/eventProperties", getHandler(snapshot -> snapshot.eventPropertiesJson));
+        server.createContext("/api/qualifiedVolunteers", this::handleQualifiedVolunteers);
+        server.createContext("/api/preview", this::handlePreview);
+
+        application.registerObserver((ShiftsObserver) this);
+        application.registerObserver((VolunteersObserver) this);
+        application.registerObserver((RolesObserver) this);
+        application.registerObserver((EmailTemplateObserver) this);
+        application.registerObserver((EventPropertiesObserver) this);
+        assertInvariant();
+    }    // ApiServer()
+
+    /**
+     * Starts the server.
+     */
+    public void start() {
+        assertInvariant();
+        server.start();
+    }    // start()
+
+    /**
+     * Stops the server, waiting at most the given number of seconds for
+     * requests in progress to complete.
+     *
+     * @param delay the maximum time to wait, in seconds; must be non-negative
+     */
+    public void stop(int delay) {
+        assertInvariant();
+        server.stop(delay);
+        workers.shutdown();
+    }    // stop()
+
+    /**
+     * Returns the port the server is bound to.
+     *
+     * @return the port the server is bound to
+     */
+    public int getPort() {
+        assertInvariant();
+        return server.getAddress().getPort();
+    }    // getPort()
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void shiftsChanged() {
+        generation.incrementAndGet();
+    }    // shiftsChanged()
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void volunteersChanged() {
+        generation.incrementAndGet();
+    }    // volunteersChanged()
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void rolesChanged() {
+        generation.incrementAndGet();
+    }    // rolesChanged()
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void emailTemplateChanged() {
+        generation.incrementAndGet();
+    }    // emailTemplateChanged()
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void eventPropertiesChanged() {
+        generation.incrementAndGet();
+    }    // eventPropertiesChanged()
+
+    /**
+     * Returns a current snapshot of the application data, taking a new one if
+     * the application has changed since the last snapshot was taken.
+     *
+     * @return a current snapshot of the application data
+     */
+    private Snapshot getSnapshot() {
+        long currentGeneration = generation.get();
+        Snapshot currentSnapshot = snapshot;
+        if ((currentSnapshot == null) || (currentSnapshot.generation != currentGeneration)) {
+            currentSnapshot = new Snapshot(currentGeneration, application);
+            snapshot = currentSnapshot;
+        }    // if
+        return currentSnapshot;
+    }    // getSnapshot()
+
+    /**
+     * Returns a handler that answers GET requests with a pre-rendered part of
+     * the current snapshot.
+     *
+     * @param part the part of the snapshot to return; may not be null
+     * @return a handler for the given part
+     */
+    private HttpHandler getHandler(Function<Snapshot, String> part) {
+        assert (part != null);
+        return exchange -> {
+            try {
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    sendError(exchange, 405, "Method not allowed");
+                } else {    // if
+                    sendJson(exchange, 200, part.apply(getSnapshot()));
+                }    // else
+            } finally {    // try
+                exchange.close();
+            }    // finally
+        };
+    }    // getHandler()
+
+    /**
+     * Handles a request for the volunteers qualified for a shift.
+     *
+     * @param exchange the HTTP exchange; may not be null
+     * @throws IOException if an I/O error occurs
+     */
+    private void handleQualifiedVolunteers(HttpExchange exchange) throws IOException {
+        assert (exchange != null);
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, 405, "Method not allowed");
+                return;
+            }    // if
+            String description = getQueryParameter(exchange, "shift");
+            if (description == null) {
+                sendError(exchange, 400, "Missing parameter \"shift\"");
+                return;
+            }    // if
+            String json = getSnapshot().getQualifiedVolunteersJson(description);
+            if (json == null) {
+                sendError(exchange, 404, "Undefined shift \"" + description + "\"");
+                return;
+            }    // if
+            sendJson(exchange, 200, json);
+        } finally {    // try
+            exchange.close();
+        }    // finally
+    }    // handleQualifiedVolunteers()
+
+    /**
+     * Handles a request for email previews.
+     *
+     * @param exchange the HTTP exchange; may not be null
+     * @throws IOException if an I/O error occurs
+     */
+    private void handlePreview(HttpExchange exchange) throws IOException {
+        assert (exchange != null);
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendError(exchange, 405, "Method not allowed");
+                return;
+            }    // if
+            String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+            if ((contentLength != null) && (Long.parseLong(contentLength) > MAX_REQUEST_BYTES)) {
+                sendError(exchange, 413, "Schedule too large");
+                return;
+            }    // if
+
+            Snapshot currentSnapshot = getSnapshot();
+            List<Event> events;
+            LimitedInputStream requestBody = new LimitedInputStream(exchange.getRequestBody(), MAX_REQUEST_BYTES);
+            try (Reader reader = new InputStreamReader(requestBody, StandardCharsets.UTF_8)) {
+                events = new ScheduleParser(currentSnapshot.shifts, currentSnapshot.volunteers).parse(reader);
+            } catch (IllegalArgumentException e) {    // try
+                // The parser reports read errors, including an oversized
+                // body, as a malformed schedule.
+                if (requestBody.isLimitExceeded()) {
+                    sendError(exchange, 413, "Schedule too large");
+                } else {    // if
+                    sendError(exchange, 400, e.getMessage());
+                }    // else
+                return;
+            } catch (IOException e) {    // catch
+                if (!requestBody.isLimitExceeded()) {
+                    throw e;
+                }    // if
+                sendError(exchange, 413, "Schedule too large");
+                return;
+            }    // catch
+
+            EventEmailRenderer renderer = new EventEmailRenderer(currentSnapshot.emailTemplate);
+            JsonWriter json = new JsonWriter().beginArray();
+            for (Event event : events) {
+                json.beginObject()
+                        .name("sendType").value(currentSnapshot.emailTemplate.getSendType().getRwRepresentation())
+                        .name("recipients").value(renderer.renderRecipients(event))
+                        .name("subject").value(renderer.renderSubject(event))
+                        .name("body").value(renderer.renderBody(event))
+                        .endObject();
+            }    // for
+            sendJson(exchange, 200, json.endArray().toString());
+        } catch (NumberFormatException e) {    // try
+            sendError(exchange, 400, "Malformed Content-Length");
+        } finally {    // try
+            exchange.close();
+        }    // finally
+    }    // handlePreview()
+
+    /**
+     * Returns the value of the given query parameter, or null if the request
+     * has no such parameter.
+     *
+     * @param exchange the HTTP exchange; may not be null
+     * @param name the name of the parameter; may not be null
+     * @return the value of the parameter, or null
+     * @throws UnsupportedEncodingException never
+     */
+    private String getQueryParameter(HttpExchange exchange, String name) throws UnsupportedEncodingException {
+        assert (exchange != null);
+        assert (name != null);
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }    // if
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            String key = (separator < 0) ? parameter : parameter.substring(0, separator);
+            if (URLDecoder.decode(key, "UTF-8").equals(name)) {
+                return (separator < 0) ? "" : URLDecoder.decode(parameter.substring(separator + 1), "UTF-8");
+            }    // if
+        }    // for
+        return null;
+    }    // getQueryParameter()
+
+    /**
+     * Sends an error response.
+     *
+     * @param exchange the HTTP exchange; may not be null
+     * @param status the HTTP status code
+     * @param message the error message; may not be null
+     * @throws IOException if an I/O error occurs
+     */
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        assert (exchange != null);
+        assert (message != null);
+        sendJson(exchange, status, new JsonWriter().beginObject().name("error").value(message).endObject().toString());
+    }    // sendError()
+
+    /**
+     * Sends a JSON response.
+     *
+     * @param exchange the HTTP exchange; may not be null
+     * @param status the HTTP status code
+     * @param json the JSON text; may not be null
+     * @throws IOException if an I/O error occurs
+     */
+    private void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        assert (exchange != null);
+        assert (json != null);
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        }    // try
+    }    // sendJson()
+
+    /**
+     * Asserts the correctness of the object's internal state.
+     */
+    private void assertInvariant() {
+        assert (application != null);
+        assert (server != null);
+        assert (workers != null);
+        assert (generation != null);
+    }    // assertInvariant()
+
+}    // ApiServer
@@ -0,0 +1,226 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.http;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A minimal streaming writer of JSON text. Callers are responsible for
+ * producing well-formed structures; the writer only takes care of separators
+ * and string escaping.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+class JsonWriter {
+
+    /**
+     * The text written so far.
+     */
+    private final StringBuilder builder;
+
+    /**
+     * For each open array or object, whether an element has been written to
+     * it yet.
+     */
+    private final Deque<Boolean> hasElements;
+
+    /**
+     * True if a name has just been written and its value is expected next.
+     */
+    private boolean afterName;
+
+    /**
+     * Constructs a new JSON writer.
+     */
+    public JsonWriter() {
+        builder = new StringBuilder();
+        hasElements = new ArrayDeque<>();
+        afterName = false;
+    }    // JsonWriter()
+
+    /**
+     * Begins an array.
+     *
+     * @return this writer
+     */
+    public JsonWriter beginArray() {
+        separate();
+        builder.append('[');
+        hasElements.push(false);
+        return this;
+    }    // beginArray()
+
+    /**
+     * Ends the current array.
+     *
+     * @return this writer
+     */
+    public JsonWriter endArray() {
+        assert (!hasElements.isEmpty());
+        hasElements.pop();
+        builder.append(']');
+        return this;
+    }    // endArray()
+
+    /**
+     * Begins an object.
+     *
+     * @return this writer
+     */
+    public JsonWriter beginObject() {
+        separate();
+        builder.append('{');
+        hasElements.push(false);
+        return this;
+    }    // beginObject()
+
+    /**
+     * Ends the current object.
+     *
+     * @return this writer
+     */
+    public JsonWriter endObject() {
+        assert (!hasElements.isEmpty());
+        hasElements.pop();
+        builder.append('}');
+        return this;
+    }    // endObject()
+
+    /**
+     * Writes the name of the next member of the current object.
+     *
+     * @param name the name; may not be null
+     * @return this writer
+     */
+    public JsonWriter name(String name) {
+        assert (name != null);
+        separate();
+        appendString(name);
+        builder.append(':');
+        afterName = true;
+        return this;
+    }    // name()
+
+    /**
+     * Writes a string value.
+     *
+     * @param value the value; if null, the JSON literal null is written
+     * @return this writer
+     */
+    public JsonWriter value(String value) {
+        separate();
+        if (value == null) {
+            builder.append("null");
+        } else {    // if
+            appendString(value);
+        }    // else
+        return this;
+    }    // value()
+
+    /**
+     * Writes a boolean value.
+     *
+     * @param value the value
+     * @return this writer
+     */
+    public JsonWriter value(boolean value) {
+        separate();
+        builder.append(value);
+        return this;
+    }    // value()
+
+    /**
+     * Writes a numeric value.
+     *
+     * @param value the value
+     * @return this writer
+     */
+    public JsonWriter value(long value) {
+        separate();
+        builder.append(value);
+        return this;
+    }    // value()
+
+    /**
+     * Returns the JSON text written so far.
+     *
+     * @return the JSON text written so far
+     */
+    @Override
+    public String toString() {
+        return builder.toString();
+    }    // toString()
+
+    /**
+     * Writes a separator, if one is needed before the next element.
+     */
+    private void separate() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }    // if
+        if (!hasElements.isEmpty()) {
+            if (hasElements.pop()) {
+                builder.append(',');
+            }    // if
+            hasElements.push(true);
+        }    // if
+    }    // separate()
+
+    /**
+     * Appends a quoted and escaped string.
+     *
+     * @param string the string; may not be null
+     */
+    private void appendString(String string) {
+        assert (string != null);
+        builder.append('"');
+        for (int i = 0; i < string.length(); ++i) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {    // if
+                        builder.append(c);
+                    }    // else
+            }    // switch
+        }    // for
+        builder.append('"');
+    }    // appendString()
+
+}    // JsonWriter
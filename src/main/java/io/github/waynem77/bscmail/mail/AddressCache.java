@@ -0,0 +1,255 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+
+/**
+ * A thread-safe cache of parsed and validated email addresses. The cache
+ * holds the addresses of the defined volunteers; it is brought up to date by
+ * {@link #update(Collection)} whenever the volunteers change, so that each
+ * address is parsed and validated once rather than every time an email is
+ * sent, and so that invalid addresses can be reported before sending.
+ *
+ * Addresses are validated strictly, as by
+ * {@link InternetAddress#InternetAddress(String, boolean)} and
+ * {@link InternetAddress#validate()}. Address lists are parsed leniently, as
+ * they always have been: an address that is not in the cache, or that is
+ * invalid, is parsed as by {@link InternetAddress#parse(String, boolean)}.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public class AddressCache {
+
+    /**
+     * The result of validating an address.
+     */
+    private static final class Entry {
+
+        /**
+         * The parsed address, or null if the address is invalid.
+         */
+        private final InternetAddress address;
+
+        /**
+         * A description of the problem with the address, or null if the
+         * address is valid.
+         */
+        private final String problem;
+
+        /**
+         * Constructs a new entry.
+         *
+         * @param address the parsed address; may be null if the address is
+         * invalid
+         * @param problem a description of the problem with the address; must
+         * be null if and only if {@code address} is not null
+         */
+        Entry(InternetAddress address, String problem) {
+            assert ((address == null) != (problem == null));
+            this.address = address;
+            this.problem = problem;
+        }    // Entry()
+
+    }    // Entry
+
+    /**
+     * The characters which, if present in an address list, mean that the list
+     * cannot simply be split at commas.
+     */
+    private static final String QUOTING_CHARACTERS = "\"<(\\";
+
+    /**
+     * The cached entries, keyed by address with surrounding whitespace
+     * removed.
+     */
+    private final ConcurrentMap<String, Entry> entries;
+
+    /**
+     * Constructs a new, empty address cache.
+     */
+    public AddressCache() {
+        entries = new ConcurrentHashMap<>();
+        assertInvariant();
+    }    // AddressCache()
+
+    /**
+     * Brings the cache up to date with the given addresses. Addresses not
+     * already in the cache are validated and added; addresses in the cache but
+     * not in {@code addresses} are removed. Empty addresses are ignored.
+     *
+     * @param addresses the addresses; may not be null, nor contain null
+     * elements
+     * @throws NullPointerException if {@code addresses} is null or contains a
+     * null element
+     */
+    public void update(Collection<String> addresses) {
+        assertInvariant();
+        if (addresses == null) {
+            throw new NullPointerException("addresses may not be null");
+        }    // if
+        if (addresses.contains(null)) {
+            throw new NullPointerException("addresses may not contain null");
+        }    // if
+
+        Set<String> current = new HashSet<>();
+        for (String address : addresses) {
+            String key = address.trim();
+            if (!key.isEmpty()) {
+                current.add(key);
+                entries.computeIfAbsent(key, AddressCache::validate);
+            }    // if
+        }    // for
+        entries.keySet().retainAll(current);
+        assertInvariant();
+    }    // update()
+
+    /**
+     * Returns a description of the problem with the given address, or null if
+     * the address is valid. The address need not be in the cache.
+     *
+     * @param address the address; may not be null
+     * @return a description of the problem with the address, or null
+     * @throws NullPointerException if {@code address} is null
+     */
+    public String getProblem(String address) {
+        assertInvariant();
+        if (address == null) {
+            throw new NullPointerException("address may not be null");
+        }    // if
+        return lookup(address).problem;
+    }    // getProblem()
+
+    /**
+     * Returns true if the given address is valid. The address need not be in
+     * the cache.
+     *
+     * @param address the address; may not be null
+     * @return true if the address is valid; false otherwise
+     * @throws NullPointerException if {@code address} is null
+     */
+    public boolean isValid(String address) {
+        return getProblem(address) == null;
+    }    // isValid()
+
+    /**
+     * Parses the given comma-separated list of addresses. Each valid address
+     * in the cache is taken from the cache; all others are parsed leniently.
+     * Empty entries in the list are ignored. Addresses taken from the cache
+     * are shared, and must not be modified.
+     *
+     * @param addressList a comma-separated list of addresses; may not be null
+     * @return the parsed addresses
+     * @throws NullPointerException if {@code addressList} is null
+     * @throws AddressException if the list cannot be parsed
+     */
+    public InternetAddress[] parse(String addressList) throws AddressException {
+        assertInvariant();
+        if (addressList == null) {
+            throw new NullPointerException("addressList may not be null");
+        }    // if
+
+        for (int i = 0; i < QUOTING_CHARACTERS.length(); ++i) {
+            if (addressList.indexOf(QUOTING_CHARACTERS.charAt(i)) >= 0) {
+                // Commas may be quoted; let the full parser sort it out.
+                return InternetAddress.parse(addressList, false);
+            }    // if
+        }    // for
+
+        List<InternetAddress> parsed = new ArrayList<>();
+        int start = 0;
+        while (start <= addressList.length()) {
+            int end = addressList.indexOf(',', start);
+            if (end < 0) {
+                end = addressList.length();
+            }    // if
+            String address = addressList.substring(start, end).trim();
+            if (!address.isEmpty()) {
+                Entry entry = entries.get(address);
+                if ((entry != null) && (entry.address != null)) {
+                    parsed.add(entry.address);
+                } else {    // if
+                    for (InternetAddress internetAddress : InternetAddress.parse(address, false)) {
+                        parsed.add(internetAddress);
+                    }    // for
+                }    // else
+            }    // if
+            start = end + 1;
+        }    // while
+        return parsed.toArray(new InternetAddress[parsed.size()]);
+    }    // parse()
+
+    /**
+     * Returns the number of addresses in the cache.
+     *
+     * @return the number of addresses in the cache
+     */
+    public int size() {
+        assertInvariant();
+        return entries.size();
+    }    // size()
+
+    /**
+     * Returns the entry for the given address, from the cache if possible.
+     *
+     * @param address the address; may not be null
+     * @return the entry for the address
+     */
+    private Entry lookup(String address) {
+        assert (address != null);
+        String key = address.trim();
+        Entry entry = entries.get(key);
+        return (entry != null) ? entry : validate(key);
+    }    // lookup()
+
+    /**
+     * Parses and validates the given address.
+     *
+     * @param address the address; may not be null
+     * @return the entry for the address
+     */
+    private static Entry validate(String address) {
+        assert (address != null);
+        try {
+            InternetAddress internetAddress = new InternetAddress(address, true);
+            internetAddress.validate();
+            return new Entry(internetAddress, null);
+        } catch (AddressException e) {    // try
+            return new Entry(null, e.getMessage());
+        }    // catch
+    }    // validate()
+
+    /**
+     * Asserts the correctness of the object's internal state.
+     */
+    private void assertInvariant() {
+        assert (entries != null);
+    }    // assertInvariant()
+
+}    // AddressCache
@@ -0,0 +1,659 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.mail.MessagingException;
+
+/**
+ * Writes email messages to disk instead of sending them, so that a large send
+ * may be inspected before it goes out. Each message is rendered exactly as
+ * {@link Mailer#writeMessage(MailMessage, java.io.OutputStream)} renders it,
+ * which is the message {@link Mailer#send(MailMessage, String)} would send,
+ * "Bcc" header included.
+ *
+ * Messages are written either as one RFC 822 (".eml") file each, in a
+ * directory, or all together as a single mbox file. Messages are rendered in
+ * parallel by a fixed number of worker threads. In {@link Format#EML} format
+ * each worker also writes its own files; in {@link Format#MBOX} format a
+ * single writer thread appends the rendered messages to the mbox, in order of
+ * submission, through a large buffer. At most {@link #MAXIMUM_IN_FLIGHT}
+ * messages per worker are held in memory at once; {@link #submit(MailMessage)}
+ * blocks when the pipeline is full.
+ *
+ * The mbox is written in the "mboxrd" variant: body lines beginning with
+ * "From ", preceded by any number of "&gt;" characters, are quoted with one
+ * more "&gt;", and line endings are written as a single line feed.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public class DryRunSpool implements AutoCloseable {
+
+    /**
+     * The output formats.
+     */
+    public enum Format {
+
+        /**
+         * One RFC 822 file per message, named by
+         * {@link DryRunSpool#EML_FILE_NAME_FORMAT}, in a directory.
+         */
+        EML,
+
+        /**
+         * A single mbox file holding every message.
+         */
+        MBOX
+
+    }    // Format
+
+    /**
+     * The format of the names of the files written in {@link Format#EML}
+     * format; the single argument is the message's position in order of
+     * submission, starting with 1.
+     */
+    public static final String EML_FILE_NAME_FORMAT = "message-%04d.eml";
+
+    /**
+     * The maximum number of messages per worker held in memory at once.
+     */
+    public static final int MAXIMUM_IN_FLIGHT = 64;
+
+    /**
+     * The size, in bytes, of the mbox writer's buffer.
+     */
+    private static final int MBOX_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * A byte array output stream whose contents may be wrapped, without
+     * copying, in a byte buffer.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        /**
+         * Constructs a new, empty buffer.
+         */
+        Buffer() {
+            super(8192);
+        }    // Buffer()
+
+        /**
+         * Returns a byte buffer wrapping the buffer's contents. The byte
+         * buffer is invalidated by any later write to this buffer.
+         *
+         * @return a byte buffer wrapping the buffer's contents
+         */
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }    // toByteBuffer()
+
+    }    // Buffer
+
+    /**
+     * The mailer used to render messages.
+     */
+    private final Mailer mailer;
+
+    /**
+     * The output directory or mbox file.
+     */
+    private final Path path;
+
+    /**
+     * The output format.
+     */
+    private final Format format;
+
+    /**
+     * The render workers.
+     */
+    private final ExecutorService workers;
+
+    /**
+     * The mbox writer, or null in {@link Format#EML} format.
+     */
+    private final ExecutorService writer;
+
+    /**
+     * The mbox file channel, or null in {@link Format#EML} format.
+     */
+    private final FileChannel mboxChannel;
+
+    /**
+     * The mbox writer's buffer, or null in {@link Format#EML} format. Used
+     * only on the writer thread.
+     */
+    private final ByteBuffer mboxBuffer;
+
+    /**
+     * The rendered messages awaiting the mbox writer, in order of
+     * submission. Each is completed with the message's mbox entry, or
+     * exceptionally if it could not be rendered.
+     */
+    private final LinkedBlockingQueue<CompletableFuture<Buffer>> mboxEntries;
+
+    /**
+     * The buffer into which each worker thread renders messages.
+     */
+    private final ThreadLocal<Buffer> renderBuffers;
+
+    /**
+     * Permits for the messages held in memory.
+     */
+    private final Semaphore inFlight;
+
+    /**
+     * The number of messages submitted.
+     */
+    private final AtomicInteger submittedCount;
+
+    /**
+     * The number of messages written.
+     */
+    private final AtomicInteger writtenCount;
+
+    /**
+     * The messages that could not be written, and why, in order of failure.
+     * Access is synchronized on the map.
+     */
+    private final Map<MailMessage, Exception> failures;
+
+    /**
+     * True once the spool has been closed. Access is synchronized on this
+     * spool.
+     */
+    private boolean closed;
+
+    /**
+     * Constructs a new dry-run spool. In {@link Format#EML} format, the
+     * directory is created if it does not exist, and existing files are
+     * overwritten; in {@link Format#MBOX} format, the mbox file is created or
+     * truncated.
+     *
+     * @param mailer the mailer used to render messages; may not be null
+     * @param path the output directory in {@link Format#EML} format, or the
+     * mbox file in {@link Format#MBOX} format; may not be null
+     * @param format the output format; may not be null
+     * @param workerCount the number of render worker threads; must be
+     * positive
+     * @throws NullPointerException if {@code mailer}, {@code path}, or
+     * {@code format} is null
+     * @throws IllegalArgumentException if {@code workerCount} is not positive
+     * @throws IOException if the directory or mbox file cannot be created
+     */
+    public DryRunSpool(Mailer mailer, Path path, Format format, int workerCount) throws IOException {
+        if (mailer == null) {
+            throw new NullPointerException("mailer may not be null");
+        }    // if
+        if (path == null) {
+            throw new NullPointerException("path may not be null");
+        }    // if
+        if (format == null) {
+            throw new NullPointerException("format may not be null");
+        }    // if
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("workerCount must be positive");
+        }    // if
+
+        this.mailer = mailer;
+        this.path = path;
+        this.format = format;
+        if (format == Format.EML) {
+            Files.createDirectories(path);
+            writer = null;
+            mboxChannel = null;
+            mboxBuffer = null;
+        } else {    // if
+            mboxChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            mboxBuffer = ByteBuffer.allocateDirect(MBOX_BUFFER_SIZE);
+            writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), createThreadFactory("DryRunSpool-writer-"));
+        }    // else
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), createThreadFactory("DryRunSpool-worker-"));
+        mboxEntries = new LinkedBlockingQueue<>();
+        renderBuffers = ThreadLocal.withInitial(Buffer::new);
+        inFlight = new Semaphore(workerCount * MAXIMUM_IN_FLIGHT);
+        submittedCount = new AtomicInteger();
+        writtenCount = new AtomicInteger();
+        failures = new LinkedHashMap<>();
+        closed = false;
+        assertInvariant();
+    }    // DryRunSpool()
+
+    /**
+     * Submits a message for writing. If the pipeline is full, this method
+     * blocks until there is room.
+     *
+     * @param mailMessage the message; may not be null
+     * @throws NullPointerException if {@code mailMessage} is null
+     * @throws IllegalStateException if the spool has been closed
+     * @throws InterruptedException if the thread is interrupted while
+     * waiting for room
+     */
+    public void submit(MailMessage mailMessage) throws InterruptedException {
+        assertInvariant();
+        if (mailMessage == null) {
+            throw new NullPointerException("mailMessage may not be null");
+        }    // if
+
+        inFlight.acquire();
+        synchronized (this) {
+            if (closed) {
+                inFlight.release();
+                throw new IllegalStateException("the spool has been closed");
+            }    // if
+            int index = submittedCount.incrementAndGet();
+            if (format == Format.EML) {
+                workers.execute(() -> writeEml(mailMessage, index));
+            } else {    // if
+                CompletableFuture<Buffer> entry = new CompletableFuture<>();
+                workers.execute(() -> {
+                    try {
+                        entry.complete(renderMboxEntry(mailMessage));
+                    } catch (Exception e) {    // try
+                        entry.completeExceptionally(e);
+                    }    // catch
+                });
+                mboxEntries.add(entry);
+                writer.execute(() -> appendMboxEntry(mailMessage));
+            }    // else
+        }    // synchronized
+    }    // submit()
+
+    /**
+     * Submits the given messages for writing, in order.
+     *
+     * @param mailMessages the messages; may not be null, nor contain null
+     * elements
+     * @throws NullPointerException if {@code mailMessages} is null or
+     * contains a null element
+     * @throws IllegalStateException if the spool has been closed
+     * @throws InterruptedException if the thread is interrupted while
+     * waiting for room
+     */
+    public void submitAll(Collection<MailMessage> mailMessages) throws InterruptedException {
+        assertInvariant();
+        if (mailMessages == null) {
+            throw new NullPointerException("mailMessages may not be null");
+        }    // if
+        for (MailMessage mailMessage : mailMessages) {
+            if (mailMessage == null) {
+                throw new NullPointerException("mailMessages may not contain null");
+            }    // if
+        }    // for
+
+        for (MailMessage mailMessage : mailMessages) {
+            submit(mailMessage);
+        }    // for
+    }    // submitAll()
+
+    /**
+     * Returns the output format.
+     *
+     * @return the output format
+     */
+    public Format getFormat() {
+        assertInvariant();
+        return format;
+    }    // getFormat()
+
+    /**
+     * Returns the output directory in {@link Format#EML} format, or the mbox
+     * file in {@link Format#MBOX} format.
+     *
+     * @return the output directory or mbox file
+     */
+    public Path getPath() {
+        assertInvariant();
+        return path;
+    }    // getPath()
+
+    /**
+     * Returns the number of messages submitted.
+     *
+     * @return the number of messages submitted
+     */
+    public int getSubmittedCount() {
+        assertInvariant();
+        return submittedCount.get();
+    }    // getSubmittedCount()
+
+    /**
+     * Returns the number of messages written. In {@link Format#MBOX} format,
+     * a written message may still be buffered until the spool is closed.
+     *
+     * @return the number of messages written
+     */
+    public int getWrittenCount() {
+        assertInvariant();
+        return writtenCount.get();
+    }    // getWrittenCount()
+
+    /**
+     * Returns the number of messages that could not be written.
+     *
+     * @return the number of messages that could not be written
+     */
+    public int getFailedCount() {
+        assertInvariant();
+        synchronized (failures) {
+            return failures.size();
+        }    // synchronized
+    }    // getFailedCount()
+
+    /**
+     * Returns the messages that could not be written, each with the exception
+     * that prevented it, in order of failure. The map returned is a copy.
+     *
+     * @return the messages that could not be written
+     */
+    public Map<MailMessage, Exception> getFailures() {
+        assertInvariant();
+        synchronized (failures) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+        }    // synchronized
+    }    // getFailures()
+
+    /**
+     * Stops accepting messages, waits for every submitted message to be
+     * written or to fail, and closes the output. If the thread is interrupted
+     * while waiting, this method returns at once with the thread's interrupt
+     * status set; the spool continues to drain in the background, but the
+     * mbox file is not closed. Closing a spool more than once has no effect.
+     *
+     * @throws IOException if the mbox file cannot be flushed or closed
+     */
+    @Override
+    public void close() throws IOException {
+        assertInvariant();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }    // if
+            closed = true;
+        }    // synchronized
+
+        workers.shutdown();
+        try {
+            if (writer != null) {
+                writer.shutdown();
+                awaitTermination(writer);
+            }    // if
+            awaitTermination(workers);
+        } catch (InterruptedException e) {    // try
+            Thread.currentThread().interrupt();
+            return;
+        }    // catch
+        if (mboxChannel != null) {
+            try {
+                flushMbox();
+            } finally {    // try
+                mboxChannel.close();
+            }    // finally
+        }    // if
+    }    // close()
+
+    /**
+     * Renders the given message and writes it to its own file. Runs on a
+     * worker thread.
+     *
+     * @param mailMessage the message; may not be null
+     * @param index the message's position in order of submission, starting
+     * with 1
+     */
+    private void writeEml(MailMessage mailMessage, int index) {
+        assert (mailMessage != null);
+        assert (index > 0);
+
+        try {
+            Buffer buffer = renderBuffers.get();
+            buffer.reset();
+            mailer.writeMessage(mailMessage, buffer);
+            Path file = path.resolve(String.format(EML_FILE_NAME_FORMAT, index));
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer bytes = buffer.toByteBuffer();
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }    // while
+            }    // try
+            writtenCount.incrementAndGet();
+        } catch (Exception e) {    // try
+            recordFailure(mailMessage, e);
+        } finally {    // catch
+            inFlight.release();
+        }    // finally
+    }    // writeEml()
+
+    /**
+     * Renders the given message as an mbox entry: a "From " separator line,
+     * the message with "From " lines quoted and line feed line endings, and a
+     * blank line. Runs on a worker thread.
+     *
+     * @param mailMessage the message; may not be null
+     * @return the mbox entry
+     * @throws MessagingException if the message cannot be created
+     * @throws IOException if an I/O error occurs
+     */
+    private Buffer renderMboxEntry(MailMessage mailMessage) throws MessagingException, IOException {
+        assert (mailMessage != null);
+
+        Buffer message = renderBuffers.get();
+        message.reset();
+        mailer.writeMessage(mailMessage, message);
+        Buffer entry = new Buffer();
+        byte[] separator = ("From MAILER-DAEMON " + formatSeparatorDate(new Date()) + "\n").getBytes(StandardCharsets.US_ASCII);
+        entry.write(separator, 0, separator.length);
+        quoteFromLines(message.toByteArray(), entry);
+        return entry;
+    }    // renderMboxEntry()
+
+    /**
+     * Appends the next mbox entry, in order of submission, to the mbox
+     * buffer, flushing the buffer when full. Runs on the writer thread.
+     *
+     * @param mailMessage the message whose entry is next; may not be null
+     */
+    private void appendMboxEntry(MailMessage mailMessage) {
+        assert (mailMessage != null);
+
+        try {
+            Buffer entry;
+            try {
+                entry = mboxEntries.remove().join();
+            } catch (CompletionException e) {    // try
+                recordFailure(mailMessage, (e.getCause() instanceof Exception) ? (Exception)e.getCause() : e);
+                return;
+            }    // catch
+            ByteBuffer bytes = entry.toByteBuffer();
+            if (bytes.remaining() > mboxBuffer.remaining()) {
+                flushMbox();
+            }    // if
+            if (bytes.remaining() > mboxBuffer.capacity()) {
+                while (bytes.hasRemaining()) {
+                    mboxChannel.write(bytes);
+                }    // while
+            } else {    // if
+                mboxBuffer.put(bytes);
+            }    // else
+            writtenCount.incrementAndGet();
+        } catch (IOException e) {    // try
+            recordFailure(mailMessage, e);
+        } finally {    // catch
+            inFlight.release();
+        }    // finally
+    }    // appendMboxEntry()
+
+    /**
+     * Writes the contents of the mbox buffer to the mbox file. Runs on the
+     * writer thread, or on the closing thread once the writer has finished.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void flushMbox() throws IOException {
+        mboxBuffer.flip();
+        try {
+            while (mboxBuffer.hasRemaining()) {
+                mboxChannel.write(mboxBuffer);
+            }    // while
+        } finally {    // try
+            mboxBuffer.clear();
+        }    // finally
+    }    // flushMbox()
+
+    /**
+     * Records that the given message could not be written.
+     *
+     * @param mailMessage the message; may not be null
+     * @param error the exception that prevented the message being written;
+     * may not be null
+     */
+    private void recordFailure(MailMessage mailMessage, Exception error) {
+        assert (mailMessage != null);
+        assert (error != null);
+
+        synchronized (failures) {
+            failures.put(mailMessage, error);
+        }    // synchronized
+    }    // recordFailure()
+
+    /**
+     * Copies the given RFC 822 message to the given buffer in mboxrd form:
+     * lines beginning with "From ", preceded by any number of "&gt;"
+     * characters, gain a leading "&gt;"; CRLF line endings become LF; and
+     * the message is followed by a blank line.
+     *
+     * @param message the message; may not be null
+     * @param entry the buffer; may not be null
+     */
+    static void quoteFromLines(byte[] message, ByteArrayOutputStream entry) {
+        assert (message != null);
+        assert (entry != null);
+
+        int lineStart = 0;
+        while (lineStart < message.length) {
+            int lineEnd = lineStart;
+            while ((lineEnd < message.length) && (message[lineEnd] != '\n')) {
+                ++lineEnd;
+            }    // while
+            int contentEnd = ((lineEnd > lineStart) && (message[lineEnd - 1] == '\r')) ? lineEnd - 1 : lineEnd;
+            int from = lineStart;
+            while ((from < contentEnd) && (message[from] == '>')) {
+                ++from;
+            }    // while
+            if ((contentEnd - from >= 5) && (message[from] == 'F') && (message[from + 1] == 'r') && (message[from + 2] == 'o') && (message[from + 3] == 'm') && (message[from + 4] == ' ')) {
+                entry.write('>');
+            }    // if
+            entry.write(message, lineStart, contentEnd - lineStart);
+            entry.write('\n');
+            lineStart = lineEnd + 1;
+        }    // while
+        entry.write('\n');
+    }    // quoteFromLines()
+
+    /**
+     * Returns the given date in the asctime form used by mbox "From "
+     * separator lines, in UTC.
+     *
+     * @param date the date; may not be null
+     * @return the formatted date
+     */
+    private static String formatSeparatorDate(Date date) {
+        assert (date != null);
+        SimpleDateFormat dateFormat = new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return dateFormat.format(date);
+    }    // formatSeparatorDate()
+
+    /**
+     * Waits for the given executor to terminate.
+     *
+     * @param executor the executor, which has been shut down; may not be null
+     * @throws InterruptedException if the thread is interrupted while
+     * waiting
+     */
+    private static void awaitTermination(ExecutorService executor) throws InterruptedException {
+        assert (executor != null);
+        while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            // Keep waiting; a large spool may take a long time to drain.
+        }    // while
+    }    // awaitTermination()
+
+    /**
+     * Returns a factory for the spool's threads. The threads are daemon
+     * threads, so that an abandoned spool does not keep the application
+     * running.
+     *
+     * @param namePrefix the prefix of the threads' names; may not be null
+     * @return a thread factory
+     */
+    private static ThreadFactory createThreadFactory(String namePrefix) {
+        assert (namePrefix != null);
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }    // createThreadFactory()
+
+    /**
+     * Asserts the correctness of the object's internal state.
+     */
+    private void assertInvariant() {
+        assert (mailer != null);
+        assert (path != null);
+        assert (format != null);
+        assert (workers != null);
+        assert ((format == Format.MBOX) == (writer != null));
+        assert ((format == Format.MBOX) == (mboxChannel != null));
+        assert ((format == Format.MBOX) == (mboxBuffer != null));
+        assert (mboxEntries != null);
+        assert (renderBuffers != null);
+        assert (inFlight != null);
+        assert (submittedCount != null);
+        assert (writtenCount != null);
+        assert (failures != null);
+    }    // assertInvariant()
+
+}    // DryRunSpool
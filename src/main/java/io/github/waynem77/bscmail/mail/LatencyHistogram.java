@@ -0,0 +1,216 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies. Latencies are counted in buckets whose bounds
+ * double from one bucket to the next, starting at one microsecond, so that
+ * recording is cheap and the histogram's size is fixed; percentiles are
+ * therefore approximate, reported as the upper bound of the bucket in which
+ * they fall (but never more than the largest latency recorded).
+ *
+ * A LatencyHistogram may be recorded to and read from any number of threads
+ * at once. Readings taken while latencies are being recorded may be slightly
+ * inconsistent with one another.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public final class LatencyHistogram {
+
+    /**
+     * The number of buckets. The last bucket holds every latency of more than
+     * 2<sup>BUCKET_COUNT - 2</sup> microseconds (about three days).
+     */
+    private static final int BUCKET_COUNT = 40;
+
+    /**
+     * The number of latencies in each bucket. Bucket 0 holds latencies of at
+     * most one microsecond; bucket <i>i</i> holds latencies of more than
+     * 2<sup><i>i</i> - 1</sup> and at most 2<sup><i>i</i></sup> microseconds.
+     */
+    private final AtomicLongArray buckets;
+
+    /**
+     * The number of latencies recorded.
+     */
+    private final LongAdder count;
+
+    /**
+     * The sum of the latencies recorded, in nanoseconds.
+     */
+    private final LongAdder totalNanos;
+
+    /**
+     * The largest latency recorded, in nanoseconds.
+     */
+    private final AtomicLong maximumNanos;
+
+    /**
+     * Constructs a new, empty histogram.
+     */
+    public LatencyHistogram() {
+        buckets = new AtomicLongArray(BUCKET_COUNT);
+        count = new LongAdder();
+        totalNanos = new LongAdder();
+        maximumNanos = new AtomicLong();
+        assertInvariant();
+    }    // LatencyHistogram()
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency, in nanoseconds; may not be negative
+     * @throws IllegalArgumentException if {@code nanos} is negative
+     */
+    public void record(long nanos) {
+        assertInvariant();
+        if (nanos < 0) {
+            throw new IllegalArgumentException("nanos may not be negative");
+        }    // if
+
+        buckets.incrementAndGet(getBucket(nanos));
+        count.increment();
+        totalNanos.add(nanos);
+        maximumNanos.accumulateAndGet(nanos, Math::max);
+    }    // record()
+
+    /**
+     * Returns the number of latencies recorded.
+     *
+     * @return the number of latencies recorded
+     */
+    public long getCount() {
+        assertInvariant();
+        return count.sum();
+    }    // getCount()
+
+    /**
+     * Returns the sum of the latencies recorded, in nanoseconds.
+     *
+     * @return the sum of the latencies recorded
+     */
+    public long getTotalNanos() {
+        assertInvariant();
+        return totalNanos.sum();
+    }    // getTotalNanos()
+
+    /**
+     * Returns the largest latency recorded, in nanoseconds, or 0 if none has
+     * been recorded.
+     *
+     * @return the largest latency recorded, or 0
+     */
+    public long getMaximumNanos() {
+        assertInvariant();
+        return maximumNanos.get();
+    }    // getMaximumNanos()
+
+    /**
+     * Returns the mean latency recorded, in nanoseconds, or 0 if none has
+     * been recorded.
+     *
+     * @return the mean latency recorded, or 0
+     */
+    public double getMeanNanos() {
+        assertInvariant();
+        long currentCount = count.sum();
+        return (currentCount == 0) ? 0 : (double)totalNanos.sum() / currentCount;
+    }    // getMeanNanos()
+
+    /**
+     * Returns an approximation of the given percentile of the latencies
+     * recorded, in nanoseconds, or 0 if none has been recorded. The
+     * approximation is no less than the true percentile, and no more than
+     * twice it or the largest latency recorded.
+     *
+     * @param percentile the percentile; must be more than 0 and at most 100
+     * @return the approximate percentile, or 0
+     * @throws IllegalArgumentException if {@code percentile} is out of range
+     */
+    public long getPercentileNanos(double percentile) {
+        assertInvariant();
+        if (!((percentile > 0) && (percentile <= 100))) {
+            throw new IllegalArgumentException("percentile must be more than 0 and at most 100");
+        }    // if
+
+        long[] counts = new long[BUCKET_COUNT];
+        long currentCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            counts[i] = buckets.get(i);
+            currentCount += counts[i];
+        }    // for
+        if (currentCount == 0) {
+            return 0;
+        }    // if
+
+        long rank = (long)Math.ceil(percentile / 100 * currentCount);
+        long seen = 0;
+        int bucket = 0;
+        while ((seen += counts[bucket]) < rank) {
+            ++bucket;
+        }    // while
+        return Math.min(TimeUnit.MICROSECONDS.toNanos(1L << bucket), maximumNanos.get());
+    }    // getPercentileNanos()
+
+    /**
+     * Discards every latency recorded. Latencies recorded while the histogram
+     * is being reset may be partly discarded.
+     */
+    public void reset() {
+        assertInvariant();
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            buckets.set(i, 0);
+        }    // for
+        count.reset();
+        totalNanos.reset();
+        maximumNanos.set(0);
+    }    // reset()
+
+    /**
+     * Returns the bucket holding the given latency.
+     *
+     * @param nanos the latency, in nanoseconds; may not be negative
+     * @return the bucket holding the latency
+     */
+    private static int getBucket(long nanos) {
+        assert (nanos >= 0);
+        long micros = (nanos + 999) / 1000;
+        int bucket = (micros <= 1) ? 0 : 64 - Long.numberOfLeadingZeros(micros - 1);
+        return Math.min(bucket, BUCKET_COUNT - 1);
+    }    // getBucket()
+
+    /**
+     * Asserts the correctness of the object's internal state.
+     */
+    private void assertInvariant() {
+        assert (buckets != null);
+        assert (buckets.length() == BUCKET_COUNT);
+        assert (count != null);
+        assert (totalNanos != null);
+        assert (maximumNanos != null);
+    }    // assertInvariant()
+
+}    // LatencyHistogram
@@ -0,0 +1,261 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import io.github.waynem77.bscmail.persistent.EmailTemplate;
+import io.github.waynem77.bscmail.persistent.Event;
+import io.github.waynem77.bscmail.persistent.EventProperty;
+import io.github.waynem77.bscmail.persistent.Shift;
+import io.github.waynem77.bscmail.persistent.Volunteer;
+import io.github.waynem77.bscmail.util.format.CompiledTemplate;
+import io.github.waynem77.bscmail.util.format.EventEmailRenderer;
+import io.github.waynem77.bscmail.util.format.TemplateCache;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Renders personalized event emails: one {@link MailMessage} for each
+ * volunteer assigned to an event, addressed to that volunteer alone. Each
+ * message consists of a personal greeting, naming the volunteer's own shifts,
+ * followed by the event email body described by {@link EventEmailRenderer}.
+ * Each message carries an HTML alternative as well, in which the greeting is
+ * a paragraph at the top of the HTML event email body.
+ *
+ * The subject and the shared bodies are rendered once per event. The personal
+ * greetings are rendered in parallel, each thread reusing its own scratch
+ * buffer, and the messages are handed to the caller one at a time, in order,
+ * as soon as each and those before it are complete. The caller may therefore
+ * send or spool each message as it arrives, rather than holding every
+ * message in memory.
+ *
+ * The personal greeting is a template in the language described by
+ * {@link io.github.waynem77.bscmail.util.format.EmailFormatter}. It is
+ * rendered against an event that has the date and properties of the real
+ * event but only the recipient's own shifts.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public class MailMerger {
+
+    /**
+     * The default personal greeting template.
+     */
+    public static final String DEFAULT_GREETING_TEMPLATE =
+            "{#shifts}{#volunteer}{volunteer}, you are scheduled for {shift}.\n{/volunteer}{/shifts}\n";
+
+    /**
+     * The tag opening the body of an HTML event email. The HTML greeting is
+     * placed immediately after it.
+     */
+    private static final String HTML_BODY_START = "<body>\n";
+
+    /**
+     * The initial capacity of a scratch buffer.
+     */
+    private static final int SCRATCH_BUFFER_CAPACITY = 4096;
+
+    /**
+     * The renderer for the shared parts of each message.
+     */
+    private final EventEmailRenderer renderer;
+
+    /**
+     * The compiled personal greeting template.
+     */
+    private final CompiledTemplate greetingTemplate;
+
+    /**
+     * The compiled personal greeting template, for the HTML body.
+     */
+    private final CompiledTemplate htmlGreetingTemplate;
+
+    /**
+     * The scratch buffer of each rendering thread.
+     */
+    private final ThreadLocal<StringBuilder> scratchBuffer;
+
+    /**
+     * Constructs a new mail merger using the given email template and the
+     * default greeting template.
+     *
+     * @param emailTemplate the email template; may not be null
+     * @throws NullPointerException if {@code emailTemplate} is null
+     */
+    public MailMerger(EmailTemplate emailTemplate) {
+        this(emailTemplate, DEFAULT_GREETING_TEMPLATE, TemplateCache.getSharedCache());
+    }    // MailMerger()
+
+    /**
+     * Constructs a new mail merger using the given email template, greeting
+     * template, and template cache.
+     *
+     * @param emailTemplate the email template; may not be null
+     * @param greetingTemplate the personal greeting template; may not be null
+     * @param templateCache the cache from which compiled templates are taken;
+     * may not be null
+     * @throws NullPointerException if any parameter is null
+     * @throws IllegalArgumentException if greetingTemplate is malformed
+     */
+    public MailMerger(EmailTemplate emailTemplate, String greetingTemplate, TemplateCache templateCache) {
+        if (emailTemplate == null) {
+            throw new NullPointerException("emailTemplate may not be null");
+        }    // if
+        if (greetingTemplate == null) {
+            throw new NullPointerException("greetingTemplate may not be null");
+        }    // if
+        if (templateCache == null) {
+            throw new NullPointerException("templateCache may not be null");
+        }    // if
+
+        renderer = new EventEmailRenderer(emailTemplate, templateCache);
+        this.greetingTemplate = templateCache.get(greetingTemplate, emailTemplate.getDateFormatString(), emailTemplate.getLocale());
+        this.htmlGreetingTemplate = templateCache.getHtml(greetingTemplate, emailTemplate.getDateFormatString(), emailTemplate.getLocale());
+        scratchBuffer = ThreadLocal.withInitial(() -> new StringBuilder(SCRATCH_BUFFER_CAPACITY));
+        assertInvariant();
+    }    // MailMerger()
+
+    /**
+     * Returns the number of messages {@link #merge(Event, Consumer)} renders
+     * for the given event: the number of distinct email addresses among the
+     * volunteers assigned to it.
+     *
+     * @param event the event; may not be null
+     * @return the number of messages rendered for the event
+     * @throws NullPointerException if {@code event} is null
+     */
+    public int countRecipients(Event event) {
+        assertInvariant();
+        if (event == null) {
+            throw new NullPointerException("event may not be null");
+        }    // if
+
+        return getShiftsByRecipient(event).size();
+    }    // countRecipients()
+
+    /**
+     * Renders one message for each distinct email address among the
+     * volunteers assigned to the given event, and passes each to the given
+     * consumer. Volunteers without an email address are skipped. Messages are
+     * rendered in parallel, but passed to the consumer one at a time, in
+     * order of each recipient's first shift. The consumer may be called from
+     * a rendering thread rather than the calling thread; it may block, for
+     * instance while sending the message, without holding up rendering.
+     *
+     * @param event the event; may not be null
+     * @param consumer the consumer of the messages; may not be null
+     * @return the number of messages rendered
+     * @throws NullPointerException if either parameter is null
+     */
+    public int merge(Event event, Consumer<MailMessage> consumer) {
+        assertInvariant();
+        if (event == null) {
+            throw new NullPointerException("event may not be null");
+        }    // if
+        if (consumer == null) {
+            throw new NullPointerException("consumer may not be null");
+        }    // if
+
+        String subject = renderer.renderSubject(event);
+        String sharedBody = renderer.renderBody(event);
+        String sharedHtmlBody = renderer.renderHtmlBody(event);
+        int bodyStart = sharedHtmlBody.indexOf(HTML_BODY_START);
+        int greetingPosition = (bodyStart == -1) ? 0 : bodyStart + HTML_BODY_START.length();
+
+        Map<String, List<Shift>> shiftsByRecipient = getShiftsByRecipient(event);
+        shiftsByRecipient.entrySet().parallelStream().map(entry -> {
+            Event recipientEvent = createRecipientEvent(event, entry.getValue());
+            StringBuilder buffer = scratchBuffer.get();
+            buffer.setLength(0);
+            greetingTemplate.render(recipientEvent, buffer);
+            buffer.append(sharedBody);
+            String body = buffer.toString();
+
+            buffer.setLength(0);
+            htmlGreetingTemplate.render(recipientEvent, buffer);
+            String htmlGreeting = buffer.toString().trim();
+            buffer.setLength(0);
+            buffer.append(sharedHtmlBody, 0, greetingPosition);
+            if (!htmlGreeting.isEmpty()) {
+                buffer.append("<p>").append(htmlGreeting.replace("\n", "<br>\n")).append("</p>\n");
+            }    // if
+            buffer.append(sharedHtmlBody, greetingPosition, sharedHtmlBody.length());
+            String htmlBody = buffer.toString();
+
+            return new MailMessage(entry.getKey(), null, null, subject, body, htmlBody);
+        }).forEachOrdered(consumer);
+        return shiftsByRecipient.size();
+    }    // merge()
+
+    /**
+     * Returns the shifts of each distinct email address among the volunteers
+     * assigned to the given event, in order of each address's first shift.
+     *
+     * @param event the event; may not be null
+     * @return the shifts of each recipient
+     */
+    private static Map<String, List<Shift>> getShiftsByRecipient(Event event) {
+        assert (event != null);
+        Map<String, List<Shift>> shiftsByRecipient = new LinkedHashMap<>();
+        for (Shift shift : event.getShifts()) {
+            Volunteer volunteer = shift.getVolunteer();
+            if ((volunteer != null) && !volunteer.getEmail().isEmpty()) {
+                shiftsByRecipient.computeIfAbsent(volunteer.getEmail(), email -> new ArrayList<>()).add(shift);
+            }    // if
+        }    // for
+        return shiftsByRecipient;
+    }    // getShiftsByRecipient()
+
+    /**
+     * Returns an event with the date and event properties of the given event,
+     * and the given shifts.
+     *
+     * @param event the event; may not be null
+     * @param shifts the shifts; may not be null
+     * @return the recipient's view of the event
+     */
+    private Event createRecipientEvent(Event event, List<Shift> shifts) {
+        assert (event != null);
+        assert (shifts != null);
+        Event recipientEvent = new Event();
+        recipientEvent.setDate(event.getDate());
+        for (EventProperty eventProperty : event.getEventProperties()) {
+            recipientEvent.addEventProperty(eventProperty);
+        }    // for
+        for (Shift shift : shifts) {
+            recipientEvent.addShift(shift);
+        }    // for
+        return recipientEvent;
+    }    // createRecipientEvent()
+
+    /**
+     * Asserts the correctness of the object's internal state.
+     */
+    private void assertInvariant() {
+        assert (renderer != null);
+        assert (greetingTemplate != null);
+        assert (htmlGreetingTemplate != null);
+        assert (scratchBuffer != null);
+    }    // assertInvariant()
+
+}    // MailMerger
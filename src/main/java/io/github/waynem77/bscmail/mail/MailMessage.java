@@ -53,7 +53,12 @@ public class MailMessage {
     private final String body;
 
     /**
-     * Constructs a new mail message from the given arguments.
+     * The HTML alternative of the message body, or null if there is none.
+     */
+    private final String htmlBody;
+
+    /**
+     * Constructs a new plain text mail message from the given arguments.
      *
      * @param toAddresses a comma-separated list of email addresses indicating
      * the "to" recipients; may be null if there are no such recipients
@@ -66,6 +71,28 @@ public class MailMessage {
      * @throws NullPointerException if {@code subject} or {@code body} is null
      */
     public MailMessage(String toAddresses, String ccAddresses, String bccAddresses, String subject, String body) {
+        this(toAddresses, ccAddresses, bccAddresses, subject, body, null);
+    }    // MailMessage()
+
+    /**
+     * Constructs a new mail message from the given arguments. If
+     * {@code htmlBody} is not null, the message is sent with both a plain text
+     * and an HTML body, and mail clients display whichever they prefer.
+     *
+     * @param toAddresses a comma-separated list of email addresses indicating
+     * the "to" recipients; may be null if there are no such recipients
+     * @param ccAddresses a comma-separated list of email addresses indicating
+     * the "CC" recipients; may be null if there are no such recipients
+     * @param bccAddresses a comma-separated list of email addresses indicating
+     * the "BCC" recipients; may be null if there are no such recipients
+     * @param subject the subject line of the message; may not be null
+     * @param body the plain text body of the message; may not be null
+     * @param htmlBody the HTML body of the message; may be null if the message
+     * is plain text only
+     * @throws NullPointerException if {@code subject} or {@code body} is null
+     * @since 4.0
+     */
+    public MailMessage(String toAddresses, String ccAddresses, String bccAddresses, String subject, String body, String htmlBody) {
         if (subject == null) {
             throw new NullPointerException("subject may not be null");
         }
@@ -78,6 +105,7 @@ public class MailMessage {
         this.bccAddresses = bccAddresses;
         this.subject = subject;
         this.body = body;
+        this.htmlBody = htmlBody;
         assertInvariant();
     }    // MailMessage()
 
@@ -137,6 +165,18 @@ public class MailMessage {
         return body;
     }    // getBody()
 
+    /**
+     * Returns the HTML alternative of the message body, or null if the message
+     * is plain text only.
+     *
+     * @return the HTML body of the message, or null
+     * @since 4.0
+     */
+    public String getHtmlBody() {
+        assertInvariant();
+        return htmlBody;
+    }    // getHtmlBody()
+
     /**
      * Asserts the correctness of the object's internal state.
      */
@@ -0,0 +1,513 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import io.github.waynem77.bscmail.Application;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends many email messages in the background. Messages submitted to the
+ * queue are sent, in order of submission, by a fixed number of worker
+ * threads, each of which sends over its own pooled connection to the email
+ * server. An optional {@link TokenBucket} limits the rate at which messages
+ * are sent, so that an email provider's messages-per-minute cap is
+ * respected.
+ *
+ * Observers are notified, through {@link MailerObserver#mailerStatusChanged()},
+ * each time a message is sent or fails; they may then query the queue's
+ * aggregate status and counts. Observers are notified on the worker threads.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public class MailQueue implements AutoCloseable {
+
+    /**
+     * The default number of worker threads.
+     */
+    public static final int DEFAULT_WORKERS = 2;
+
+    /**
+     * The application.
+     */
+    private final Application application;
+
+    /**
+     * The pool of email server connections.
+     */
+    private final TransportPool transportPool;
+
+    /**
+     * True if the transport pool belongs to this queue, and is closed with
+     * it.
+     */
+    private final boolean ownsTransportPool;
+
+    /**
+     * The email server password.
+     */
+    private final String password;
+
+    /**
+     * The rate limiter, or null if sending is not rate limited.
+     */
+    private final TokenBucket rateLimiter;
+
+    /**
+     * The worker threads.
+     */
+    private final ExecutorService workers;
+
+    /**
+     * The mailer used by each worker thread.
+     */
+    private final ThreadLocal<Mailer> mailers;
+
+    /**
+     * The set of observers.
+     */
+    private final Set<MailerObserver> observers;
+
+    /**
+     * The number of messages submitted.
+     */
+    private final AtomicInteger submittedCount;
+
+    /**
+     * The number of messages sent.
+     */
+    private final AtomicInteger sentCount;
+
+    /**
+     * The messages that could not be sent, and why, in order of failure.
+     * Access is synchronized on the map.
+     */
+    private final Map<MailMessage, Exception> failures;
+
+    /**
+     * The last mail server response.
+     */
+    private volatile String lastServerResponse;
+
+    /**
+     * The last send error.
+     */
+    private volatile Exception lastError;
+
+    /**
+     * Constructs a new mail queue with its own transport pool, which keeps
+     * one idle connection per worker.
+     *
+     * @param application the underlying application; may not be null
+     * @param password the email server password; may be null
+     * @param workerCount the number of worker threads; must be positive
+     * @param rateLimiter the rate limiter; may be null, in which case
+     * sending is not rate limited
+     * @throws NullPointerException if {@code application} is null
+     * @throws IllegalArgumentException if {@code workerCount} is not positive
+     */
+    public MailQueue(Application application, String password, int workerCount, TokenBucket rateLimiter) {
+        this(application, createTransportPool(workerCount), true, password, workerCount, rateLimiter);
+    }    // MailQueue()
+
+    /**
+     * Constructs a new mail queue that uses the given transport pool. The
+     * pool is not closed when the queue is closed.
+     *
+     * @param application the underlying application; may not be null
+     * @param transportPool the pool of email server connections; may not be
+     * null
+     * @param password the email server password; may be null
+     * @param workerCount the number of worker threads; must be positive
+     * @param rateLimiter the rate limiter; may be null, in which case
+     * sending is not rate limited
+     * @throws NullPointerException if {@code application} or
+     * {@code transportPool} is null
+     * @throws IllegalArgumentException if {@code workerCount} is not positive
+     */
+    public MailQueue(Application application, TransportPool transportPool, String password, int workerCount, TokenBucket rateLimiter) {
+        this(application, transportPool, false, password, workerCount, rateLimiter);
+    }    // MailQueue()
+
+    /**
+     * Constructs a new mail queue.
+     *
+     * @param application the underlying application; may not be null
+     * @param transportPool the pool of email server connections; may not be
+     * null
+     * @param ownsTransportPool true if the pool is to be closed with the
+     * queue
+     * @param password the email server password; may be null
+     * @param workerCount the number of worker threads; must be positive
+     * @param rateLimiter the rate limiter; may be null
+     * @throws NullPointerException if {@code application} or
+     * {@code transportPool} is null
+     * @throws IllegalArgumentException if {@code workerCount} is not positive
+     */
+    private MailQueue(Application application, TransportPool transportPool, boolean ownsTransportPool, String password, int workerCount, TokenBucket rateLimiter) {
+        if (application == null) {
+            throw new NullPointerException("application may not be null");
+        }    // if
+        if (transportPool == null) {
+            throw new NullPointerException("transportPool may not be null");
+        }    // if
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("workerCount must be positive");
+        }    // if
+
+        this.application = application;
+        this.transportPool = transportPool;
+        this.ownsTransportPool = ownsTransportPool;
+        this.password = password;
+        this.rateLimiter = rateLimiter;
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), createThreadFactory());
+        mailers = ThreadLocal.withInitial(() -> new Mailer(this.application, this.transportPool));
+        observers = new CopyOnWriteArraySet<>();
+        submittedCount = new AtomicInteger();
+        sentCount = new AtomicInteger();
+        failures = new LinkedHashMap<>();
+        lastServerResponse = null;
+        lastError = null;
+        assertInvariant();
+    }    // MailQueue()
+
+    /**
+     * Registers an observer with this queue.
+     *
+     * @param observer the observer to register; may not be null
+     * @throws NullPointerException if observer is null
+     */
+    public void registerObserver(MailerObserver observer) {
+        assertInvariant();
+        if (observer == null) {
+            throw new NullPointerException("observer may not be null");
+        }    // if
+
+        observers.add(observer);
+        assertInvariant();
+    }    // registerObserver()
+
+    /**
+     * Submits a message for sending.
+     *
+     * @param mailMessage the message; may not be null
+     * @throws NullPointerException if {@code mailMessage} is null
+     * @throws IllegalStateException if the queue has been closed
+     */
+    public void submit(MailMessage mailMessage) {
+        assertInvariant();
+        if (mailMessage == null) {
+            throw new NullPointerException("mailMessage may not be null");
+        }    // if
+        if (workers.isShutdown()) {
+            throw new IllegalStateException("the queue has been closed");
+        }    // if
+
+        submittedCount.incrementAndGet();
+        workers.execute(() -> send(mailMessage));
+    }    // submit()
+
+    /**
+     * Submits the given messages for sending, in order.
+     *
+     * @param mailMessages the messages; may not be null, nor contain null
+     * elements
+     * @throws NullPointerException if {@code mailMessages} is null or
+     * contains a null element
+     * @throws IllegalStateException if the queue has been closed
+     */
+    public void submitAll(Collection<MailMessage> mailMessages) {
+        assertInvariant();
+        if (mailMessages == null) {
+            throw new NullPointerException("mailMessages may not be null");
+        }    // if
+        for (MailMessage mailMessage : mailMessages) {
+            if (mailMessage == null) {
+                throw new NullPointerException("mailMessages may not contain null");
+            }    // if
+        }    // for
+
+        for (MailMessage mailMessage : mailMessages) {
+            submit(mailMessage);
+        }    // for
+    }    // submitAll()
+
+    /**
+     * Waits until every submitted message has been sent or has failed, or
+     * until the timeout elapses.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of {@code timeout}; may not be null
+     * @return true if every submitted message has been sent or has failed;
+     * false if the timeout elapsed first
+     * @throws InterruptedException if the thread is interrupted while
+     * waiting
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        assertInvariant();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (getPendingCount() > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }    // if
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }    // while
+        }    // synchronized
+        return true;
+    }    // awaitCompletion()
+
+    /**
+     * Returns the aggregate status of the queue:
+     * {@link MailerStatus#NOT_STARTED} if no message has been submitted,
+     * {@link MailerStatus#SENDING} while any message remains to be sent,
+     * {@link MailerStatus#ERROR} once every message has been sent or has
+     * failed and at least one has failed, and {@link MailerStatus#MAIL_SENT}
+     * once every message has been sent.
+     *
+     * @return the aggregate status of the queue
+     */
+    public MailerStatus getStatus() {
+        assertInvariant();
+        if (submittedCount.get() == 0) {
+            return MailerStatus.NOT_STARTED;
+        }    // if
+        if (getPendingCount() > 0) {
+            return MailerStatus.SENDING;
+        }    // if
+        return (getFailedCount() > 0) ? MailerStatus.ERROR : MailerStatus.MAIL_SENT;
+    }    // getStatus()
+
+    /**
+     * Returns the number of messages submitted.
+     *
+     * @return the number of messages submitted
+     */
+    public int getSubmittedCount() {
+        assertInvariant();
+        return submittedCount.get();
+    }    // getSubmittedCount()
+
+    /**
+     * Returns the number of messages sent.
+     *
+     * @return the number of messages sent
+     */
+    public int getSentCount() {
+        assertInvariant();
+        return sentCount.get();
+    }    // getSentCount()
+
+    /**
+     * Returns the number of messages that could not be sent.
+     *
+     * @return the number of messages that could not be sent
+     */
+    public int getFailedCount() {
+        assertInvariant();
+        synchronized (failures) {
+            return failures.size();
+        }    // synchronized
+    }    // getFailedCount()
+
+    /**
+     * Returns the number of messages submitted but not yet sent or failed.
+     *
+     * @return the number of messages remaining
+     */
+    public int getPendingCount() {
+        assertInvariant();
+        return submittedCount.get() - sentCount.get() - getFailedCount();
+    }    // getPendingCount()
+
+    /**
+     * Returns the messages that could not be sent, each with the exception
+     * that prevented it, in order of failure. The map returned is a copy.
+     * If a message sent in recipient chunks reached some recipients but not
+     * others, its exception is a {@link javax.mail.SendFailedException} whose
+     * valid unsent addresses are the recipients to retry.
+     *
+     * @return the messages that could not be sent
+     */
+    public Map<MailMessage, Exception> getFailures() {
+        assertInvariant();
+        synchronized (failures) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+        }    // synchronized
+    }    // getFailures()
+
+    /**
+     * Returns the last mail server response, or null if no message has yet
+     * been sent.
+     *
+     * @return the last mail server response, or null
+     */
+    public String getLastServerResponse() {
+        assertInvariant();
+        return lastServerResponse;
+    }    // getLastServerResponse()
+
+    /**
+     * Returns the last exception encountered while sending mail, or null if
+     * no message has yet failed.
+     *
+     * @return the last exception encountered, or null
+     */
+    public Exception getLastError() {
+        assertInvariant();
+        return lastError;
+    }    // getLastError()
+
+    /**
+     * Stops accepting messages, waits for every submitted message to be sent
+     * or to fail, and releases the queue's resources. If the thread is
+     * interrupted while waiting, this method returns at once with the
+     * thread's interrupt status set, and the queue continues to drain in the
+     * background. Closing a queue more than once has no effect.
+     */
+    @Override
+    public void close() {
+        assertInvariant();
+        workers.shutdown();
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Keep waiting; a rate-limited queue may take a long time to drain.
+            }    // while
+        } catch (InterruptedException e) {    // try
+            Thread.currentThread().interrupt();
+            return;
+        }    // catch
+        if (ownsTransportPool) {
+            transportPool.close();
+        }    // if
+    }    // close()
+
+    /**
+     * Sends the given message on the current worker thread and records the
+     * result.
+     *
+     * @param mailMessage the message; may not be null
+     */
+    private void send(MailMessage mailMessage) {
+        assert (mailMessage != null);
+
+        Exception error = null;
+        String serverResponse = null;
+        try {
+            if (rateLimiter != null) {
+                rateLimiter.acquire();
+            }    // if
+            Mailer mailer = mailers.get();
+            mailer.send(mailMessage, password);
+            if (mailer.getStatus() == MailerStatus.MAIL_SENT) {
+                serverResponse = mailer.getLastServerResponse();
+            } else {    // if
+                error = mailer.getLastError();
+            }    // else
+        } catch (InterruptedException e) {    // try
+            Thread.currentThread().interrupt();
+            error = e;
+        } catch (RuntimeException e) {    // catch
+            error = e;
+        }    // catch
+
+        if (error == null) {
+            lastServerResponse = serverResponse;
+            sentCount.incrementAndGet();
+        } else {    // if
+            lastError = error;
+            synchronized (failures) {
+                failures.put(mailMessage, error);
+            }    // synchronized
+        }    // else
+        synchronized (this) {
+            notifyAll();
+        }    // synchronized
+        notifyObservers();
+    }    // send()
+
+    /**
+     * Notifies all observers that the queue's progress has changed.
+     */
+    private void notifyObservers() {
+        for (MailerObserver observer : observers) {
+            observer.mailerStatusChanged();
+        }    // for
+    }    // notifyObservers()
+
+    /**
+     * Returns a transport pool suitable for a queue with the given number of
+     * workers.
+     *
+     * @param workerCount the number of worker threads
+     * @return a new transport pool
+     * @throws IllegalArgumentException if {@code workerCount} is not positive
+     */
+    private static TransportPool createTransportPool(int workerCount) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("workerCount must be positive");
+        }    // if
+        return new TransportPool(TransportPool.DEFAULT_IDLE_TIMEOUT_MILLIS, workerCount);
+    }    // createTransportPool()
+
+    /**
+     * Returns a factory for the queue's worker threads. Workers are daemon
+     * threads, so that an abandoned queue does not keep the application
+     * running.
+     *
+     * @return a thread factory
+     */
+    private static ThreadFactory createThreadFactory() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "MailQueue-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }    // createThreadFactory()
+
+    /**
+     * Asserts the correctness of the object's internal state.
+     */
+    private void assertInvariant() {
+        assert (application != null);
+        assert (transportPool != null);
+        assert (workers != null);
+        assert (mailers != null);
+        assert (observers != null);
+        assert (!observers.contains(null));
+        assert (submittedCount != null);
+        assert (sentCount != null);
+        assert (failures != null);
+    }    // assertInvariant()
+
+}    // MailQueue
@@ -21,31 +21,162 @@ package io.github.waynem77.bscmail.mail;
 
 import io.github.waynem77.bscmail.Application;
 import io.github.waynem77.bscmail.persistent.EmailServerProperties;
+import com.sun.mail.smtp.SMTPSendFailedException;
 import com.sun.mail.smtp.SMTPTransport;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Properties;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.mail.Address;
 import javax.mail.Message;
 import javax.mail.MessagingException;
-import javax.mail.NoSuchProviderException;
+import javax.mail.SendFailedException;
 import javax.mail.Session;
-import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
 
 /**
  * Sends an email message.
  *
+ * A Mailer sends messages in one of two ways. {@link #send(MailMessage, String)}
+ * sends a single message on the calling thread, and reports its progress
+ * through the mailer's status and observers. {@link #sendAsync(MailMessage, String)}
+ * and {@link #sendAllAsync(Collection, String)} send on the mailer's executor
+ * and report each message's outcome in a {@link SendResult}; they do not
+ * touch the mailer's status, so any number of them may be in flight at once.
+ *
+ * A message to be sent more than once, e.g. retried or resent to further
+ * recipients, may first be {@link #prepare(MailMessage) prepared}, so that it
+ * is encoded only once; {@link #send(PreparedMessage, String)} and
+ * {@link #sendAsync(PreparedMessage, String)} send prepared messages.
+ *
  * @author Wayne Miller (waynem77@yahoo.com)
  * @since 3.4
  */
 public class Mailer {
 
+    /**
+     * The number of threads used by the default executor for asynchronous
+     * sends.
+     */
+    public static final int DEFAULT_ASYNC_THREADS = TransportPool.DEFAULT_MAXIMUM_IDLE;
+
+    /**
+     * The default maximum number of recipients per SMTP transaction.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+
+    /**
+     * The default executor for asynchronous sends.
+     */
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newFixedThreadPool(DEFAULT_ASYNC_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "Mailer-async");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Records the time taken to reach each status while sending a message.
+     */
+    private static final class StageClock {
+
+        /**
+         * The time taken to reach each status.
+         */
+        private final Map<MailerStatus, Long> stageNanos;
+
+        /**
+         * The listener informed as each intermediate status is reached.
+         */
+        private final Consumer<MailerStatus> listener;
+
+        /**
+         * The time, as given by {@link System#nanoTime()}, at which the last
+         * status was reached.
+         */
+        private long last;
+
+        /**
+         * Constructs a new stage clock, started now.
+         *
+         * @param listener the listener informed as each intermediate status
+         * is reached; may not be null
+         */
+        StageClock(Consumer<MailerStatus> listener) {
+            assert (listener != null);
+            stageNanos = new EnumMap<>(MailerStatus.class);
+            this.listener = listener;
+            last = System.nanoTime();
+        }    // StageClock()
+
+        /**
+         * Records that the given intermediate status has been reached, and
+         * informs the listener.
+         *
+         * @param status the status; may not be null
+         */
+        void reached(MailerStatus status) {
+            finished(status);
+            listener.accept(status);
+        }    // reached()
+
+        /**
+         * Records that the given final status has been reached. The listener
+         * is not informed.
+         *
+         * @param status the status; may not be null
+         */
+        void finished(MailerStatus status) {
+            assert (status != null);
+            long now = System.nanoTime();
+            stageNanos.put(status, now - last);
+            last = now;
+        }    // finished()
+
+    }    // StageClock
+
     /**
      * The application.
      */
     private final Application application;
 
+    /**
+     * The pool of email server connections.
+     */
+    private final TransportPool transportPool;
+
+    /**
+     * The executor for asynchronous sends.
+     */
+    private final Executor executor;
+
+    /**
+     * The maximum number of recipients per SMTP transaction.
+     */
+    private volatile int chunkSize;
+
+    /**
+     * The metrics to which each send is recorded.
+     */
+    private volatile MailerMetrics metrics;
+
     /**
      * The set of observers.
      */
@@ -54,34 +185,86 @@ public class Mailer {
     /**
      * The mailer's status.
      */
-    private MailerStatus status;
+    private volatile MailerStatus status;
 
     /**
      * The last mail server response.
      */
-    private String lastServerResponse;
+    private volatile String lastServerResponse;
 
     /**
      * The last send error.
      */
-    private Exception lastError;
+    private volatile Exception lastError;
 
     /**
-     * Constructs a new Mailer using the given application.
+     * The number of messages sent.
+     */
+    private final AtomicLong sentCount;
+
+    /**
+     * The number of messages that could not be sent.
+     */
+    private final AtomicLong errorCount;
+
+    /**
+     * Constructs a new Mailer using the given application. The mailer
+     * connects to the email server through the
+     * {@link TransportPool#getSharedPool() shared transport pool}.
      *
      * @param application the underlying application; may not be null
      * @throws NullPointerException if application is null
      */
     public Mailer(Application application) {
+        this(application, TransportPool.getSharedPool());
+    }    // Mailer()
+
+    /**
+     * Constructs a new Mailer using the given application and transport pool.
+     *
+     * @param application the underlying application; may not be null
+     * @param transportPool the pool of email server connections; may not be
+     * null
+     * @throws NullPointerException if either parameter is null
+     * @since 4.0
+     */
+    public Mailer(Application application, TransportPool transportPool) {
+        this(application, transportPool, DEFAULT_EXECUTOR);
+    }    // Mailer()
+
+    /**
+     * Constructs a new Mailer using the given application, transport pool,
+     * and executor for asynchronous sends.
+     *
+     * @param application the underlying application; may not be null
+     * @param transportPool the pool of email server connections; may not be
+     * null
+     * @param executor the executor for asynchronous sends; may not be null
+     * @throws NullPointerException if any parameter is null
+     * @since 4.0
+     */
+    public Mailer(Application application, TransportPool transportPool, Executor executor) {
         if (application == null) {
             throw new NullPointerException("application may not be null");
         }    // if
+        if (transportPool == null) {
+            throw new NullPointerException("transportPool may not be null");
+        }    // if
+        if (executor == null) {
+            throw new NullPointerException("executor may not be null");
+        }    // if
 
         this.application = application;
-        observers = new HashSet<>();
+        this.transportPool = transportPool;
+        this.executor = executor;
+        chunkSize = DEFAULT_CHUNK_SIZE;
+        metrics = MailerMetrics.getSharedMetrics();
+        observers = new CopyOnWriteArraySet<>();
         status = MailerStatus.NOT_STARTED;
         lastServerResponse = null;
         lastError = null;
+        sentCount = new AtomicLong();
+        errorCount = new AtomicLong();
         assertInvariant();
     }    // Mailer()
 
@@ -104,6 +287,9 @@ public class Mailer {
     /**
      * Notifies all observers that the mailer's status has changed. Observers
      * should get the status using the {@link #getStatus()} method.
+     * Observers are notified on the sending thread, and so should return
+     * quickly; an observer that updates a user interface should hand the
+     * update off to the interface's own thread.
      */
     public void notifyObservers() {
         assertInvariant();
@@ -113,7 +299,9 @@ public class Mailer {
     }    // notifyObserver()
 
     /**
-     * Sends an email.
+     * Sends an email. The connection to the email server is borrowed from the
+     * mailer's transport pool and returned to it afterward, so that
+     * successive emails reuse the same authenticated connection.
      *
      * @param mailMessage the email message; may not be null
      * @param password the email server password; may be null
@@ -125,31 +313,221 @@ public class Mailer {
             throw new NullPointerException("mailMessage may not be null");
         }     // if
 
-        setStatusAndNotify(MailerStatus.STARTED);
+        finishSend(send(mailMessage, null, password, this::setStatusAndNotify));
+    }    // send()
+
+    /**
+     * Sends a prepared email, as {@link #send(MailMessage, String)} does,
+     * except that the message is not built and encoded again; the prepared
+     * message's cached bytes are sent to its envelope recipients.
+     *
+     * @param preparedMessage the prepared message; may not be null
+     * @param password the email server password; may be null
+     * @throws NullPointerException if {@code preparedMessage} is null
+     * @since 4.0
+     */
+    public void send(PreparedMessage preparedMessage, String password) {
+        assertInvariant();
+        if (preparedMessage == null) {
+            throw new NullPointerException("preparedMessage may not be null");
+        }    // if
+
+        finishSend(send(preparedMessage.getMailMessage(), preparedMessage, password, this::setStatusAndNotify));
+    }    // send()
+
+    /**
+     * Sends an email asynchronously on the mailer's executor. The mailer's
+     * status is not affected, and observers are not notified.
+     *
+     * @param mailMessage the email message; may not be null
+     * @param password the email server password; may be null
+     * @return a future completed with the result of sending the message; the
+     * future is completed normally even if the message cannot be sent
+     * @throws NullPointerException if {@code mailMessage} is null
+     * @since 4.0
+     */
+    public CompletableFuture<SendResult> sendAsync(MailMessage mailMessage, String password) {
+        assertInvariant();
+        if (mailMessage == null) {
+            throw new NullPointerException("mailMessage may not be null");
+        }    // if
+
+        return CompletableFuture.supplyAsync(() -> send(mailMessage, null, password, status -> { }), executor);
+    }    // sendAsync()
+
+    /**
+     * Sends a prepared email asynchronously on the mailer's executor, as
+     * {@link #sendAsync(MailMessage, String)} does, except that the message is
+     * not built and encoded again.
+     *
+     * @param preparedMessage the prepared message; may not be null
+     * @param password the email server password; may be null
+     * @return a future completed with the result of sending the message; the
+     * future is completed normally even if the message cannot be sent
+     * @throws NullPointerException if {@code preparedMessage} is null
+     * @since 4.0
+     */
+    public CompletableFuture<SendResult> sendAsync(PreparedMessage preparedMessage, String password) {
+        assertInvariant();
+        if (preparedMessage == null) {
+            throw new NullPointerException("preparedMessage may not be null");
+        }    // if
+
+        return CompletableFuture.supplyAsync(() -> send(preparedMessage.getMailMessage(), preparedMessage, password, status -> { }), executor);
+    }    // sendAsync()
+
+    /**
+     * Builds and encodes an email once, for sending any number of times. The
+     * prepared message is the message {@link #send(MailMessage, String)}
+     * would send. This method does not affect the mailer's status and does
+     * not notify observers.
+     *
+     * @param mailMessage the email message; may not be null
+     * @return the prepared message
+     * @throws NullPointerException if {@code mailMessage} is null
+     * @throws MessagingException if the message cannot be created
+     * @throws IOException if an I/O error occurs
+     * @since 4.0
+     */
+    public PreparedMessage prepare(MailMessage mailMessage) throws MessagingException, IOException {
+        assertInvariant();
+        if (mailMessage == null) {
+            throw new NullPointerException("mailMessage may not be null");
+        }    // if
 
         EmailServerProperties serverProperties = application.getEmailServerProperties();
+        Session session = transportPool.getSession(serverProperties);
+        return new PreparedMessage(mailMessage, createMimeMessage(serverProperties, mailMessage, application.getApplicationName(), session), session);
+    }    // prepare()
 
-        Properties sessionProperties = createSessionProperties(serverProperties);
-        setStatusAndNotify(MailerStatus.CREATED_PROPERTIES);
+    /**
+     * Sends the given emails asynchronously on the mailer's executor. The
+     * mailer's status is not affected, and observers are not notified.
+     *
+     * @param mailMessages the email messages; may not be null, nor contain
+     * null elements
+     * @param password the email server password; may be null
+     * @return a future completed, once every message has been sent or has
+     * failed, with the results in the order of {@code mailMessages}
+     * @throws NullPointerException if {@code mailMessages} is null or contains
+     * a null element
+     * @since 4.0
+     */
+    public CompletableFuture<List<SendResult>> sendAllAsync(Collection<MailMessage> mailMessages, String password) {
+        assertInvariant();
+        if (mailMessages == null) {
+            throw new NullPointerException("mailMessages may not be null");
+        }    // if
+        if (mailMessages.contains(null)) {
+            throw new NullPointerException("mailMessages may not contain null");
+        }    // if
 
-        Session session = Session.getInstance(sessionProperties, null);
-        setStatusAndNotify(MailerStatus.CREATED_SESSION);
+        List<CompletableFuture<SendResult>> futures = new ArrayList<>(mailMessages.size());
+        for (MailMessage mailMessage : mailMessages) {
+            futures.add(sendAsync(mailMessage, password));
+        }    // for
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(ignored -> {
+            List<SendResult> results = new ArrayList<>(futures.size());
+            for (CompletableFuture<SendResult> future : futures) {
+                results.add(future.join());
+            }    // for
+            return results;
+        });
+    }    // sendAllAsync()
 
-        try {
-            Message mimeMessage = createMimeMessage(serverProperties, mailMessage, application.getApplicationName(), session);
-            setStatusAndNotify(MailerStatus.CREATED_MESSAGE);
-
-            try (SMTPTransport transport = createTransport(serverProperties, session, password)) {
-                setStatusAndNotify(MailerStatus.SENDING);
-                transport.sendMessage(mimeMessage, mimeMessage.getAllRecipients());
-                lastServerResponse = transport.getLastServerResponse();
-                setStatusAndNotify(MailerStatus.MAIL_SENT);
-            }    // try
-        } catch (Exception e) {
-            lastError = e;
-            setStatusAndNotify(MailerStatus.ERROR);
-        }
-    }    // send()
+    /**
+     * Writes an email to the given output stream in RFC 822 format, instead of
+     * sending it. The message written is the same as that which
+     * {@link #send(MailMessage, String)} would send, except that the "Bcc"
+     * header is retained so that the written message keeps all its recipients.
+     * This method does not affect the mailer's status and does not notify
+     * observers.
+     *
+     * @param mailMessage the email message; may not be null
+     * @param outputStream the output stream; may not be null
+     * @throws NullPointerException if either parameter is null
+     * @throws MessagingException if the message cannot be created
+     * @throws IOException if an I/O error occurs
+     * @since 4.0
+     */
+    public void writeMessage(MailMessage mailMessage, OutputStream outputStream) throws MessagingException, IOException {
+        assertInvariant();
+        if (mailMessage == null) {
+            throw new NullPointerException("mailMessage may not be null");
+        }    // if
+        if (outputStream == null) {
+            throw new NullPointerException("outputStream may not be null");
+        }    // if
+
+        EmailServerProperties serverProperties = application.getEmailServerProperties();
+        Session session = transportPool.getSession(serverProperties);
+        MimeMessage mimeMessage = createMimeMessage(serverProperties, mailMessage, application.getApplicationName(), session);
+        mimeMessage.writeTo(outputStream);
+    }    // writeMessage()
+
+    /**
+     * Sets the maximum number of recipients per SMTP transaction. A message
+     * with more recipients is sent in chunks of at most this many recipients,
+     * in parallel over pooled connections. The chunks all carry the same
+     * message, encoded once; in particular, "Bcc" recipients are never revealed,
+     * since the "Bcc" header is not transmitted.
+     *
+     * @param chunkSize the maximum number of recipients per transaction; must
+     * be positive
+     * @throws IllegalArgumentException if {@code chunkSize} is not positive
+     * @since 4.0
+     */
+    public void setChunkSize(int chunkSize) {
+        assertInvariant();
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }    // if
+
+        this.chunkSize = chunkSize;
+        assertInvariant();
+    }    // setChunkSize()
+
+    /**
+     * Returns the maximum number of recipients per SMTP transaction.
+     *
+     * @return the maximum number of recipients per transaction
+     * @since 4.0
+     */
+    public int getChunkSize() {
+        assertInvariant();
+        return chunkSize;
+    }    // getChunkSize()
+
+    /**
+     * Sets the metrics to which the mailer records each send, whether made
+     * by {@link #send(MailMessage, String)} or asynchronously. By default, a
+     * mailer records to the {@link MailerMetrics#getSharedMetrics() shared
+     * metrics}.
+     *
+     * @param metrics the metrics; may not be null
+     * @throws NullPointerException if {@code metrics} is null
+     * @since 4.0
+     */
+    public void setMetrics(MailerMetrics metrics) {
+        assertInvariant();
+        if (metrics == null) {
+            throw new NullPointerException("metrics may not be null");
+        }    // if
+
+        this.metrics = metrics;
+        assertInvariant();
+    }    // setMetrics()
+
+    /**
+     * Returns the metrics to which the mailer records each send.
+     *
+     * @return the metrics
+     * @since 4.0
+     */
+    public MailerMetrics getMetrics() {
+        assertInvariant();
+        return metrics;
+    }    // getMetrics()
 
     /**
      * Returns the Mailer's status.
@@ -191,30 +569,387 @@ public class Mailer {
     }    // getLastError()
 
     /**
-     * Returns mail session properties based on the given EmailServerProperties
-     * object.
+     * Returns the number of messages sent by {@link #send(MailMessage, String)}
+     * and {@link #send(PreparedMessage, String)}. The count is updated before
+     * observers are notified of the final status. Asynchronous sends are not
+     * counted.
+     *
+     * @return the number of messages sent
+     * @since 4.0
+     */
+    public long getSentCount() {
+        assertInvariant();
+        return sentCount.get();
+    }    // getSentCount()
+
+    /**
+     * Returns the number of messages that {@link #send(MailMessage, String)}
+     * and {@link #send(PreparedMessage, String)} could not send. The count is
+     * updated before observers are notified of the final status.
+     * Asynchronous sends are not counted.
+     *
+     * @return the number of messages that could not be sent
+     * @since 4.0
+     */
+    public long getErrorCount() {
+        assertInvariant();
+        return errorCount.get();
+    }    // getErrorCount()
+
+    /**
+     * Records the result of a send made by {@link #send(MailMessage, String)}
+     * or {@link #send(PreparedMessage, String)}, and notifies observers of the
+     * final status.
+     *
+     * @param result the result; may not be null
+     */
+    private void finishSend(SendResult result) {
+        assert (result != null);
+
+        if (result.isSent()) {
+            lastServerResponse = result.getServerResponse();
+            sentCount.incrementAndGet();
+        } else {    // if
+            lastError = result.getError();
+            errorCount.incrementAndGet();
+        }    // else
+        setStatusAndNotify(result.getStatus());
+    }    // finishSend()
+
+    /**
+     * Sends an email on the calling thread, informing the given listener as
+     * each intermediate status is reached. If a prepared message is given, it
+     * is sent as it is; otherwise, the message is built from the mail
+     * message. The final status is not passed to the listener; it is in the
+     * result. The result is recorded to the
+     * mailer's metrics; otherwise, this method does not touch the mailer's
+     * mutable state.
+     *
+     * @param mailMessage the email message; may not be null
+     * @param preparedMessage the prepared message, or null to build the
+     * message from {@code mailMessage}
+     * @param password the email server password; may be null
+     * @param listener the listener; may not be null
+     * @return the result of sending the message
+     */
+    private SendResult send(MailMessage mailMessage, PreparedMessage preparedMessage, String password, Consumer<MailerStatus> listener) {
+        assert (mailMessage != null);
+        assert (listener != null);
+
+        StageClock clock = new StageClock(listener);
+        clock.reached(MailerStatus.STARTED);
+        SendResult result;
+        Address[] recipients = null;
+        try {
+            EmailServerProperties serverProperties = application.getEmailServerProperties();
+            // The pool holds the session properties, isolated per server.
+            clock.reached(MailerStatus.CREATED_PROPERTIES);
+
+            Session session = transportPool.getSession(serverProperties);
+            clock.reached(MailerStatus.CREATED_SESSION);
+
+            MimeMessage mimeMessage;
+            if (preparedMessage == null) {
+                mimeMessage = createMimeMessage(serverProperties, mailMessage, application.getApplicationName(), session);
+                recipients = mimeMessage.getAllRecipients();
+            } else {    // if
+                mimeMessage = preparedMessage.getMimeMessage();
+                recipients = preparedMessage.getRecipientArray();
+            }    // else
+            clock.reached(MailerStatus.CREATED_MESSAGE);
+
+            int currentChunkSize = chunkSize;
+            String serverResponse;
+            if ((recipients == null) || (recipients.length <= currentChunkSize)) {
+                try (TransportPool.Lease lease = transportPool.acquire(serverProperties, password)) {
+                    clock.reached(MailerStatus.SENDING);
+                    serverResponse = sendOverLease(lease, mimeMessage, recipients);
+                }    // try
+            } else {    // if
+                if (preparedMessage == null) {
+                    // Every chunk shares the message, encoded once.
+                    mimeMessage = new PreparedMessage(mailMessage, mimeMessage, session).getMimeMessage();
+                }    // if
+                clock.reached(MailerStatus.SENDING);
+                serverResponse = sendInChunks(serverProperties, password, mimeMessage, recipients, currentChunkSize);
+            }    // else
+            clock.finished(MailerStatus.MAIL_SENT);
+            result = new SendResult(mailMessage, MailerStatus.MAIL_SENT, serverResponse, null, clock.stageNanos);
+        } catch (Exception e) {    // try
+            clock.finished(MailerStatus.ERROR);
+            result = new SendResult(mailMessage, MailerStatus.ERROR, null, e, clock.stageNanos, getFailedRecipients(e, recipients));
+        }    // catch
+        metrics.record(result);
+        return result;
+    }    // send()
+
+    /**
+     * Sends an encoded MIME message, such as one read back from a file, to
+     * the given recipients, in recipient chunks if there are more recipients
+     * than the chunk size, as {@link #send(MailMessage, String)} does. This
+     * method does not affect the mailer's status, does not notify observers,
+     * and does not record metrics.
+     *
+     * @param mimeMessage the message, safe to send from several threads at
+     * once; may not be null
+     * @param recipients the recipients; may not be null
+     * @param password the email server password; may be null
+     * @throws MessagingException if the message cannot be sent to every
+     * recipient; if only some recipient chunks could not be sent, the
+     * exception is a {@link SendFailedException} whose valid unsent and
+     * invalid addresses are the recipients those chunks did not reach
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * for chunks to be sent
+     */
+    void sendEncoded(MimeMessage mimeMessage, Address[] recipients, String password) throws MessagingException, InterruptedException {
+        assertInvariant();
+        assert (mimeMessage != null);
+        assert (recipients != null);
+
+        EmailServerProperties serverProperties = application.getEmailServerProperties();
+        int currentChunkSize = chunkSize;
+        if (recipients.length <= currentChunkSize) {
+            try (TransportPool.Lease lease = transportPool.acquire(serverProperties, password)) {
+                sendOverLease(lease, mimeMessage, recipients);
+            }    // try
+        } else {    // if
+            sendInChunks(serverProperties, password, mimeMessage, recipients, currentChunkSize);
+        }    // else
+    }    // sendEncoded()
+
+    /**
+     * Returns the recipients that a message which failed with the given error
+     * may not have reached. For a {@link SendFailedException} that lists
+     * unsent or invalid addresses, these are those addresses; otherwise, they
+     * are all the given recipients.
+     *
+     * @param error the error; may not be null
+     * @param recipients the message's recipients, or null if they are not
+     * known
+     * @return the recipients the message may not have reached
+     */
+    static List<Address> getFailedRecipients(Exception error, Address[] recipients) {
+        assert (error != null);
+
+        List<Address> failedRecipients = new ArrayList<>();
+        if (error instanceof SendFailedException) {
+            SendFailedException sendFailedException = (SendFailedException)error;
+            if (sendFailedException.getValidUnsentAddresses() != null) {
+                failedRecipients.addAll(Arrays.asList(sendFailedException.getValidUnsentAddresses()));
+            }    // if
+            if (sendFailedException.getInvalidAddresses() != null) {
+                failedRecipients.addAll(Arrays.asList(sendFailedException.getInvalidAddresses()));
+            }    // if
+        }    // if
+        if (failedRecipients.isEmpty() && (recipients != null)) {
+            failedRecipients.addAll(Arrays.asList(recipients));
+        }    // if
+        return failedRecipients;
+    }    // getFailedRecipients()
+
+    /**
+     * Sends the given message to the given recipients over the given lease's
+     * connection, and returns the server's response. If sending fails, the
+     * lease is invalidated.
+     *
+     * @param lease the lease; may not be null
+     * @param mimeMessage the message; may not be null
+     * @param recipients the recipients; may be null
+     * @return the server's response
+     * @throws MessagingException if the message cannot be sent
+     */
+    private static String sendOverLease(TransportPool.Lease lease, Message mimeMessage, Address[] recipients) throws MessagingException {
+        assert (lease != null);
+        assert (mimeMessage != null);
+
+        SMTPTransport transport = lease.getTransport();
+        try {
+            transport.sendMessage(mimeMessage, recipients);
+        } catch (MessagingException e) {    // try
+            lease.invalidate();
+            throw e;
+        }    // catch
+        return transport.getLastServerResponse();
+    }    // sendOverLease()
+
+    /**
+     * Sends the given message to the given recipients in chunks of at most
+     * the given size, in parallel over pooled connections, and returns the
+     * server's response to the last chunk.
+     *
+     * The calling thread sends chunks itself, and helpers on the mailer's
+     * executor send chunks alongside it. A chunk is claimed only by a thread
+     * that is ready to send it, so the caller never waits for a helper that
+     * has not started; this keeps chunking safe even when the caller is
+     * itself running on the executor.
      *
      * @param serverProperties the email server properties; may not be null
-     * @return mail session properties based on serverProperties
+     * @param password the email server password; may be null
+     * @param mimeMessage the message, safe to send from several threads at
+     * once, such as a {@link PreparedMessage}'s; may not be null
+     * @param recipients the recipients; may not be null
+     * @param chunkSize the maximum number of recipients per chunk; must be
+     * positive
+     * @return the server's response to the last chunk
+     * @throws MessagingException if any chunk cannot be sent; the other
+     * chunks may have been sent. The exception is a
+     * {@link SendFailedException} that merges the addresses of every chunk:
+     * its valid sent addresses are the recipients of the chunks sent, and
+     * those a failed chunk reports as sent; its valid unsent and invalid
+     * addresses are those the failed chunks report, or all their recipients
+     * if they report none. If the error chosen to represent the failures, as
+     * described at {@link #getRepresentativeError(List)}, is an
+     * {@link SMTPSendFailedException}, so is the exception, with the same
+     * command and return code.
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * for the helpers
      */
-    private Properties createSessionProperties(EmailServerProperties serverProperties) {
+    private String sendInChunks(EmailServerProperties serverProperties, String password, MimeMessage mimeMessage, Address[] recipients, int chunkSize) throws MessagingException, InterruptedException {
         assert (serverProperties != null);
+        assert (mimeMessage != null);
+        assert (recipients != null);
+        assert (chunkSize > 0);
+
+        int chunkCount = (recipients.length + chunkSize - 1) / chunkSize;
+        String[] responses = new String[chunkCount];
+        Exception[] errors = new Exception[chunkCount];
+        AtomicInteger nextChunk = new AtomicInteger();
+        CountDownLatch chunksDone = new CountDownLatch(chunkCount);
+        Runnable sender = () -> {
+            int chunk;
+            while ((chunk = nextChunk.getAndIncrement()) < chunkCount) {
+                int from = chunk * chunkSize;
+                Address[] chunkRecipients = Arrays.copyOfRange(recipients, from, Math.min(from + chunkSize, recipients.length));
+                try (TransportPool.Lease lease = transportPool.acquire(serverProperties, password)) {
+                    responses[chunk] = sendOverLease(lease, mimeMessage, chunkRecipients);
+                } catch (Exception e) {    // try
+                    errors[chunk] = e;
+                } finally {    // catch
+                    chunksDone.countDown();
+                }    // finally
+            }    // while
+        };
 
-        String host = serverProperties.getHostname();
-        String port = serverProperties.getPort();
+        int helpers = Math.min(chunkCount, DEFAULT_ASYNC_THREADS) - 1;
+        try {
+            for (int i = 0; i < helpers; ++i) {
+                executor.execute(sender);
+            }    // for
+        } catch (RejectedExecutionException e) {    // try
+            // The caller sends the remaining chunks itself.
+        }    // catch
+        sender.run();
+        chunksDone.await();
 
-        Properties properties = System.getProperties();
-        properties.put("mail.smtp.host", host);
-        properties.put("mail.smtp.auth", "true");
-        properties.put("mail.smtp.port", port);
-        properties.put("mail.smtp.starttls.enable", "true");
-        properties.put("mail.smtp.ssl.trust", host);
+        List<Exception> chunkErrors = new ArrayList<>();
+        List<Address> sent = new ArrayList<>();
+        List<Address> unsent = new ArrayList<>();
+        List<Address> invalid = new ArrayList<>();
+        for (int chunk = 0; chunk < chunkCount; ++chunk) {
+            int from = chunk * chunkSize;
+            List<Address> chunkRecipients = Arrays.asList(recipients).subList(from, Math.min(from + chunkSize, recipients.length));
+            Exception error = errors[chunk];
+            if (error == null) {
+                sent.addAll(chunkRecipients);
+            } else if (reportsAddresses(error)) {    // if
+                chunkErrors.add(error);
+                SendFailedException sendFailedException = (SendFailedException)error;
+                addAll(sent, sendFailedException.getValidSentAddresses());
+                addAll(unsent, sendFailedException.getValidUnsentAddresses());
+                addAll(invalid, sendFailedException.getInvalidAddresses());
+            } else {    // else if
+                chunkErrors.add(error);
+                unsent.addAll(chunkRecipients);
+            }    // else
+        }    // for
+        if (chunkErrors.isEmpty()) {
+            return responses[chunkCount - 1];
+        }    // if
 
-        return properties;
-    }    // createSessionProperties()
+        String message = chunkErrors.size() + " of " + chunkCount + " recipient chunks could not be sent";
+        Exception error = getRepresentativeError(chunkErrors);
+        Address[] sentArray = sent.toArray(new Address[sent.size()]);
+        Address[] unsentArray = unsent.toArray(new Address[unsent.size()]);
+        Address[] invalidArray = invalid.toArray(new Address[invalid.size()]);
+        if (error instanceof SMTPSendFailedException) {
+            SMTPSendFailedException smtpError = (SMTPSendFailedException)error;
+            throw new SMTPSendFailedException(smtpError.getCommand(), smtpError.getReturnCode(), message, error, sentArray, unsentArray, invalidArray);
+        }    // if
+        throw new SendFailedException(message, error, sentArray, unsentArray, invalidArray);
+    }    // sendInChunks()
 
     /**
-     * Returns a MIME message created from the given arguments.
+     * Returns the error that best represents the given chunk errors: the
+     * first that is not {@link #isPermanent(Exception) permanent}, so that a
+     * message is retried if any of its chunks may yet be sent, or the first
+     * if every error is permanent.
+     *
+     * @param errors the errors; may not be null or empty
+     * @return the representative error
+     */
+    private static Exception getRepresentativeError(List<Exception> errors) {
+        assert (errors != null);
+        assert (!errors.isEmpty());
+        for (Exception error : errors) {
+            if (!isPermanent(error)) {
+                return error;
+            }    // if
+        }    // for
+        return errors.get(0);
+    }    // getRepresentativeError()
+
+    /**
+     * Returns true if the given error means that resending the message is
+     * pointless; that is, if the email server rejected it with a permanent
+     * (5xx) error.
+     *
+     * @param error the error; may not be null
+     * @return true if the error is permanent; false otherwise
+     */
+    static boolean isPermanent(Exception error) {
+        assert (error != null);
+        return (error instanceof SMTPSendFailedException)
+                && (((SMTPSendFailedException)error).getReturnCode() >= 500);
+    }    // isPermanent()
+
+    /**
+     * Returns true if the given error is a {@link SendFailedException} that
+     * reports which addresses were sent, unsent, or invalid.
+     *
+     * @param error the error; may not be null
+     * @return true if the error reports addresses; false otherwise
+     */
+    private static boolean reportsAddresses(Exception error) {
+        assert (error != null);
+        if (!(error instanceof SendFailedException)) {
+            return false;
+        }    // if
+        SendFailedException sendFailedException = (SendFailedException)error;
+        return (sendFailedException.getValidSentAddresses() != null)
+                || (sendFailedException.getValidUnsentAddresses() != null)
+                || (sendFailedException.getInvalidAddresses() != null);
+    }    // reportsAddresses()
+
+    /**
+     * Adds the given addresses, if any, to the given list.
+     *
+     * @param list the list; may not be null
+     * @param addresses the addresses; may be null
+     */
+    private static void addAll(List<Address> list, Address[] addresses) {
+        assert (list != null);
+        if (addresses != null) {
+            list.addAll(Arrays.asList(addresses));
+        }    // if
+    }    // addAll()
+
+    /**
+     * Returns a MIME message created from the given arguments. If the mail
+     * message has an HTML body, the MIME message is multipart/alternative,
+     * with the plain text part first and the HTML part second. Recipient
+     * addresses are taken from the application's address cache where
+     * possible.
+     *
      * @param serverProperties the email server properties; may not be null
      * @param mailMessage the mail message; may not be null
      * @param mailerName the name of the mailing application; may not be null
@@ -233,42 +968,38 @@ public class Mailer {
         String bccAddresses = mailMessage.getBccAddresses();
         String subject = mailMessage.getSubject();
         String body = mailMessage.getBody();
+        String htmlBody = mailMessage.getHtmlBody();
+        AddressCache addressCache = application.getAddressCache();
 
         MimeMessage mimeMessage = new MimeMessage(session);
-        mimeMessage.setRecipients(Message.RecipientType.TO, InternetAddress.parse(toAddresses, false));
-        mimeMessage.setRecipients(Message.RecipientType.CC, InternetAddress.parse(ccAddresses, false));
-        mimeMessage.setRecipients(Message.RecipientType.BCC, InternetAddress.parse(bccAddresses, false));
+        if (toAddresses != null) {
+            mimeMessage.setRecipients(Message.RecipientType.TO, addressCache.parse(toAddresses));
+        }    // if
+        if (ccAddresses != null) {
+            mimeMessage.setRecipients(Message.RecipientType.CC, addressCache.parse(ccAddresses));
+        }    // if
+        if (bccAddresses != null) {
+            mimeMessage.setRecipients(Message.RecipientType.BCC, addressCache.parse(bccAddresses));
+        }    // if
         mimeMessage.setSubject(subject);
-        mimeMessage.setText(body);
+        if (htmlBody == null) {
+            mimeMessage.setText(body);
+        } else {    // if
+            MimeBodyPart textPart = new MimeBodyPart();
+            textPart.setText(body, "UTF-8");
+            MimeBodyPart htmlPart = new MimeBodyPart();
+            htmlPart.setText(htmlBody, "UTF-8", "html");
+            MimeMultipart multipart = new MimeMultipart("alternative");
+            multipart.addBodyPart(textPart);
+            multipart.addBodyPart(htmlPart);
+            mimeMessage.setContent(multipart);
+        }    // else
         mimeMessage.setHeader("X-Mailer", mailerName);
         mimeMessage.setSentDate(new Date());
 
         return mimeMessage;
     }    // createMimeMessage()
 
-    /**
-     * Creates a mail transport from the given arguments. The transport is
-     * connected to the email server.
-     *
-     * @param serverProperties the email server properties; may not be null
-     * @param session the mail session; may not be null
-     * @param password the email server password; may not be null
-     * @return a mail transport
-     * @throws MessagingException if the transport is unable to connect to the
-     * mail server
-     * @throws NoSuchProviderException if a transport cannot be created
-     */
-    private SMTPTransport createTransport(EmailServerProperties serverProperties, Session session, String password) throws MessagingException, NoSuchProviderException {
-        assert (serverProperties != null);
-        assert (session != null);
-
-        String host = serverProperties.getHostname();
-        String fromAddress = serverProperties.getUsername();
-
-        SMTPTransport transport = (SMTPTransport)session.getTransport("smtp");
-        transport.connect(host, fromAddress, password);
-        return transport;
-    }
     /**
      * Sets the status of the mailer and notifies its observers.
      * @param status the status to set; may not be null
@@ -287,7 +1018,13 @@ public class Mailer {
         assert (application != null);
         assert (observers != null);
         assert (! observers.contains(null));
+        assert (transportPool != null);
+        assert (executor != null);
+        assert (chunkSize > 0);
+        assert (metrics != null);
         assert (status != null);
+        assert (sentCount != null);
+        assert (errorCount != null);
     }    // assertInvariant()
 
 }    // Mailer
@@ -0,0 +1,300 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Records how long each stage of sending email takes, and how many messages
+ * are sent and fail. Each {@link SendResult} recorded contributes the time
+ * taken to reach each of the {@link #STAGES stages} it passed through to that
+ * stage's {@link LatencyHistogram}, and its total time to a histogram of its
+ * own. The stages show where time goes: {@link MailerStatus#CREATED_MESSAGE}
+ * is building the MIME message, {@link MailerStatus#SENDING} is obtaining an
+ * authenticated connection, and {@link MailerStatus#MAIL_SENT} is the server
+ * accepting the message.
+ *
+ * Every {@link Mailer} records to the {@link #getSharedMetrics() shared
+ * metrics} unless given metrics of its own. The shared metrics are published
+ * through JMX under the name {@link #OBJECT_NAME}.
+ *
+ * A MailerMetrics may be recorded to and read from any number of threads at
+ * once.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public class MailerMetrics implements MailerMetricsMBean {
+
+    /**
+     * The JMX object name of the shared metrics.
+     */
+    public static final String OBJECT_NAME = "io.github.waynem77.bscmail:type=MailerMetrics";
+
+    /**
+     * The stages whose latency is recorded, in the order a send passes
+     * through them.
+     */
+    public static final List<MailerStatus> STAGES = Collections.unmodifiableList(Arrays.asList(
+            MailerStatus.CREATED_PROPERTIES,
+            MailerStatus.CREATED_SESSION,
+            MailerStatus.CREATED_MESSAGE,
+            MailerStatus.SENDING,
+            MailerStatus.MAIL_SENT));
+
+    /**
+     * The name by which {@link #getPercentileMillis(String, double)} refers
+     * to the whole send.
+     */
+    private static final String TOTAL = "TOTAL";
+
+    /**
+     * The shared metrics, or null if they have not yet been created.
+     */
+    private static MailerMetrics sharedMetrics = null;
+
+    /**
+     * Returns the metrics shared by every mailer not given metrics of its
+     * own. The first call publishes the shared metrics through JMX; if they
+     * cannot be published, they are used all the same.
+     *
+     * @return the shared metrics
+     */
+    public static synchronized MailerMetrics getSharedMetrics() {
+        if (sharedMetrics == null) {
+            sharedMetrics = new MailerMetrics();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(sharedMetrics, new ObjectName(OBJECT_NAME));
+            } catch (JMException | SecurityException e) {    // try
+                // Go without JMX.
+            }    // catch
+        }    // if
+        return sharedMetrics;
+    }    // getSharedMetrics()
+
+    /**
+     * The latency of each stage.
+     */
+    private final Map<MailerStatus, LatencyHistogram> stageHistograms;
+
+    /**
+     * The total latency of each send.
+     */
+    private final LatencyHistogram totalHistogram;
+
+    /**
+     * The number of messages sent.
+     */
+    private final LongAdder sentCount;
+
+    /**
+     * The number of messages that could not be sent.
+     */
+    private final LongAdder errorCount;
+
+    /**
+     * Constructs new, empty metrics.
+     */
+    public MailerMetrics() {
+        stageHistograms = new EnumMap<>(MailerStatus.class);
+        for (MailerStatus stage : STAGES) {
+            stageHistograms.put(stage, new LatencyHistogram());
+        }    // for
+        totalHistogram = new LatencyHistogram();
+        sentCount = new LongAdder();
+        errorCount = new LongAdder();
+        assertInvariant();
+    }    // MailerMetrics()
+
+    /**
+     * Records the result of sending a message.
+     *
+     * @param result the result; may not be null
+     * @throws NullPointerException if {@code result} is null
+     */
+    public void record(SendResult result) {
+        assertInvariant();
+        if (result == null) {
+            throw new NullPointerException("result may not be null");
+        }    // if
+
+        for (Map.Entry<MailerStatus, Long> stage : result.getStageNanos().entrySet()) {
+            LatencyHistogram histogram = stageHistograms.get(stage.getKey());
+            if (histogram != null) {
+                histogram.record(stage.getValue());
+            }    // if
+        }    // for
+        totalHistogram.record(result.getTotalNanos());
+        if (result.isSent()) {
+            sentCount.increment();
+        } else {    // if
+            errorCount.increment();
+        }    // else
+    }    // record()
+
+    /**
+     * Returns the histogram of the latency of the given stage.
+     *
+     * @param stage the stage; must be one of the {@link #STAGES stages}
+     * @return the histogram of the latency of the stage
+     * @throws NullPointerException if {@code stage} is null
+     * @throws IllegalArgumentException if {@code stage} is not a stage
+     */
+    public LatencyHistogram getStageHistogram(MailerStatus stage) {
+        assertInvariant();
+        if (stage == null) {
+            throw new NullPointerException("stage may not be null");
+        }    // if
+        LatencyHistogram histogram = stageHistograms.get(stage);
+        if (histogram == null) {
+            throw new IllegalArgumentException(stage + " is not a stage");
+        }    // if
+        return histogram;
+    }    // getStageHistogram()
+
+    /**
+     * Returns the histogram of the total latency of each send.
+     *
+     * @return the histogram of the total latency of each send
+     */
+    public LatencyHistogram getTotalHistogram() {
+        assertInvariant();
+        return totalHistogram;
+    }    // getTotalHistogram()
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSentCount() {
+        assertInvariant();
+        return sentCount.sum();
+    }    // getSentCount()
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getErrorCount() {
+        assertInvariant();
+        return errorCount.sum();
+    }    // getErrorCount()
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getPercentileMillis(String stage, double percentile) {
+        assertInvariant();
+        if (stage == null) {
+            throw new NullPointerException("stage may not be null");
+        }    // if
+
+        LatencyHistogram histogram = stage.equals(TOTAL) ? totalHistogram : getStageHistogram(MailerStatus.valueOf(stage));
+        return toMillis(histogram.getPercentileNanos(percentile));
+    }    // getPercentileMillis()
+
+    /**
+     * {@inheritDoc}
+     *
+     * The report has one line for the counts, then one line for each stage
+     * and one for the total, giving the number of latencies recorded and their
+     * mean, median, 99th percentile, and maximum, in milliseconds.
+     */
+    @Override
+    public String getReport() {
+        assertInvariant();
+        StringBuilder report = new StringBuilder();
+        report.append("Sent: ").append(getSentCount()).append("  Errors: ").append(getErrorCount()).append("\n");
+        report.append(String.format("%-18s %7s %9s %9s %9s %9s%n", "Stage (ms)", "Count", "Mean", "p50", "p99", "Max"));
+        for (MailerStatus stage : STAGES) {
+            appendReportLine(report, stage.name(), stageHistograms.get(stage));
+        }    // for
+        appendReportLine(report, TOTAL, totalHistogram);
+        return report.toString();
+    }    // getReport()
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() {
+        assertInvariant();
+        for (LatencyHistogram histogram : stageHistograms.values()) {
+            histogram.reset();
+        }    // for
+        totalHistogram.reset();
+        sentCount.reset();
+        errorCount.reset();
+    }    // reset()
+
+    /**
+     * Appends a report line for the given histogram.
+     *
+     * @param report the report; may not be null
+     * @param name the name of the histogram; may not be null
+     * @param histogram the histogram; may not be null
+     */
+    private static void appendReportLine(StringBuilder report, String name, LatencyHistogram histogram) {
+        assert (report != null);
+        assert (name != null);
+        assert (histogram != null);
+
+        long count = histogram.getCount();
+        report.append(String.format("%-18s %7d %9.2f %9.2f %9.2f %9.2f%n",
+                name,
+                count,
+                histogram.getMeanNanos() / TimeUnit.MILLISECONDS.toNanos(1),
+                (count == 0) ? 0.0 : toMillis(histogram.getPercentileNanos(50)),
+                (count == 0) ? 0.0 : toMillis(histogram.getPercentileNanos(99)),
+                toMillis(histogram.getMaximumNanos())));
+    }    // appendReportLine()
+
+    /**
+     * Converts nanoseconds to milliseconds.
+     *
+     * @param nanos a time, in nanoseconds
+     * @return the time, in milliseconds
+     */
+    private static double toMillis(long nanos) {
+        return (double)nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }    // toMillis()
+
+    /**
+     * Asserts the correctness of the object's internal state.
+     */
+    private void assertInvariant() {
+        assert (stageHistograms != null);
+        assert (stageHistograms.keySet().containsAll(STAGES));
+        assert (totalHistogram != null);
+        assert (sentCount != null);
+        assert (errorCount != null);
+    }    // assertInvariant()
+
+}    // MailerMetrics
@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+/**
+ * The JMX management interface of {@link MailerMetrics}.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public interface MailerMetricsMBean {
+
+    /**
+     * Returns the number of messages sent.
+     *
+     * @return the number of messages sent
+     */
+    public long getSentCount();
+
+    /**
+     * Returns the number of messages that could not be sent.
+     *
+     * @return the number of messages that could not be sent
+     */
+    public long getErrorCount();
+
+    /**
+     * Returns a text report of the counts and of the latency of each stage.
+     *
+     * @return a text report
+     */
+    public String getReport();
+
+    /**
+     * Returns an approximation of the given percentile of the latency of the
+     * given stage, in milliseconds.
+     *
+     * @param stage the name of the stage: one of the names of the
+     * {@link MailerMetrics#STAGES stages}, or "TOTAL" for the whole send; may
+     * not be null
+     * @param percentile the percentile; must be more than 0 and at most 100
+     * @return the approximate percentile, or 0 if nothing has been recorded
+     * @throws NullPointerException if {@code stage} is null
+     * @throws IllegalArgumentException if {@code stage} is not the name of a
+     * stage, or {@code percentile} is out of range
+     */
+    public double getPercentileMillis(String stage, double percentile);
+
+    /**
+     * Discards every count and latency recorded.
+     */
+    public void reset();
+
+}    // MailerMetricsMBean
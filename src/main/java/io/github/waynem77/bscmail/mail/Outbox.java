@@ -0,0 +1,989 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import io.github.waynem77.bscmail.Application;
+import io.github.waynem77.bscmail.persistent.EmailServerProperties;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import javax.mail.util.SharedByteArrayInputStream;
+
+/**
+ * A durable outbox of email messages. Each message enqueued is written to the
+ * outbox directory as an RFC 822 (".eml") file, and every change in a
+ * message's state is appended to an index file in the same directory, so
+ * that messages not yet sent survive the application closing and are resumed
+ * when an outbox is next opened on the directory.
+ *
+ * Once {@link #start(String, int, TokenBucket) started}, the outbox is
+ * drained by background worker threads. A message that cannot be sent is
+ * retried after an exponentially increasing delay, up to a maximum number of
+ * attempts, after which it is marked {@link State#FAILED} and its file is
+ * kept for inspection. A message rejected by the email server with a
+ * permanent (5xx) error is not retried. The file of a message that has been
+ * sent is deleted.
+ *
+ * Messages are sent as {@link Mailer} sends them: a message with more
+ * recipients than the mailer's {@link Mailer#getChunkSize() chunk size} is
+ * sent in recipient chunks. If only some chunks fail, the message is retried
+ * to the recipients of those chunks alone, and these remaining recipients are
+ * recorded in the index.
+ *
+ * Messages are delivered at least once: a message sent just before the
+ * application closes, but not yet recorded as sent, is sent again when the
+ * outbox is resumed.
+ *
+ * Observers are notified, through {@link MailerObserver#mailerStatusChanged()},
+ * each time a message changes state. Observers are notified on the worker
+ * threads.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public class Outbox implements AutoCloseable {
+
+    /**
+     * The state of a message in the outbox.
+     */
+    public enum State {
+
+        /**
+         * The message is waiting to be sent for the first time.
+         */
+        QUEUED,
+
+        /**
+         * The message could not be sent, and is waiting to be retried.
+         */
+        RETRYING,
+
+        /**
+         * The message has been sent.
+         */
+        SENT,
+
+        /**
+         * The message could not be sent and will not be retried.
+         */
+        FAILED
+
+    }    // State
+
+    /**
+     * A message in the outbox. An entry is ordered by the time of its next
+     * attempt.
+     */
+    private static final class Entry implements Delayed {
+
+        /**
+         * The message's identifier.
+         */
+        private final long id;
+
+        /**
+         * The message's state.
+         */
+        private volatile State state;
+
+        /**
+         * The number of attempts made to send the message.
+         */
+        private volatile int attempts;
+
+        /**
+         * The time, in milliseconds since the epoch, at which the message is
+         * next to be attempted.
+         */
+        private volatile long nextAttemptMillis;
+
+        /**
+         * The error of the last attempt to send the message, or null if the
+         * message has not failed since the outbox was opened.
+         */
+        private volatile Exception error;
+
+        /**
+         * The comma-separated addresses of the recipients the message is
+         * still to reach, or null if it is to reach every recipient in its
+         * file.
+         */
+        private volatile String recipients;
+
+        /**
+         * Constructs a new entry.
+         *
+         * @param id the message's identifier
+         * @param state the message's state; may not be null
+         * @param attempts the number of attempts made
+         * @param nextAttemptMillis the time of the next attempt
+         */
+        Entry(long id, State state, int attempts, long nextAttemptMillis) {
+            assert (state != null);
+            assert (attempts >= 0);
+            this.id = id;
+            this.state = state;
+            this.attempts = attempts;
+            this.nextAttemptMillis = nextAttemptMillis;
+            error = null;
+            recipients = null;
+        }    // Entry()
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(nextAttemptMillis - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }    // getDelay()
+
+        @Override
+        public int compareTo(Delayed other) {
+            Entry entry = (Entry)other;
+            int comparison = Long.compare(nextAttemptMillis, entry.nextAttemptMillis);
+            return (comparison != 0) ? comparison : Long.compare(id, entry.id);
+        }    // compareTo()
+
+    }    // Entry
+
+    /**
+     * The default maximum number of attempts made to send a message.
+     */
+    public static final int DEFAULT_MAXIMUM_ATTEMPTS = 5;
+
+    /**
+     * The default delay, in milliseconds, before a failed message is first
+     * retried.
+     */
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 30000;
+
+    /**
+     * The default maximum delay, in milliseconds, before a failed message is
+     * retried.
+     */
+    public static final long DEFAULT_MAXIMUM_BACKOFF_MILLIS = 1800000;
+
+    /**
+     * The name of the index file.
+     */
+    static final String INDEX_FILE = "outbox.index";
+
+    /**
+     * The extension of message files.
+     */
+    private static final String MESSAGE_EXTENSION = ".eml";
+
+    /**
+     * The application.
+     */
+    private final Application application;
+
+    /**
+     * The outbox directory.
+     */
+    private final Path directory;
+
+    /**
+     * The pool of email server connections.
+     */
+    private final TransportPool transportPool;
+
+    /**
+     * The maximum number of attempts made to send a message.
+     */
+    private final int maximumAttempts;
+
+    /**
+     * The delay, in milliseconds, before a failed message is first retried.
+     */
+    private final long initialBackoffMillis;
+
+    /**
+     * The maximum delay, in milliseconds, before a failed message is retried.
+     */
+    private final long maximumBackoffMillis;
+
+    /**
+     * The mailer used to write and send message files.
+     */
+    private final Mailer mailer;
+
+    /**
+     * The messages, by identifier.
+     */
+    private final ConcurrentMap<Long, Entry> entries;
+
+    /**
+     * The messages waiting to be sent, in order of their next attempt.
+     */
+    private final DelayQueue<Entry> due;
+
+    /**
+     * The number of messages in each state. Access is synchronized on the
+     * map.
+     */
+    private final Map<State, Integer> counts;
+
+    /**
+     * The last identifier assigned.
+     */
+    private final AtomicLong lastId;
+
+    /**
+     * The channel of the index file.
+     */
+    private final FileChannel indexChannel;
+
+    /**
+     * The writer of the index file. Access is synchronized on the writer.
+     */
+    private final BufferedWriter indexWriter;
+
+    /**
+     * The set of observers.
+     */
+    private final Set<MailerObserver> observers;
+
+    /**
+     * The worker threads, or null if the outbox has not been started.
+     */
+    private volatile ExecutorService workers;
+
+    /**
+     * The last send error.
+     */
+    private volatile Exception lastError;
+
+    /**
+     * Opens the outbox in the given directory with the default retry
+     * settings, using the {@link TransportPool#getSharedPool() shared
+     * transport pool}. The directory is created if it does not exist.
+     *
+     * @param application the underlying application; may not be null
+     * @param directory the outbox directory; may not be null
+     * @throws NullPointerException if either parameter is null
+     * @throws IOException if the outbox cannot be opened
+     */
+    public Outbox(Application application, Path directory) throws IOException {
+        this(application, directory, TransportPool.getSharedPool(), DEFAULT_MAXIMUM_ATTEMPTS, DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAXIMUM_BACKOFF_MILLIS);
+    }    // Outbox()
+
+    /**
+     * Opens the outbox in the given directory. The directory is created if
+     * it does not exist. Messages left unsent by a previous outbox on the
+     * directory are resumed when the outbox is started.
+     *
+     * @param application the underlying application; may not be null
+     * @param directory the outbox directory; may not be null
+     * @param transportPool the pool of email server connections; may not be
+     * null
+     * @param maximumAttempts the maximum number of attempts made to send a
+     * message; must be positive
+     * @param initialBackoffMillis the delay, in milliseconds, before a failed
+     * message is first retried; must be non-negative
+     * @param maximumBackoffMillis the maximum delay, in milliseconds, before a
+     * failed message is retried; must be at least
+     * {@code initialBackoffMillis}
+     * @throws NullPointerException if {@code application},
+     * {@code directory}, or {@code transportPool} is null
+     * @throws IllegalArgumentException if any of the numbers is out of range
+     * @throws IOException if the outbox cannot be opened
+     */
+    public Outbox(Application application, Path directory, TransportPool transportPool, int maximumAttempts, long initialBackoffMillis, long maximumBackoffMillis) throws IOException {
+        if (application == null) {
+            throw new NullPointerException("application may not be null");
+        }    // if
+        if (directory == null) {
+            throw new NullPointerException("directory may not be null");
+        }    // if
+        if (transportPool == null) {
+            throw new NullPointerException("transportPool may not be null");
+        }    // if
+        if (maximumAttempts <= 0) {
+            throw new IllegalArgumentException("maximumAttempts must be positive");
+        }    // if
+        if (initialBackoffMillis < 0) {
+            throw new IllegalArgumentException("initialBackoffMillis must be non-negative");
+        }    // if
+        if (maximumBackoffMillis < initialBackoffMillis) {
+            throw new IllegalArgumentException("maximumBackoffMillis must be at least initialBackoffMillis");
+        }    // if
+
+        this.application = application;
+        this.directory = directory;
+        this.transportPool = transportPool;
+        this.maximumAttempts = maximumAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maximumBackoffMillis = maximumBackoffMillis;
+        mailer = new Mailer(application, transportPool);
+        entries = new ConcurrentHashMap<>();
+        due = new DelayQueue<>();
+        counts = new EnumMap<>(State.class);
+        for (State state : State.values()) {
+            counts.put(state, 0);
+        }    // for
+        lastId = new AtomicLong();
+        observers = new CopyOnWriteArraySet<>();
+        workers = null;
+        lastError = null;
+
+        Files.createDirectories(directory);
+        loadIndex();
+        indexChannel = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        indexWriter = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(indexChannel), StandardCharsets.US_ASCII));
+        assertInvariant();
+    }    // Outbox()
+
+    /**
+     * Registers an observer with this outbox.
+     *
+     * @param observer the observer to register; may not be null
+     * @throws NullPointerException if observer is null
+     */
+    public void registerObserver(MailerObserver observer) {
+        assertInvariant();
+        if (observer == null) {
+            throw new NullPointerException("observer may not be null");
+        }    // if
+
+        observers.add(observer);
+        assertInvariant();
+    }    // registerObserver()
+
+    /**
+     * Adds a message to the outbox. The message is on disk when this method
+     * returns.
+     *
+     * @param mailMessage the message; may not be null
+     * @return the message's identifier
+     * @throws NullPointerException if {@code mailMessage} is null
+     * @throws MessagingException if the message cannot be created
+     * @throws IOException if the message cannot be written
+     */
+    public long enqueue(MailMessage mailMessage) throws MessagingException, IOException {
+        assertInvariant();
+        if (mailMessage == null) {
+            throw new NullPointerException("mailMessage may not be null");
+        }    // if
+
+        List<MailMessage> mailMessages = new ArrayList<>(1);
+        mailMessages.add(mailMessage);
+        return enqueueAll(mailMessages).get(0);
+    }    // enqueue()
+
+    /**
+     * Adds the given messages to the outbox, in order. The messages are on
+     * disk when this method returns. Each message file is forced to disk
+     * before the index records it. Adding many messages at once is much
+     * faster than adding them one at a time, because the index is forced to
+     * disk only once.
+     *
+     * @param mailMessages the messages; may not be null, nor contain null
+     * elements
+     * @return the messages' identifiers, in order
+     * @throws NullPointerException if {@code mailMessages} is null or
+     * contains a null element
+     * @throws MessagingException if a message cannot be created
+     * @throws IOException if a message cannot be written; messages before it
+     * have been added
+     */
+    public List<Long> enqueueAll(Collection<MailMessage> mailMessages) throws MessagingException, IOException {
+        assertInvariant();
+        if (mailMessages == null) {
+            throw new NullPointerException("mailMessages may not be null");
+        }    // if
+        if (mailMessages.contains(null)) {
+            throw new NullPointerException("mailMessages may not contain null");
+        }    // if
+
+        List<Long> ids = new ArrayList<>(mailMessages.size());
+        List<Entry> added = new ArrayList<>(mailMessages.size());
+        try {
+            for (MailMessage mailMessage : mailMessages) {
+                long id = lastId.incrementAndGet();
+                writeMessageFile(id, mailMessage);
+                Entry entry = new Entry(id, State.QUEUED, 0, System.currentTimeMillis());
+                appendToIndex(entry);
+                added.add(entry);
+                ids.add(id);
+            }    // for
+        } finally {    // try
+            synchronized (indexWriter) {
+                indexWriter.flush();
+                force(indexChannel, directory.resolve(INDEX_FILE));
+            }    // synchronized
+            for (Entry entry : added) {
+                entries.put(entry.id, entry);
+                adjustCount(null, State.QUEUED);
+                due.add(entry);
+            }    // for
+        }    // finally
+        if (!added.isEmpty()) {
+            notifyObservers();
+        }    // if
+        return ids;
+    }    // enqueueAll()
+
+    /**
+     * Starts draining the outbox with the given number of worker threads.
+     * Messages already in the outbox, including those left unsent by a
+     * previous outbox on the same directory, are sent first.
+     *
+     * @param password the email server password; may be null
+     * @param workerCount the number of worker threads; must be positive
+     * @param rateLimiter the rate limiter; may be null, in which case
+     * sending is not rate limited
+     * @throws IllegalArgumentException if {@code workerCount} is not positive
+     * @throws IllegalStateException if the outbox has already been started
+     */
+    public synchronized void start(String password, int workerCount, TokenBucket rateLimiter) {
+        assertInvariant();
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("workerCount must be positive");
+        }    // if
+        if (workers != null) {
+            throw new IllegalStateException("the outbox has already been started");
+        }    // if
+
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "Outbox-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; ++i) {
+            workers.execute(() -> drain(password, rateLimiter));
+        }    // for
+    }    // start()
+
+    /**
+     * Waits until no message in the outbox is waiting to be sent or retried,
+     * or until the timeout elapses.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of {@code timeout}; may not be null
+     * @return true if the outbox has drained; false if the timeout elapsed
+     * first
+     * @throws InterruptedException if the thread is interrupted while
+     * waiting
+     */
+    public boolean awaitDrained(long timeout, TimeUnit unit) throws InterruptedException {
+        assertInvariant();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (counts) {
+            while (counts.get(State.QUEUED) + counts.get(State.RETRYING) > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }    // if
+                TimeUnit.NANOSECONDS.timedWait(counts, remaining);
+            }    // while
+        }    // synchronized
+        return true;
+    }    // awaitDrained()
+
+    /**
+     * Returns the state of the message with the given identifier, or null if
+     * there is no such message in the outbox.
+     *
+     * @param id the message's identifier
+     * @return the message's state, or null
+     */
+    public State getState(long id) {
+        assertInvariant();
+        Entry entry = entries.get(id);
+        return (entry == null) ? null : entry.state;
+    }    // getState()
+
+    /**
+     * Returns the number of attempts made to send the message with the given
+     * identifier, or 0 if there is no such message in the outbox.
+     *
+     * @param id the message's identifier
+     * @return the number of attempts made to send the message
+     */
+    public int getAttempts(long id) {
+        assertInvariant();
+        Entry entry = entries.get(id);
+        return (entry == null) ? 0 : entry.attempts;
+    }    // getAttempts()
+
+    /**
+     * Returns the exception that prevented the message with the given
+     * identifier from being sent at its last attempt, or null if there is no
+     * such message or it has not failed since the outbox was opened.
+     *
+     * @param id the message's identifier
+     * @return the message's last error, or null
+     */
+    public Exception getError(long id) {
+        assertInvariant();
+        Entry entry = entries.get(id);
+        return (entry == null) ? null : entry.error;
+    }    // getError()
+
+    /**
+     * Returns the identifiers of the messages that have failed since the
+     * outbox was opened and will not be retried, each with the exception that
+     * prevented it from being sent, in order of identifier. Messages that had
+     * already failed when the outbox was opened are not included. The map
+     * returned is a copy.
+     *
+     * @return the messages that could not be sent
+     */
+    public SortedMap<Long, Exception> getFailures() {
+        assertInvariant();
+        SortedMap<Long, Exception> failures = new TreeMap<>();
+        for (Entry entry : entries.values()) {
+            Exception error = entry.error;
+            if ((entry.state == State.FAILED) && (error != null)) {
+                failures.put(entry.id, error);
+            }    // if
+        }    // for
+        return Collections.unmodifiableSortedMap(failures);
+    }    // getFailures()
+
+    /**
+     * Returns the number of messages in the given state. Messages sent before
+     * the outbox was opened are not counted.
+     *
+     * @param state the state; may not be null
+     * @return the number of messages in the state
+     * @throws NullPointerException if {@code state} is null
+     */
+    public int getCount(State state) {
+        assertInvariant();
+        if (state == null) {
+            throw new NullPointerException("state may not be null");
+        }    // if
+        synchronized (counts) {
+            return counts.get(state);
+        }    // synchronized
+    }    // getCount()
+
+    /**
+     * Returns the last exception encountered while sending mail, or null if
+     * no message has yet failed.
+     *
+     * @return the last exception encountered, or null
+     */
+    public Exception getLastError() {
+        assertInvariant();
+        return lastError;
+    }    // getLastError()
+
+    /**
+     * Stops the worker threads and closes the index. Messages being sent are
+     * abandoned, and are resumed when an outbox is next opened on the
+     * directory.
+     *
+     * @throws IOException if the index cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        assertInvariant();
+        if (workers != null) {
+            workers.shutdownNow();
+            try {
+                workers.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {    // try
+                Thread.currentThread().interrupt();
+            }    // catch
+        }    // if
+        synchronized (indexWriter) {
+            indexWriter.close();
+        }    // synchronized
+    }    // close()
+
+    /**
+     * Sends messages as they fall due until the worker is interrupted.
+     *
+     * @param password the email server password; may be null
+     * @param rateLimiter the rate limiter; may be null
+     */
+    private void drain(String password, TokenBucket rateLimiter) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Entry entry = due.take();
+                if (rateLimiter != null) {
+                    rateLimiter.acquire();
+                }    // if
+                attempt(entry, password);
+            }    // while
+        } catch (InterruptedException e) {    // try
+            // The outbox is closing.
+        }    // catch
+    }    // drain()
+
+    /**
+     * Attempts to send the given message, and records the result.
+     *
+     * @param entry the message; may not be null
+     * @param password the email server password; may be null
+     * @throws InterruptedException if the worker is interrupted
+     */
+    private void attempt(Entry entry, String password) throws InterruptedException {
+        assert (entry != null);
+
+        Exception error = null;
+        try {
+            send(entry, password);
+        } catch (MessagingException | IOException | RuntimeException e) {    // try
+            error = e;
+        }    // catch
+        if (Thread.interrupted()) {
+            // Leave the message's state as it is on disk, to be resumed.
+            throw new InterruptedException();
+        }    // if
+
+        State oldState = entry.state;
+        entry.attempts += 1;
+        entry.error = error;
+        if (error == null) {
+            entry.state = State.SENT;
+        } else {    // if
+            lastError = error;
+            if (Mailer.isPermanent(error) || (entry.attempts >= maximumAttempts)) {
+                entry.state = State.FAILED;
+            } else {    // if
+                entry.state = State.RETRYING;
+                entry.nextAttemptMillis = System.currentTimeMillis() + getBackoffMillis(entry.attempts);
+            }    // else
+        }    // else
+
+        try {
+            synchronized (indexWriter) {
+                appendToIndex(entry);
+                indexWriter.flush();
+            }    // synchronized
+        } catch (IOException e) {    // try
+            lastError = e;
+        }    // catch
+        if (entry.state == State.SENT) {
+            try {
+                Files.deleteIfExists(getMessageFile(entry.id));
+            } catch (IOException e) {    // try
+                // A stale message file is harmless; the index says it is sent.
+            }    // catch
+        } else if (entry.state == State.RETRYING) {    // if
+            due.add(entry);
+        }    // else if
+        adjustCount(oldState, entry.state);
+        notifyObservers();
+    }    // attempt()
+
+    /**
+     * Sends the given message from its file, through the mailer, to the
+     * recipients it is still to reach. If the message reaches some recipients
+     * but not others, the entry's recipients are narrowed to the others.
+     *
+     * @param entry the message; may not be null
+     * @param password the email server password; may be null
+     * @throws MessagingException if the message cannot be sent
+     * @throws IOException if the message file cannot be read
+     * @throws InterruptedException if the worker is interrupted
+     */
+    private void send(Entry entry, String password) throws MessagingException, IOException, InterruptedException {
+        assert (entry != null);
+
+        EmailServerProperties serverProperties = application.getEmailServerProperties();
+        Session session = transportPool.getSession(serverProperties);
+        // Parsed from shared bytes, the message may be sent by several
+        // recipient chunks at once.
+        MimeMessage mimeMessage = new MimeMessage(session, new SharedByteArrayInputStream(Files.readAllBytes(getMessageFile(entry.id))));
+        String remaining = entry.recipients;
+        Address[] recipients = (remaining == null) ? mimeMessage.getAllRecipients() : InternetAddress.parse(remaining);
+        if (recipients == null) {
+            recipients = new Address[0];
+        }    // if
+
+        // SMTPTransport leaves out the Bcc header retained in the file.
+        try {
+            mailer.sendEncoded(mimeMessage, recipients, password);
+        } catch (SendFailedException e) {    // try
+            Address[] sent = e.getValidSentAddresses();
+            if ((sent != null) && (sent.length > 0)) {
+                entry.recipients = formatRecipients(Mailer.getFailedRecipients(e, recipients));
+            }    // if
+            throw e;
+        }    // catch
+    }    // send()
+
+    /**
+     * Returns the given recipients as comma-separated addresses, without
+     * personal names or spaces, for the index.
+     *
+     * @param recipients the recipients; may not be null
+     * @return the comma-separated addresses
+     */
+    private static String formatRecipients(List<Address> recipients) {
+        assert (recipients != null);
+        StringBuilder addresses = new StringBuilder();
+        for (Address recipient : recipients) {
+            if (addresses.length() > 0) {
+                addresses.append(',');
+            }    // if
+            addresses.append((recipient instanceof InternetAddress) ? ((InternetAddress)recipient).getAddress() : recipient.toString());
+        }    // for
+        return addresses.toString();
+    }    // formatRecipients()
+
+    /**
+     * Returns the delay, in milliseconds, before a message that has failed the
+     * given number of times is retried.
+     *
+     * @param attempts the number of attempts made; must be positive
+     * @return the delay before the next attempt
+     */
+    long getBackoffMillis(int attempts) {
+        assert (attempts > 0);
+        long backoff = initialBackoffMillis;
+        for (int i = 1; (i < attempts) && (backoff < maximumBackoffMillis); ++i) {
+            backoff *= 2;
+        }    // for
+        return Math.min(backoff, maximumBackoffMillis);
+    }    // getBackoffMillis()
+
+    /**
+     * Writes the message file for the given message, and forces it to disk.
+     * The file is on disk before the message is recorded in the index, so a
+     * file left incomplete by the application closing or the system failing
+     * is never sent; it is overwritten when its identifier is next assigned.
+     *
+     * @param id the message's identifier
+     * @param mailMessage the message; may not be null
+     * @throws MessagingException if the message cannot be created
+     * @throws IOException if the file cannot be written
+     */
+    private void writeMessageFile(long id, MailMessage mailMessage) throws MessagingException, IOException {
+        assert (mailMessage != null);
+        Path file = getMessageFile(id);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(channel));
+            mailer.writeMessage(mailMessage, outputStream);
+            outputStream.flush();
+            force(channel, file);
+        }    // try
+    }    // writeMessageFile()
+
+    /**
+     * Forces the contents of the given file, open on the given channel, to
+     * disk. This method is package-private so that tests can observe the
+     * order in which files are forced.
+     *
+     * @param channel the channel; may not be null
+     * @param file the file open on the channel; may not be null
+     * @throws IOException if an I/O error occurs
+     */
+    void force(FileChannel channel, Path file) throws IOException {
+        assert (channel != null);
+        assert (file != null);
+        channel.force(true);
+    }    // force()
+
+    /**
+     * Returns the file of the message with the given identifier.
+     *
+     * @param id the message's identifier
+     * @return the message's file
+     */
+    private Path getMessageFile(long id) {
+        return directory.resolve(id + MESSAGE_EXTENSION);
+    }    // getMessageFile()
+
+    /**
+     * Appends the given entry's current state to the index. The index is not
+     * flushed.
+     *
+     * @param entry the entry; may not be null
+     * @throws IOException if an I/O error occurs
+     */
+    private void appendToIndex(Entry entry) throws IOException {
+        assert (entry != null);
+        synchronized (indexWriter) {
+            indexWriter.write(formatIndexLine(entry));
+            indexWriter.newLine();
+        }    // synchronized
+    }    // appendToIndex()
+
+    /**
+     * Reads the index, if there is one, and rewrites it with only the
+     * messages not yet sent. The last line recorded for a message gives its
+     * state; a line left incomplete by the application closing is ignored.
+     * Messages recorded as queued or retrying whose files are missing are
+     * marked failed.
+     *
+     * @throws IOException if the index cannot be read or rewritten
+     */
+    private void loadIndex() throws IOException {
+        Path index = directory.resolve(INDEX_FILE);
+        if (Files.exists(index)) {
+            for (String line : Files.readAllLines(index, StandardCharsets.US_ASCII)) {
+                Entry entry = parseIndexLine(line);
+                if (entry != null) {
+                    entries.put(entry.id, entry);
+                    lastId.accumulateAndGet(entry.id, Math::max);
+                }    // if
+            }    // for
+        }    // if
+
+        List<String> lines = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if ((entry.state == State.QUEUED || entry.state == State.RETRYING) && !Files.exists(getMessageFile(entry.id))) {
+                entry.state = State.FAILED;
+            }    // if
+            if (entry.state == State.SENT) {
+                entries.remove(entry.id);
+            } else {    // if
+                adjustCount(null, entry.state);
+                lines.add(formatIndexLine(entry));
+                if (entry.state != State.FAILED) {
+                    due.add(entry);
+                }    // if
+            }    // else
+        }    // for
+        Path temporaryIndex = index.resolveSibling(INDEX_FILE + ".tmp");
+        Files.write(temporaryIndex, lines, StandardCharsets.US_ASCII);
+        Files.move(temporaryIndex, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }    // loadIndex()
+
+    /**
+     * Returns the index line recording the given entry's current state.
+     *
+     * @param entry the entry; may not be null
+     * @return the index line, without a line terminator
+     */
+    private static String formatIndexLine(Entry entry) {
+        assert (entry != null);
+        String recipients = entry.recipients;
+        return entry.id + " " + entry.state + " " + entry.attempts + " " + entry.nextAttemptMillis
+                + ((recipients == null) ? "" : " " + recipients);
+    }    // formatIndexLine()
+
+    /**
+     * Returns the entry recorded by the given index line, or null if the line
+     * is malformed. A line has the message's identifier, state, number of
+     * attempts, and time of next attempt, optionally followed by the
+     * recipients the message is still to reach.
+     *
+     * @param line the index line; may not be null
+     * @return the entry, or null
+     */
+    private static Entry parseIndexLine(String line) {
+        assert (line != null);
+        String[] fields = line.trim().split(" ");
+        if ((fields.length != 4) && (fields.length != 5)) {
+            return null;
+        }    // if
+        try {
+            int attempts = Integer.parseInt(fields[2]);
+            if (attempts < 0) {
+                return null;
+            }    // if
+            Entry entry = new Entry(Long.parseLong(fields[0]), State.valueOf(fields[1]), attempts, Long.parseLong(fields[3]));
+            if (fields.length == 5) {
+                entry.recipients = fields[4];
+            }    // if
+            return entry;
+        } catch (IllegalArgumentException e) {    // try
+            return null;
+        }    // catch
+    }    // parseIndexLine()
+
+    /**
+     * Moves one message from the given old state to the given new state in
+     * the counts, and wakes any thread waiting for the outbox to drain.
+     *
+     * @param oldState the old state; may be null for a new message
+     * @param newState the new state; may not be null
+     */
+    private void adjustCount(State oldState, State newState) {
+        assert (newState != null);
+        synchronized (counts) {
+            if (oldState != null) {
+                counts.put(oldState, counts.get(oldState) - 1);
+            }    // if
+            counts.put(newState, counts.get(newState) + 1);
+            counts.notifyAll();
+        }    // synchronized
+    }    // adjustCount()
+
+    /**
+     * Notifies all observers that the outbox has changed.
+     */
+    private void notifyObservers() {
+        for (MailerObserver observer : observers) {
+            observer.mailerStatusChanged();
+        }    // for
+    }    // notifyObservers()
+
+    /**
+     * Asserts the correctness of the object's internal state.
+     */
+    private void assertInvariant() {
+        assert (application != null);
+        assert (directory != null);
+        assert (transportPool != null);
+        assert (maximumAttempts > 0);
+        assert (initialBackoffMillis >= 0);
+        assert (maximumBackoffMillis >= initialBackoffMillis);
+        assert (mailer != null);
+        assert (entries != null);
+        assert (due != null);
+        assert (counts != null);
+        assert (lastId != null);
+        assert (indexChannel != null);
+        assert (indexWriter != null);
+        assert (observers != null);
+        assert (!observers.contains(null));
+    }    // assertInvariant()
+
+}    // Outbox
@@ -0,0 +1,283 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import javax.mail.util.SharedByteArrayInputStream;
+
+/**
+ * An email message encoded once, ready to be sent any number of times. A
+ * PreparedMessage holds the message exactly as it goes over the wire, headers
+ * and encoded body together, along with the envelope recipients. Each send
+ * streams the cached bytes to the email server, so retries, recipient
+ * chunks, and resends to further recipients cost no re-encoding.
+ *
+ * The "Bcc" header is left out of the cached bytes, as it is left out of
+ * every message sent, but "Bcc" recipients remain in the envelope.
+ *
+ * PreparedMessages are created by {@link Mailer#prepare(MailMessage)}, and are
+ * sent by {@link Mailer#send(PreparedMessage, String)} and
+ * {@link Mailer#sendAsync(PreparedMessage, String)}. A PreparedMessage is
+ * immutable, and may be sent from any number of threads at once.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public final class PreparedMessage {
+
+    /**
+     * The headers that are never transmitted, and so are left out of the
+     * cached bytes.
+     */
+    private static final String[] UNSENT_HEADERS = {"Bcc", "Content-Length"};
+
+    /**
+     * A MIME message that writes itself out from cached bytes.
+     */
+    private static final class CachedMimeMessage extends MimeMessage {
+
+        /**
+         * The message as it goes over the wire.
+         */
+        private final byte[] bytes;
+
+        /**
+         * Constructs a new cached message from the given bytes. The headers
+         * are parsed; the content is shared with the bytes, not copied.
+         *
+         * @param session the mail session; may not be null
+         * @param bytes the message as it goes over the wire; may not be null
+         * @throws MessagingException if the bytes cannot be parsed
+         */
+        CachedMimeMessage(Session session, byte[] bytes) throws MessagingException {
+            super(session, new SharedByteArrayInputStream(bytes));
+            this.bytes = bytes;
+        }    // CachedMimeMessage()
+
+        /**
+         * Writes the cached bytes to the given output stream. If any header
+         * in the ignore list is present, the message is written header by
+         * header instead, leaving those headers out.
+         *
+         * @param outputStream the output stream
+         * @param ignoreList the headers to leave out; may be null
+         * @throws IOException if an I/O error occurs
+         * @throws MessagingException if the message cannot be written
+         */
+        @Override
+        public void writeTo(OutputStream outputStream, String[] ignoreList) throws IOException, MessagingException {
+            if (ignoreList != null) {
+                for (String header : ignoreList) {
+                    if (getHeader(header) != null) {
+                        super.writeTo(outputStream, ignoreList);
+                        return;
+                    }    // if
+                }    // for
+            }    // if
+            outputStream.write(bytes);
+        }    // writeTo()
+
+        /**
+         * Does nothing; the cached message may not be modified, so there are
+         * no changes to save.
+         */
+        @Override
+        public void saveChanges() {
+        }    // saveChanges()
+
+    }    // CachedMimeMessage
+
+    /**
+     * The mail message from which this message was prepared.
+     */
+    private final MailMessage mailMessage;
+
+    /**
+     * The cached message.
+     */
+    private final CachedMimeMessage mimeMessage;
+
+    /**
+     * The envelope recipients.
+     */
+    private final Address[] recipients;
+
+    /**
+     * Constructs a new PreparedMessage by encoding the given MIME message.
+     *
+     * @param mailMessage the mail message from which the MIME message was
+     * created; may not be null
+     * @param mimeMessage the MIME message; may not be null
+     * @param session the mail session; may not be null
+     * @throws MessagingException if the message cannot be encoded
+     * @throws IOException if an I/O error occurs
+     */
+    PreparedMessage(MailMessage mailMessage, MimeMessage mimeMessage, Session session) throws MessagingException, IOException {
+        assert (mailMessage != null);
+        assert (mimeMessage != null);
+        assert (session != null);
+
+        mimeMessage.saveChanges();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        mimeMessage.writeTo(bytes, UNSENT_HEADERS);
+        Address[] allRecipients = mimeMessage.getAllRecipients();
+
+        this.mailMessage = mailMessage;
+        this.mimeMessage = new CachedMimeMessage(session, bytes.toByteArray());
+        this.recipients = (allRecipients == null) ? new Address[0] : allRecipients;
+        assertInvariant();
+    }    // PreparedMessage()
+
+    /**
+     * Constructs a new PreparedMessage sharing the given message's cached
+     * bytes, with the given envelope recipients.
+     *
+     * @param prepared the prepared message; may not be null
+     * @param recipients the envelope recipients; may not be null
+     */
+    private PreparedMessage(PreparedMessage prepared, Address[] recipients) {
+        assert (prepared != null);
+        assert (recipients != null);
+
+        this.mailMessage = prepared.mailMessage;
+        this.mimeMessage = prepared.mimeMessage;
+        this.recipients = recipients;
+        assertInvariant();
+    }    // PreparedMessage()
+
+    /**
+     * Returns the mail message from which this message was prepared. The
+     * mail message's addresses are those of the headers, which may differ
+     * from the envelope recipients.
+     *
+     * @return the mail message
+     */
+    public MailMessage getMailMessage() {
+        assertInvariant();
+        return mailMessage;
+    }    // getMailMessage()
+
+    /**
+     * Returns the envelope recipients: those to whom the message is
+     * delivered. The list may not be modified.
+     *
+     * @return the envelope recipients
+     */
+    public List<Address> getRecipients() {
+        assertInvariant();
+        return Collections.unmodifiableList(Arrays.asList(recipients.clone()));
+    }    // getRecipients()
+
+    /**
+     * Returns a prepared message sharing this message's cached bytes, but
+     * delivered to the given recipients instead. The message's headers are
+     * unchanged; this is intended for sending an announcement, unchanged, to
+     * recipients who were not among the original "Bcc" recipients.
+     *
+     * @param recipients the envelope recipients; may not be null, empty, or
+     * contain null elements
+     * @return a prepared message delivered to the given recipients
+     * @throws NullPointerException if {@code recipients} is null or contains
+     * a null element
+     * @throws IllegalArgumentException if {@code recipients} is empty
+     */
+    public PreparedMessage withRecipients(Address... recipients) {
+        assertInvariant();
+        if (recipients == null) {
+            throw new NullPointerException("recipients may not be null");
+        }    // if
+        if (Arrays.asList(recipients).contains(null)) {
+            throw new NullPointerException("recipients may not contain null");
+        }    // if
+        if (recipients.length == 0) {
+            throw new IllegalArgumentException("recipients may not be empty");
+        }    // if
+
+        return new PreparedMessage(this, recipients.clone());
+    }    // withRecipients()
+
+    /**
+     * Returns the size of the message, in bytes, as it goes over the wire.
+     *
+     * @return the size of the message
+     */
+    public int getSize() {
+        assertInvariant();
+        return mimeMessage.bytes.length;
+    }    // getSize()
+
+    /**
+     * Writes the message to the given output stream exactly as it goes over
+     * the wire, in RFC 822 format.
+     *
+     * @param outputStream the output stream; may not be null
+     * @throws NullPointerException if {@code outputStream} is null
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeTo(OutputStream outputStream) throws IOException {
+        assertInvariant();
+        if (outputStream == null) {
+            throw new NullPointerException("outputStream may not be null");
+        }    // if
+
+        outputStream.write(mimeMessage.bytes);
+    }    // writeTo()
+
+    /**
+     * Returns the cached MIME message, for sending. The message must not be
+     * modified.
+     *
+     * @return the cached MIME message
+     */
+    MimeMessage getMimeMessage() {
+        assertInvariant();
+        return mimeMessage;
+    }    // getMimeMessage()
+
+    /**
+     * Returns the envelope recipients, for sending. The array must not be
+     * modified.
+     *
+     * @return the envelope recipients
+     */
+    Address[] getRecipientArray() {
+        assertInvariant();
+        return recipients;
+    }    // getRecipientArray()
+
+    /**
+     * Asserts the correctness of the object's internal state.
+     */
+    private void assertInvariant() {
+        assert (mailMessage != null);
+        assert (mimeMessage != null);
+        assert (recipients != null);
+    }    // assertInvariant()
+
+}    // PreparedMessage
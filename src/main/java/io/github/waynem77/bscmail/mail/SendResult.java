@@ -0,0 +1,273 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import javax.mail.Address;
+
+/**
+ * The result of sending a single email message. A SendResult is immutable.
+ *
+ * Alongside the outcome, a SendResult records how long each stage of sending
+ * took: for each {@link MailerStatus} the send passed through, the time, in
+ * nanoseconds, taken to reach that status from the one before.
+ *
+ * A message that could not be sent records the recipients it may not have
+ * reached, so that a retry can be sent to those recipients alone, e.g. with
+ * {@link PreparedMessage#withRecipients(Address...)}. When a message is sent
+ * in recipient chunks and only some chunks fail, these are the recipients of
+ * the failed chunks.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public final class SendResult {
+
+    /**
+     * The message.
+     */
+    private final MailMessage mailMessage;
+
+    /**
+     * The final status; either {@link MailerStatus#MAIL_SENT} or
+     * {@link MailerStatus#ERROR}.
+     */
+    private final MailerStatus status;
+
+    /**
+     * The mail server response, or null if the message was not sent.
+     */
+    private final String serverResponse;
+
+    /**
+     * The error, or null if the message was sent.
+     */
+    private final Exception error;
+
+    /**
+     * The time, in nanoseconds, taken to reach each status.
+     */
+    private final Map<MailerStatus, Long> stageNanos;
+
+    /**
+     * The recipients the message may not have reached.
+     */
+    private final List<Address> failedRecipients;
+
+    /**
+     * Constructs a new SendResult with no failed recipients.
+     *
+     * @param mailMessage the message; may not be null
+     * @param status the final status; must be {@link MailerStatus#MAIL_SENT}
+     * or {@link MailerStatus#ERROR}
+     * @param serverResponse the mail server response; may be null
+     * @param error the error; may not be null if and only if {@code status}
+     * is {@link MailerStatus#ERROR}
+     * @param stageNanos the time, in nanoseconds, taken to reach each status;
+     * may not be null
+     * @throws NullPointerException if {@code mailMessage}, {@code status}, or
+     * {@code stageNanos} is null, or if {@code status} is
+     * {@link MailerStatus#ERROR} and {@code error} is null
+     * @throws IllegalArgumentException if {@code status} is neither
+     * {@link MailerStatus#MAIL_SENT} nor {@link MailerStatus#ERROR}, or if
+     * {@code status} is {@link MailerStatus#MAIL_SENT} and {@code error} is
+     * not null
+     */
+    SendResult(MailMessage mailMessage, MailerStatus status, String serverResponse, Exception error, Map<MailerStatus, Long> stageNanos) {
+        this(mailMessage, status, serverResponse, error, stageNanos, Collections.emptyList());
+    }    // SendResult()
+
+    /**
+     * Constructs a new SendResult.
+     *
+     * @param mailMessage the message; may not be null
+     * @param status the final status; must be {@link MailerStatus#MAIL_SENT}
+     * or {@link MailerStatus#ERROR}
+     * @param serverResponse the mail server response; may be null
+     * @param error the error; may not be null if and only if {@code status}
+     * is {@link MailerStatus#ERROR}
+     * @param stageNanos the time, in nanoseconds, taken to reach each status;
+     * may not be null
+     * @param failedRecipients the recipients the message may not have
+     * reached; may not be null, nor contain null elements; must be empty if
+     * {@code status} is {@link MailerStatus#MAIL_SENT}
+     * @throws NullPointerException if {@code mailMessage}, {@code status},
+     * {@code stageNanos}, or {@code failedRecipients} is null, if
+     * {@code failedRecipients} contains a null element, or if {@code status}
+     * is {@link MailerStatus#ERROR} and {@code error} is null
+     * @throws IllegalArgumentException if {@code status} is neither
+     * {@link MailerStatus#MAIL_SENT} nor {@link MailerStatus#ERROR}, or if
+     * {@code status} is {@link MailerStatus#MAIL_SENT} and either
+     * {@code error} is not null or {@code failedRecipients} is not empty
+     */
+    SendResult(MailMessage mailMessage, MailerStatus status, String serverResponse, Exception error, Map<MailerStatus, Long> stageNanos, List<Address> failedRecipients) {
+        if (mailMessage == null) {
+            throw new NullPointerException("mailMessage may not be null");
+        }    // if
+        if (status == null) {
+            throw new NullPointerException("status may not be null");
+        }    // if
+        if (stageNanos == null) {
+            throw new NullPointerException("stageNanos may not be null");
+        }    // if
+        if (failedRecipients == null) {
+            throw new NullPointerException("failedRecipients may not be null");
+        }    // if
+        if (failedRecipients.contains(null)) {
+            throw new NullPointerException("failedRecipients may not contain null");
+        }    // if
+        if (status == MailerStatus.ERROR) {
+            if (error == null) {
+                throw new NullPointerException("error may not be null when status is ERROR");
+            }    // if
+        } else if (status == MailerStatus.MAIL_SENT) {    // if
+            if (error != null) {
+                throw new IllegalArgumentException("error must be null when status is MAIL_SENT");
+            }    // if
+            if (!failedRecipients.isEmpty()) {
+                throw new IllegalArgumentException("failedRecipients must be empty when status is MAIL_SENT");
+            }    // if
+        } else {    // else if
+            throw new IllegalArgumentException("status must be MAIL_SENT or ERROR");
+        }    // else
+
+        this.mailMessage = mailMessage;
+        this.status = status;
+        this.serverResponse = serverResponse;
+        this.error = error;
+        this.stageNanos = stageNanos.isEmpty()
+                ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new EnumMap<>(stageNanos));
+        this.failedRecipients = failedRecipients.isEmpty()
+                ? Collections.emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(failedRecipients));
+        assertInvariant();
+    }    // SendResult()
+
+    /**
+     * Returns the message.
+     *
+     * @return the message
+     */
+    public MailMessage getMailMessage() {
+        assertInvariant();
+        return mailMessage;
+    }    // getMailMessage()
+
+    /**
+     * Returns the final status: {@link MailerStatus#MAIL_SENT} if the message
+     * was sent, or {@link MailerStatus#ERROR} if it was not.
+     *
+     * @return the final status
+     */
+    public MailerStatus getStatus() {
+        assertInvariant();
+        return status;
+    }    // getStatus()
+
+    /**
+     * Returns true if the message was sent.
+     *
+     * @return true if the message was sent; false otherwise
+     */
+    public boolean isSent() {
+        assertInvariant();
+        return status == MailerStatus.MAIL_SENT;
+    }    // isSent()
+
+    /**
+     * Returns the mail server response to the message, or null if the message
+     * was not sent.
+     *
+     * @return the mail server response, or null
+     */
+    public String getServerResponse() {
+        assertInvariant();
+        return serverResponse;
+    }    // getServerResponse()
+
+    /**
+     * Returns the error that prevented the message being sent, or null if the
+     * message was sent.
+     *
+     * @return the error, or null
+     */
+    public Exception getError() {
+        assertInvariant();
+        return error;
+    }    // getError()
+
+    /**
+     * Returns the recipients the message may not have reached: none if the
+     * message was sent; the recipients of the failed chunks if the message
+     * was sent in recipient chunks and only some of them failed; otherwise,
+     * every recipient. The list is empty if the message failed before its
+     * recipients were known. The list may not be modified.
+     *
+     * @return the recipients the message may not have reached
+     */
+    public List<Address> getFailedRecipients() {
+        assertInvariant();
+        return failedRecipients;
+    }    // getFailedRecipients()
+
+    /**
+     * Returns the time, in nanoseconds, taken to reach each status the send
+     * passed through, from the status before it. The map is ordered by
+     * status, and may not be modified.
+     *
+     * @return the time taken to reach each status
+     */
+    public Map<MailerStatus, Long> getStageNanos() {
+        assertInvariant();
+        return stageNanos;
+    }    // getStageNanos()
+
+    /**
+     * Returns the total time, in nanoseconds, taken to send the message.
+     *
+     * @return the total time taken
+     */
+    public long getTotalNanos() {
+        assertInvariant();
+        long total = 0;
+        for (long nanos : stageNanos.values()) {
+            total += nanos;
+        }    // for
+        return total;
+    }    // getTotalNanos()
+
+    /**
+     * Asserts the correctness of the object's internal state.
+     */
+    private void assertInvariant() {
+        assert (mailMessage != null);
+        assert (status == MailerStatus.MAIL_SENT || status == MailerStatus.ERROR);
+        assert ((status == MailerStatus.ERROR) == (error != null));
+        assert (stageNanos != null);
+        assert (failedRecipients != null);
+        assert ((status == MailerStatus.ERROR) || failedRecipients.isEmpty());
+    }    // assertInvariant()
+
+}    // SendResult
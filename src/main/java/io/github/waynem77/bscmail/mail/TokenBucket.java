@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A thread-safe token-bucket rate limiter. The bucket holds up to a fixed
+ * number of tokens and is refilled at a fixed rate; each permit takes one
+ * token. A full bucket allows a burst of up to its capacity, after which
+ * permits are granted no faster than the refill rate.
+ *
+ * Callers that must wait are granted permits in the order they asked for
+ * them: each call to {@link #acquire()} reserves the next token, possibly
+ * one not yet refilled, and then waits until it is due.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public class TokenBucket {
+
+    /**
+     * The maximum number of tokens the bucket holds.
+     */
+    private final int capacity;
+
+    /**
+     * The time, in nanoseconds, taken to refill one token.
+     */
+    private final double nanosPerToken;
+
+    /**
+     * The clock, giving the time in nanoseconds.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * The number of tokens in the bucket as of {@link #updated}. The number
+     * is negative when tokens have been reserved ahead of their refill.
+     */
+    private double tokens;
+
+    /**
+     * The time, as given by {@link #clock}, at which {@link #tokens} was last
+     * brought up to date.
+     */
+    private long updated;
+
+    /**
+     * Constructs a new, full token bucket.
+     *
+     * @param capacity the maximum number of tokens the bucket holds; must be
+     * positive
+     * @param permitsPerMinute the number of tokens refilled per minute; must
+     * be positive
+     * @throws IllegalArgumentException if either argument is not positive
+     */
+    public TokenBucket(int capacity, double permitsPerMinute) {
+        this(capacity, permitsPerMinute, System::nanoTime);
+    }    // TokenBucket()
+
+    /**
+     * Constructs a new, full token bucket that uses the given clock.
+     *
+     * @param capacity the maximum number of tokens the bucket holds; must be
+     * positive
+     * @param permitsPerMinute the number of tokens refilled per minute; must
+     * be positive
+     * @param clock the clock, giving the time in nanoseconds; may not be null
+     * @throws IllegalArgumentException if either number is not positive
+     * @throws NullPointerException if {@code clock} is null
+     */
+    TokenBucket(int capacity, double permitsPerMinute, LongSupplier clock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }    // if
+        if (!(permitsPerMinute > 0)) {
+            throw new IllegalArgumentException("permitsPerMinute must be positive");
+        }    // if
+        if (clock == null) {
+            throw new NullPointerException("clock may not be null");
+        }    // if
+
+        this.capacity = capacity;
+        nanosPerToken = TimeUnit.MINUTES.toNanos(1) / permitsPerMinute;
+        this.clock = clock;
+        tokens = capacity;
+        updated = clock.getAsLong();
+        assertInvariant();
+    }    // TokenBucket()
+
+    /**
+     * Takes a permit, waiting until one is available.
+     *
+     * @throws InterruptedException if the thread is interrupted while
+     * waiting; the reserved permit is not returned
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }    // if
+    }    // acquire()
+
+    /**
+     * Takes a permit if one is available immediately.
+     *
+     * @return true if a permit was taken; false otherwise
+     */
+    public synchronized boolean tryAcquire() {
+        assertInvariant();
+        refill();
+        if (tokens < 1) {
+            return false;
+        }    // if
+        tokens -= 1;
+        assertInvariant();
+        return true;
+    }    // tryAcquire()
+
+    /**
+     * Reserves a permit and returns the time, in nanoseconds, until it is
+     * due. A return value of zero means the permit may be used at once.
+     *
+     * @return the time until the reserved permit is due, in nanoseconds
+     */
+    synchronized long reserve() {
+        assertInvariant();
+        refill();
+        tokens -= 1;
+        assertInvariant();
+        return (tokens >= 0) ? 0 : (long)Math.ceil(-tokens * nanosPerToken);
+    }    // reserve()
+
+    /**
+     * Returns the maximum number of tokens the bucket holds.
+     *
+     * @return the capacity of the bucket
+     */
+    public int getCapacity() {
+        assertInvariant();
+        return capacity;
+    }    // getCapacity()
+
+    /**
+     * Adds the tokens refilled since the bucket was last brought up to date.
+     * The caller must hold the bucket's lock.
+     */
+    private void refill() {
+        assert (Thread.holdsLock(this));
+        long now = clock.getAsLong();
+        if (now > updated) {
+            tokens = Math.min(capacity, tokens + (now - updated) / nanosPerToken);
+            updated = now;
+        }    // if
+        assert (tokens <= capacity);
+    }    // refill()
+
+    /**
+     * Asserts the correctness of the object's internal state.
+     */
+    private void assertInvariant() {
+        assert (capacity > 0);
+        assert (nanosPerToken > 0);
+        assert (clock != null);
+    }    // assertInvariant()
+
+}    // TokenBucket
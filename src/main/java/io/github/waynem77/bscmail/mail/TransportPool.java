@@ -0,0 +1,736 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import io.github.waynem77.bscmail.persistent.EmailServerProperties;
+import com.sun.mail.smtp.SMTPTransport;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+
+/**
+ * A thread-safe pool of connected, authenticated SMTP transports. Connecting
+ * to an email server costs a TCP connection, a STARTTLS handshake, and
+ * authentication; the pool keeps connections open between messages so that
+ * this cost is paid once per connection rather than once per message.
+ *
+ * Connections are pooled by email server host, port, and username. Each pool
+ * has its own mail {@link Session}, with its own session properties, so that
+ * pools do not interfere with each other or with the system properties. A
+ * pooled connection is only reused with the password it was authenticated
+ * with, and only after it has been checked with an SMTP NOOP command.
+ * Connections left idle longer than the idle timeout, or in excess of the
+ * maximum number of idle connections, are closed. While the pool holds idle
+ * connections, a daemon reaper thread checks them once per idle timeout, so
+ * that an idle connection is closed within twice the idle timeout even if the
+ * pool is not used again.
+ *
+ * Connections are borrowed with {@link #acquire(EmailServerProperties, String)}
+ * and returned by closing the {@link Lease} it returns.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public class TransportPool implements AutoCloseable {
+
+    /**
+     * A connection borrowed from the pool. Closing the lease returns the
+     * connection to the pool, unless the lease has been invalidated, in which
+     * case the connection is closed.
+     */
+    public final class Lease implements AutoCloseable {
+
+        /**
+         * The pool the connection belongs to.
+         */
+        private final Pool pool;
+
+        /**
+         * The connection.
+         */
+        private final PooledTransport pooledTransport;
+
+        /**
+         * True if the connection should be closed rather than reused.
+         */
+        private boolean invalid;
+
+        /**
+         * True if the lease has been closed.
+         */
+        private boolean closed;
+
+        /**
+         * Constructs a new lease.
+         *
+         * @param pool the pool the connection belongs to; may not be null
+         * @param pooledTransport the connection; may not be null
+         */
+        private Lease(Pool pool, PooledTransport pooledTransport) {
+            assert (pool != null);
+            assert (pooledTransport != null);
+            this.pool = pool;
+            this.pooledTransport = pooledTransport;
+            invalid = false;
+            closed = false;
+        }    // Lease()
+
+        /**
+         * Returns the connected transport.
+         *
+         * @return the connected transport
+         */
+        public SMTPTransport getTransport() {
+            return pooledTransport.transport;
+        }    // getTransport()
+
+        /**
+         * Marks the connection as unfit for reuse. The connection is closed,
+         * rather than returned to the pool, when the lease is closed. A lease
+         * should be invalidated whenever sending over its connection fails.
+         */
+        public void invalidate() {
+            invalid = true;
+        }    // invalidate()
+
+        /**
+         * Returns the connection to the pool, or closes it if the lease has
+         * been invalidated. Closing a lease more than once has no effect.
+         */
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(pool, pooledTransport, invalid);
+            }    // if
+        }    // close()
+
+    }    // Lease
+
+    /**
+     * The key identifying a pool: an email server host, port, and username.
+     */
+    private static final class Key {
+
+        /**
+         * The email server host.
+         */
+        private final String host;
+
+        /**
+         * The email server port.
+         */
+        private final String port;
+
+        /**
+         * The username.
+         */
+        private final String username;
+
+        /**
+         * Constructs a new key.
+         *
+         * @param serverProperties the email server properties; may not be
+         * null
+         */
+        Key(EmailServerProperties serverProperties) {
+            assert (serverProperties != null);
+            host = serverProperties.getHostname();
+            port = serverProperties.getPort();
+            username = serverProperties.getUsername();
+        }    // Key()
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }    // if
+            if (!(obj instanceof Key)) {
+                return false;
+            }    // if
+            Key other = (Key)obj;
+            return Objects.equals(host, other.host)
+                    && Objects.equals(port, other.port)
+                    && Objects.equals(username, other.username);
+        }    // equals()
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(host, port, username);
+        }    // hashCode()
+
+    }    // Key
+
+    /**
+     * The session and idle connections for a single key.
+     */
+    private static final class Pool {
+
+        /**
+         * The mail session, with properties belonging to this pool alone.
+         */
+        private final Session session;
+
+        /**
+         * The idle connections, most recently used first.
+         */
+        private final Deque<PooledTransport> idle;
+
+        /**
+         * Constructs a new pool.
+         *
+         * @param session the mail session; may not be null
+         */
+        Pool(Session session) {
+            assert (session != null);
+            this.session = session;
+            idle = new ArrayDeque<>();
+        }    // Pool()
+
+    }    // Pool
+
+    /**
+     * A pooled connection.
+     */
+    private static final class PooledTransport {
+
+        /**
+         * The connected transport.
+         */
+        private final SMTPTransport transport;
+
+        /**
+         * A digest of the password the transport was authenticated with.
+         */
+        private final byte[] passwordDigest;
+
+        /**
+         * The time, as given by {@link System#nanoTime()}, at which the
+         * connection was last returned to the pool.
+         */
+        private long idleSince;
+
+        /**
+         * Constructs a new pooled connection.
+         *
+         * @param transport the connected transport; may not be null
+         * @param passwordDigest a digest of the password; may not be null
+         */
+        PooledTransport(SMTPTransport transport, byte[] passwordDigest) {
+            assert (transport != null);
+            assert (passwordDigest != null);
+            this.transport = transport;
+            this.passwordDigest = passwordDigest;
+            idleSince = System.nanoTime();
+        }    // PooledTransport()
+
+    }    // PooledTransport
+
+    /**
+     * The default time, in milliseconds, after which an idle connection is
+     * closed.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+
+    /**
+     * The default maximum number of idle connections kept per pool.
+     */
+    public static final int DEFAULT_MAXIMUM_IDLE = 4;
+
+    /**
+     * The executor running the reapers of all transport pools. Its single
+     * thread is a daemon, so that it never keeps the program running.
+     */
+    private static final ScheduledThreadPoolExecutor REAPER_EXECUTOR = createReaperExecutor();
+
+    /**
+     * The shared transport pool.
+     */
+    private static final TransportPool SHARED_POOL = new TransportPool(DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_MAXIMUM_IDLE);
+
+    /**
+     * The time, in nanoseconds, after which an idle connection is closed.
+     */
+    private final long idleTimeoutNanos;
+
+    /**
+     * The maximum number of idle connections kept per pool.
+     */
+    private final int maximumIdle;
+
+    /**
+     * The pools, by key.
+     */
+    private final ConcurrentMap<Key, Pool> pools;
+
+    /**
+     * The number of connections opened.
+     */
+    private final AtomicInteger connectionCount;
+
+    /**
+     * The number of times a pooled connection has been reused.
+     */
+    private final AtomicInteger reuseCount;
+
+    /**
+     * The scheduled task closing expired idle connections, or null if none is
+     * scheduled. A task is scheduled whenever the pool holds idle connections.
+     * Guarded by {@code reaperLock}.
+     */
+    private ScheduledFuture<?> reaper;
+
+    /**
+     * The lock guarding {@code reaper}.
+     */
+    private final Object reaperLock;
+
+    /**
+     * True if the pool has been closed, after which connections are closed
+     * rather than returned to the pool.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Returns the shared transport pool.
+     *
+     * @return the shared transport pool
+     */
+    public static TransportPool getSharedPool() {
+        return SHARED_POOL;
+    }    // getSharedPool()
+
+    /**
+     * Constructs a new, empty transport pool.
+     *
+     * @param idleTimeoutMillis the time, in milliseconds, after which an idle
+     * connection is closed; must be non-negative
+     * @param maximumIdle the maximum number of idle connections kept per
+     * pool; must be non-negative
+     * @throws IllegalArgumentException if either argument is negative
+     */
+    public TransportPool(long idleTimeoutMillis, int maximumIdle) {
+        if (idleTimeoutMillis < 0) {
+            throw new IllegalArgumentException("idleTimeoutMillis must be non-negative");
+        }    // if
+        if (maximumIdle < 0) {
+            throw new IllegalArgumentException("maximumIdle must be non-negative");
+        }    // if
+
+        idleTimeoutNanos = idleTimeoutMillis * 1000000L;
+        this.maximumIdle = maximumIdle;
+        pools = new ConcurrentHashMap<>();
+        connectionCount = new AtomicInteger();
+        reuseCount = new AtomicInteger();
+        reaper = null;
+        reaperLock = new Object();
+        closed = false;
+        assertInvariant();
+    }    // TransportPool()
+
+    /**
+     * Returns the mail session for the given email server properties. The
+     * same session is returned for all properties with the same host, port,
+     * and username. The session's properties belong to the session alone.
+     *
+     * @param serverProperties the email server properties; may not be null
+     * @return the mail session for the properties
+     * @throws NullPointerException if {@code serverProperties} is null
+     */
+    public Session getSession(EmailServerProperties serverProperties) {
+        assertInvariant();
+        if (serverProperties == null) {
+            throw new NullPointerException("serverProperties may not be null");
+        }    // if
+        return getPool(serverProperties).session;
+    }    // getSession()
+
+    /**
+     * Borrows a connected, authenticated transport for the given email
+     * server. An idle pooled connection is reused if one passes an SMTP NOOP
+     * check and was authenticated with the same password; otherwise a new
+     * connection is opened. The returned lease must be closed.
+     *
+     * @param serverProperties the email server properties; may not be null
+     * @param password the email server password; may be null
+     * @return a lease on a connected transport
+     * @throws NullPointerException if {@code serverProperties} is null
+     * @throws MessagingException if a new connection cannot be opened
+     */
+    public Lease acquire(EmailServerProperties serverProperties, String password) throws MessagingException {
+        assertInvariant();
+        if (serverProperties == null) {
+            throw new NullPointerException("serverProperties may not be null");
+        }    // if
+
+        Pool pool = getPool(serverProperties);
+        byte[] passwordDigest = digest(password);
+        PooledTransport candidate;
+        while ((candidate = takeIdle(pool, passwordDigest)) != null) {
+            // SMTPTransport.isConnected() checks the connection with a NOOP.
+            if (candidate.transport.isConnected()) {
+                reuseCount.incrementAndGet();
+                return new Lease(pool, candidate);
+            }    // if
+            close(candidate);
+        }    // while
+
+        SMTPTransport transport = createTransport(pool.session);
+        transport.connect(serverProperties.getHostname(), serverProperties.getUsername(), password);
+        connectionCount.incrementAndGet();
+        return new Lease(pool, new PooledTransport(transport, passwordDigest));
+    }    // acquire()
+
+    /**
+     * Closes all idle connections that have been idle longer than the idle
+     * timeout.
+     */
+    public void evictIdle() {
+        assertInvariant();
+        List<PooledTransport> stale = new ArrayList<>();
+        for (Pool pool : pools.values()) {
+            synchronized (pool) {
+                evictExpired(pool, stale);
+            }    // synchronized
+        }    // for
+        closeAll(stale);
+    }    // evictIdle()
+
+    /**
+     * Returns the number of idle connections in the pool.
+     *
+     * @return the number of idle connections
+     */
+    public int getIdleCount() {
+        assertInvariant();
+        int count = 0;
+        for (Pool pool : pools.values()) {
+            synchronized (pool) {
+                count += pool.idle.size();
+            }    // synchronized
+        }    // for
+        return count;
+    }    // getIdleCount()
+
+    /**
+     * Returns the number of connections the pool has opened; that is, the
+     * number of times it has connected to and authenticated with an email
+     * server.
+     *
+     * @return the number of connections opened
+     */
+    public int getConnectionCount() {
+        assertInvariant();
+        return connectionCount.get();
+    }    // getConnectionCount()
+
+    /**
+     * Returns the number of times a pooled connection has been reused.
+     *
+     * @return the number of times a connection has been reused
+     */
+    public int getReuseCount() {
+        assertInvariant();
+        return reuseCount.get();
+    }    // getReuseCount()
+
+    /**
+     * Closes all idle connections. Connections currently leased are closed
+     * when they are returned. The pool may continue to be used, but it no
+     * longer keeps idle connections: every connection leased afterward is
+     * also closed when it is returned.
+     */
+    @Override
+    public void close() {
+        assertInvariant();
+        // Set before the idle connections are taken, so that a connection
+        // returned concurrently is either taken here or closed by release().
+        closed = true;
+        synchronized (reaperLock) {
+            if (reaper != null) {
+                reaper.cancel(false);
+                reaper = null;
+            }    // if
+        }    // synchronized
+        List<PooledTransport> stale = new ArrayList<>();
+        for (Pool pool : pools.values()) {
+            synchronized (pool) {
+                stale.addAll(pool.idle);
+                pool.idle.clear();
+            }    // synchronized
+        }    // for
+        closeAll(stale);
+    }    // close()
+
+    /**
+     * Creates an unconnected transport for the given session.
+     *
+     * @param session the mail session; may not be null
+     * @return an unconnected transport
+     * @throws MessagingException if a transport cannot be created
+     */
+    SMTPTransport createTransport(Session session) throws MessagingException {
+        assert (session != null);
+        return (SMTPTransport)session.getTransport("smtp");
+    }    // createTransport()
+
+    /**
+     * Returns mail session properties based on the given EmailServerProperties
+     * object. The properties are new; in particular, they are not the system
+     * properties.
+     *
+     * @param serverProperties the email server properties; may not be null
+     * @return mail session properties based on serverProperties
+     */
+    static Properties createSessionProperties(EmailServerProperties serverProperties) {
+        assert (serverProperties != null);
+
+        String host = serverProperties.getHostname();
+        String port = serverProperties.getPort();
+
+        Properties properties = new Properties();
+        properties.put("mail.smtp.host", host);
+        properties.put("mail.smtp.auth", "true");
+        properties.put("mail.smtp.port", port);
+        properties.put("mail.smtp.starttls.enable", "true");
+        properties.put("mail.smtp.ssl.trust", host);
+
+        return properties;
+    }    // createSessionProperties()
+
+    /**
+     * Returns the pool for the given email server properties, creating it if
+     * necessary.
+     *
+     * @param serverProperties the email server properties; may not be null
+     * @return the pool for the properties
+     */
+    private Pool getPool(EmailServerProperties serverProperties) {
+        assert (serverProperties != null);
+        return pools.computeIfAbsent(new Key(serverProperties),
+                key -> new Pool(Session.getInstance(createSessionProperties(serverProperties), null)));
+    }    // getPool()
+
+    /**
+     * Removes and returns the most recently used idle connection in the given
+     * pool that was authenticated with the given password, or returns null if
+     * there is none. Expired connections are closed first.
+     *
+     * @param pool the pool; may not be null
+     * @param passwordDigest a digest of the password; may not be null
+     * @return an idle connection, or null
+     */
+    private PooledTransport takeIdle(Pool pool, byte[] passwordDigest) {
+        assert (pool != null);
+        assert (passwordDigest != null);
+
+        List<PooledTransport> stale = new ArrayList<>();
+        PooledTransport found = null;
+        synchronized (pool) {
+            evictExpired(pool, stale);
+            for (Iterator<PooledTransport> i = pool.idle.iterator(); (found == null) && i.hasNext();) {
+                PooledTransport candidate = i.next();
+                if (Arrays.equals(candidate.passwordDigest, passwordDigest)) {
+                    i.remove();
+                    found = candidate;
+                }    // if
+            }    // for
+        }    // synchronized
+        closeAll(stale);
+        return found;
+    }    // takeIdle()
+
+    /**
+     * Returns a connection to its pool, or closes it if it is invalid or the
+     * pool has been closed.
+     *
+     * @param pool the pool; may not be null
+     * @param pooledTransport the connection; may not be null
+     * @param invalid true if the connection must be closed
+     */
+    private void release(Pool pool, PooledTransport pooledTransport, boolean invalid) {
+        assert (pool != null);
+        assert (pooledTransport != null);
+
+        List<PooledTransport> stale = new ArrayList<>();
+        boolean pooled = false;
+        if (!invalid) {
+            synchronized (pool) {
+                // Checked under the pool's lock, which close() takes after
+                // setting the flag.
+                if (!closed) {
+                    pooledTransport.idleSince = System.nanoTime();
+                    pool.idle.addFirst(pooledTransport);
+                    pooled = true;
+                    while (pool.idle.size() > maximumIdle) {
+                        stale.add(pool.idle.removeLast());
+                    }    // while
+                    evictExpired(pool, stale);
+                }    // if
+            }    // synchronized
+        }    // if
+        if (pooled) {
+            scheduleReaper();
+        } else {    // if
+            stale.add(pooledTransport);
+        }    // else
+        closeAll(stale);
+    }    // release()
+
+    /**
+     * Schedules the reaper, unless it is already scheduled, idle connections
+     * expire at once, or the pool has been closed.
+     */
+    private void scheduleReaper() {
+        if (idleTimeoutNanos == 0) {
+            // Every connection is evicted as soon as it is returned.
+            return;
+        }    // if
+        synchronized (reaperLock) {
+            if ((reaper == null) && !closed) {
+                reaper = REAPER_EXECUTOR.scheduleWithFixedDelay(this::reap, idleTimeoutNanos, idleTimeoutNanos, TimeUnit.NANOSECONDS);
+            }    // if
+        }    // synchronized
+    }    // scheduleReaper()
+
+    /**
+     * Closes expired idle connections, and cancels the reaper once the pool
+     * holds no idle connections. Run periodically on the reaper thread.
+     */
+    private void reap() {
+        evictIdle();
+        synchronized (reaperLock) {
+            // A connection returned after this check schedules a new reaper.
+            if ((reaper != null) && (getIdleCount() == 0)) {
+                reaper.cancel(false);
+                reaper = null;
+            }    // if
+        }    // synchronized
+    }    // reap()
+
+    /**
+     * Creates the executor running the reapers of all transport pools.
+     *
+     * @return the reaper executor
+     */
+    private static ScheduledThreadPoolExecutor createReaperExecutor() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "TransportPool reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }    // createReaperExecutor()
+
+    /**
+     * Removes the connections in the given pool that have been idle longer
+     * than the idle timeout, adding them to the given list. The caller must
+     * hold the pool's lock.
+     *
+     * @param pool the pool; may not be null
+     * @param stale the list of connections to close; may not be null
+     */
+    private void evictExpired(Pool pool, List<PooledTransport> stale) {
+        assert (pool != null);
+        assert (stale != null);
+        assert (Thread.holdsLock(pool));
+
+        long now = System.nanoTime();
+        // The least recently used connections are at the end.
+        while (!pool.idle.isEmpty() && (now - pool.idle.peekLast().idleSince >= idleTimeoutNanos)) {
+            stale.add(pool.idle.removeLast());
+        }    // while
+    }    // evictExpired()
+
+    /**
+     * Closes the given connections, ignoring errors.
+     *
+     * @param stale the connections; may not be null
+     */
+    private static void closeAll(List<PooledTransport> stale) {
+        assert (stale != null);
+        for (PooledTransport pooledTransport : stale) {
+            close(pooledTransport);
+        }    // for
+    }    // closeAll()
+
+    /**
+     * Closes the given connection, ignoring errors.
+     *
+     * @param pooledTransport the connection; may not be null
+     */
+    private static void close(PooledTransport pooledTransport) {
+        assert (pooledTransport != null);
+        try {
+            pooledTransport.transport.close();
+        } catch (MessagingException e) {    // try
+            // The connection is being discarded anyway.
+        }    // catch
+    }    // close()
+
+    /**
+     * Returns a digest of the given password. Pooled connections are matched
+     * to passwords by digest so that the pool does not retain passwords.
+     *
+     * @param password the password; may be null
+     * @return a digest of the password
+     */
+    private static byte[] digest(String password) {
+        if (password == null) {
+            return new byte[0];
+        }    // if
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {    // try
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }    // catch
+    }    // digest()
+
+    /**
+     * Asserts the correctness of the object's internal state.
+     */
+    private void assertInvariant() {
+        assert (idleTimeoutNanos >= 0);
+        assert (maximumIdle >= 0);
+        assert (pools != null);
+        assert (connectionCount != null);
+        assert (reuseCount != null);
+        assert (reaperLock != null);
+    }    // assertInvariant()
+
+}    // TransportPool
@@ -19,12 +19,17 @@
 
 package io.github.waynem77.bscmail.persistent;
 
+import io.github.waynem77.bscmail.util.format.CompiledTemplate;
+import io.github.waynem77.bscmail.util.format.DateFormatter;
+import io.github.waynem77.bscmail.util.format.TemplateCache;
 import java.io.Serializable;
 import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Arrays;
+import java.util.IllformedLocaleException;
 import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
@@ -33,8 +38,9 @@ import java.util.Optional;
  *   <li>send type,</li>
  *   <li>pre-schedule text,</li>
  *   <li>post-schedule text,</li>
- *   <li>subject line template, and</li>
- *   <li>date format string.</li>
+ *   <li>subject line template,</li>
+ *   <li>date format string, and</li>
+ *   <li>locale.</li>
  * </ul>
  *
  * The send type is an enum of type {@link EmailTemplate.SendType}. The
@@ -43,7 +49,9 @@ import java.util.Optional;
  * string of a format appropriate for a
  * {@link io.github.waynem77.bscmail.util.format.EmailFormatter}. The date
  * format string is a string of a format appropriate for a
- * {@link java.text.SimpleDateFormat}.
+ * {@link java.text.SimpleDateFormat}. The locale determines the language of
+ * the month and day names in formatted dates; an email template without a
+ * locale uses the default locale of the machine.
  *
  * @author wayne.miller
  */
@@ -173,6 +181,18 @@ public class EmailTemplate implements Cloneable, Serializable, ReadWritable {
          * value does not exist, is null, or is in a format not accepted by
          * {@link EmailTemplate#EmailTemplate(bscmail.EmailTemplate.SendType, java.lang.String, java.lang.String, java.lang.String, java.lang.String)},
          * the date format string is empty.</li>
+         *   <li>The email template's locale is given by the IETF BCP 47
+         * language tag in the string value of the value corresponding to
+         * "locale". If such a value does not exist, is null, is empty, or is
+         * not a well-formed language tag, the email template has no
+         * locale.</li>
+         *   <li>If the string value of the value corresponding to
+         * "compiledSubjectLineTemplate" is the compiled form of the subject
+         * line template, the compiled template is placed in the
+         * {@link TemplateCache#getSharedCache() shared template cache}, so that
+         * the subject line template is not parsed again. If the value is
+         * missing, empty, or stale, it is ignored, and the subject line
+         * template is compiled when it is first used.</li>
          * </ul>
          * This method effectively acts as the reverse of
          * {@link EmailTemplate#getReadWritableProperties()}.
@@ -206,18 +226,53 @@ public class EmailTemplate implements Cloneable, Serializable, ReadWritable {
             Object dateFormatStringObject = properties.get("dateFormatString");
             String dateFormatString = (dateFormatStringObject != null) ? dateFormatStringObject.toString() : "";
 
+            Object localeObject = properties.get("locale");
+            Locale locale = (localeObject != null) ? parseLocale(localeObject.toString()) : null;
+
             EmailTemplate emailTemplate;
             try {
-                emailTemplate = new EmailTemplate(sendType, preScheduleText, postScheduleText, subjectLineTemplate, dateFormatString);
+                emailTemplate = new EmailTemplate(sendType, preScheduleText, postScheduleText, subjectLineTemplate, dateFormatString, locale);
             } catch (Exception e) {    // try
                 dateFormatString = "";
-                emailTemplate = new EmailTemplate(sendType, preScheduleText, postScheduleText, subjectLineTemplate, dateFormatString);
+                emailTemplate = new EmailTemplate(sendType, preScheduleText, postScheduleText, subjectLineTemplate, dateFormatString, locale);
             }    // catch
+
+            Object compiledSubjectLineTemplateObject = properties.get("compiledSubjectLineTemplate");
+            String compiledSubjectLineTemplate = (compiledSubjectLineTemplateObject != null) ? compiledSubjectLineTemplateObject.toString() : "";
+            if (!compiledSubjectLineTemplate.isEmpty()) {
+                CompiledTemplate compiledTemplate = CompiledTemplate.fromCompiledForm(compiledSubjectLineTemplate, subjectLineTemplate, emailTemplate.getDateFormatString(), locale);
+                if (compiledTemplate != null) {
+                    TemplateCache.getSharedCache().put(compiledTemplate);
+                }    // if
+            }    // if
             return emailTemplate;
         }    // constructReadWritable()
 
     }    // Factory
 
+    /**
+     * Returns the locale with the given IETF BCP 47 language tag, or null if
+     * the tag is empty or is not well-formed.
+     *
+     * @param languageTag the language tag; may not be null
+     * @return the locale with the given language tag, or null
+     * @throws NullPointerException if {@code languageTag} is null
+     * @since 4.0
+     */
+    public static Locale parseLocale(String languageTag) {
+        if (languageTag == null) {
+            throw new NullPointerException("languageTag may not be null");
+        }    // if
+        if (languageTag.trim().isEmpty()) {
+            return null;
+        }    // if
+        try {
+            return new Locale.Builder().setLanguageTag(languageTag.trim()).build();
+        } catch (IllformedLocaleException e) {    // try
+            return null;
+        }    // catch
+    }    // parseLocale()
+
     /**
      * Returns a factory that creates email templates from read-writable
      * property maps.
@@ -255,7 +310,12 @@ public class EmailTemplate implements Cloneable, Serializable, ReadWritable {
     private final String dateFormatString;
 
     /**
-     * Constructs a new email template.
+     * The locale used in the email, or null if the default locale is used.
+     */
+    private final Locale locale;
+
+    /**
+     * Constructs a new email template without a locale.
      *
      * @param sendType indicates the send type for the email recipients; may not
      * be null
@@ -273,6 +333,32 @@ public class EmailTemplate implements Cloneable, Serializable, ReadWritable {
      * appropriate format
      */
     public EmailTemplate(SendType sendType, String preScheduleText, String postScheduleText, String subjectLineTemplate, String dateFormatString) {
+        this(sendType, preScheduleText, postScheduleText, subjectLineTemplate, dateFormatString, null);
+    }    // EmailTemplate()
+
+    /**
+     * Constructs a new email template.
+     *
+     * @param sendType indicates the send type for the email recipients; may not
+     * be null
+     * @param preScheduleText the email template's pre-schedule text; may be
+     * empty, but not null
+     * @param postScheduleText the email template's post-schedule text; may be
+     * empty, but not null
+     * @param subjectLineTemplate the email template's subject line template;
+     * may be empty, but not null
+     * @param dateFormatString the date format to use in the email; may not be
+     * null; must be in a format appropriate for a
+     * {@link java.text.SimpleDateFormat}
+     * @param locale the locale to use in the email; may be null, in which case
+     * the default locale is used
+     * @throws NullPointerException if any parameter other than {@code locale}
+     * is null
+     * @throws IllegalArgumentException if dateFormatString is not in an
+     * appropriate format
+     * @since 4.0
+     */
+    public EmailTemplate(SendType sendType, String preScheduleText, String postScheduleText, String subjectLineTemplate, String dateFormatString, Locale locale) {
         if (sendType == null) {
             throw new NullPointerException("sendType may not be null");
         }    // if
@@ -289,7 +375,7 @@ public class EmailTemplate implements Cloneable, Serializable, ReadWritable {
             throw new NullPointerException("dateFormatString may not be null");
         }    // if
         try {
-            DateFormat dummy = new SimpleDateFormat(dateFormatString);
+            DateFormatter.forPattern(dateFormatString);    // Validates and caches the pattern
         } catch (Exception e) {    // try
             throw new IllegalArgumentException("dateFormatString must be in appropriate format for SimpleDateFormat", e);
         }    // catch
@@ -299,8 +385,9 @@ public class EmailTemplate implements Cloneable, Serializable, ReadWritable {
         this.postScheduleText = postScheduleText;
         this.subjectLineTemplate = subjectLineTemplate;
         this.dateFormatString = dateFormatString;
+        this.locale = locale;
         assertInvariant();
-    }    // Shift()
+    }    // EmailTemplate()
 
     /**
      * Returns the email template's send type.
@@ -364,20 +451,41 @@ public class EmailTemplate implements Cloneable, Serializable, ReadWritable {
      */
     public DateFormat getDateFormatter() {
         assertInvariant();
-        return new SimpleDateFormat(dateFormatString);
+        return (locale != null)
+                ? DateFormatter.forPattern(dateFormatString, locale).toDateFormat()
+                : DateFormatter.forPattern(dateFormatString).toDateFormat();
     }    // getDateFormatter()
 
+    /**
+     * Returns the email template's locale, or null if the email template uses
+     * the default locale.
+     *
+     * @return the email template's locale, or null
+     * @since 4.0
+     */
+    public Locale getLocale() {
+        assertInvariant();
+        return locale;
+    }    // getLocale()
+
     /**
      * Returns a map containing the read-writable properties of the email
      * template. The map returned by this method is guaranteed to have the
      * following properties.
      * <ul>
-     *   <li>The map has exactly five keys: "sendType", "preScheduleText",
-     * "postScheduleText", and "subjectLineTemplate", and
-     * "dateFormatString".</li>
+     *   <li>The map has exactly seven keys: "sendType", "preScheduleText",
+     * "postScheduleText", "subjectLineTemplate", "dateFormatString", "locale",
+     * and "compiledSubjectLineTemplate".</li>
      *   <li>The value of "sendType" is the value of
      * {@link SendType#getRwRepresentation()}, corresponding to the return value
      * of {@link #getSendType()}.</li>
+     *   <li>The value of "locale" is the IETF BCP 47 language tag of the
+     * locale, or an empty string if the email template has no locale.</li>
+     *   <li>The value of "compiledSubjectLineTemplate" is the
+     * {@link CompiledTemplate#toCompiledForm() compiled form} of the subject
+     * line template. The template is compiled for this call alone; the
+     * {@link TemplateCache#getSharedCache() shared template cache} is neither
+     * consulted nor filled.</li>
      *   <li>The remaining values are non-null {@link String}s corresponding to
      * the return values of the appropriate getter methods.</li>
      *   <li>The iteration order of the elements is fixed in the order the keys
@@ -395,6 +503,8 @@ public class EmailTemplate implements Cloneable, Serializable, ReadWritable {
         properties.put("postScheduleText", postScheduleText);
         properties.put("subjectLineTemplate", subjectLineTemplate);
         properties.put("dateFormatString", dateFormatString);
+        properties.put("locale", (locale != null) ? locale.toLanguageTag() : "");
+        properties.put("compiledSubjectLineTemplate", CompiledTemplate.compile(subjectLineTemplate, dateFormatString, locale).toCompiledForm());
         return properties;
     }    // getReadWritableProperties()
 
@@ -418,8 +528,10 @@ public class EmailTemplate implements Cloneable, Serializable, ReadWritable {
      *   <li>both email templates have the same send type,</li>
      *   <li>both email templates have the same pre-schedule text,</li>
      *   <li>both email templates have the same pre-schedule text,</li>
-     *   <li>both email templates have the same subject line template, and</li>
-     *   <li>both email templates have the same date format string.</li>
+     *   <li>both email templates have the same subject line template,</li>
+     *   <li>both email templates have the same date format string, and</li>
+     *   <li>both email templates have the same locale, or neither has a
+     * locale.</li>
      * </ol>
      *
      * @param obj the object with which to compare
@@ -439,7 +551,8 @@ public class EmailTemplate implements Cloneable, Serializable, ReadWritable {
                 && preScheduleText.equals(rhs.preScheduleText)
                 && postScheduleText.equals(rhs.postScheduleText)
                 && subjectLineTemplate.equals(rhs.subjectLineTemplate)
-                && dateFormatString.equals(rhs.dateFormatString);
+                && dateFormatString.equals(rhs.dateFormatString)
+                && Objects.equals(locale, rhs.locale);
     }    // equals()
 
     @Override
@@ -452,6 +565,7 @@ public class EmailTemplate implements Cloneable, Serializable, ReadWritable {
         code = code * MULTIPLIER + postScheduleText.hashCode();
         code = code * MULTIPLIER + subjectLineTemplate.hashCode();
         code = code * MULTIPLIER + dateFormatString.hashCode();
+        code = code * MULTIPLIER + Objects.hashCode(locale);
         return code;
     }    // hashCode()
 
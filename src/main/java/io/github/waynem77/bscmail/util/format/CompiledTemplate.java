@@ -0,0 +1,1508 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.util.format;
+
+import io.github.waynem77.bscmail.persistent.Event;
+import io.github.waynem77.bscmail.persistent.EventProperty;
+import io.github.waynem77.bscmail.persistent.Shift;
+import io.github.waynem77.bscmail.persistent.Volunteer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A template that has been parsed, once, into an immutable render plan. The
+ * template language is that described by {@link EmailFormatter}. A compiled
+ * template may be rendered any number of times, for any number of events,
+ * without being parsed again, and may be rendered concurrently by multiple
+ * threads.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public final class CompiledTemplate {
+
+    /**
+     * The state of a single rendering.
+     */
+    private static final class RenderContext {
+
+        /**
+         * The template being rendered.
+         */
+        private final CompiledTemplate template;
+
+        /**
+         * The event being rendered.
+         */
+        private final Event event;
+
+        /**
+         * The current shift, inside a shifts section.
+         */
+        private Shift shift;
+
+        /**
+         * The current event property, inside a properties section.
+         */
+        private EventProperty eventProperty;
+
+        /**
+         * Constructs a new render context.
+         *
+         * @param template the template being rendered; may not be null
+         * @param event the event being rendered; may not be null
+         */
+        RenderContext(CompiledTemplate template, Event event) {
+            assert (template != null);
+            assert (event != null);
+            this.template = template;
+            this.event = event;
+            shift = null;
+            eventProperty = null;
+        }    // RenderContext()
+
+        /**
+         * Appends the given value to the given destination, escaped if the
+         * template being rendered is an HTML template.
+         *
+         * @param out the destination; may not be null
+         * @param value the value; may not be null
+         * @throws IOException if an I/O error occurs
+         */
+        void appendValue(Appendable out, String value) throws IOException {
+            assert (out != null);
+            assert (value != null);
+            if (template.html) {
+                HtmlEscaper.escape(value, out);
+            } else {    // if
+                out.append(value);
+            }    // else
+        }    // appendValue()
+
+        /**
+         * Returns the volunteer of the current shift.
+         *
+         * @return the volunteer of the current shift
+         */
+        Volunteer getVolunteer() {
+            assert (shift != null);
+            assert (shift.getVolunteer() != null);
+            return shift.getVolunteer();
+        }    // getVolunteer()
+
+    }    // RenderContext
+
+    /**
+     * A single step in rendering a template.
+     */
+    private static interface Instruction {
+
+        /**
+         * Renders this instruction.
+         *
+         * @param context the render context; may not be null
+         * @param out the destination; may not be null
+         * @throws IOException if an I/O error occurs
+         */
+        void render(RenderContext context, Appendable out) throws IOException;
+
+        /**
+         * Appends the compiled form of this instruction to the given builder.
+         *
+         * @param out the builder; may not be null
+         * @see CompiledTemplate#toCompiledForm()
+         */
+        void encode(StringBuilder out);
+
+    }    // Instruction
+
+    /**
+     * The sections that may appear in a template. A section is opened with
+     * "{#<i>name</i>}" and closed with "{/<i>name</i>}".
+     */
+    private static enum SectionType {
+
+        /**
+         * Rendered once for each shift of the event.
+         */
+        SHIFTS ("shifts", null),
+
+        /**
+         * Rendered if the current shift has a volunteer.
+         */
+        VOLUNTEER ("volunteer", SHIFTS),
+
+        /**
+         * Rendered if the current shift displays any volunteer details.
+         */
+        DETAILS ("details", VOLUNTEER),
+
+        /**
+         * Rendered if the event has a date.
+         */
+        DATE ("date", null),
+
+        /**
+         * Rendered once for each event property of the event.
+         */
+        PROPERTIES ("properties", null);
+
+        /**
+         * The name of the section.
+         */
+        private final String name;
+
+        /**
+         * The section this section must be nested in, or null if it may
+         * appear anywhere.
+         */
+        private final SectionType parent;
+
+        /**
+         * Constructs a new section type.
+         *
+         * @param name the name of the section; may not be null
+         * @param parent the required enclosing section, or null
+         */
+        private SectionType(String name, SectionType parent) {
+            assert (name != null);
+            this.name = name;
+            this.parent = parent;
+        }    // SectionType()
+
+        /**
+         * Returns the section type with the given name, or null if there is
+         * none.
+         *
+         * @param name the name; may not be null
+         * @return the section type, or null
+         */
+        static SectionType fromName(String name) {
+            assert (name != null);
+            for (SectionType sectionType : values()) {
+                if (sectionType.name.equals(name)) {
+                    return sectionType;
+                }    // if
+            }    // for
+            return null;
+        }    // fromName()
+
+    }    // SectionType
+
+    /**
+     * The fields that may appear in a template, and the sections they must
+     * appear in.
+     */
+    private static enum Field {
+
+        /**
+         * The description of the current shift.
+         */
+        SHIFT ("shift", SectionType.SHIFTS),
+
+        /**
+         * The name of the current shift's volunteer.
+         */
+        VOLUNTEER ("volunteer", SectionType.VOLUNTEER),
+
+        /**
+         * The email address of the current shift's volunteer.
+         */
+        EMAIL ("email", SectionType.VOLUNTEER),
+
+        /**
+         * The phone number of the current shift's volunteer.
+         */
+        PHONE ("phone", SectionType.VOLUNTEER),
+
+        /**
+         * The notes of the current shift's volunteer.
+         */
+        NOTES ("notes", SectionType.VOLUNTEER),
+
+        /**
+         * The volunteer details the current shift displays, separated by
+         * commas.
+         */
+        DETAILS ("details", SectionType.VOLUNTEER),
+
+        /**
+         * The name of the current event property.
+         */
+        NAME ("name", SectionType.PROPERTIES),
+
+        /**
+         * The value of the current event property.
+         */
+        VALUE ("value", SectionType.PROPERTIES);
+
+        /**
+         * The name of the field.
+         */
+        private final String name;
+
+        /**
+         * The section the field must appear in.
+         */
+        private final SectionType section;
+
+        /**
+         * Constructs a new field.
+         *
+         * @param name the name of the field; may not be null
+         * @param section the section the field must appear in; may not be null
+         */
+        private Field(String name, SectionType section) {
+            assert (name != null);
+            assert (section != null);
+            this.name = name;
+            this.section = section;
+        }    // Field()
+
+        /**
+         * Returns the field with the given name, or null if there is none.
+         *
+         * @param name the name; may not be null
+         * @return the field, or null
+         */
+        static Field fromName(String name) {
+            assert (name != null);
+            for (Field field : values()) {
+                if (field.name.equals(name)) {
+                    return field;
+                }    // if
+            }    // for
+            return null;
+        }    // fromName()
+
+    }    // Field
+
+    /**
+     * An instruction that renders literal text.
+     */
+    private static class LiteralInstruction implements Instruction {
+
+        /**
+         * The literal text.
+         */
+        private final String text;
+
+        /**
+         * Constructs a new literal instruction.
+         *
+         * @param text the literal text; may not be null
+         */
+        LiteralInstruction(String text) {
+            assert (text != null);
+            this.text = text;
+        }    // LiteralInstruction()
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void render(RenderContext context, Appendable out) throws IOException {
+            out.append(text);
+        }    // render()
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void encode(StringBuilder out) {
+            out.append('L');
+            encodeString(text, out);
+        }    // encode()
+
+    }    // LiteralInstruction
+
+    /**
+     * An instruction that renders the event date, or nothing if the event has
+     * no date.
+     */
+    private static class DateInstruction implements Instruction {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void render(RenderContext context, Appendable out) throws IOException {
+            Date date = context.event.getDate();
+            if (date == null) {
+                return;
+            }    // if
+            if (context.template.html) {
+                context.appendValue(out, context.template.dateFormatter.format(date));
+            } else {    // if
+                context.template.dateFormatter.formatTo(date, out);
+            }    // else
+        }    // render()
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void encode(StringBuilder out) {
+            out.append('D');
+        }    // encode()
+
+    }    // DateInstruction
+
+    /**
+     * An instruction that renders the value of a named event property, or
+     * nothing if the event has no such property.
+     */
+    private static class PropertyInstruction implements Instruction {
+
+        /**
+         * The name of the event property.
+         */
+        private final String propertyName;
+
+        /**
+         * Constructs a new property instruction.
+         *
+         * @param propertyName the name of the event property; may not be null
+         */
+        PropertyInstruction(String propertyName) {
+            assert (propertyName != null);
+            this.propertyName = propertyName;
+        }    // PropertyInstruction()
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void render(RenderContext context, Appendable out) throws IOException {
+            for (EventProperty eventProperty : context.event.getEventProperties()) {
+                if (eventProperty.getPropertyName().equals(propertyName)) {
+                    context.appendValue(out, eventProperty.getValue());
+                    return;
+                }    // if
+            }    // for
+        }    // render()
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void encode(StringBuilder out) {
+            out.append('P');
+            encodeString(propertyName, out);
+        }    // encode()
+
+    }    // PropertyInstruction
+
+    /**
+     * An instruction that renders a field of the current shift, volunteer, or
+     * event property.
+     */
+    private static class FieldInstruction implements Instruction {
+
+        /**
+         * The field.
+         */
+        private final Field field;
+
+        /**
+         * Constructs a new field instruction.
+         *
+         * @param field the field; may not be null
+         */
+        FieldInstruction(Field field) {
+            assert (field != null);
+            this.field = field;
+        }    // FieldInstruction()
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void render(RenderContext context, Appendable out) throws IOException {
+            switch (field) {
+                case SHIFT:
+                    context.appendValue(out, context.shift.getDescription());
+                    break;
+                case VOLUNTEER:
+                    context.appendValue(out, context.getVolunteer().getName());
+                    break;
+                case EMAIL:
+                    context.appendValue(out, context.getVolunteer().getEmail());
+                    break;
+                case PHONE:
+                    context.appendValue(out, context.getVolunteer().getPhone());
+                    break;
+                case NOTES:
+                    context.appendValue(out, context.getVolunteer().getNotes());
+                    break;
+                case DETAILS:
+                    renderDetails(context, out);
+                    break;
+                case NAME:
+                    context.appendValue(out, context.eventProperty.getPropertyName());
+                    break;
+                case VALUE:
+                    context.appendValue(out, context.eventProperty.getValue());
+                    break;
+                default:
+                    assert (false);
+            }    // switch
+        }    // render()
+
+        /**
+         * Renders the volunteer details displayed by the current shift.
+         *
+         * @param context the render context; may not be null
+         * @param out the destination; may not be null
+         * @throws IOException if an I/O error occurs
+         */
+        private void renderDetails(RenderContext context, Appendable out) throws IOException {
+            assert (context != null);
+            assert (out != null);
+            Shift shift = context.shift;
+            Volunteer volunteer = context.getVolunteer();
+            String separator = "";
+            if (shift.getDisplayVolunteerEmail()) {
+                out.append(separator);
+                context.appendValue(out, volunteer.getEmail());
+                separator = ", ";
+            }    // if
+            if (shift.getDisplayVolunteerPhone()) {
+                out.append(separator);
+                context.appendValue(out, volunteer.getPhone());
+                separator = ", ";
+            }    // if
+            if (shift.getDisplayVolunteerNotes()) {
+                out.append(separator);
+                context.appendValue(out, volunteer.getNotes());
+            }    // if
+        }    // renderDetails()
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void encode(StringBuilder out) {
+            out.append('F');
+            encodeString(field.name, out);
+        }    // encode()
+
+    }    // FieldInstruction
+
+    /**
+     * An instruction that renders a section.
+     */
+    private static class SectionInstruction implements Instruction {
+
+        /**
+         * The type of the section.
+         */
+        private final SectionType sectionType;
+
+        /**
+         * The instructions inside the section.
+         */
+        private final List<Instruction> body;
+
+        /**
+         * Constructs a new section instruction.
+         *
+         * @param sectionType the type of the section; may not be null
+         * @param body the instructions inside the section; may not be null
+         */
+        SectionInstruction(SectionType sectionType, List<Instruction> body) {
+            assert (sectionType != null);
+            assert (body != null);
+            this.sectionType = sectionType;
+            this.body = Collections.unmodifiableList(new ArrayList<>(body));
+        }    // SectionInstruction()
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void render(RenderContext context, Appendable out) throws IOException {
+            switch (sectionType) {
+                case SHIFTS:
+                    Shift enclosingShift = context.shift;
+                    for (Shift shift : context.event.getShifts()) {
+                        context.shift = shift;
+                        renderBody(context, out);
+                    }    // for
+                    context.shift = enclosingShift;
+                    break;
+                case VOLUNTEER:
+                    if (context.shift.getVolunteer() != null) {
+                        renderBody(context, out);
+                    }    // if
+                    break;
+                case DETAILS:
+                    Shift shift = context.shift;
+                    if (shift.getDisplayVolunteerEmail() || shift.getDisplayVolunteerPhone() || shift.getDisplayVolunteerNotes()) {
+                        renderBody(context, out);
+                    }    // if
+                    break;
+                case DATE:
+                    if (context.event.hasDate()) {
+                        renderBody(context, out);
+                    }    // if
+                    break;
+                case PROPERTIES:
+                    EventProperty enclosingProperty = context.eventProperty;
+                    for (EventProperty eventProperty : context.event.getEventProperties()) {
+                        context.eventProperty = eventProperty;
+                        renderBody(context, out);
+                    }    // for
+                    context.eventProperty = enclosingProperty;
+                    break;
+                default:
+                    assert (false);
+            }    // switch
+        }    // render()
+
+        /**
+         * Renders the instructions inside the section once.
+         *
+         * @param context the render context; may not be null
+         * @param out the destination; may not be null
+         * @throws IOException if an I/O error occurs
+         */
+        private void renderBody(RenderContext context, Appendable out) throws IOException {
+            for (Instruction instruction : body) {
+                instruction.render(context, out);
+            }    // for
+        }    // renderBody()
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void encode(StringBuilder out) {
+            out.append('S');
+            encodeString(sectionType.name, out);
+            encodeInstructions(body, out);
+        }    // encode()
+
+    }    // SectionInstruction
+
+    /**
+     * Decodes the instructions of a template from their compiled form. The
+     * decoder checks the structure of the instructions as the compiler does,
+     * so that a damaged compiled form cannot produce a template that fails
+     * when rendered.
+     */
+    private static class Decoder {
+
+        /**
+         * The compiled form.
+         */
+        private final String compiledForm;
+
+        /**
+         * The index of the next character to decode.
+         */
+        private int index;
+
+        /**
+         * The sections enclosing the instruction being decoded, innermost
+         * first.
+         */
+        private final Deque<SectionType> openSections;
+
+        /**
+         * Constructs a new decoder for the given compiled form.
+         *
+         * @param compiledForm the compiled form; may not be null
+         * @param start the index at which the instructions begin
+         */
+        Decoder(String compiledForm, int start) {
+            assert (compiledForm != null);
+            this.compiledForm = compiledForm;
+            index = start;
+            openSections = new ArrayDeque<>();
+        }    // Decoder()
+
+        /**
+         * Decodes the top-level instructions, which must make up the rest of
+         * the compiled form.
+         *
+         * @return the instructions
+         * @throws IllegalArgumentException if the compiled form is damaged
+         */
+        List<Instruction> decode() {
+            List<Instruction> instructions = decodeInstructions();
+            if (index != compiledForm.length()) {
+                throw new IllegalArgumentException("Unexpected data at index " + index);
+            }    // if
+            return instructions;
+        }    // decode()
+
+        /**
+         * Decodes a list of instructions, as written by
+         * {@link CompiledTemplate#encodeInstructions(List, StringBuilder)}.
+         *
+         * @return the instructions
+         * @throws IllegalArgumentException if the compiled form is damaged
+         */
+        private List<Instruction> decodeInstructions() {
+            int count = decodeNumber();
+            List<Instruction> instructions = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i) {
+                instructions.add(decodeInstruction());
+            }    // for
+            return instructions;
+        }    // decodeInstructions()
+
+        /**
+         * Decodes a single instruction.
+         *
+         * @return the instruction
+         * @throws IllegalArgumentException if the compiled form is damaged
+         */
+        private Instruction decodeInstruction() {
+            char kind = nextChar();
+            switch (kind) {
+                case 'L':
+                    return new LiteralInstruction(decodeString());
+                case 'D':
+                    return new DateInstruction();
+                case 'P':
+                    return new PropertyInstruction(decodeString());
+                case 'F':
+                    Field field = Field.fromName(decodeString());
+                    if ((field == null) || !openSections.contains(field.section)) {
+                        throw new IllegalArgumentException("Bad field before index " + index);
+                    }    // if
+                    return new FieldInstruction(field);
+                case 'S':
+                    SectionType sectionType = SectionType.fromName(decodeString());
+                    if ((sectionType == null)
+                            || openSections.contains(sectionType)
+                            || ((sectionType.parent != null) && !openSections.contains(sectionType.parent))) {
+                        throw new IllegalArgumentException("Bad section before index " + index);
+                    }    // if
+                    openSections.push(sectionType);
+                    List<Instruction> body = decodeInstructions();
+                    openSections.pop();
+                    return new SectionInstruction(sectionType, body);
+                default:
+                    throw new IllegalArgumentException("Unknown instruction at index " + (index - 1));
+            }    // switch
+        }    // decodeInstruction()
+
+        /**
+         * Decodes a string, as written by
+         * {@link CompiledTemplate#encodeString(String, StringBuilder)}.
+         *
+         * @return the string
+         * @throws IllegalArgumentException if the compiled form is damaged
+         */
+        private String decodeString() {
+            int length = decodeNumber();
+            if (length > compiledForm.length() - index) {
+                throw new IllegalArgumentException("String too long at index " + index);
+            }    // if
+            String string = compiledForm.substring(index, index + length);
+            index += length;
+            return string;
+        }    // decodeString()
+
+        /**
+         * Decodes a non-negative decimal number followed by a colon.
+         *
+         * @return the number
+         * @throws IllegalArgumentException if the compiled form is damaged
+         */
+        private int decodeNumber() {
+            int start = index;
+            int end = compiledForm.indexOf(':', start);
+            if (end < 0) {
+                throw new IllegalArgumentException("Missing number at index " + start);
+            }    // if
+            index = end + 1;
+            int number = Integer.parseInt(compiledForm.substring(start, end));    // May throw NumberFormatException
+            if (number < 0) {
+                throw new IllegalArgumentException("Negative number at index " + start);
+            }    // if
+            return number;
+        }    // decodeNumber()
+
+        /**
+         * Returns the next character of the compiled form.
+         *
+         * @return the next character
+         * @throws IllegalArgumentException if there are no more characters
+         */
+        private char nextChar() {
+            if (index >= compiledForm.length()) {
+                throw new IllegalArgumentException("Unexpected end of compiled form");
+            }    // if
+            return compiledForm.charAt(index++);
+        }    // nextChar()
+
+    }    // Decoder
+
+    /**
+     * Compiles a single template. A misplaced placeholder, an unexpected
+     * closing placeholder, or a section left unclosed is compiled as plain
+     * text, as it was before the template language had sections, unless the
+     * compiler is strict, in which case it is reported as an error.
+     */
+    private static class Compiler {
+
+        /**
+         * A section that has been opened but not yet closed.
+         */
+        private static class OpenSection {
+
+            /**
+             * The type of the section.
+             */
+            private final SectionType sectionType;
+
+            /**
+             * The position of the section's opening brace in the template.
+             */
+            private final int position;
+
+            /**
+             * The instructions inside the section.
+             */
+            private final List<Instruction> body;
+
+            /**
+             * Constructs a new open section.
+             *
+             * @param sectionType the type of the section; may be null for the
+             * top level of the template
+             * @param position the position of the section's opening brace
+             */
+            OpenSection(SectionType sectionType, int position) {
+                this.sectionType = sectionType;
+                this.position = position;
+                this.body = new ArrayList<>();
+            }    // OpenSection()
+
+        }    // OpenSection
+
+        /**
+         * The template.
+         */
+        private final String template;
+
+        /**
+         * True if malformed templates are reported as errors rather than
+         * compiled leniently.
+         */
+        private final boolean strict;
+
+        /**
+         * The positions of section openings found to be unclosed, which are
+         * compiled as plain text.
+         */
+        private final Set<Integer> unclosedPositions;
+
+        /**
+         * The open sections, innermost first. The last element is the top
+         * level of the template.
+         */
+        private final Deque<OpenSection> openSections;
+
+        /**
+         * Literal text not yet added to the current section.
+         */
+        private final StringBuilder literal;
+
+        /**
+         * Constructs a new compiler for the given template.
+         *
+         * @param template the template; may not be null
+         * @param strict true if malformed templates are to be reported as
+         * errors
+         */
+        Compiler(String template, boolean strict) {
+            assert (template != null);
+            this.template = template;
+            this.strict = strict;
+            unclosedPositions = new HashSet<>();
+            openSections = new ArrayDeque<>();
+            literal = new StringBuilder();
+        }    // Compiler()
+
+        /**
+         * Compiles the template.
+         *
+         * @return the instructions of the compiled template
+         * @throws TemplateSyntaxException if the compiler is strict and the
+         * template is malformed
+         */
+        List<Instruction> compile() {
+            List<Instruction> instructions = compilePass();
+            while (instructions == null) {
+                // Sections were left unclosed. Their openings are now plain
+                // text, so what they enclosed must be compiled again.
+                instructions = compilePass();
+            }    // while
+            return instructions;
+        }    // compile()
+
+        /**
+         * Compiles the template once.
+         *
+         * @return the instructions of the compiled template, or null if the
+         * compiler is lenient and sections were left unclosed
+         * @throws TemplateSyntaxException if the compiler is strict and the
+         * template is malformed
+         */
+        private List<Instruction> compilePass() {
+            openSections.clear();
+            openSections.push(new OpenSection(null, 0));
+            literal.setLength(0);
+            int length = template.length();
+            int index = 0;
+            while (index < length) {
+                char c = template.charAt(index);
+                if ((c != '{') && (c != '}')) {
+                    literal.append(c);
+                    ++index;
+                    continue;
+                }    // if
+
+                // A run of braces produces one brace for each pair. A left
+                // over single brace is dropped, unless it is the "{" of a
+                // placeholder.
+                int runEnd = index;
+                while ((runEnd < length) && (template.charAt(runEnd) == c)) {
+                    ++runEnd;
+                }    // while
+                int runLength = runEnd - index;
+                for (int i = 0; i < runLength / 2; ++i) {
+                    literal.append(c);
+                }    // for
+                index = runEnd;
+                if ((c == '{') && (runLength % 2 != 0)) {
+                    index = compilePlaceholder(runEnd - 1, runEnd);
+                }    // if
+            }    // while
+            flushLiteral();
+
+            OpenSection unclosed = openSections.peek();
+            if (unclosed.sectionType == null) {
+                return unclosed.body;
+            }    // if
+            if (strict) {
+                throw new TemplateSyntaxException("Unclosed section \"{#" + unclosed.sectionType.name + "}\" at position " + unclosed.position, unclosed.position);
+            }    // if
+            for (OpenSection section : openSections) {
+                if (section.sectionType != null) {
+                    unclosedPositions.add(section.position);
+                }    // if
+            }    // for
+            return null;
+        }    // compilePass()
+
+        /**
+         * Compiles the placeholder, if any, whose name begins at the given
+         * index. A placeholder is a name consisting of anything but braces,
+         * followed by a single "}". Names that are not recognized, and
+         * placeholders that are misplaced, are left as plain text.
+         *
+         * @param position the position of the placeholder's opening brace
+         * @param nameStart the index following the opening brace
+         * @return the index at which compilation should continue
+         * @throws TemplateSyntaxException if the compiler is strict and the
+         * placeholder is misplaced
+         */
+        private int compilePlaceholder(int position, int nameStart) {
+            int nameEnd = nameStart;
+            while ((nameEnd < template.length()) && (template.charAt(nameEnd) != '{') && (template.charAt(nameEnd) != '}')) {
+                ++nameEnd;
+            }    // while
+            boolean closedBySingleBrace = (nameEnd < template.length())
+                    && (template.charAt(nameEnd) == '}')
+                    && ((nameEnd + 1 >= template.length()) || (template.charAt(nameEnd + 1) != '}'));
+            if (!closedBySingleBrace) {
+                return nameStart;
+            }    // if
+
+            String name = template.substring(nameStart, nameEnd);
+            Instruction instruction = null;
+            if (name.equals("date")) {
+                instruction = new DateInstruction();
+            } else if (name.startsWith("prop:") && (name.length() > "prop:".length())) {    // if
+                instruction = new PropertyInstruction(name.substring("prop:".length()));
+            } else if (name.startsWith("#") && (SectionType.fromName(name.substring(1)) != null)) {    // else if
+                return openSection(SectionType.fromName(name.substring(1)), position) ? nameEnd + 1 : nameStart;
+            } else if (name.startsWith("/") && (SectionType.fromName(name.substring(1)) != null)) {    // else if
+                return closeSection(SectionType.fromName(name.substring(1)), position) ? nameEnd + 1 : nameStart;
+            } else if (Field.fromName(name) != null) {    // else if
+                Field field = Field.fromName(name);
+                if (isOpen(field.section)) {
+                    instruction = new FieldInstruction(field);
+                } else if (strict) {    // if
+                    throw new TemplateSyntaxException("Placeholder \"{" + name + "}\" at position " + position + " must be inside \"{#" + field.section.name + "}\"", position);
+                }    // else if
+            }    // else if
+
+            if (instruction == null) {
+                return nameStart;
+            }    // if
+            flushLiteral();
+            openSections.peek().body.add(instruction);
+            return nameEnd + 1;
+        }    // compilePlaceholder()
+
+        /**
+         * Opens a section, unless it is misplaced or was found to be
+         * unclosed.
+         *
+         * @param sectionType the type of the section; may not be null
+         * @param position the position of the section's opening brace
+         * @return true if the section was opened; false if its opening is to
+         * be compiled as plain text
+         * @throws TemplateSyntaxException if the compiler is strict and the
+         * section is misplaced
+         */
+        private boolean openSection(SectionType sectionType, int position) {
+            assert (sectionType != null);
+            String problem = null;
+            if (isOpen(sectionType)) {
+                problem = "Section \"{#" + sectionType.name + "}\" at position " + position + " may not be nested in itself";
+            } else if ((sectionType.parent != null) && !isOpen(sectionType.parent)) {    // if
+                problem = "Section \"{#" + sectionType.name + "}\" at position " + position + " must be inside \"{#" + sectionType.parent.name + "}\"";
+            }    // else if
+            if (problem != null) {
+                if (strict) {
+                    throw new TemplateSyntaxException(problem, position);
+                }    // if
+                return false;
+            }    // if
+            if (unclosedPositions.contains(position)) {
+                return false;
+            }    // if
+            flushLiteral();
+            openSections.push(new OpenSection(sectionType, position));
+            return true;
+        }    // openSection()
+
+        /**
+         * Closes a section, if it is the innermost open section.
+         *
+         * @param sectionType the type of the section; may not be null
+         * @param position the position of the closing placeholder's brace
+         * @return true if the section was closed; false if the closing
+         * placeholder is to be compiled as plain text
+         * @throws TemplateSyntaxException if the compiler is strict and the
+         * section is not the innermost open section
+         */
+        private boolean closeSection(SectionType sectionType, int position) {
+            assert (sectionType != null);
+            if (openSections.peek().sectionType != sectionType) {
+                if (strict) {
+                    throw new TemplateSyntaxException("Unexpected \"{/" + sectionType.name + "}\" at position " + position, position);
+                }    // if
+                return false;
+            }    // if
+            flushLiteral();
+            OpenSection section = openSections.pop();
+            openSections.peek().body.add(new SectionInstruction(sectionType, section.body));
+            return true;
+        }    // closeSection()
+
+        /**
+         * Returns true if a section of the given type is open.
+         *
+         * @param sectionType the section type; may not be null
+         * @return true if a section of the given type is open; false otherwise
+         */
+        private boolean isOpen(SectionType sectionType) {
+            assert (sectionType != null);
+            return openSections.stream().anyMatch(section -> section.sectionType == sectionType);
+        }    // isOpen()
+
+        /**
+         * Adds any accumulated literal text to the current section.
+         */
+        private void flushLiteral() {
+            if (literal.length() > 0) {
+                openSections.peek().body.add(new LiteralInstruction(literal.toString()));
+                literal.setLength(0);
+            }    // if
+        }    // flushLiteral()
+
+    }    // Compiler
+
+    /**
+     * The date format used when the given date format is empty. The format is
+     * like "Saturday December 16".
+     */
+    private static final String DEFAULT_DATE_FORMAT = "EEEE MMMM d";
+
+    /**
+     * The version of the compiled form produced by {@link #toCompiledForm()}.
+     * This must be changed whenever the compiled form changes.
+     */
+    private static final int COMPILED_FORM_VERSION = 1;
+
+    /**
+     * Compiles the given template.
+     *
+     * @param template the template; may not be null
+     * @param dateFormatString the date format used to render "{date}"; may not
+     * be null; must be in a format appropriate for a
+     * {@link java.text.SimpleDateFormat}; if empty, a default format is used
+     * @return the compiled template
+     * @throws NullPointerException if either argument is null
+     * @throws IllegalArgumentException if dateFormatString is not in an
+     * appropriate format
+     */
+    public static CompiledTemplate compile(String template, String dateFormatString) {
+        return compile(template, dateFormatString, null, false);
+    }    // compile()
+
+    /**
+     * Compiles the given template for the given locale. Dates are rendered
+     * with the month and day names of the locale.
+     *
+     * @param template the template; may not be null
+     * @param dateFormatString the date format used to render "{date}"; may not
+     * be null; must be in a format appropriate for a
+     * {@link java.text.SimpleDateFormat}; if empty, a default format is used
+     * @param locale the locale; may be null, in which case the default locale
+     * is used
+     * @return the compiled template
+     * @throws NullPointerException if either string argument is null
+     * @throws IllegalArgumentException if dateFormatString is not in an
+     * appropriate format
+     */
+    public static CompiledTemplate compile(String template, String dateFormatString, Locale locale) {
+        return compile(template, dateFormatString, locale, false);
+    }    // compile()
+
+    /**
+     * Compiles the given template as an HTML layout. The template language is
+     * the same as for {@link #compile(String, String)}, and literal text is
+     * reproduced as is, but every value taken from the event is escaped with
+     * {@link HtmlEscaper} when rendered.
+     *
+     * @param template the template; may not be null
+     * @param dateFormatString the date format used to render "{date}"; may not
+     * be null; must be in a format appropriate for a
+     * {@link java.text.SimpleDateFormat}; if empty, a default format is used
+     * @return the compiled template
+     * @throws NullPointerException if either argument is null
+     * @throws IllegalArgumentException if dateFormatString is not in an
+     * appropriate format
+     */
+    public static CompiledTemplate compileHtml(String template, String dateFormatString) {
+        return compile(template, dateFormatString, null, true);
+    }    // compileHtml()
+
+    /**
+     * Compiles the given template as an HTML layout for the given locale, as
+     * by {@link #compileHtml(String, String)} and
+     * {@link #compile(String, String, Locale)}.
+     *
+     * @param template the template; may not be null
+     * @param dateFormatString the date format used to render "{date}"; may not
+     * be null; must be in a format appropriate for a
+     * {@link java.text.SimpleDateFormat}; if empty, a default format is used
+     * @param locale the locale; may be null, in which case the default locale
+     * is used
+     * @return the compiled template
+     * @throws NullPointerException if either string argument is null
+     * @throws IllegalArgumentException if dateFormatString is not in an
+     * appropriate format
+     */
+    public static CompiledTemplate compileHtml(String template, String dateFormatString, Locale locale) {
+        return compile(template, dateFormatString, locale, true);
+    }    // compileHtml()
+
+    /**
+     * Compiles the given template.
+     *
+     * @param template the template; may not be null
+     * @param dateFormatString the date format string; may not be null
+     * @param locale the locale; may be null
+     * @param html true if values are to be HTML-escaped when rendered
+     * @return the compiled template
+     * @throws NullPointerException if either string argument is null
+     * @throws IllegalArgumentException if dateFormatString is not in an
+     * appropriate format
+     */
+    private static CompiledTemplate compile(String template, String dateFormatString, Locale locale, boolean html) {
+        if (template == null) {
+            throw new NullPointerException("template may not be null");
+        }    // if
+        if (dateFormatString == null) {
+            throw new NullPointerException("dateFormatString may not be null");
+        }    // if
+        DateFormatter dateFormatter = getDateFormatter(dateFormatString, locale);
+
+        List<Instruction> instructions = new Compiler(template, false).compile();
+        return new CompiledTemplate(template, dateFormatString, dateFormatter, html, instructions);
+    }    // compile()
+
+    /**
+     * Checks that the given template is well formed. The compile methods
+     * accept any template, compiling a misplaced placeholder, an unexpected
+     * closing placeholder, or a section left unclosed as plain text, so that
+     * templates written before the template language had sections render as
+     * they always have. This method instead reports the first such mistake,
+     * so that a template may be checked as it is edited.
+     *
+     * @param template the template; may not be null
+     * @throws NullPointerException if template is null
+     * @throws TemplateSyntaxException if the template is malformed
+     */
+    public static void validate(String template) {
+        if (template == null) {
+            throw new NullPointerException("template may not be null");
+        }    // if
+
+        new Compiler(template, true).compile();
+    }    // validate()
+
+    /**
+     * Returns the template with the given compiled form, as returned by
+     * {@link #toCompiledForm()}. The template text must be given as well; if
+     * the compiled form was not made from that text, or was made by an
+     * incompatible version of this class, or is damaged, this method returns
+     * null, and the caller should compile the template instead.
+     *
+     * @param compiledForm the compiled form; may not be null
+     * @param template the template text; may not be null
+     * @param dateFormatString the date format used to render "{date}"; may not
+     * be null; must be in a format appropriate for a
+     * {@link java.text.SimpleDateFormat}; if empty, a default format is used
+     * @return the template, or null if the compiled form is stale or damaged
+     * @throws NullPointerException if any argument is null
+     * @throws IllegalArgumentException if dateFormatString is not in an
+     * appropriate format
+     */
+    public static CompiledTemplate fromCompiledForm(String compiledForm, String template, String dateFormatString) {
+        return fromCompiledForm(compiledForm, template, dateFormatString, null);
+    }    // fromCompiledForm()
+
+    /**
+     * Returns the template with the given compiled form, as
+     * {@link #fromCompiledForm(String, String, String)} does, for the given
+     * locale. The compiled form does not depend on the locale.
+     *
+     * @param compiledForm the compiled form; may not be null
+     * @param template the template text; may not be null
+     * @param dateFormatString the date format used to render "{date}"; may not
+     * be null; must be in a format appropriate for a
+     * {@link java.text.SimpleDateFormat}; if empty, a default format is used
+     * @param locale the locale; may be null, in which case the default locale
+     * is used
+     * @return the template, or null if the compiled form is stale or damaged
+     * @throws NullPointerException if any string argument is null
+     * @throws IllegalArgumentException if dateFormatString is not in an
+     * appropriate format
+     */
+    public static CompiledTemplate fromCompiledForm(String compiledForm, String template, String dateFormatString, Locale locale) {
+        if (compiledForm == null) {
+            throw new NullPointerException("compiledForm may not be null");
+        }    // if
+        if (template == null) {
+            throw new NullPointerException("template may not be null");
+        }    // if
+        if (dateFormatString == null) {
+            throw new NullPointerException("dateFormatString may not be null");
+        }    // if
+        DateFormatter dateFormatter = getDateFormatter(dateFormatString, locale);
+
+        boolean html;
+        if (compiledForm.startsWith(getCompiledFormHeader(template, false))) {
+            html = false;
+        } else if (compiledForm.startsWith(getCompiledFormHeader(template, true))) {    // if
+            html = true;
+        } else {    // else if
+            return null;
+        }    // else
+        try {
+            List<Instruction> instructions = new Decoder(compiledForm, getCompiledFormHeader(template, html).length()).decode();
+            return new CompiledTemplate(template, dateFormatString, dateFormatter, html, instructions);
+        } catch (IllegalArgumentException e) {    // try
+            return null;
+        }    // catch
+    }    // fromCompiledForm()
+
+    /**
+     * Returns the date formatter for the given date format string and locale.
+     * Date formatters are pooled by {@link DateFormatter}, so templates with
+     * the same date format and locale share one formatter.
+     *
+     * @param dateFormatString the date format string; may not be null; if
+     * empty, a default format is used
+     * @param locale the locale; may be null, in which case the default locale
+     * is used
+     * @return the date formatter
+     * @throws IllegalArgumentException if dateFormatString is not in an
+     * appropriate format
+     */
+    private static DateFormatter getDateFormatter(String dateFormatString, Locale locale) {
+        assert (dateFormatString != null);
+        String effectiveDateFormatString = dateFormatString.isEmpty() ? DEFAULT_DATE_FORMAT : dateFormatString;
+        Locale effectiveLocale = (locale != null) ? locale : Locale.getDefault(Locale.Category.FORMAT);
+        try {
+            return DateFormatter.forPattern(effectiveDateFormatString, effectiveLocale);
+        } catch (IllegalArgumentException e) {    // try
+            throw new IllegalArgumentException("dateFormatString must be in acceptible format", e);
+        }    // catch
+    }    // getDateFormatter()
+
+    /**
+     * Returns the header of the compiled form of the given template. The
+     * header identifies the version of the compiled form, whether the
+     * template is an HTML layout, and a fingerprint of the template text.
+     *
+     * @param template the template text; may not be null
+     * @param html true if the template is an HTML layout
+     * @return the header of the compiled form
+     */
+    private static String getCompiledFormHeader(String template, boolean html) {
+        assert (template != null);
+        return (html ? "H" : "T") + COMPILED_FORM_VERSION + ":"
+                + template.length() + ":" + Integer.toHexString(template.hashCode()) + ":";
+    }    // getCompiledFormHeader()
+
+    /**
+     * Appends the compiled form of the given string to the given builder.
+     *
+     * @param string the string; may not be null
+     * @param out the builder; may not be null
+     */
+    private static void encodeString(String string, StringBuilder out) {
+        assert (string != null);
+        assert (out != null);
+        out.append(string.length()).append(':').append(string);
+    }    // encodeString()
+
+    /**
+     * Appends the compiled form of the given instructions to the given
+     * builder.
+     *
+     * @param instructions the instructions; may not be null
+     * @param out the builder; may not be null
+     */
+    private static void encodeInstructions(List<Instruction> instructions, StringBuilder out) {
+        assert (instructions != null);
+        assert (out != null);
+        out.append(instructions.size()).append(':');
+        for (Instruction instruction : instructions) {
+            instruction.encode(out);
+        }    // for
+    }    // encodeInstructions()
+
+    /**
+     * Returns the given text with its braces escaped, so that it is reproduced
+     * as is when used in a template.
+     *
+     * @param text the text; may not be null
+     * @return the escaped text
+     * @throws NullPointerException if {@code text} is null
+     */
+    public static String escape(String text) {
+        if (text == null) {
+            throw new NullPointerException("text may not be null");
+        }    // if
+        return text.replace("{", "{{").replace("}", "}}");
+    }    // escape()
+
+    /**
+     * The template text.
+     */
+    private final String template;
+
+    /**
+     * The date format string, as given when the template was compiled.
+     */
+    private final String dateFormatString;
+
+    /**
+     * The instructions.
+     */
+    private final List<Instruction> instructions;
+
+    /**
+     * The formatter used to render the event date.
+     */
+    private final DateFormatter dateFormatter;
+
+    /**
+     * True if values are HTML-escaped when rendered.
+     */
+    private final boolean html;
+
+    /**
+     * Constructs a new compiled template.
+     *
+     * @param template the template text; may not be null
+     * @param dateFormatString the date format string; may not be null
+     * @param dateFormatter the date formatter; may not be null
+     * @param html true if values are HTML-escaped when rendered
+     * @param instructions the instructions; may not be null
+     */
+    private CompiledTemplate(String template, String dateFormatString, DateFormatter dateFormatter, boolean html, List<Instruction> instructions) {
+        assert (template != null);
+        assert (dateFormatString != null);
+        assert (dateFormatter != null);
+        assert (instructions != null);
+        this.template = template;
+        this.dateFormatString = dateFormatString;
+        this.instructions = Collections.unmodifiableList(new ArrayList<>(instructions));
+        this.dateFormatter = dateFormatter;
+        this.html = html;
+        assertInvariant();
+    }    // CompiledTemplate()
+
+    /**
+     * Returns the template text this template was compiled from.
+     *
+     * @return the template text
+     */
+    public String getTemplate() {
+        assertInvariant();
+        return template;
+    }    // getTemplate()
+
+    /**
+     * Returns the date format string this template was compiled with.
+     *
+     * @return the date format string
+     */
+    public String getDateFormatString() {
+        assertInvariant();
+        return dateFormatString;
+    }    // getDateFormatString()
+
+    /**
+     * Returns the locale this template was compiled for.
+     *
+     * @return the locale
+     */
+    public Locale getLocale() {
+        assertInvariant();
+        return dateFormatter.getLocale();
+    }    // getLocale()
+
+    /**
+     * Returns the compiled form of this template: a compact, versioned
+     * encoding of its instructions, suitable for storage. The compiled form
+     * may be turned back into a template, without parsing the template text,
+     * by {@link #fromCompiledForm(String, String, String)}.
+     *
+     * @return the compiled form of this template
+     */
+    public String toCompiledForm() {
+        assertInvariant();
+        StringBuilder out = new StringBuilder(template.length() + 32);
+        out.append(getCompiledFormHeader(template, html));
+        encodeInstructions(instructions, out);
+        return out.toString();
+    }    // toCompiledForm()
+
+    /**
+     * Returns true if this template is an HTML layout, whose values are
+     * escaped when rendered.
+     *
+     * @return true if this template is an HTML layout
+     * @see #compileHtml(String, String)
+     */
+    public boolean isHtml() {
+        assertInvariant();
+        return html;
+    }    // isHtml()
+
+    /**
+     * Renders this template for the given event to the given destination.
+     *
+     * @param event the event; may not be null
+     * @param out the destination; may not be null
+     * @throws NullPointerException if either argument is null
+     * @throws IOException if an I/O error occurs
+     */
+    public void render(Event event, Appendable out) throws IOException {
+        assertInvariant();
+        if (event == null) {
+            throw new NullPointerException("event may not be null");
+        }    // if
+        if (out == null) {
+            throw new NullPointerException("out may not be null");
+        }    // if
+
+        RenderContext context = new RenderContext(this, event);
+        for (Instruction instruction : instructions) {
+            instruction.render(context, out);
+        }    // for
+    }    // render()
+
+    /**
+     * Renders this template for the given event to the given builder.
+     *
+     * @param event the event; may not be null
+     * @param out the builder; may not be null
+     * @throws NullPointerException if either argument is null
+     */
+    public void render(Event event, StringBuilder out) {
+        try {
+            render(event, (Appendable) out);
+        } catch (IOException e) {    // try
+            // StringBuilder does not throw IOException.
+            throw new UncheckedIOException(e);
+        }    // catch
+    }    // render()
+
+    /**
+     * Renders this template for the given event.
+     *
+     * @param event the event; may not be null
+     * @return the rendered text
+     * @throws NullPointerException if {@code event} is null
+     */
+    public String render(Event event) {
+        StringBuilder builder = new StringBuilder(template.length() + 16);
+        render(event, builder);
+        return builder.toString();
+    }    // render()
+
+    /**
+     * Asserts the correctness of the object's internal state.
+     */
+    private void assertInvariant() {
+        assert (template != null);
+        assert (dateFormatString != null);
+        assert (dateFormatter != null);
+        assert (instructions != null);
+        assert (!instructions.contains(null));
+    }    // assertInvariant()
+
+}    // CompiledTemplate
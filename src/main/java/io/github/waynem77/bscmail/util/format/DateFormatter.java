@@ -0,0 +1,433 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.util.format;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A thread-safe date formatter for patterns in the syntax of
+ * {@link SimpleDateFormat}, which is the syntax stored in email templates.
+ *
+ * Date formatters are obtained from {@link #forPattern(String, Locale)},
+ * which validates and compiles each pattern once per locale and caches the
+ * result, so that a batch of emails rendered in several locales reuses one
+ * formatter for each pattern and locale. Where the
+ * pattern can be expressed exactly as a {@link DateTimeFormatter} pattern, the
+ * formatter uses an immutable DateTimeFormatter; otherwise it falls back to a
+ * SimpleDateFormat per thread. Either way, a single date formatter may be
+ * shared by any number of threads.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public final class DateFormatter {
+
+    /**
+     * The key of a cached formatter.
+     */
+    private static final class Key {
+
+        /**
+         * The pattern.
+         */
+        private final String pattern;
+
+        /**
+         * The locale.
+         */
+        private final Locale locale;
+
+        /**
+         * The time zone.
+         */
+        private final ZoneId zone;
+
+        /**
+         * Constructs a new key.
+         *
+         * @param pattern the pattern; may not be null
+         * @param locale the locale; may not be null
+         * @param zone the time zone; may not be null
+         */
+        Key(String pattern, Locale locale, ZoneId zone) {
+            assert (pattern != null);
+            assert (locale != null);
+            assert (zone != null);
+            this.pattern = pattern;
+            this.locale = locale;
+            this.zone = zone;
+        }    // Key()
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }    // if
+            Key other = (Key) obj;
+            return pattern.equals(other.pattern) && locale.equals(other.locale) && zone.equals(other.zone);
+        }    // equals()
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return Objects.hash(pattern, locale, zone);
+        }    // hashCode()
+
+    }    // Key
+
+    /**
+     * The maximum number of formatters kept in the cache. Patterns come from
+     * user input, so the cache stops growing at this size; formatters for
+     * further patterns are still created, but not cached.
+     */
+    private static final int MAXIMUM_CACHE_SIZE = 256;
+
+    /**
+     * Characters that are literal in a SimpleDateFormat pattern but reserved
+     * in a DateTimeFormatter pattern.
+     */
+    private static final String RESERVED_CHARACTERS = "[]{}#";
+
+    /**
+     * The cached formatters.
+     */
+    private static final ConcurrentMap<Key, DateFormatter> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * Returns a date formatter for the given pattern, using the default
+     * locale and time zone.
+     *
+     * @param pattern the pattern; may not be null; must be in a format
+     * appropriate for a {@link SimpleDateFormat}
+     * @return a date formatter for the pattern
+     * @throws NullPointerException if {@code pattern} is null
+     * @throws IllegalArgumentException if {@code pattern} is not in an
+     * appropriate format
+     */
+    public static DateFormatter forPattern(String pattern) {
+        return forPattern(pattern, Locale.getDefault(Locale.Category.FORMAT));
+    }    // forPattern()
+
+    /**
+     * Returns a date formatter for the given pattern and locale, using the
+     * default time zone. Month and day names are given in the language of
+     * the locale.
+     *
+     * @param pattern the pattern; may not be null; must be in a format
+     * appropriate for a {@link SimpleDateFormat}
+     * @param locale the locale; may not be null
+     * @return a date formatter for the pattern and locale
+     * @throws NullPointerException if either argument is null
+     * @throws IllegalArgumentException if {@code pattern} is not in an
+     * appropriate format
+     */
+    public static DateFormatter forPattern(String pattern, Locale locale) {
+        if (pattern == null) {
+            throw new NullPointerException("pattern may not be null");
+        }    // if
+        if (locale == null) {
+            throw new NullPointerException("locale may not be null");
+        }    // if
+
+        Key key = new Key(pattern, locale, ZoneId.systemDefault());
+        DateFormatter formatter = CACHE.get(key);
+        if (formatter == null) {
+            formatter = new DateFormatter(key);
+            if (CACHE.size() < MAXIMUM_CACHE_SIZE) {
+                DateFormatter existing = CACHE.putIfAbsent(key, formatter);
+                if (existing != null) {
+                    formatter = existing;
+                }    // if
+            }    // if
+        }    // if
+        return formatter;
+    }    // forPattern()
+
+    /**
+     * Returns the DateTimeFormatter pattern that formats dates exactly as the
+     * given SimpleDateFormat pattern does, or null if there is no such pattern
+     * or the translation is not known to be exact. The given pattern must
+     * already be known to be valid.
+     *
+     * @param pattern a valid SimpleDateFormat pattern; may not be null
+     * @return the equivalent DateTimeFormatter pattern, or null
+     */
+    static String translatePattern(String pattern) {
+        assert (pattern != null);
+        StringBuilder translated = new StringBuilder(pattern.length() + 8);
+        boolean quoted = false;
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                // Quoted text has the same syntax in both pattern languages.
+                quoted = !quoted;
+                translated.append(c);
+                ++i;
+            } else if (quoted) {    // if
+                translated.append(c);
+                ++i;
+            } else if (((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'))) {    // else if
+                int count = 1;
+                while ((i + count < pattern.length()) && (pattern.charAt(i + count) == c)) {
+                    ++count;
+                }    // while
+                String field = translateField(c, count);
+                if (field == null) {
+                    return null;
+                }    // if
+                translated.append(field);
+                i += count;
+            } else if (RESERVED_CHARACTERS.indexOf(c) >= 0) {    // else if
+                translated.append('\'').append(c).append('\'');
+                ++i;
+            } else {    // else if
+                translated.append(c);
+                ++i;
+            }    // else
+        }    // while
+        return translated.toString();
+    }    // translatePattern()
+
+    /**
+     * Returns the DateTimeFormatter pattern field that formats the same way
+     * as the given SimpleDateFormat pattern field, or null if there is no such
+     * field or the translation is not known to be exact.
+     *
+     * @param letter the pattern letter
+     * @param count the number of times the letter is repeated; must be
+     * positive
+     * @return the equivalent DateTimeFormatter field, or null
+     */
+    private static String translateField(char letter, int count) {
+        assert (count > 0);
+        switch (letter) {
+            case 'y':
+                return (count <= 4) ? repeat(letter, count) : null;
+            case 'M':
+                return repeat(letter, Math.min(count, 4));
+            case 'E':
+                return repeat(letter, (count <= 3) ? 3 : 4);
+            case 'a':
+                return "a";
+            case 'D':
+                return (count <= 3) ? repeat(letter, count) : null;
+            case 'd':
+            case 'H':
+            case 'h':
+            case 'k':
+            case 'K':
+            case 'm':
+            case 's':
+                return (count <= 2) ? repeat(letter, count) : null;
+            default:
+                return null;
+        }    // switch
+    }    // translateField()
+
+    /**
+     * Returns a string consisting of the given character repeated the given
+     * number of times.
+     *
+     * @param c the character
+     * @param count the number of repetitions
+     * @return the repeated character
+     */
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }    // repeat()
+
+    /**
+     * The pattern.
+     */
+    private final String pattern;
+
+    /**
+     * The locale.
+     */
+    private final Locale locale;
+
+    /**
+     * A SimpleDateFormat for the pattern, which is never used directly but
+     * only cloned.
+     */
+    private final SimpleDateFormat prototype;
+
+    /**
+     * The DateTimeFormatter for the pattern, or null if the pattern cannot
+     * be translated.
+     */
+    private final DateTimeFormatter dateTimeFormatter;
+
+    /**
+     * The SimpleDateFormat of each formatting thread, used only if the pattern
+     * cannot be translated.
+     */
+    private final ThreadLocal<SimpleDateFormat> threadFormat;
+
+    /**
+     * Constructs a new date formatter.
+     *
+     * @param key the key; may not be null
+     * @throws IllegalArgumentException if the pattern is not in an appropriate
+     * format
+     */
+    private DateFormatter(Key key) {
+        assert (key != null);
+        pattern = key.pattern;
+        locale = key.locale;
+        prototype = new SimpleDateFormat(pattern, key.locale);
+        prototype.setTimeZone(TimeZone.getTimeZone(key.zone));
+        String translatedPattern = translatePattern(pattern);
+        dateTimeFormatter = (translatedPattern == null)
+                ? null
+                : DateTimeFormatter.ofPattern(translatedPattern, key.locale).withZone(key.zone);
+        threadFormat = (dateTimeFormatter == null)
+                ? ThreadLocal.withInitial(() -> (SimpleDateFormat) prototype.clone())
+                : null;
+        assertInvariant();
+    }    // DateFormatter()
+
+    /**
+     * Returns the pattern of this formatter.
+     *
+     * @return the pattern
+     */
+    public String getPattern() {
+        assertInvariant();
+        return pattern;
+    }    // getPattern()
+
+    /**
+     * Returns the locale of this formatter.
+     *
+     * @return the locale
+     */
+    public Locale getLocale() {
+        assertInvariant();
+        return locale;
+    }    // getLocale()
+
+    /**
+     * Formats the given date.
+     *
+     * @param date the date; may not be null
+     * @return the formatted date
+     * @throws NullPointerException if {@code date} is null
+     */
+    public String format(Date date) {
+        assertInvariant();
+        if (date == null) {
+            throw new NullPointerException("date may not be null");
+        }    // if
+        return (dateTimeFormatter != null) ? dateTimeFormatter.format(date.toInstant()) : threadFormat.get().format(date);
+    }    // format()
+
+    /**
+     * Formats the given date to the given destination.
+     *
+     * @param date the date; may not be null
+     * @param out the destination; may not be null
+     * @throws NullPointerException if either argument is null
+     * @throws IOException if an I/O error occurs
+     */
+    public void formatTo(Date date, Appendable out) throws IOException {
+        assertInvariant();
+        if (date == null) {
+            throw new NullPointerException("date may not be null");
+        }    // if
+        if (out == null) {
+            throw new NullPointerException("out may not be null");
+        }    // if
+        if (dateTimeFormatter != null) {
+            try {
+                dateTimeFormatter.formatTo(date.toInstant(), out);
+            } catch (DateTimeException e) {    // try
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }    // if
+                throw e;
+            }    // catch
+        } else {    // if
+            out.append(threadFormat.get().format(date));
+        }    // else
+    }    // formatTo()
+
+    /**
+     * Returns a new {@link DateFormat} for the pattern of this formatter. The
+     * returned object belongs to the caller and is not thread-safe.
+     *
+     * @return a new DateFormat for the pattern
+     */
+    public DateFormat toDateFormat() {
+        assertInvariant();
+        return (DateFormat) prototype.clone();
+    }    // toDateFormat()
+
+    /**
+     * Returns the number of formatters in the cache.
+     *
+     * @return the number of cached formatters
+     */
+    static int getCacheSize() {
+        return CACHE.size();
+    }    // getCacheSize()
+
+    /**
+     * Returns true if this formatter uses a {@link DateTimeFormatter}, and
+     * false if it falls back to {@link SimpleDateFormat}.
+     *
+     * @return true if this formatter uses a DateTimeFormatter
+     */
+    boolean usesDateTimeFormatter() {
+        assertInvariant();
+        return dateTimeFormatter != null;
+    }    // usesDateTimeFormatter()
+
+    /**
+     * Asserts the correctness of the object's internal state.
+     */
+    private void assertInvariant() {
+        assert (pattern != null);
+        assert (locale != null);
+        assert (prototype != null);
+        assert ((dateTimeFormatter == null) != (threadFormat == null));
+    }    // assertInvariant()
+
+}    // DateFormatter
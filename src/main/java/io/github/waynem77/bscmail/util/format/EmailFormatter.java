@@ -20,13 +20,7 @@
 package io.github.waynem77.bscmail.util.format;
 
 import io.github.waynem77.bscmail.persistent.Event;
-import java.text.SimpleDateFormat;
-import java.util.Arrays;
-import java.util.Date;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Locale;
 
 /**
  * Formats a template string with appropriate event information.
@@ -41,8 +35,45 @@ import java.util.regex.Pattern;
  * the application's
  * {@link io.github.waynem77.bscmail.persistent.EmailTemplate}, or "" if the
  * event date is null.</li>
+ * <li>"<strong>{prop:<i>name</i>}</strong>" produces the value of the event
+ * property with the given name, or "" if the event has no such
+ * property.</li>
+ * <li>"<strong>{#<i>section</i>}</strong>...<strong>{/<i>section</i>}</strong>"
+ * marks a section, which is rendered zero or more times as described
+ * below.</li>
  * </ul>
  *
+ * The following sections and the placeholders that may appear in them are
+ * recognized.
+ * <table style="border: 1px solid black">
+ * <caption>Template Sections</caption>
+ * <tr><th>{#date}</th><td>rendered once if the event has a date</td></tr>
+ * <tr><th>{#properties}</th><td>rendered once for each event property;
+ * "{name}" and "{value}" produce the property's name and value</td></tr>
+ * <tr><th>{#shifts}</th><td>rendered once for each shift; "{shift}" produces
+ * the shift description</td></tr>
+ * <tr><th>{#volunteer}</th><td>inside {#shifts}, rendered if the shift has a
+ * volunteer; "{volunteer}", "{email}", "{phone}", and "{notes}" produce the
+ * volunteer's name, email address, phone number, and notes, and "{details}"
+ * produces those of the email address, phone number, and notes that the
+ * shift displays, separated by commas</td></tr>
+ * <tr><th>{#details}</th><td>inside {#volunteer}, rendered if the shift
+ * displays any volunteer details</td></tr>
+ * </table>
+ *
+ * Any other text between single braces is reproduced without the braces. So
+ * is a placeholder outside the section it must appear in, a closing
+ * placeholder that does not close the innermost open section, and the opening
+ * placeholder of a section that is never closed; templates written before
+ * sections existed therefore render as they always have.
+ *
+ * Dates are formatted for the formatter's locale, so that month and day names
+ * appear in the language of the email.
+ *
+ * Templates are parsed in a single pass by {@link CompiledTemplate}, and the
+ * results are kept in the {@link TemplateCache#getSharedCache() shared
+ * template cache}, so a template is not parsed again each time it is used.
+ *
  * @author Wayne Miller
  * @since 3.3
  */
@@ -53,6 +84,11 @@ public class EmailFormatter {
      */
     private final String dateFormatString;
 
+    /**
+     * The locale for dates, or null if the default locale is used.
+     */
+    private final Locale locale;
+
     /**
      * Creates a new email formatter with the given date format
      *
@@ -63,119 +99,36 @@ public class EmailFormatter {
      * appropriate format
      */
     public EmailFormatter(String dateFormatString) {
+        this(dateFormatString, null);
+    }    // EmailFormatter()
+
+    /**
+     * Creates a new email formatter with the given date format and locale.
+     *
+     * @param dateFormatString the date format to use; may not be null; must be
+     * in a format appropriate for a {@link java.text.SimpleDateFormat}
+     * @param locale the locale for dates; may be null, in which case the
+     * default locale is used
+     * @throws NullPointerException if {@code dateFormatString} is null
+     * @throws IllegalArgumentException if dateFormatString is not in an
+     * appropriate format
+     * @since 4.0
+     */
+    public EmailFormatter(String dateFormatString, Locale locale) {
         if (dateFormatString == null) {
             throw new NullPointerException("dateFormatString may not be null");
         }    // if
         try {
-            new SimpleDateFormat(dateFormatString);    // Just checking to see if it throws
+            DateFormatter.forPattern(dateFormatString);    // Just checking to see if it throws
         } catch (IllegalArgumentException e) {    // try
             throw new IllegalArgumentException("dateFormatString must be in acceptible format", e);
         }    // catch
 
         this.dateFormatString = dateFormatString;
+        this.locale = locale;
         assertInvariant();
     }    // EmailFormatter()
 
-    /**
-     * Turns a string template into a list of tokens.
-     *
-     * @param string the string template; may not be null
-     * @param event the event; may not be null
-     * @return a list of tokens based on the given string
-     */
-    private List<Token> tokenizeString(String string, Event event) {
-        assert (string != null);
-        assert (event != null);
-
-        Date eventDate = event.getDate();
-        Token dateToken = (eventDate == null) ? TokenMaker.makeStringAtom("") : TokenMaker.makeDateAtom(eventDate, dateFormatString);
-
-        List<Token> tokenizedList = Arrays.asList(TokenMaker.makeDecomposableToken(string));
-        tokenizedList = tokenizeListForOneToken(tokenizedList, "\\{\\{", TokenMaker.makeStringAtom("{"));
-        tokenizedList = tokenizeListForOneToken(tokenizedList, "\\}\\}", TokenMaker.makeStringAtom("}"));
-        tokenizedList = tokenizeListForOneToken(tokenizedList, "\\{date\\}", dateToken);
-        tokenizedList = tokenizeListForOneToken(tokenizedList, "\\{|\\}", TokenMaker.makeStringAtom(""));
-        return tokenizedList;
-    }    // tokenizeString()
-
-    /**
-     * Further decomposes a list of tokens and strings by replacing matches of a
-     * regular expression with a particular token.
-     *
-     * @param list the list of tokens and strings; may not be null nor contain
-     * null
-     * @param regex the regular expression; may not be null
-     * @param replacementToken the replacement token; may not be null
-     * @return the further decomposed list
-     */
-    private List<Token> tokenizeListForOneToken(List<Token> list, String regex, Token replacementToken) {
-        assert (list != null);
-        assert (!list.contains(null));
-        assert (regex != null);
-        assert (replacementToken != null);
-
-        Pattern regexPattern = Pattern.compile(regex);
-        List<Token> furtherTokenizedList = new LinkedList<>();
-        for (Token token : list) {
-            if (token.isDecomposable()) {
-                List<Token> decomposedToken = decomposeToken(token, regexPattern, replacementToken);
-                assert (decomposedToken != null);
-                assert (! decomposedToken.contains(null));
-                furtherTokenizedList.addAll(decomposedToken);
-            } else {    // if
-                furtherTokenizedList.add(token);
-            }    // else
-        }    // for
-        return furtherTokenizedList;
-    }    // tokenizeList
-
-    /**
-     * Decomposes a single token into a list of tokens by replacing matches of a
-     * regular expression with a particular token.
-     *
-     * @param token the token to decompose; may not be null nor atomic
-     * @param regexPattern the regular expression pattern; may not be null
-     * @param replacementToken the replacement token; may not be null
-     * @return the resulting list
-     */
-    private List<Token> decomposeToken(Token token, Pattern regexPattern, Token replacementToken) {
-        assert (token != null);
-        assert (token.isDecomposable());
-        assert (regexPattern != null);
-        assert (replacementToken != null);
-
-        List<Token> tokenizedList = new LinkedList<>();
-        String tokenValue = token.getStringValue();
-        Matcher regexMatcher = regexPattern.matcher(tokenValue);
-        int preMatchTokenStart = 0;
-        while (regexMatcher.find()) {
-            int preMatchTokenEnd = regexMatcher.start();
-            tokenizedList.add(TokenMaker.makeDecomposableToken(tokenValue.substring(preMatchTokenStart, preMatchTokenEnd)));
-            tokenizedList.add(replacementToken);
-            preMatchTokenStart = regexMatcher.end();
-        }    // while
-        tokenizedList.add(TokenMaker.makeDecomposableToken(tokenValue.substring(preMatchTokenStart)));
-
-        return tokenizedList;
-    }    // decomposeToken()
-
-    /**
-     * Constructs a string from a list of tokens.
-     *
-     * @param tokens the list of tokens; may not be null nor contain null
-     * @return a string representing the list of tokens
-     */
-    private String stringifyTokens(List<Token> tokens) {
-        assert (tokens != null);
-        assert (! tokens.contains(null));
-
-        StringBuilder builder = new StringBuilder();
-        for (Token token : tokens) {
-            builder.append(token.getStringValue());
-        }    // for
-        return builder.toString();
-    }    // stringifyTokens()
-
     /**
      * Returns a string created from the given template and populated with information from the
      * given event according to the rules listed in the class documentation.
@@ -194,8 +147,7 @@ public class EmailFormatter {
             throw new NullPointerException("event may not be null");
         }    // if
 
-        List<Token> tokens = tokenizeString(format, event);
-        return stringifyTokens(tokens);
+        return TemplateCache.getSharedCache().get(format, dateFormatString, locale).render(event);
     }    // formatString()
 
     /**
@@ -0,0 +1,311 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.util.format;
+
+import io.github.waynem77.bscmail.persistent.EmailTemplate;
+import io.github.waynem77.bscmail.persistent.Event;
+import io.github.waynem77.bscmail.persistent.Shift;
+import io.github.waynem77.bscmail.persistent.Volunteer;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Renders the recipients, subject, and body of an event email from an
+ * {@link EmailTemplate} and an {@link Event}. The renderer has no dependency on
+ * the GUI, so that it may be used both by the event email window and by
+ * headless tools. Dates are formatted in the locale of the email template.
+ *
+ * The plain text and HTML bodies are rendered from two layouts, each compiled
+ * once when the renderer is constructed; rendering both parts therefore walks
+ * the event twice, but parses no template text.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public class EventEmailRenderer {
+
+    /**
+     * The template for the part of the body between the pre-schedule and
+     * post-schedule text: the event date and properties, followed by the
+     * volunteer schedule.
+     */
+    private static final String SCHEDULE_TEMPLATE =
+            "{#date}Date: {date}\n{/date}"
+            + "{#properties}{name}: {value}\n{/properties}"
+            + "\n"
+            + "{#shifts}{shift}:{#volunteer} {volunteer}{#details} ({details}){/details}{/volunteer}\n{/shifts}"
+            + "\n";
+
+    /**
+     * The beginning of the HTML body.
+     */
+    private static final String HTML_HEADER =
+            "<!DOCTYPE html>\n<html>\n<head><meta charset=\"UTF-8\"></head>\n<body>\n";
+
+    /**
+     * The HTML layout for the part of the body between the pre-schedule and
+     * post-schedule text: the event date and properties, followed by a table
+     * of shifts and volunteers.
+     */
+    private static final String HTML_SCHEDULE_TEMPLATE =
+            "{#date}<p>Date: {date}</p>\n{/date}"
+            + "{#properties}<p>{name}: {value}</p>\n{/properties}"
+            + "<table border=\"1\" cellpadding=\"4\" cellspacing=\"0\">\n"
+            + "<tr><th>Shift</th><th>Volunteer</th><th>Details</th></tr>\n"
+            + "{#shifts}<tr><td>{shift}</td>"
+            + "<td>{#volunteer}{volunteer}{/volunteer}</td>"
+            + "<td>{#volunteer}{#details}{details}{/details}{/volunteer}</td></tr>\n{/shifts}"
+            + "</table>\n";
+
+    /**
+     * The end of the HTML body.
+     */
+    private static final String HTML_FOOTER = "</body>\n</html>\n";
+
+    /**
+     * Returns the given plain text as a paragraph of an HTML layout, or an
+     * empty string if the text is empty. The text is HTML-escaped, its line
+     * breaks are preserved, and its braces are escaped so that it is
+     * reproduced as is.
+     *
+     * @param text the text; may not be null
+     * @return the text as an HTML layout paragraph
+     */
+    private static String toHtmlParagraph(String text) {
+        assert (text != null);
+        if (text.isEmpty()) {
+            return "";
+        }    // if
+        return "<p>" + CompiledTemplate.escape(HtmlEscaper.escape(text).replace("\n", "<br>\n")) + "</p>\n";
+    }    // toHtmlParagraph()
+
+    /**
+     * The email template.
+     */
+    private final EmailTemplate emailTemplate;
+
+    /**
+     * The compiled subject line template.
+     */
+    private final CompiledTemplate subjectTemplate;
+
+    /**
+     * The compiled body template.
+     */
+    private final CompiledTemplate bodyTemplate;
+
+    /**
+     * The compiled HTML body layout.
+     */
+    private final CompiledTemplate htmlBodyTemplate;
+
+    /**
+     * Constructs a new event email renderer using the given email template.
+     * Compiled templates are taken from the
+     * {@link TemplateCache#getSharedCache() shared template cache}.
+     *
+     * @param emailTemplate the email template; may not be null
+     * @throws NullPointerException if {@code emailTemplate} is null
+     */
+    public EventEmailRenderer(EmailTemplate emailTemplate) {
+        this(emailTemplate, TemplateCache.getSharedCache());
+    }    // EventEmailRenderer()
+
+    /**
+     * Constructs a new event email renderer using the given email template
+     * and template cache.
+     *
+     * @param emailTemplate the email template; may not be null
+     * @param templateCache the cache from which compiled templates are taken;
+     * may not be null
+     * @throws NullPointerException if either parameter is null
+     */
+    public EventEmailRenderer(EmailTemplate emailTemplate, TemplateCache templateCache) {
+        if (emailTemplate == null) {
+            throw new NullPointerException("emailTemplate may not be null");
+        }    // if
+        if (templateCache == null) {
+            throw new NullPointerException("templateCache may not be null");
+        }    // if
+
+        this.emailTemplate = emailTemplate;
+        this.subjectTemplate = templateCache.get(emailTemplate.getSubjectLineTemplate(), emailTemplate.getDateFormatString(), emailTemplate.getLocale());
+        String body = CompiledTemplate.escape(emailTemplate.getPreScheduleText()) + "\n"
+                + "\n"
+                + SCHEDULE_TEMPLATE
+                + CompiledTemplate.escape(emailTemplate.getPostScheduleText()) + "\n";
+        this.bodyTemplate = templateCache.get(body, emailTemplate.getDateFormatString(), emailTemplate.getLocale());
+        String htmlBody = HTML_HEADER
+                + toHtmlParagraph(emailTemplate.getPreScheduleText())
+                + HTML_SCHEDULE_TEMPLATE
+                + toHtmlParagraph(emailTemplate.getPostScheduleText())
+                + HTML_FOOTER;
+        this.htmlBodyTemplate = templateCache.getHtml(htmlBody, emailTemplate.getDateFormatString(), emailTemplate.getLocale());
+        assertInvariant();
+    }    // EventEmailRenderer()
+
+    /**
+     * Returns the email template used by this renderer.
+     *
+     * @return the email template used by this renderer
+     */
+    public EmailTemplate getEmailTemplate() {
+        assertInvariant();
+        return emailTemplate;
+    }    // getEmailTemplate()
+
+    /**
+     * Returns a comma-separated list of the distinct email addresses of the
+     * volunteers assigned to the shifts of the given event. Where these
+     * recipients belong (to, cc, or bcc) is given by the email template's
+     * {@link EmailTemplate#getSendType() send type}.
+     *
+     * @param event the event; may not be null
+     * @return the list of recipients for the event
+     * @throws NullPointerException if {@code event} is null
+     */
+    public String renderRecipients(Event event) {
+        assertInvariant();
+        if (event == null) {
+            throw new NullPointerException("event may not be null");
+        }    // if
+
+        return event.getShifts().stream()
+                .map(Shift::getVolunteer)
+                .filter(Objects::nonNull)
+                .map(Volunteer::getEmail)
+                .distinct()
+                .collect(Collectors.joining(", "));
+    }    // renderRecipients()
+
+    /**
+     * Returns the subject line for the given event.
+     *
+     * @param event the event; may not be null
+     * @return the subject line for the event
+     * @throws NullPointerException if {@code event} is null
+     */
+    public String renderSubject(Event event) {
+        assertInvariant();
+        if (event == null) {
+            throw new NullPointerException("event may not be null");
+        }    // if
+
+        return subjectTemplate.render(event);
+    }    // renderSubject()
+
+    /**
+     * Returns the email body for the given event. The body consists of the
+     * following, in order.
+     * <ul>
+     *   <li>the pre-schedule text defined in the email template</li>
+     *   <li>a list of the event properties defined in the event</li>
+     *   <li>the volunteer schedule defined in the shifts of the event</li>
+     *   <li>the post-schedule text defined in the email template</li>
+     * </ul>
+     *
+     * @param event the event; may not be null
+     * @return the email body for the event
+     * @throws NullPointerException if {@code event} is null
+     */
+    public String renderBody(Event event) {
+        assertInvariant();
+        if (event == null) {
+            throw new NullPointerException("event may not be null");
+        }    // if
+
+        return bodyTemplate.render(event);
+    }    // renderBody()
+
+    /**
+     * Writes the email body for the given event to the given destination. The
+     * body is the same as that returned by {@link #renderBody(Event)}, but is
+     * written directly to the destination, which may be a
+     * {@link java.io.Writer} or any other {@link Appendable}.
+     *
+     * @param event the event; may not be null
+     * @param out the destination; may not be null
+     * @throws NullPointerException if either argument is null
+     * @throws IOException if an I/O error occurs
+     */
+    public void renderBody(Event event, Appendable out) throws IOException {
+        assertInvariant();
+        if (event == null) {
+            throw new NullPointerException("event may not be null");
+        }    // if
+        if (out == null) {
+            throw new NullPointerException("out may not be null");
+        }    // if
+
+        bodyTemplate.render(event, out);
+    }    // renderBody()
+
+    /**
+     * Returns the HTML email body for the given event. The HTML body has the
+     * same content as the {@link #renderBody(Event) plain text body}, with the
+     * volunteer schedule laid out as a table.
+     *
+     * @param event the event; may not be null
+     * @return the HTML email body for the event
+     * @throws NullPointerException if {@code event} is null
+     */
+    public String renderHtmlBody(Event event) {
+        assertInvariant();
+        if (event == null) {
+            throw new NullPointerException("event may not be null");
+        }    // if
+
+        return htmlBodyTemplate.render(event);
+    }    // renderHtmlBody()
+
+    /**
+     * Writes the HTML email body for the given event to the given
+     * destination.
+     *
+     * @param event the event; may not be null
+     * @param out the destination; may not be null
+     * @throws NullPointerException if either argument is null
+     * @throws IOException if an I/O error occurs
+     * @see #renderHtmlBody(Event)
+     */
+    public void renderHtmlBody(Event event, Appendable out) throws IOException {
+        assertInvariant();
+        if (event == null) {
+            throw new NullPointerException("event may not be null");
+        }    // if
+        if (out == null) {
+            throw new NullPointerException("out may not be null");
+        }    // if
+
+        htmlBodyTemplate.render(event, out);
+    }    // renderHtmlBody()
+
+    /**
+     * Asserts the correctness of the object's internal state.
+     */
+    private void assertInvariant() {
+        assert (emailTemplate != null);
+        assert (subjectTemplate != null);
+        assert (bodyTemplate != null);
+        assert (htmlBodyTemplate != null);
+    }    // assertInvariant()
+
+}    // EventEmailRenderer
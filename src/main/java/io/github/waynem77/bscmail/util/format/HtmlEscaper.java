@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.util.format;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Escapes text for inclusion in HTML element content or attribute values.
+ * The characters {@code &}, {@code <}, {@code >}, {@code "}, and {@code '}
+ * are replaced by character references; all other characters are passed
+ * through unchanged.
+ *
+ * Replacements are looked up in a table indexed by character, and runs of
+ * characters that need no escaping are copied to the destination in a single
+ * append, so escaping allocates nothing beyond what the destination itself
+ * allocates.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public final class HtmlEscaper {
+
+    /**
+     * The replacement for each ASCII character, or null if the character is
+     * not replaced.
+     */
+    private static final String[] REPLACEMENTS = new String[128];
+    static {
+        REPLACEMENTS['&'] = "&amp;";
+        REPLACEMENTS['<'] = "&lt;";
+        REPLACEMENTS['>'] = "&gt;";
+        REPLACEMENTS['"'] = "&quot;";
+        REPLACEMENTS['\''] = "&#39;";
+    }    // static
+
+    /**
+     * Writes the given text, escaped, to the given destination.
+     *
+     * @param text the text; may not be null
+     * @param out the destination; may not be null
+     * @throws NullPointerException if either argument is null
+     * @throws IOException if an I/O error occurs
+     */
+    public static void escape(CharSequence text, Appendable out) throws IOException {
+        if (text == null) {
+            throw new NullPointerException("text may not be null");
+        }    // if
+        if (out == null) {
+            throw new NullPointerException("out may not be null");
+        }    // if
+
+        int length = text.length();
+        int start = 0;
+        for (int i = 0; i < length; ++i) {
+            char c = text.charAt(i);
+            String replacement = (c < REPLACEMENTS.length) ? REPLACEMENTS[c] : null;
+            if (replacement != null) {
+                if (start < i) {
+                    out.append(text, start, i);
+                }    // if
+                out.append(replacement);
+                start = i + 1;
+            }    // if
+        }    // for
+        if (start < length) {
+            out.append(text, start, length);
+        }    // if
+    }    // escape()
+
+    /**
+     * Returns the given text, escaped. If the text needs no escaping, it is
+     * returned as is.
+     *
+     * @param text the text; may not be null
+     * @return the escaped text
+     * @throws NullPointerException if {@code text} is null
+     */
+    public static String escape(String text) {
+        if (text == null) {
+            throw new NullPointerException("text may not be null");
+        }    // if
+
+        int first = indexOfEscapable(text);
+        if (first < 0) {
+            return text;
+        }    // if
+        StringBuilder builder = new StringBuilder(text.length() + 16);
+        builder.append(text, 0, first);
+        try {
+            escape(text.subSequence(first, text.length()), builder);
+        } catch (IOException e) {    // try
+            // StringBuilder does not throw IOException.
+            throw new UncheckedIOException(e);
+        }    // catch
+        return builder.toString();
+    }    // escape()
+
+    /**
+     * Returns the index of the first character in the given text that must be
+     * escaped, or -1 if there is none.
+     *
+     * @param text the text; may not be null
+     * @return the index of the first escapable character, or -1
+     */
+    private static int indexOfEscapable(CharSequence text) {
+        assert (text != null);
+        for (int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if ((c < REPLACEMENTS.length) && (REPLACEMENTS[c] != null)) {
+                return i;
+            }    // if
+        }    // for
+        return -1;
+    }    // indexOfEscapable()
+
+    /**
+     * Prevents instantiation.
+     */
+    private HtmlEscaper() {
+    }    // HtmlEscaper()
+
+}    // HtmlEscaper
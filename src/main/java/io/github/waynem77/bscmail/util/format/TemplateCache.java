@@ -0,0 +1,367 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.util.format;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A bounded cache of {@link CompiledTemplate}s, keyed by template text, date
+ * format string, and locale. When the cache is full, the least recently used
+ * template is discarded. The cache keeps hit and miss statistics.
+ *
+ * Template caches are thread-safe.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public class TemplateCache {
+
+    /**
+     * The key of a cached template.
+     */
+    private static final class Key {
+
+        /**
+         * The template text.
+         */
+        private final String template;
+
+        /**
+         * The date format string.
+         */
+        private final String dateFormatString;
+
+        /**
+         * The locale.
+         */
+        private final Locale locale;
+
+        /**
+         * True if the template is an HTML layout.
+         */
+        private final boolean html;
+
+        /**
+         * Constructs a new key.
+         *
+         * @param template the template text; may not be null
+         * @param dateFormatString the date format string; may not be null
+         * @param locale the locale; may not be null
+         * @param html true if the template is an HTML layout
+         */
+        Key(String template, String dateFormatString, Locale locale, boolean html) {
+            assert (template != null);
+            assert (dateFormatString != null);
+            assert (locale != null);
+            this.template = template;
+            this.dateFormatString = dateFormatString;
+            this.locale = locale;
+            this.html = html;
+        }    // Key()
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }    // if
+            Key other = (Key) obj;
+            return template.equals(other.template) && dateFormatString.equals(other.dateFormatString)
+                    && locale.equals(other.locale) && (html == other.html);
+        }    // equals()
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode() {
+            return Objects.hash(template, dateFormatString, locale, html);
+        }    // hashCode()
+
+    }    // Key
+
+    /**
+     * The default capacity of a template cache.
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    /**
+     * The cache shared by the application.
+     */
+    private static final TemplateCache SHARED_CACHE = new TemplateCache(DEFAULT_CAPACITY);
+
+    /**
+     * Returns the template cache shared by the application.
+     *
+     * @return the shared template cache
+     */
+    public static TemplateCache getSharedCache() {
+        return SHARED_CACHE;
+    }    // getSharedCache()
+
+    /**
+     * The maximum number of templates in the cache.
+     */
+    private final int capacity;
+
+    /**
+     * The cached templates, in access order.
+     */
+    private final LinkedHashMap<Key, CompiledTemplate> templates;
+
+    /**
+     * The number of requests satisfied from the cache.
+     */
+    private long hits;
+
+    /**
+     * The number of requests that required compiling a template.
+     */
+    private long misses;
+
+    /**
+     * Constructs a new template cache with the given capacity.
+     *
+     * @param capacity the maximum number of templates in the cache; must be
+     * positive
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public TemplateCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }    // if
+        this.capacity = capacity;
+        templates = new LinkedHashMap<Key, CompiledTemplate>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CompiledTemplate> eldest) {
+                return size() > TemplateCache.this.capacity;
+            }    // removeEldestEntry()
+        };
+        hits = 0;
+        misses = 0;
+        assertInvariant();
+    }    // TemplateCache()
+
+    /**
+     * Returns the compiled form of the given template, compiling it if it is
+     * not in the cache.
+     *
+     * @param template the template; may not be null
+     * @param dateFormatString the date format string; may not be null; must be
+     * in a format appropriate for a {@link java.text.SimpleDateFormat}
+     * @return the compiled template
+     * @throws NullPointerException if either argument is null
+     * @throws IllegalArgumentException if dateFormatString is not in an
+     * appropriate format
+     * @see CompiledTemplate#compile(String, String)
+     */
+    public CompiledTemplate get(String template, String dateFormatString) {
+        return get(template, dateFormatString, null, false);
+    }    // get()
+
+    /**
+     * Returns the compiled form of the given template for the given locale,
+     * compiling it if it is not in the cache.
+     *
+     * @param template the template; may not be null
+     * @param dateFormatString the date format string; may not be null; must be
+     * in a format appropriate for a {@link java.text.SimpleDateFormat}
+     * @param locale the locale; may be null, in which case the default locale
+     * is used
+     * @return the compiled template
+     * @throws NullPointerException if either string argument is null
+     * @throws IllegalArgumentException if dateFormatString is not in an
+     * appropriate format
+     * @see CompiledTemplate#compile(String, String, Locale)
+     */
+    public CompiledTemplate get(String template, String dateFormatString, Locale locale) {
+        return get(template, dateFormatString, locale, false);
+    }    // get()
+
+    /**
+     * Returns the compiled form of the given HTML layout, compiling it if it
+     * is not in the cache.
+     *
+     * @param template the template; may not be null
+     * @param dateFormatString the date format string; may not be null; must be
+     * in a format appropriate for a {@link java.text.SimpleDateFormat}
+     * @return the compiled template
+     * @throws NullPointerException if either argument is null
+     * @throws IllegalArgumentException if dateFormatString is not in an
+     * appropriate format
+     * @see CompiledTemplate#compileHtml(String, String)
+     */
+    public CompiledTemplate getHtml(String template, String dateFormatString) {
+        return get(template, dateFormatString, null, true);
+    }    // getHtml()
+
+    /**
+     * Returns the compiled form of the given HTML layout for the given locale,
+     * compiling it if it is not in the cache.
+     *
+     * @param template the template; may not be null
+     * @param dateFormatString the date format string; may not be null; must be
+     * in a format appropriate for a {@link java.text.SimpleDateFormat}
+     * @param locale the locale; may be null, in which case the default locale
+     * is used
+     * @return the compiled template
+     * @throws NullPointerException if either string argument is null
+     * @throws IllegalArgumentException if dateFormatString is not in an
+     * appropriate format
+     * @see CompiledTemplate#compileHtml(String, String, Locale)
+     */
+    public CompiledTemplate getHtml(String template, String dateFormatString, Locale locale) {
+        return get(template, dateFormatString, locale, true);
+    }    // getHtml()
+
+    /**
+     * Returns the compiled form of the given template, compiling it if it is
+     * not in the cache.
+     *
+     * @param template the template; may not be null
+     * @param dateFormatString the date format string; may not be null
+     * @param locale the locale; may be null, in which case the default locale
+     * is used
+     * @param html true if the template is an HTML layout
+     * @return the compiled template
+     * @throws NullPointerException if either string argument is null
+     * @throws IllegalArgumentException if dateFormatString is not in an
+     * appropriate format
+     */
+    private CompiledTemplate get(String template, String dateFormatString, Locale locale, boolean html) {
+        if (template == null) {
+            throw new NullPointerException("template may not be null");
+        }    // if
+        if (dateFormatString == null) {
+            throw new NullPointerException("dateFormatString may not be null");
+        }    // if
+
+        Locale effectiveLocale = (locale != null) ? locale : Locale.getDefault(Locale.Category.FORMAT);
+        Key key = new Key(template, dateFormatString, effectiveLocale, html);
+        synchronized (this) {
+            assertInvariant();
+            CompiledTemplate compiledTemplate = templates.get(key);
+            if (compiledTemplate != null) {
+                ++hits;
+                return compiledTemplate;
+            }    // if
+            ++misses;
+        }    // synchronized
+
+        // Compile outside the lock, so that a long template does not hold up
+        // other threads. If two threads race, the first result is kept.
+        CompiledTemplate compiledTemplate = html
+                ? CompiledTemplate.compileHtml(template, dateFormatString, effectiveLocale)
+                : CompiledTemplate.compile(template, dateFormatString, effectiveLocale);
+        synchronized (this) {
+            CompiledTemplate existing = templates.putIfAbsent(key, compiledTemplate);
+            assertInvariant();
+            return (existing != null) ? existing : compiledTemplate;
+        }    // synchronized
+    }    // get()
+
+    /**
+     * Adds the given template to the cache, so that later requests for it are
+     * satisfied without compiling it. This is used to install templates
+     * restored from their {@link CompiledTemplate#toCompiledForm() compiled
+     * form}. If the cache already holds the template, it is kept.
+     *
+     * @param compiledTemplate the template; may not be null
+     * @throws NullPointerException if {@code compiledTemplate} is null
+     */
+    public void put(CompiledTemplate compiledTemplate) {
+        if (compiledTemplate == null) {
+            throw new NullPointerException("compiledTemplate may not be null");
+        }    // if
+
+        Key key = new Key(compiledTemplate.getTemplate(), compiledTemplate.getDateFormatString(), compiledTemplate.getLocale(), compiledTemplate.isHtml());
+        synchronized (this) {
+            templates.putIfAbsent(key, compiledTemplate);
+            assertInvariant();
+        }    // synchronized
+    }    // put()
+
+    /**
+     * Returns the maximum number of templates in the cache.
+     *
+     * @return the maximum number of templates in the cache
+     */
+    public int getCapacity() {
+        return capacity;
+    }    // getCapacity()
+
+    /**
+     * Returns the number of templates in the cache.
+     *
+     * @return the number of templates in the cache
+     */
+    public synchronized int size() {
+        assertInvariant();
+        return templates.size();
+    }    // size()
+
+    /**
+     * Returns the number of requests satisfied from the cache.
+     *
+     * @return the number of cache hits
+     */
+    public synchronized long getHits() {
+        assertInvariant();
+        return hits;
+    }    // getHits()
+
+    /**
+     * Returns the number of requests that required compiling a template.
+     *
+     * @return the number of cache misses
+     */
+    public synchronized long getMisses() {
+        assertInvariant();
+        return misses;
+    }    // getMisses()
+
+    /**
+     * Removes all templates from the cache and resets its statistics.
+     */
+    public synchronized void clear() {
+        assertInvariant();
+        templates.clear();
+        hits = 0;
+        misses = 0;
+        assertInvariant();
+    }    // clear()
+
+    /**
+     * Asserts the correctness of the object's internal state.
+     */
+    private void assertInvariant() {
+        assert (capacity > 0);
+        assert (templates != null);
+        assert (templates.size() <= capacity);
+        assert (hits >= 0);
+        assert (misses >= 0);
+    }    // assertInvariant()
+
+}    // TemplateCache
@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.util.format;
+
+/**
+ * Thrown when a template is malformed. The exception records the position in
+ * the template at which the error was found.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ * @see CompiledTemplate#validate(String)
+ */
+public class TemplateSyntaxException extends IllegalArgumentException {
+
+    /**
+     * Class version number.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The position in the template at which the error was found.
+     */
+    private final int position;
+
+    /**
+     * Constructs a new template syntax exception.
+     *
+     * @param message the detail message
+     * @param position the position in the template at which the error was
+     * found; must be non-negative
+     * @throws IllegalArgumentException if position is negative
+     */
+    public TemplateSyntaxException(String message, int position) {
+        super(message);
+        if (position < 0) {
+            throw new IllegalArgumentException("position must be non-negative");
+        }    // if
+        this.position = position;
+    }    // TemplateSyntaxException()
+
+    /**
+     * Returns the position in the template at which the error was found.
+     *
+     * @return the position of the error
+     */
+    public int getPosition() {
+        return position;
+    }    // getPosition()
+
+}    // TemplateSyntaxException
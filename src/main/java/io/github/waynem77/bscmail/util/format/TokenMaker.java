@@ -19,8 +19,6 @@
 
 package io.github.waynem77.bscmail.util.format;
 
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 
 /**
@@ -89,8 +87,7 @@ class TokenMaker {
         if (dateFormatString.isEmpty()) {
             dateFormatString = DEFAULT_DATE_FORMAT;
         }    // if
-        DateFormat format = new SimpleDateFormat(dateFormatString);
-        return new Token(format.format(date), false);
+        return new Token(DateFormatter.forPattern(dateFormatString).format(date), false);
     }    // makeAtom()
 
 }    // TokenMaker
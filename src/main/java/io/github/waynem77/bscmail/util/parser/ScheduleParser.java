@@ -0,0 +1,259 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.util.parser;
+
+import io.github.waynem77.bscmail.persistent.Event;
+import io.github.waynem77.bscmail.persistent.EventProperty;
+import io.github.waynem77.bscmail.persistent.Shift;
+import io.github.waynem77.bscmail.persistent.Volunteer;
+import java.io.IOException;
+import java.io.Reader;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * Parses a schedule of events from comma-delimited data. The data should be
+ * compliant with <a href="https://tools.ietf.org/html/rfc4180">RFC 4180</a>,
+ * with the addition that empty lines and lines beginning with "#" are ignored.
+ * Each record begins with a record type, as follows.
+ * <table style="border: 1px solid black">
+ * <caption>Schedule Record Specification</caption>
+ * <tr><th>event,<i>date</i></th><td>begins a new event; the date is in the
+ * format "yyyy-MM-dd" and may be empty</td></tr>
+ * <tr><th>property,<i>name</i>,<i>value</i></th><td>adds an event property with
+ * the given name and value to the current event</td></tr>
+ * <tr><th>shift,<i>description</i>,<i>volunteer</i></th><td>adds the defined
+ * shift with the given description to the current event, filled by the defined
+ * volunteer with the given name; the volunteer may be empty</td></tr>
+ * </table>
+ *
+ * Shifts and volunteers are looked up, by description and name respectively,
+ * among those given to the parser's constructor.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public class ScheduleParser {
+
+    /**
+     * The format of dates in the schedule.
+     */
+    public static final String DATE_FORMAT = "yyyy-MM-dd";
+
+    /**
+     * The CSV format of the schedule.
+     */
+    private final CSVFormat csvFormat = CSVFormat.RFC4180
+            .withCommentMarker('#')
+            .withIgnoreEmptyLines()
+            .withIgnoreSurroundingSpaces();
+
+    /**
+     * The defined shifts, keyed by description.
+     */
+    private final Map<String, Shift> shifts;
+
+    /**
+     * The defined volunteers, keyed by name.
+     */
+    private final Map<String, Volunteer> volunteers;
+
+    /**
+     * Constructs a new schedule parser that uses the given shifts and
+     * volunteers.
+     *
+     * @param shifts the defined shifts; may not be null nor contain null
+     * @param volunteers the defined volunteers; may not be null nor contain
+     * null
+     * @throws NullPointerException if either parameter is null or contains
+     * null
+     */
+    public ScheduleParser(List<Shift> shifts, List<Volunteer> volunteers) {
+        if (shifts == null) {
+            throw new NullPointerException("shifts may not be null");
+        }    // if
+        if (shifts.contains(null)) {
+            throw new NullPointerException("shifts may not contain null");
+        }    // if
+        if (volunteers == null) {
+            throw new NullPointerException("volunteers may not be null");
+        }    // if
+        if (volunteers.contains(null)) {
+            throw new NullPointerException("volunteers may not contain null");
+        }    // if
+
+        this.shifts = new LinkedHashMap<>();
+        for (Shift shift : shifts) {
+            this.shifts.putIfAbsent(shift.getDescription(), shift);
+        }    // for
+        this.volunteers = new LinkedHashMap<>();
+        for (Volunteer volunteer : volunteers) {
+            this.volunteers.putIfAbsent(volunteer.getName(), volunteer);
+        }    // for
+        assertInvariant();
+    }    // ScheduleParser()
+
+    /**
+     * Parses a schedule from the given reader.
+     *
+     * @param reader the reader containing the schedule; may not be null
+     * @return the events in the schedule, in the order they appear
+     * @throws NullPointerException if {@code reader} is null
+     * @throws IllegalArgumentException if the schedule is malformed, or refers
+     * to an undefined shift or volunteer
+     * @throws IOException if an I/O error occurs
+     */
+    public List<Event> parse(Reader reader) throws IOException {
+        assertInvariant();
+        if (reader == null) {
+            throw new NullPointerException("reader may not be null");
+        }    // if
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
+        dateFormat.setLenient(false);
+
+        List<Event> events = new ArrayList<>();
+        Event event = null;
+        try (CSVParser parser = new CSVParser(reader, csvFormat)) {
+            for (CSVRecord record : parser) {
+                String recordType = record.get(0);
+                if (recordType.equals("event")) {
+                    event = new Event();
+                    String dateString = getField(record, 1);
+                    if (!dateString.isEmpty()) {
+                        event.setDate(parseDate(dateFormat, dateString, record));
+                    }    // if
+                    events.add(event);
+                } else if (recordType.equals("property")) {    // if
+                    requireEvent(event, record);
+                    EventProperty eventProperty = new EventProperty(getField(record, 1), "");
+                    eventProperty.setValue(getField(record, 2));
+                    event.addEventProperty(eventProperty);
+                } else if (recordType.equals("shift")) {    // else if
+                    requireEvent(event, record);
+                    event.addShift(createShift(getField(record, 1), getField(record, 2), record));
+                } else {    // else if
+                    throw new IllegalArgumentException("Unknown record type \"" + recordType + "\" in record " + record.getRecordNumber());
+                }    // else
+            }    // for
+        } catch (IllegalStateException e) {    // try
+            throw new IllegalArgumentException("Malformed schedule.", e);
+        }    // catch
+
+        return events;
+    }    // parse()
+
+    /**
+     * Returns a copy of the defined shift with the given description, filled
+     * by the defined volunteer with the given name.
+     *
+     * @param description the shift description; may not be null
+     * @param volunteerName the volunteer name; may not be null; an empty name
+     * leaves the shift open
+     * @param record the record being parsed; may not be null
+     * @return the new shift
+     * @throws IllegalArgumentException if there is no such shift or volunteer
+     */
+    private Shift createShift(String description, String volunteerName, CSVRecord record) {
+        assert (description != null);
+        assert (volunteerName != null);
+        assert (record != null);
+
+        Shift definedShift = shifts.get(description);
+        if (definedShift == null) {
+            throw new IllegalArgumentException("Undefined shift \"" + description + "\" in record " + record.getRecordNumber());
+        }    // if
+        Shift shift = definedShift.clone();
+        if (!volunteerName.isEmpty()) {
+            Volunteer volunteer = volunteers.get(volunteerName);
+            if (volunteer == null) {
+                throw new IllegalArgumentException("Undefined volunteer \"" + volunteerName + "\" in record " + record.getRecordNumber());
+            }    // if
+            shift.setVolunteer(volunteer);
+        }    // if
+        return shift;
+    }    // createShift()
+
+    /**
+     * Parses a date in the schedule.
+     *
+     * @param dateFormat the date format; may not be null
+     * @param dateString the string to parse; may not be null
+     * @param record the record being parsed; may not be null
+     * @return the parsed date
+     * @throws IllegalArgumentException if the date cannot be parsed
+     */
+    private Date parseDate(SimpleDateFormat dateFormat, String dateString, CSVRecord record) {
+        assert (dateFormat != null);
+        assert (dateString != null);
+        assert (record != null);
+
+        try {
+            return dateFormat.parse(dateString);
+        } catch (ParseException e) {    // try
+            throw new IllegalArgumentException("Malformed date \"" + dateString + "\" in record " + record.getRecordNumber(), e);
+        }    // catch
+    }    // parseDate()
+
+    /**
+     * Returns the value of the given field of the given record, or the empty
+     * string if the record has no such field.
+     *
+     * @param record the record; may not be null
+     * @param index the field index; must be non-negative
+     * @return the value of the field
+     */
+    private String getField(CSVRecord record, int index) {
+        assert (record != null);
+        assert (index >= 0);
+        return (index < record.size()) ? record.get(index) : "";
+    }    // getField()
+
+    /**
+     * Throws an exception if no event has yet been started.
+     *
+     * @param event the current event, or null if there is none
+     * @param record the record being parsed; may not be null
+     * @throws IllegalArgumentException if {@code event} is null
+     */
+    private void requireEvent(Event event, CSVRecord record) {
+        assert (record != null);
+        if (event == null) {
+            throw new IllegalArgumentException("Record " + record.getRecordNumber() + " precedes the first event");
+        }    // if
+    }    // requireEvent()
+
+    /**
+     * Asserts the correctness of the object's internal state.
+     */
+    private void assertInvariant() {
+        assert (shifts != null);
+        assert (volunteers != null);
+    }    // assertInvariant()
+
+}    // ScheduleParser
@@ -41,6 +41,12 @@ import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 import org.junit.*;
 import static org.junit.Assert.*;
 
@@ -1240,6 +1246,26 @@ public class ApplicationTest {
         }    // for
     }    // getVolunteersSetVolunteersListsAreNotIdentical()
 
+    /**
+     * Tests that {@link Application#setVolunteers(List)} brings the address
+     * cache returned by {@link Application#getAddressCache()} up to date.
+     */
+    @Test
+    public void setVolunteersUpdatesAddressCache() throws IOException {
+        for (Application application : getTestApplications()) {
+            application.setVolunteers(Arrays.asList(
+                    new Volunteer("Foo", "foo@example.com", "", "", true, Arrays.asList()),
+                    new Volunteer("Bar", "bar", "", "", true, Arrays.asList()),
+                    new Volunteer("Baz", "", "", "", true, Arrays.asList())));
+            assertEquals(2, application.getAddressCache().size());
+
+            application.setVolunteers(Arrays.asList(
+                    new Volunteer("Foo", "foo@example.com", "", "", true, Arrays.asList())));
+            assertEquals(1, application.getAddressCache().size());
+            assertTrue(application.getAddressCache().isValid("foo@example.com"));
+        }    // for
+    }    // setVolunteersUpdatesAddressCache()
+
     /* getRoles / setRoles */
 
     /**
@@ -2646,4 +2672,190 @@ public class ApplicationTest {
         }    // for
     }    // setEmailServerPropertiesDoesNotNotifyEventPropertiesObservers()
 
+    /* concurrency */
+
+    /**
+     * Tests that concurrent readers and writers of the shifts, volunteers, and
+     * email template of an {@link Application} never observe a partially
+     * written collection, and that no exceptions are thrown.
+     */
+    @Test
+    public void concurrentReadersAndWritersSeeConsistentSnapshots() throws InterruptedException {
+        final int READERS = 6;
+        final int WRITERS = 3;
+        final int ITERATIONS = 500;
+        final int LIST_SIZE = 5;
+
+        for (Application application : getTestApplications()) {
+            ExecutorService executor = Executors.newFixedThreadPool(READERS + WRITERS);
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+
+            for (int w = 0; w < WRITERS; ++w) {
+                final int writer = w;
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        for (int i = 0; i < ITERATIONS; ++i) {
+                            String generation = writer + "-" + i;
+                            List<Shift> shifts = new ArrayList<>();
+                            List<Volunteer> volunteers = new ArrayList<>();
+                            for (int j = 0; j < LIST_SIZE; ++j) {
+                                shifts.add(new Shift(generation, new ArrayList<>(), false, false, false));
+                                volunteers.add(new Volunteer(generation, "", "", "", true, new ArrayList<>()));
+                            }    // for
+                            application.setShifts(shifts);
+                            application.setVolunteers(volunteers);
+                            application.setEmailTemplate(new EmailTemplate(EmailTemplate.SendType.TO, generation, generation, generation, ""));
+                        }    // for
+                    } catch (Throwable e) {    // try
+                        failure.compareAndSet(null, e);
+                    }    // catch
+                });
+            }    // for
+            for (int r = 0; r < READERS; ++r) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        for (int i = 0; i < ITERATIONS; ++i) {
+                            List<String> shiftGenerations = application.getShifts().stream()
+                                    .map(Shift::getDescription)
+                                    .distinct()
+                                    .collect(Collectors.toList());
+                            assertTrue(shiftGenerations.size() <= 1);
+                            List<String> volunteerGenerations = application.getVolunteers().stream()
+                                    .map(Volunteer::getName)
+                                    .distinct()
+                                    .collect(Collectors.toList());
+                            assertTrue(volunteerGenerations.size() <= 1);
+                            EmailTemplate emailTemplate = application.getEmailTemplate();
+                            assertEquals(emailTemplate.getPreScheduleText(), emailTemplate.getPostScheduleText());
+                        }    // for
+                    } catch (Throwable e) {    // try
+                        failure.compareAndSet(null, e);
+                    }    // catch
+                });
+            }    // for
+
+            start.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+            assertNull(failure.get());
+            assertEquals(LIST_SIZE, application.getShifts().size());
+            assertEquals(LIST_SIZE, application.getVolunteers().size());
+        }    // for
+    }    // concurrentReadersAndWritersSeeConsistentSnapshots()
+
+    /* deferred loading */
+
+    /**
+     * Returns an application whose loading is deferred, with one shift and one
+     * volunteer in its I/O layers.
+     *
+     * @return a test application whose loading is deferred
+     * @throws IOException if an I/O error occurs
+     */
+    private Application getDeferredApplication() throws IOException {
+        TestIOLayer<Shift> shiftsIOLayer = new TestIOLayer<>();
+        shiftsIOLayer.setAll(Arrays.asList(new Shift("Door", new ArrayList<>(), false, false, false)));
+        TestIOLayer<Volunteer> volunteersIOLayer = new TestIOLayer<>();
+        volunteersIOLayer.setAll(Arrays.asList(new Volunteer("Alice", "alice@example.com", "", "", true, new ArrayList<>())));
+        return new Application(new ApplicationInfo("foo", "bar", "baz", "smurf"),
+                shiftsIOLayer,
+                volunteersIOLayer,
+                new TestIOLayer<>(),
+                new TestIOLayer<>(),
+                new TestIOLayer<>(),
+                new TestIOLayer<>(),
+                new TestHelpDisplay(),
+                true);
+    }    // getDeferredApplication()
+
+    /**
+     * Tests that an application whose loading is deferred has no data loaded
+     * until {@link Application#loadData(java.util.concurrent.Executor)} is
+     * called.
+     */
+    @Test
+    public void deferredApplicationIsEmptyBeforeLoading() throws IOException {
+        Application application = getDeferredApplication();
+
+        for (Application.DataSet dataSet : Application.DataSet.values()) {
+            assertFalse(application.isLoaded(dataSet));
+        }    // for
+        assertTrue(application.getShifts().isEmpty());
+        assertTrue(application.getVolunteers().isEmpty());
+        assertNotNull(application.getEmailTemplate());
+        assertNotNull(application.getEmailServerProperties());
+    }    // deferredApplicationIsEmptyBeforeLoading()
+
+    /**
+     * Tests that an application whose loading is not deferred has all its data
+     * loaded.
+     */
+    @Test
+    public void applicationIsLoadedWhenLoadingIsNotDeferred() {
+        Application application = new TestApplication();
+
+        for (Application.DataSet dataSet : Application.DataSet.values()) {
+            assertTrue(application.isLoaded(dataSet));
+        }    // for
+    }    // applicationIsLoadedWhenLoadingIsNotDeferred()
+
+    /**
+     * Tests that {@link Application#loadData(java.util.concurrent.Executor)}
+     * throws a NullPointerException when executor is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void loadDataThrowsExceptionWhenExecutorIsNull() throws IOException {
+        getDeferredApplication().loadData(null);
+    }    // loadDataThrowsExceptionWhenExecutorIsNull()
+
+    /**
+     * Tests that {@link Application#loadData(java.util.concurrent.Executor)}
+     * loads the data and notifies observers.
+     */
+    @Test
+    public void loadDataLoadsDataAndNotifiesObservers() throws Exception {
+        Application application = getDeferredApplication();
+        ApplicationObserver observer = new ApplicationObserver();
+        application.registerObserver((ShiftsObserver) observer);
+        application.registerObserver((VolunteersObserver) observer);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            application.loadData(executor).get(10, TimeUnit.SECONDS);
+        } finally {    // try
+            executor.shutdown();
+        }    // finally
+
+        for (Application.DataSet dataSet : Application.DataSet.values()) {
+            assertTrue(application.isLoaded(dataSet));
+        }    // for
+        assertEquals(1, application.getShifts().size());
+        assertEquals("Alice", application.getVolunteers().get(0).getName());
+        assertTrue(observer.getShiftsChanged());
+        assertTrue(observer.getVolunteersChanged());
+    }    // loadDataLoadsDataAndNotifiesObservers()
+
+    /**
+     * Tests that {@link Application#loadData(java.util.concurrent.Executor)}
+     * does not overwrite data set before loading.
+     */
+    @Test
+    public void loadDataDoesNotOverwriteDataSetBeforeLoading() throws Exception {
+        Application application = getDeferredApplication();
+        application.setShifts(new ArrayList<>());
+        assertTrue(application.isLoaded(Application.DataSet.SHIFTS));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            application.loadData(executor).get(10, TimeUnit.SECONDS);
+        } finally {    // try
+            executor.shutdown();
+        }    // finally
+
+        assertTrue(application.getShifts().isEmpty());
+        assertEquals(1, application.getVolunteers().size());
+    }    // loadDataDoesNotOverwriteDataSetBeforeLoading()
+
 }    // ApplicationTest
@@ -0,0 +1,32 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail;
+
+/**
+ * JUnit category of benchmarks: tests that measure and report how long an
+ * operation takes, and fail if it is too slow. Their timings depend on the
+ * machine running them, so they are left out of the normal build. Run them
+ * with {@code mvn test -P benchmark}.
+ *
+ * @author Wayne Miller
+ * @since 4.0
+ */
+public interface Benchmark {
+}    // Benchmark
@@ -0,0 +1,383 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.waynem77.bscmail;
+
+import io.github.waynem77.bscmail.mail.DryRunSpool;
+import io.github.waynem77.bscmail.mail.FakeSmtpServer;
+import io.github.waynem77.bscmail.persistent.EmailServerProperties;
+import io.github.waynem77.bscmail.persistent.EmailTemplate;
+import io.github.waynem77.bscmail.persistent.Shift;
+import io.github.waynem77.bscmail.persistent.Volunteer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link HeadlessMain}.
+ *
+ * @author Wayne Miller
+ */
+public class HeadlessMainTest {
+
+    /**
+     * A program that runs {@link HeadlessMain} with the test application,
+     * for {@link HeadlessMainTest#runDoesNotInitializeAwt()}. Its arguments
+     * are the schedule file and the spool directory.
+     */
+    static class SpoolProgram {
+
+        public static void main(String[] args) throws Exception {
+            HeadlessMainTest test = new HeadlessMainTest();
+            System.exit(test.getHeadlessMain(test.getTestApplication()).run(
+                    new String[] {"--schedule", args[0], "--spool", args[1], "--merge"}, System.out, System.err));
+        }    // main()
+
+    }    // SpoolProgram
+
+    /**
+     * A temporary folder for schedules and output.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * The stream for progress messages.
+     */
+    private ByteArrayOutputStream out;
+
+    /**
+     * The stream for error messages.
+     */
+    private ByteArrayOutputStream err;
+
+    /**
+     * Returns an application that can be used in tests. The application has
+     * the shifts "Door" and "Bar", and the volunteers Alice and Bob.
+     */
+    private Application getTestApplication() throws IOException {
+        Application application = new TestApplication();
+        application.setShifts(Arrays.asList(
+                new Shift("Door", new ArrayList<>(), false, false, false),
+                new Shift("Bar", new ArrayList<>(), false, false, false)));
+        application.setVolunteers(Arrays.asList(
+                new Volunteer("Alice", "alice@example.com", "", "", true, new ArrayList<>()),
+                new Volunteer("Bob", "bob@example.com", "", "", true, new ArrayList<>())));
+        application.setEmailTemplate(new EmailTemplate(EmailTemplate.SendType.BCC, "Hello!", "Goodbye!", "Show on {date}", "yyyy-MM-dd"));
+        return application;
+    }    // getTestApplication()
+
+    /**
+     * Returns a program that uses the given application.
+     */
+    private HeadlessMain getHeadlessMain(Application application) {
+        return new HeadlessMain() {
+            @Override
+            Application getApplication(String propertiesFile) {
+                return application;
+            }    // getApplication()
+        };
+    }    // getHeadlessMain()
+
+    /**
+     * Writes a schedule of two events to a file, and returns the file. The
+     * first event is staffed by Alice and Bob, and the second by Bob.
+     */
+    private Path getScheduleFile() throws IOException {
+        Path file = temporaryFolder.newFile("schedule.csv").toPath();
+        String schedule = "event,2020-03-14\nshift,Door,Alice\nshift,Bar,Bob\nevent,2020-03-21\nshift,Door,Bob\n";
+        Files.write(file, schedule.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }    // getScheduleFile()
+
+    /**
+     * Runs the program with the given arguments and the test application,
+     * and returns the exit status.
+     */
+    private int run(String... args) throws IOException {
+        return getHeadlessMain(getTestApplication()).run(args, new PrintStream(out, true), new PrintStream(err, true));
+    }    // run()
+
+    /**
+     * Runs the program with the given arguments, expecting a usage error.
+     */
+    private void assertUsageError(String... args) throws IOException {
+        assertEquals(HeadlessMain.EXIT_USAGE, run(args));
+        assertTrue(err.toString(), err.toString().contains("usage: "));
+    }    // assertUsageError()
+
+    /**
+     * Returns the message in the given RFC 822 file.
+     */
+    private MimeMessage readMessage(Path file) throws Exception {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return new MimeMessage(Session.getInstance(new Properties()), inputStream);
+        }    // try
+    }    // readMessage()
+
+    /**
+     * Sets up the test environment before each test.
+     */
+    @Before
+    public void preTestSetup() {
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+    }    // preTestSetup()
+
+    /* usage */
+
+    /**
+     * Tests that {@link HeadlessMain#run(String[], PrintStream, PrintStream)}
+     * returns a usage error when no arguments are given.
+     */
+    @Test
+    public void runReturnsUsageErrorWhenNoArguments() throws Exception {
+        assertUsageError();
+        assertTrue(err.toString().contains("--schedule is required"));
+    }    // runReturnsUsageErrorWhenNoArguments()
+
+    /**
+     * Tests that {@link HeadlessMain#run(String[], PrintStream, PrintStream)}
+     * returns a usage error for an unrecognized argument, or an option
+     * missing its value.
+     */
+    @Test
+    public void runReturnsUsageErrorForUnrecognizedArgument() throws Exception {
+        assertUsageError("--schedule", "schedule.csv", "--send", "--frobnicate");
+        assertTrue(err.toString().contains("unrecognized argument \"--frobnicate\""));
+        assertUsageError("--schedule");
+    }    // runReturnsUsageErrorForUnrecognizedArgument()
+
+    /**
+     * Tests that {@link HeadlessMain#run(String[], PrintStream, PrintStream)}
+     * returns a usage error unless exactly one of --send, --spool, and --mbox
+     * is given.
+     */
+    @Test
+    public void runReturnsUsageErrorUnlessOneOutputGiven() throws Exception {
+        String schedule = getScheduleFile().toString();
+
+        assertUsageError("--schedule", schedule);
+        assertUsageError("--schedule", schedule, "--send", "--spool", "out");
+        assertUsageError("--schedule", schedule, "--spool", "out", "--mbox", "out.mbox");
+        assertTrue(err.toString().contains("exactly one of --send, --spool, and --mbox is required"));
+    }    // runReturnsUsageErrorUnlessOneOutputGiven()
+
+    /**
+     * Tests that {@link HeadlessMain#run(String[], PrintStream, PrintStream)}
+     * returns a usage error when options are combined wrongly.
+     */
+    @Test
+    public void runReturnsUsageErrorForBadCombinations() throws Exception {
+        String schedule = getScheduleFile().toString();
+
+        assertUsageError("--serve", "0", "--schedule", schedule);
+        assertUsageError("--serve", "0", "--merge");
+        assertUsageError("--schedule", schedule, "--send", "--bind", "127.0.0.1");
+        assertUsageError("--schedule", schedule, "--spool", "out", "--outbox", "outbox");
+        String problems = err.toString();
+        assertTrue(problems.contains("--serve may not be combined"));
+        assertTrue(problems.contains("--bind requires --serve"));
+        assertTrue(problems.contains("--outbox requires --send"));
+    }    // runReturnsUsageErrorForBadCombinations()
+
+    /**
+     * Tests that {@link HeadlessMain#run(String[], PrintStream, PrintStream)}
+     * returns a usage error for an invalid worker count or rate.
+     */
+    @Test
+    public void runReturnsUsageErrorForInvalidNumbers() throws Exception {
+        String schedule = getScheduleFile().toString();
+
+        assertUsageError("--schedule", schedule, "--send", "--workers", "0");
+        assertUsageError("--schedule", schedule, "--send", "--workers", "many");
+        assertUsageError("--schedule", schedule, "--send", "--rate", "fast");
+    }    // runReturnsUsageErrorForInvalidNumbers()
+
+    /**
+     * Tests that {@link HeadlessMain#run(String[], PrintStream, PrintStream)}
+     * returns {@link HeadlessMain#EXIT_USAGE} when the schedule cannot be
+     * read.
+     */
+    @Test
+    public void runReturnsUsageErrorForMissingSchedule() throws Exception {
+        String schedule = temporaryFolder.getRoot().toPath().resolve("missing.csv").toString();
+
+        assertEquals(HeadlessMain.EXIT_USAGE, run("--schedule", schedule, "--spool", "out"));
+        assertTrue(err.toString().startsWith("Unable to initialize: "));
+    }    // runReturnsUsageErrorForMissingSchedule()
+
+    /* --spool and --mbox */
+
+    /**
+     * Tests that {@link HeadlessMain#run(String[], PrintStream, PrintStream)}
+     * with --spool writes one .eml file for each event.
+     */
+    @Test
+    public void runSpoolsOneEmailPerEvent() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath().resolve("spool");
+
+        int status = run("--schedule", getScheduleFile().toString(), "--spool", directory.toString());
+
+        assertEquals(err.toString(), HeadlessMain.EXIT_SUCCESS, status);
+        assertTrue(out.toString().contains("2 of 2 emails spooled"));
+        assertEquals(2, directory.toFile().list().length);
+        MimeMessage first = readMessage(directory.resolve(String.format(DryRunSpool.EML_FILE_NAME_FORMAT, 1)));
+        MimeMessage second = readMessage(directory.resolve(String.format(DryRunSpool.EML_FILE_NAME_FORMAT, 2)));
+        assertEquals("Show on 2020-03-14", first.getSubject());
+        assertEquals("alice@example.com, bob@example.com", first.getHeader("Bcc", ", "));
+        assertEquals("Show on 2020-03-21", second.getSubject());
+        assertEquals("bob@example.com", second.getHeader("Bcc", ", "));
+    }    // runSpoolsOneEmailPerEvent()
+
+    /**
+     * Tests that {@link HeadlessMain#run(String[], PrintStream, PrintStream)}
+     * with --spool and --merge writes a personal email for each volunteer of
+     * each event, in order.
+     */
+    @Test
+    public void runSpoolsPersonalEmails() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath().resolve("spool");
+
+        int status = run("--schedule", getScheduleFile().toString(), "--spool", directory.toString(), "--merge");
+
+        assertEquals(err.toString(), HeadlessMain.EXIT_SUCCESS, status);
+        assertTrue(out.toString().contains("3 of 3 emails spooled"));
+        List<String> recipients = new ArrayList<>();
+        for (int i = 1; i <= 3; ++i) {
+            MimeMessage message = readMessage(directory.resolve(String.format(DryRunSpool.EML_FILE_NAME_FORMAT, i)));
+            recipients.add(message.getHeader("To", ", "));
+        }    // for
+        assertEquals(Arrays.asList("alice@example.com", "bob@example.com", "bob@example.com"), recipients);
+    }    // runSpoolsPersonalEmails()
+
+    /**
+     * Tests that {@link HeadlessMain#run(String[], PrintStream, PrintStream)}
+     * with --mbox writes every email, in order, to a single mbox.
+     */
+    @Test
+    public void runWritesMbox() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("out.mbox");
+
+        int status = run("--schedule", getScheduleFile().toString(), "--mbox", file.toString());
+
+        assertEquals(err.toString(), HeadlessMain.EXIT_SUCCESS, status);
+        String mbox = new String(Files.readAllBytes(file), StandardCharsets.US_ASCII);
+        assertTrue(mbox.startsWith("From MAILER-DAEMON "));
+        int first = mbox.indexOf("Subject: Show on 2020-03-14\n");
+        int second = mbox.indexOf("Subject: Show on 2020-03-21\n");
+        assertTrue(first > 0);
+        assertTrue(second > first);
+    }    // runWritesMbox()
+
+    /* --send and --outbox */
+
+    /**
+     * Tests that {@link HeadlessMain#run(String[], PrintStream, PrintStream)}
+     * with --send sends every email to the email server, and with --outbox
+     * does the same through an outbox.
+     */
+    @Test
+    public void runSendsEmails() throws Exception {
+        String schedule = getScheduleFile().toString();
+        Path outbox = temporaryFolder.getRoot().toPath().resolve("outbox");
+        try (FakeSmtpServer server = new FakeSmtpServer()) {
+            Application application = getTestApplication();
+            application.setEmailServerProperties(new EmailServerProperties("127.0.0.1", Integer.toString(server.getPort()), "user", false));
+            PrintStream outStream = new PrintStream(out, true);
+            PrintStream errStream = new PrintStream(err, true);
+
+            // The server accepts any password, so any variable that is set
+            // will do.
+            int sent = getHeadlessMain(application).run(new String[] {"--schedule", schedule, "--send", "--merge", "--password-env", "PATH"}, outStream, errStream);
+            int sentThroughOutbox = getHeadlessMain(application).run(new String[] {"--schedule", schedule, "--send", "--outbox", outbox.toString(), "--password-env", "PATH"}, outStream, errStream);
+
+            assertEquals(err.toString(), HeadlessMain.EXIT_SUCCESS, sent);
+            assertEquals(err.toString(), HeadlessMain.EXIT_SUCCESS, sentThroughOutbox);
+            assertTrue(out.toString().contains("3 of 3 emails sent"));
+            assertTrue(out.toString().contains("2 of 2 emails sent"));
+            assertEquals(5, server.getMessages().size());
+        }    // try
+    }    // runSendsEmails()
+
+    /**
+     * Tests that {@link HeadlessMain#run(String[], PrintStream, PrintStream)}
+     * returns {@link HeadlessMain#EXIT_FAILURE} when emails cannot be sent.
+     */
+    @Test
+    public void runReturnsFailureWhenEmailsCannotBeSent() throws Exception {
+        int port;
+        try (FakeSmtpServer server = new FakeSmtpServer()) {
+            port = server.getPort();
+        }    // try
+        Application application = getTestApplication();
+        application.setEmailServerProperties(new EmailServerProperties("127.0.0.1", Integer.toString(port), "user", false));
+
+        int status = getHeadlessMain(application).run(new String[] {"--schedule", getScheduleFile().toString(), "--send", "--password-env", "PATH"}, new PrintStream(out, true), new PrintStream(err, true));
+
+        assertEquals(HeadlessMain.EXIT_FAILURE, status);
+        assertTrue(out.toString().contains("0 of 2 emails sent"));
+        assertTrue(err.toString().contains("Unable to send \"Show on 2020-03-14\""));
+    }    // runReturnsFailureWhenEmailsCannotBeSent()
+
+    /* AWT */
+
+    /**
+     * Tests that a spool run does not initialize AWT. The run is made in a
+     * new virtual machine, whose class loading is logged.
+     */
+    @Test
+    public void runDoesNotInitializeAwt() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath().resolve("spool");
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-verbose:class", "-cp", System.getProperty("java.class.path"),
+                SpoolProgram.class.getName(), getScheduleFile().toString(), directory.toString())
+                .redirectErrorStream(true)
+                .start();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream inputStream = process.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            for (int count = inputStream.read(buffer); count >= 0; count = inputStream.read(buffer)) {
+                output.write(buffer, 0, count);
+            }    // for
+        }    // try
+        assertTrue(process.waitFor(1, TimeUnit.MINUTES));
+
+        String log = output.toString("UTF-8");
+        assertEquals(log, HeadlessMain.EXIT_SUCCESS, process.exitValue());
+        assertTrue(log.contains("3 of 3 emails spooled"));
+        assertFalse(log.contains("java.awt.Toolkit "));
+        assertFalse(log.contains("java.awt.Component "));
+    }    // runDoesNotInitializeAwt()
+
+}    // HeadlessMainTest
@@ -0,0 +1,283 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.github.waynem77.bscmail.gui.util;
+
+import io.github.waynem77.bscmail.Application;
+import io.github.waynem77.bscmail.TestApplication;
+import io.github.waynem77.bscmail.mail.MailMessage;
+import io.github.waynem77.bscmail.mail.Mailer;
+import io.github.waynem77.bscmail.mail.MailerStatus;
+import io.github.waynem77.bscmail.mail.TestTransportPool;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link MailerStatusStream}.
+ *
+ * @author Wayne Miller
+ */
+public class MailerStatusStreamTest {
+
+    /**
+     * Returns an application that can be used in tests.
+     */
+    private Application getTestApplication() {
+        return new TestApplication();
+    }    // getTestApplication()
+
+    /**
+     * Returns a listener that ignores the progress delivered.
+     */
+    private Consumer<MailerStatusStream.Progress> getTestListener() {
+        return progress -> {};
+    }    // getTestListener()
+
+    /**
+     * Returns a message that can be used in tests.
+     */
+    private MailMessage getTestMessage() {
+        return new MailMessage("foo@example.com", "", "", "smurf", "la");
+    }    // getTestMessage()
+
+    /* constructor */
+
+    /**
+     * Tests that
+     * {@link MailerStatusStream#MailerStatusStream(Mailer, Consumer, int)}
+     * throws a NullPointerException when mailer is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenMailerIsNull() {
+        Mailer mailer = null;
+
+        new MailerStatusStream(mailer, getTestListener(), 100);
+    }    // constructorThrowsExceptionWhenMailerIsNull()
+
+    /**
+     * Tests that
+     * {@link MailerStatusStream#MailerStatusStream(Mailer, Consumer, int)}
+     * throws a NullPointerException when listener is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenListenerIsNull() {
+        Mailer mailer = new Mailer(getTestApplication());
+
+        new MailerStatusStream(mailer, null, 100);
+    }    // constructorThrowsExceptionWhenListenerIsNull()
+
+    /**
+     * Tests that
+     * {@link MailerStatusStream#MailerStatusStream(Mailer, Consumer, int)}
+     * throws an IllegalArgumentException when intervalMillis is not positive.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorThrowsExceptionWhenIntervalIsNotPositive() {
+        Mailer mailer = new Mailer(getTestApplication());
+
+        new MailerStatusStream(mailer, getTestListener(), 0);
+    }    // constructorThrowsExceptionWhenIntervalIsNotPositive()
+
+    /**
+     * Tests that
+     * {@link MailerStatusStream#MailerStatusStream(Mailer, Consumer)} does not
+     * start delivering progress.
+     */
+    @Test
+    public void constructorDoesNotStartStream() {
+        Mailer mailer = new Mailer(getTestApplication());
+
+        MailerStatusStream statusStream = new MailerStatusStream(mailer, getTestListener());
+
+        assertFalse(statusStream.isRunning());
+    }    // constructorDoesNotStartStream()
+
+    /* takeProgress */
+
+    /**
+     * Tests that {@link MailerStatusStream#takeProgress()} returns null when
+     * nothing has been recorded.
+     */
+    @Test
+    public void takeProgressReturnsNullWhenNothingRecorded() {
+        Mailer mailer = new Mailer(getTestApplication());
+        MailerStatusStream statusStream = new MailerStatusStream(mailer, getTestListener());
+
+        assertNull(statusStream.takeProgress());
+    }    // takeProgressReturnsNullWhenNothingRecorded()
+
+    /* mailerStatusChanged */
+
+    /**
+     * Tests that {@link MailerStatusStream#mailerStatusChanged()} coalesces
+     * every notification since the last delivery into one progress.
+     */
+    @Test
+    public void mailerStatusChangedCoalescesNotifications() {
+        Mailer mailer = new Mailer(getTestApplication());
+        MailerStatusStream statusStream = new MailerStatusStream(mailer, getTestListener());
+
+        for (int i = 0; i < 1000; ++i) {
+            statusStream.mailerStatusChanged();
+        }    // for
+        MailerStatusStream.Progress first = statusStream.takeProgress();
+        MailerStatusStream.Progress second = statusStream.takeProgress();
+        statusStream.mailerStatusChanged();
+        MailerStatusStream.Progress third = statusStream.takeProgress();
+
+        assertEquals(1000, first.getEventCount());
+        assertEquals(1000, first.getBatchEventCount());
+        assertEquals(MailerStatus.NOT_STARTED, first.getStatus());
+        assertFalse(first.isFinished());
+        assertNull(second);
+        assertEquals(1001, third.getEventCount());
+        assertEquals(1, third.getBatchEventCount());
+    }    // mailerStatusChangedCoalescesNotifications()
+
+    /**
+     * Tests that {@link MailerStatusStream#mailerStatusChanged()} counts the
+     * messages sent and failed by the mailer.
+     */
+    @Test
+    public void mailerStatusChangedCountsMessages() {
+        TestTransportPool transportPool = new TestTransportPool();
+        Mailer mailer = new Mailer(getTestApplication(), transportPool);
+        MailerStatusStream statusStream = new MailerStatusStream(mailer, getTestListener());
+        mailer.registerObserver(statusStream);
+
+        for (int i = 0; i < 3; ++i) {
+            mailer.send(getTestMessage(), "password");
+        }    // for
+        MailerStatusStream.Progress sent = statusStream.takeProgress();
+        transportPool.getTransports().get(0).setFailSend(true);
+        mailer.send(getTestMessage(), "password");
+        MailerStatusStream.Progress failed = statusStream.takeProgress();
+
+        assertEquals(MailerStatus.MAIL_SENT, sent.getStatus());
+        assertTrue(sent.isFinished());
+        assertEquals(3, sent.getSentCount());
+        assertEquals(0, sent.getErrorCount());
+        assertTrue(sent.getEventCount() > 3);
+        assertEquals(MailerStatus.ERROR, failed.getStatus());
+        assertTrue(failed.isFinished());
+        assertEquals(3, failed.getSentCount());
+        assertEquals(1, failed.getErrorCount());
+        assertSame(mailer.getLastError(), failed.getLastError());
+    }    // mailerStatusChangedCountsMessages()
+
+    /**
+     * Tests that {@link MailerStatusStream#mailerStatusChanged()} takes its
+     * counts from the mailer, counting every message finished since the
+     * stream was constructed even when notifications are missed.
+     */
+    @Test
+    public void mailerStatusChangedCountsMessagesFromMailer() {
+        Mailer mailer = new Mailer(getTestApplication(), new TestTransportPool());
+        mailer.send(getTestMessage(), "password");
+        MailerStatusStream statusStream = new MailerStatusStream(mailer, getTestListener());
+
+        mailer.send(getTestMessage(), "password");
+        mailer.send(getTestMessage(), "fail");
+        statusStream.mailerStatusChanged();
+        MailerStatusStream.Progress progress = statusStream.takeProgress();
+
+        assertEquals(1, progress.getEventCount());
+        assertEquals(1, progress.getSentCount());
+        assertEquals(1, progress.getErrorCount());
+        assertEquals(MailerStatus.ERROR, progress.getStatus());
+        assertSame(mailer.getLastError(), progress.getLastError());
+    }    // mailerStatusChangedCountsMessagesFromMailer()
+
+    /* start */
+
+    /**
+     * Tests that {@link MailerStatusStream#start()} delivers progress on the
+     * event dispatch thread.
+     */
+    @Test
+    public void startDeliversProgressOnEventDispatchThread() throws Exception {
+        Mailer mailer = new Mailer(getTestApplication());
+        CountDownLatch delivered = new CountDownLatch(1);
+        List<Boolean> onEventDispatchThread = new CopyOnWriteArrayList<>();
+        MailerStatusStream statusStream = new MailerStatusStream(mailer, progress -> {
+            onEventDispatchThread.add(SwingUtilities.isEventDispatchThread());
+            delivered.countDown();
+        }, 10);
+
+        statusStream.start();
+        try {
+            assertTrue(statusStream.isRunning());
+            statusStream.mailerStatusChanged();
+            assertTrue(delivered.await(1, TimeUnit.MINUTES));
+        } finally {    // try
+            statusStream.stop();
+        }    // finally
+
+        assertFalse(statusStream.isRunning());
+        assertFalse(onEventDispatchThread.contains(false));
+    }    // startDeliversProgressOnEventDispatchThread()
+
+    /**
+     * Tests that {@link MailerStatusStream#start()} delivers progress no more
+     * often than once per interval, however many notifications are recorded.
+     */
+    @Test
+    public void startDeliversProgressAtBoundedRate() throws Exception {
+        final int INTERVAL_MILLIS = 20;
+        final int EVENT_COUNT = 100000;
+        Mailer mailer = new Mailer(getTestApplication());
+        List<MailerStatusStream.Progress> deliveries = new CopyOnWriteArrayList<>();
+        CountDownLatch finished = new CountDownLatch(1);
+        MailerStatusStream statusStream = new MailerStatusStream(mailer, progress -> {
+            deliveries.add(progress);
+            if (progress.getEventCount() == EVENT_COUNT) {
+                finished.countDown();
+            }    // if
+        }, INTERVAL_MILLIS);
+
+        long start = System.nanoTime();
+        statusStream.start();
+        try {
+            Thread sender = new Thread(() -> {
+                for (int i = 0; i < EVENT_COUNT; ++i) {
+                    statusStream.mailerStatusChanged();
+                }    // for
+            });
+            sender.start();
+            sender.join();
+            assertTrue(finished.await(1, TimeUnit.MINUTES));
+        } finally {    // try
+            statusStream.stop();
+        }    // finally
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(deliveries.size() <= elapsedMillis / INTERVAL_MILLIS + 1);
+        long batchTotal = 0;
+        for (MailerStatusStream.Progress progress : deliveries) {
+            batchTotal += progress.getBatchEventCount();
+        }    // for
+        assertEquals(EVENT_COUNT, batchTotal);
+    }    // startDeliversProgressAtBoundedRate()
+
+}    // MailerStatusStreamTest
@@ -0,0 +1,384 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.http;
+
+import io.github.waynem77.bscmail.Application;
+import io.github.waynem77.bscmail.Benchmark;
+import io.github.waynem77.bscmail.TestApplication;
+import io.github.waynem77.bscmail.persistent.Role;
+import io.github.waynem77.bscmail.persistent.Shift;
+import io.github.waynem77.bscmail.persistent.Volunteer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ApiServer}.
+ *
+ * @author Wayne Miller
+ */
+public class ApiServerTest {
+
+    /* object properties */
+
+    /**
+     * The application used in testing.
+     */
+    private Application application;
+
+    /**
+     * The server being tested.
+     */
+    private ApiServer server;
+
+    /* helper methods */
+
+    /**
+     * Sends a request to the server and returns the response.
+     *
+     * @param method the request method
+     * @param path the request path
+     * @param body the request body, or null if there is none
+     * @return the response, as the status code followed by a space and the
+     * response body
+     * @throws IOException if an I/O error occurs
+     */
+    private String request(String method, String path, String body) throws IOException {
+        return request(method, path, body, false);
+    }    // request()
+
+    /**
+     * Sends a request to the server and returns the response, optionally
+     * sending the request body in chunks, without a Content-Length.
+     *
+     * @param method the request method
+     * @param path the request path
+     * @param body the request body, or null if there is none
+     * @param chunked true if the request body is to be sent in chunks
+     * @return the response, as the status code followed by a space and the
+     * response body
+     * @throws IOException if an I/O error occurs
+     */
+    private String request(String method, String path, String body, boolean chunked) throws IOException {
+        URL url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), server.getPort(), path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            if (chunked) {
+                connection.setChunkedStreamingMode(4096);
+            }    // if
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(body.getBytes(StandardCharsets.UTF_8));
+            }    // try
+        }    // if
+        int status = connection.getResponseCode();
+        InputStream inputStream = (status < 400) ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        try (InputStream in = inputStream) {
+            byte[] buffer = new byte[4096];
+            for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+                response.write(buffer, 0, count);
+            }    // for
+        }    // try
+        return status + " " + new String(response.toByteArray(), StandardCharsets.UTF_8);
+    }    // request()
+
+    /**
+     * Sets up the test environment before each test.
+     *
+     * @throws IOException if the server cannot be started
+     */
+    @Before
+    public void preTestSetup() throws IOException {
+        application = new TestApplication();
+        Role bartender = new Role("Bartender");
+        application.setRoles(Arrays.asList(bartender));
+        application.setShifts(Arrays.asList(
+                new Shift("Door", new ArrayList<>(), false, false, false),
+                new Shift("Bar", Arrays.asList(bartender), true, false, false)));
+        application.setVolunteers(Arrays.asList(
+                new Volunteer("Alice", "alice@example.com", "555-1234", "", true, Arrays.asList(bartender)),
+                new Volunteer("Bob", "bob@example.com", "", "", true, new ArrayList<>()),
+                new Volunteer("Carol", "carol@example.com", "", "", false, Arrays.asList(bartender))));
+        server = new ApiServer(application, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4);
+        server.start();
+    }    // preTestSetup()
+
+    /**
+     * Tears down the test environment after each test.
+     */
+    @After
+    public void postTestTeardown() {
+        server.stop(0);
+        server = null;
+        application = null;
+    }    // postTestTeardown()
+
+    /* unit tests */
+
+    /**
+     * Tests that {@link ApiServer#ApiServer(Application, InetSocketAddress, int)}
+     * throws a NullPointerException when application is null.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenApplicationIsNull() throws IOException {
+        ApiServer apiServer = new ApiServer(null, new InetSocketAddress(0), 1);
+    }    // constructorThrowsExceptionWhenApplicationIsNull()
+
+    /**
+     * Tests that {@link ApiServer#ApiServer(Application, InetSocketAddress, int)}
+     * throws an IllegalArgumentException when workerThreads is not positive.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorThrowsExceptionWhenWorkerThreadsIsNotPositive() throws IOException {
+        ApiServer apiServer = new ApiServer(application, new InetSocketAddress(0), 0);
+    }    // constructorThrowsExceptionWhenWorkerThreadsIsNotPositive()
+
+    /**
+     * Tests that the server returns the volunteer roster.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void volunteersReturnsRoster() throws IOException {
+        String received = request("GET", "/api/volunteers", null);
+
+        String expected = "200 ["
+                + "{\"name\":\"Alice\",\"email\":\"alice@example.com\",\"phone\":\"555-1234\",\"notes\":\"\",\"active\":true,\"roles\":[\"Bartender\"]},"
+                + "{\"name\":\"Bob\",\"email\":\"bob@example.com\",\"phone\":\"\",\"notes\":\"\",\"active\":true,\"roles\":[]},"
+                + "{\"name\":\"Carol\",\"email\":\"carol@example.com\",\"phone\":\"\",\"notes\":\"\",\"active\":false,\"roles\":[\"Bartender\"]}"
+                + "]";
+        assertEquals(expected, received);
+    }    // volunteersReturnsRoster()
+
+    /**
+     * Tests that the server reflects changes made to the application after
+     * a previous request.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void rolesReflectsApplicationChanges() throws IOException {
+        assertEquals("200 [{\"name\":\"Bartender\"}]", request("GET", "/api/roles", null));
+
+        application.setRoles(Arrays.asList(new Role("Bartender"), new Role("Door \"Person\"")));
+        String received = request("GET", "/api/roles", null);
+
+        String expected = "200 [{\"name\":\"Bartender\"},{\"name\":\"Door \\\"Person\\\"\"}]";
+        assertEquals(expected, received);
+    }    // rolesReflectsApplicationChanges()
+
+    /**
+     * Tests that the server returns only active volunteers having the roles
+     * required by a shift.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void qualifiedVolunteersReturnsActiveCompatibleVolunteers() throws IOException {
+        String received = request("GET", "/api/qualifiedVolunteers?shift=Bar", null);
+
+        assertTrue(received, received.startsWith("200 [{\"name\":\"Alice\""));
+        assertFalse(received, received.contains("Bob"));
+        assertFalse(received, received.contains("Carol"));
+    }    // qualifiedVolunteersReturnsActiveCompatibleVolunteers()
+
+    /**
+     * Tests that the server returns 404 for an undefined shift.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void qualifiedVolunteersReturnsNotFoundForUndefinedShift() throws IOException {
+        String received = request("GET", "/api/qualifiedVolunteers?shift=Kitchen", null);
+
+        assertEquals("404 {\"error\":\"Undefined shift \\\"Kitchen\\\"\"}", received);
+    }    // qualifiedVolunteersReturnsNotFoundForUndefinedShift()
+
+    /**
+     * Tests that the server renders previews of a posted schedule.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void previewRendersPostedSchedule() throws IOException {
+        String schedule = "event,2020-03-14\nshift,Door,Bob\nshift,Bar,Alice\n";
+
+        String received = request("POST", "/api/preview", schedule);
+
+        assertTrue(received, received.startsWith("200 [{"));
+        assertTrue(received, received.contains("\"recipients\":\"bob@example.com, alice@example.com\""));
+        assertTrue(received, received.contains("Bar: Alice (alice@example.com)\\n"));
+    }    // previewRendersPostedSchedule()
+
+    /**
+     * Tests that the server returns 400 for a malformed schedule.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void previewReturnsBadRequestForMalformedSchedule() throws IOException {
+        String received = request("POST", "/api/preview", "shift,Door,Bob\n");
+
+        assertTrue(received, received.startsWith("400 {\"error\":"));
+    }    // previewReturnsBadRequestForMalformedSchedule()
+
+    /**
+     * Tests that the server renders a schedule sent in chunks.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void previewRendersChunkedSchedule() throws IOException {
+        String schedule = "event,2020-03-14\nshift,Door,Bob\n";
+
+        String received = request("POST", "/api/preview", schedule, true);
+
+        assertTrue(received, received.startsWith("200 [{"));
+    }    // previewRendersChunkedSchedule()
+
+    /**
+     * Tests that the server returns 413 for a schedule sent in chunks, without
+     * a Content-Length, that is larger than the server accepts.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void previewReturnsPayloadTooLargeForLargeChunkedSchedule() throws IOException {
+        StringBuilder schedule = new StringBuilder();
+        while (schedule.length() <= (1 << 20)) {
+            schedule.append("event,\n");
+        }    // while
+
+        String received = request("POST", "/api/preview", schedule.toString(), true);
+
+        assertTrue(received, received.startsWith("413 {\"error\":"));
+    }    // previewReturnsPayloadTooLargeForLargeChunkedSchedule()
+
+    /**
+     * Tests that the server rejects requests with the wrong method.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void serverRejectsWrongMethod() throws IOException {
+        assertTrue(request("GET", "/api/preview", null).startsWith("405 "));
+        assertTrue(request("POST", "/api/volunteers", "").startsWith("405 "));
+    }    // serverRejectsWrongMethod()
+
+    /**
+     * Issues the given number of roster requests from each of the given
+     * number of concurrent clients, while one client changes the roster, and
+     * returns the number of requests that succeeded.
+     *
+     * @param clientCount the number of clients
+     * @param requestsPerClient the number of requests issued by each client
+     * @return the number of requests that succeeded
+     * @throws Exception if an error occurs
+     */
+    private int requestConcurrently(int clientCount, int requestsPerClient) throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(clientCount);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < clientCount; ++i) {
+                final int client = i;
+                results.add(clients.submit(() -> {
+                    int successes = 0;
+                    for (int j = 0; j < requestsPerClient; ++j) {
+                        if ((client == 0) && (j % 10 == 0)) {
+                            application.setRoles(Collections.singletonList(new Role("Role " + j)));
+                        }    // if
+                        String path = (j % 2 == 0) ? "/api/volunteers" : "/api/qualifiedVolunteers?shift=Door";
+                        if (request("GET", path, null).startsWith("200 [")) {
+                            ++successes;
+                        }    // if
+                    }    // for
+                    return successes;
+                }));
+            }    // for
+            int successes = 0;
+            for (Future<Integer> result : results) {
+                successes += result.get();
+            }    // for
+            return successes;
+        } finally {    // try
+            clients.shutdownNow();
+        }    // finally
+    }    // requestConcurrently()
+
+    /**
+     * Tests that the server answers concurrent roster requests while the
+     * roster is being changed.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void serverHandlesConcurrentRequests() throws Exception {
+        final int CLIENTS = 4;
+        final int REQUESTS_PER_CLIENT = 20;
+
+        int successes = requestConcurrently(CLIENTS, REQUESTS_PER_CLIENT);
+
+        assertEquals(CLIENTS * REQUESTS_PER_CLIENT, successes);
+    }    // serverHandlesConcurrentRequests()
+
+    /**
+     * Benchmarks the server: issues many concurrent roster requests while the
+     * roster is being changed, and reports the throughput.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void loadTest() throws Exception {
+        final int CLIENTS = 16;
+        final int REQUESTS_PER_CLIENT = 100;
+
+        long start = System.nanoTime();
+        int successes = requestConcurrently(CLIENTS, REQUESTS_PER_CLIENT);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("ApiServer load test: %d requests in %.2f s (%.0f requests/s)%n",
+                successes, seconds, successes / seconds);
+        assertEquals(CLIENTS * REQUESTS_PER_CLIENT, successes);
+    }    // loadTest()
+
+}    // ApiServerTest
@@ -0,0 +1,232 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.mail.internet.AddressException;
+import javax.mail.internet.InternetAddress;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link AddressCache}.
+ *
+ * @author Wayne Miller
+ */
+public class AddressCacheTest {
+
+    /* update */
+
+    /**
+     * Tests that {@link AddressCache#update(java.util.Collection)} throws a
+     * NullPointerException when addresses is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void updateThrowsExceptionWhenAddressesIsNull() {
+        AddressCache addressCache = new AddressCache();
+
+        addressCache.update(null);
+    }    // updateThrowsExceptionWhenAddressesIsNull()
+
+    /**
+     * Tests that {@link AddressCache#update(java.util.Collection)} throws a
+     * NullPointerException when addresses contains null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void updateThrowsExceptionWhenAddressesContainsNull() {
+        AddressCache addressCache = new AddressCache();
+
+        addressCache.update(Arrays.asList("foo@example.com", null));
+    }    // updateThrowsExceptionWhenAddressesContainsNull()
+
+    /**
+     * Tests that {@link AddressCache#update(java.util.Collection)} adds new
+     * addresses, ignores empty addresses, and removes addresses no longer
+     * given.
+     */
+    @Test
+    public void updateAddsAndRemovesAddresses() {
+        AddressCache addressCache = new AddressCache();
+
+        addressCache.update(Arrays.asList("foo@example.com", "bar@example.com", "", "  ", "foo@example.com"));
+        assertEquals(2, addressCache.size());
+
+        addressCache.update(Arrays.asList("bar@example.com", "baz"));
+        assertEquals(2, addressCache.size());
+
+        addressCache.update(Collections.emptyList());
+        assertEquals(0, addressCache.size());
+    }    // updateAddsAndRemovesAddresses()
+
+    /* getProblem / isValid */
+
+    /**
+     * Tests that {@link AddressCache#getProblem(String)} throws a
+     * NullPointerException when address is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void getProblemThrowsExceptionWhenAddressIsNull() {
+        AddressCache addressCache = new AddressCache();
+
+        addressCache.getProblem(null);
+    }    // getProblemThrowsExceptionWhenAddressIsNull()
+
+    /**
+     * Tests that {@link AddressCache#getProblem(String)} returns null for
+     * valid addresses, whether or not they are cached.
+     */
+    @Test
+    public void getProblemReturnsNullForValidAddresses() {
+        AddressCache addressCache = new AddressCache();
+        addressCache.update(Arrays.asList("foo@example.com"));
+
+        assertNull(addressCache.getProblem("foo@example.com"));
+        assertNull(addressCache.getProblem(" foo@example.com "));
+        assertNull(addressCache.getProblem("Bar <bar@example.com>"));
+        assertTrue(addressCache.isValid("foo@example.com"));
+    }    // getProblemReturnsNullForValidAddresses()
+
+    /**
+     * Tests that {@link AddressCache#getProblem(String)} describes the problem
+     * with invalid addresses, whether or not they are cached.
+     */
+    @Test
+    public void getProblemDescribesInvalidAddresses() {
+        AddressCache addressCache = new AddressCache();
+        addressCache.update(Arrays.asList("foo", "a@@example.com"));
+
+        assertNotNull(addressCache.getProblem("foo"));
+        assertNotNull(addressCache.getProblem("a@@example.com"));
+        assertNotNull(addressCache.getProblem("bar@"));
+        assertFalse(addressCache.isValid("foo"));
+    }    // getProblemDescribesInvalidAddresses()
+
+    /* parse */
+
+    /**
+     * Tests that {@link AddressCache#parse(String)} throws a
+     * NullPointerException when addressList is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void parseThrowsExceptionWhenAddressListIsNull() throws AddressException {
+        AddressCache addressCache = new AddressCache();
+
+        addressCache.parse(null);
+    }    // parseThrowsExceptionWhenAddressListIsNull()
+
+    /**
+     * Tests that {@link AddressCache#parse(String)} returns the same addresses
+     * as {@link InternetAddress#parse(String, boolean)}, for lists of cached
+     * and uncached, valid and invalid, and quoted addresses.
+     */
+    @Test
+    public void parseMatchesInternetAddressParse() throws AddressException {
+        AddressCache addressCache = new AddressCache();
+        addressCache.update(Arrays.asList("foo@example.com", "bar@example.com", "baz"));
+        List<String> addressLists = Arrays.asList(
+                "",
+                "foo@example.com",
+                "foo@example.com, bar@example.com",
+                "foo@example.com, , baz, qux@example.com",
+                " foo@example.com ,bar@example.com,",
+                "\"Doe, Jane\" <jane@example.com>, foo@example.com",
+                "Bar <bar@example.com>, foo@example.com");
+
+        for (String addressList : addressLists) {
+            List<InternetAddress> expected = Arrays.asList(InternetAddress.parse(addressList, false));
+
+            List<InternetAddress> received = Arrays.asList(addressCache.parse(addressList));
+
+            assertEquals(addressList, expected, received);
+        }    // for
+    }    // parseMatchesInternetAddressParse()
+
+    /**
+     * Tests that {@link AddressCache#parse(String)} takes valid cached
+     * addresses from the cache rather than parsing them again.
+     */
+    @Test
+    public void parseReusesCachedAddresses() throws AddressException {
+        AddressCache addressCache = new AddressCache();
+        addressCache.update(Arrays.asList("foo@example.com"));
+
+        InternetAddress[] first = addressCache.parse("foo@example.com, bar@example.com");
+        InternetAddress[] second = addressCache.parse("bar@example.com, foo@example.com");
+
+        assertSame(first[0], second[1]);
+        assertNotSame(first[1], second[0]);
+    }    // parseReusesCachedAddresses()
+
+    /**
+     * Tests that {@link AddressCache#parse(String)} throws an AddressException
+     * for a list that cannot be parsed.
+     */
+    @Test(expected = AddressException.class)
+    public void parseThrowsExceptionForUnparseableList() throws AddressException {
+        AddressCache addressCache = new AddressCache();
+
+        addressCache.parse("foo@example.com, a@@example.com");
+    }    // parseThrowsExceptionForUnparseableList()
+
+    /**
+     * Tests that {@link AddressCache} may be used safely by many threads at
+     * once.
+     */
+    @Test
+    public void isThreadSafe() throws Exception {
+        final int THREADS = 8;
+        final int ITERATIONS = 2000;
+        AddressCache addressCache = new AddressCache();
+        List<String> addresses = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            addresses.add("volunteer" + i + "@example.com");
+        }    // for
+        String addressList = String.join(", ", addresses);
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; ++t) {
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < ITERATIONS; ++i) {
+                        if (i % 100 == 0) {
+                            addressCache.update(addresses.subList(0, 25 + (i / 100) % 25));
+                        }    // if
+                        assertEquals(addresses.size(), addressCache.parse(addressList).length);
+                    }    // for
+                } catch (Throwable e) {    // try
+                    failures.add(e);
+                }    // catch
+            }));
+        }    // for
+        for (Thread thread : threads) {
+            thread.start();
+        }    // for
+        for (Thread thread : threads) {
+            thread.join();
+        }    // for
+
+        assertEquals(Collections.emptyList(), failures);
+    }    // isThreadSafe()
+
+}    // AddressCacheTest
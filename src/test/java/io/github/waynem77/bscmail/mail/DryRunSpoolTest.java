@@ -0,0 +1,297 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import io.github.waynem77.bscmail.Benchmark;
+import io.github.waynem77.bscmail.TestApplication;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link DryRunSpool}.
+ *
+ * @author Wayne Miller
+ */
+public class DryRunSpoolTest {
+
+    /**
+     * A temporary folder for spool output.
+     */
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Returns a mailer that can be used in tests.
+     */
+    private Mailer getTestMailer() {
+        return new Mailer(new TestApplication());
+    }    // getTestMailer()
+
+    /**
+     * Returns the given number of messages.
+     */
+    private List<MailMessage> getMessages(int count) {
+        List<MailMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            messages.add(new MailMessage("foo" + i + "@example.com", "", "bar" + i + "@example.com", "subject " + i, "body " + i));
+        }    // for
+        return messages;
+    }    // getMessages()
+
+    /*
+     * Unit tests
+     */
+
+    /* constructor */
+
+    /**
+     * Tests that
+     * {@link DryRunSpool#DryRunSpool(Mailer, Path, DryRunSpool.Format, int)}
+     * throws a NullPointerException when mailer is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenMailerIsNull() throws Exception {
+        new DryRunSpool(null, temporaryFolder.getRoot().toPath(), DryRunSpool.Format.EML, 1);
+    }    // constructorThrowsExceptionWhenMailerIsNull()
+
+    /**
+     * Tests that
+     * {@link DryRunSpool#DryRunSpool(Mailer, Path, DryRunSpool.Format, int)}
+     * throws a NullPointerException when path is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenPathIsNull() throws Exception {
+        new DryRunSpool(getTestMailer(), null, DryRunSpool.Format.EML, 1);
+    }    // constructorThrowsExceptionWhenPathIsNull()
+
+    /**
+     * Tests that
+     * {@link DryRunSpool#DryRunSpool(Mailer, Path, DryRunSpool.Format, int)}
+     * throws a NullPointerException when format is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenFormatIsNull() throws Exception {
+        new DryRunSpool(getTestMailer(), temporaryFolder.getRoot().toPath(), null, 1);
+    }    // constructorThrowsExceptionWhenFormatIsNull()
+
+    /**
+     * Tests that
+     * {@link DryRunSpool#DryRunSpool(Mailer, Path, DryRunSpool.Format, int)}
+     * throws an IllegalArgumentException when workerCount is not positive.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorThrowsExceptionWhenWorkerCountIsZero() throws Exception {
+        new DryRunSpool(getTestMailer(), temporaryFolder.getRoot().toPath(), DryRunSpool.Format.EML, 0);
+    }    // constructorThrowsExceptionWhenWorkerCountIsZero()
+
+    /* submit */
+
+    /**
+     * Tests that {@link DryRunSpool#submit(MailMessage)} throws a
+     * NullPointerException when mailMessage is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void submitThrowsExceptionWhenMessageIsNull() throws Exception {
+        try (DryRunSpool spool = new DryRunSpool(getTestMailer(), temporaryFolder.getRoot().toPath(), DryRunSpool.Format.EML, 1)) {
+            spool.submit(null);
+        }    // try
+    }    // submitThrowsExceptionWhenMessageIsNull()
+
+    /**
+     * Tests that {@link DryRunSpool#submit(MailMessage)} throws an
+     * IllegalStateException when the spool has been closed.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void submitThrowsExceptionWhenSpoolIsClosed() throws Exception {
+        DryRunSpool spool = new DryRunSpool(getTestMailer(), temporaryFolder.getRoot().toPath(), DryRunSpool.Format.EML, 1);
+        spool.close();
+
+        spool.submit(getMessages(1).get(0));
+    }    // submitThrowsExceptionWhenSpoolIsClosed()
+
+    /* EML format */
+
+    /**
+     * Tests that the spool writes each message, as the mailer renders it, to
+     * its own file in EML format.
+     */
+    @Test
+    public void spoolWritesEmlFiles() throws Exception {
+        Path directory = temporaryFolder.getRoot().toPath().resolve("out");
+        List<MailMessage> messages = getMessages(20);
+
+        try (DryRunSpool spool = new DryRunSpool(getTestMailer(), directory, DryRunSpool.Format.EML, 4)) {
+            spool.submitAll(messages);
+        }    // try
+
+        Session session = Session.getInstance(new Properties());
+        for (int i = 0; i < messages.size(); ++i) {
+            Path file = directory.resolve(String.format(DryRunSpool.EML_FILE_NAME_FORMAT, i + 1));
+            try (InputStream inputStream = Files.newInputStream(file)) {
+                MimeMessage message = new MimeMessage(session, inputStream);
+                assertEquals(messages.get(i).getSubject(), message.getSubject());
+                assertEquals("bar" + i + "@example.com", message.getHeader("Bcc", ","));
+            }    // try
+        }    // for
+    }    // spoolWritesEmlFiles()
+
+    /* MBOX format */
+
+    /**
+     * Tests that the spool writes every message, in order of submission, to
+     * a single mbox in MBOX format.
+     */
+    @Test
+    public void spoolWritesMboxInOrder() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("out.mbox");
+        List<MailMessage> messages = getMessages(200);
+
+        try (DryRunSpool spool = new DryRunSpool(getTestMailer(), file, DryRunSpool.Format.MBOX, 4)) {
+            spool.submitAll(messages);
+        }    // try
+
+        String mbox = new String(Files.readAllBytes(file), StandardCharsets.US_ASCII);
+        assertTrue(mbox.startsWith("From MAILER-DAEMON "));
+        assertFalse(mbox.contains("\r"));
+        assertEquals(messages.size(), mbox.split("\n\nFrom MAILER-DAEMON ", -1).length);
+        int position = 0;
+        for (MailMessage message : messages) {
+            int subject = mbox.indexOf("Subject: " + message.getSubject() + "\n", position);
+            assertTrue(subject > position);
+            position = subject;
+        }    // for
+    }    // spoolWritesMboxInOrder()
+
+    /**
+     * Tests that {@link DryRunSpool#quoteFromLines(byte[], ByteArrayOutputStream)}
+     * quotes "From " lines, converts line endings, and appends a blank line.
+     */
+    @Test
+    public void quoteFromLinesQuotesFromLines() {
+        byte[] message = "Subject: x\r\n\r\nFrom here\r\n>From there\r\nFromage\r\n".getBytes(StandardCharsets.US_ASCII);
+        ByteArrayOutputStream entry = new ByteArrayOutputStream();
+
+        DryRunSpool.quoteFromLines(message, entry);
+
+        assertEquals("Subject: x\n\n>From here\n>>From there\nFromage\n\n", new String(entry.toByteArray(), StandardCharsets.US_ASCII));
+    }    // quoteFromLinesQuotesFromLines()
+
+    /* getFailures */
+
+    /**
+     * Tests that the spool records messages that could not be rendered, and
+     * writes the rest.
+     */
+    @Test
+    public void spoolRecordsFailures() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("out.mbox");
+        MailMessage bad = new MailMessage("not an <address", "", "", "bad", "body");
+        List<MailMessage> messages = new ArrayList<>(getMessages(2));
+        messages.add(1, bad);
+
+        DryRunSpool spool = new DryRunSpool(getTestMailer(), file, DryRunSpool.Format.MBOX, 2);
+        spool.submitAll(messages);
+        spool.close();
+
+        assertEquals(3, spool.getSubmittedCount());
+        assertEquals(2, spool.getWrittenCount());
+        assertEquals(1, spool.getFailedCount());
+        assertEquals(Arrays.asList(bad), new ArrayList<>(spool.getFailures().keySet()));
+    }    // spoolRecordsFailures()
+
+    /* close */
+
+    /**
+     * Tests that {@link DryRunSpool#close()}, when the thread is interrupted,
+     * returns at once with the thread's interrupt status set, leaving the
+     * spool to drain in the background.
+     */
+    @Test
+    public void closeRestoresInterruptStatus() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Mailer mailer = new Mailer(new TestApplication()) {
+            @Override
+            public void writeMessage(MailMessage mailMessage, OutputStream outputStream) throws MessagingException, IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {    // try
+                    throw new IOException(e);
+                }    // catch
+                super.writeMessage(mailMessage, outputStream);
+            }    // writeMessage()
+        };
+        DryRunSpool spool = new DryRunSpool(mailer, temporaryFolder.getRoot().toPath(), DryRunSpool.Format.EML, 1);
+        spool.submit(getMessages(1).get(0));
+
+        try {
+            Thread.currentThread().interrupt();
+            spool.close();
+
+            assertTrue(Thread.interrupted());
+            assertEquals(0, spool.getWrittenCount());
+        } finally {    // try
+            release.countDown();
+        }    // finally
+    }    // closeRestoresInterruptStatus()
+
+    /* throughput */
+
+    /**
+     * Benchmarks {@link DryRunSpool}: tests that the spool writes thousands of
+     * messages per second, in both formats.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void spoolWritesThousandsOfMessagesPerSecond() throws Exception {
+        List<MailMessage> messages = getMessages(10000);
+
+        for (DryRunSpool.Format format : DryRunSpool.Format.values()) {
+            Path path = temporaryFolder.getRoot().toPath().resolve(format.name());
+            long start = System.nanoTime();
+            try (DryRunSpool spool = new DryRunSpool(getTestMailer(), path, format, 4)) {
+                spool.submitAll(messages);
+                spool.close();
+                assertEquals(10000, spool.getWrittenCount());
+            }    // try
+            long elapsed = System.nanoTime() - start;
+
+            assertTrue(format + " took " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms", elapsed < TimeUnit.SECONDS.toNanos(10));
+        }    // for
+    }    // spoolWritesThousandsOfMessagesPerSecond()
+
+}    // DryRunSpoolTest
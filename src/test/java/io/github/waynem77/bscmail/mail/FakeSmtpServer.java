@@ -0,0 +1,462 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process SMTP server for tests. The server listens on an ephemeral
+ * port on the loopback interface and speaks just enough SMTP for JavaMail:
+ * EHLO, HELO, AUTH (LOGIN and PLAIN), MAIL, RCPT, DATA, RSET, NOOP, and QUIT.
+ *
+ * The server can be made to misbehave: it can delay its greeting and its
+ * response to each message, reject every nth message with a given reply,
+ * reject authentication, and advertise STARTTLS, which it then refuses. Each
+ * connection is served on its own thread.
+ *
+ * @author Wayne Miller
+ */
+public class FakeSmtpServer implements AutoCloseable {
+
+    /**
+     * A message received by the server.
+     */
+    public static final class ReceivedMessage {
+
+        /**
+         * The envelope sender.
+         */
+        private final String sender;
+
+        /**
+         * The envelope recipients.
+         */
+        private final List<String> recipients;
+
+        /**
+         * The message data, with dot-stuffing removed.
+         */
+        private final byte[] data;
+
+        /**
+         * Constructs a new received message.
+         */
+        ReceivedMessage(String sender, List<String> recipients, byte[] data) {
+            this.sender = sender;
+            this.recipients = Collections.unmodifiableList(new ArrayList<>(recipients));
+            this.data = data;
+        }    // ReceivedMessage()
+
+        public String getSender() {
+            return sender;
+        }    // getSender()
+
+        public List<String> getRecipients() {
+            return recipients;
+        }    // getRecipients()
+
+        public String getData() {
+            return new String(data, StandardCharsets.UTF_8);
+        }    // getData()
+
+    }    // ReceivedMessage
+
+    /**
+     * The reply to a successful authentication.
+     */
+    private static final String AUTH_SUCCEEDED = "235 2.7.0 Authentication successful";
+
+    /**
+     * The reply to a failed authentication.
+     */
+    private static final String AUTH_FAILED = "535 5.7.8 Authentication credentials invalid";
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService connectionThreads;
+    private final List<ReceivedMessage> messages;
+    private final AtomicInteger connectionCount;
+    private final AtomicInteger openConnectionCount;
+    private final AtomicInteger authenticationCount;
+    private final AtomicInteger startTlsCount;
+    private final AtomicInteger noopCount;
+    private final AtomicInteger dataCount;
+    private final AtomicInteger rejectedCount;
+    private volatile long greetingLatencyMillis;
+    private volatile long messageLatencyMillis;
+    private volatile int failureInterval;
+    private volatile String failureReply;
+    private volatile String password;
+    private volatile boolean advertiseStartTls;
+
+    /**
+     * Constructs and starts a new server that accepts any password.
+     *
+     * @throws IOException if the server socket cannot be opened
+     */
+    public FakeSmtpServer() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        connectionThreads = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "FakeSmtpServer-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+        messages = Collections.synchronizedList(new ArrayList<>());
+        connectionCount = new AtomicInteger();
+        openConnectionCount = new AtomicInteger();
+        authenticationCount = new AtomicInteger();
+        startTlsCount = new AtomicInteger();
+        noopCount = new AtomicInteger();
+        dataCount = new AtomicInteger();
+        rejectedCount = new AtomicInteger();
+        greetingLatencyMillis = 0;
+        messageLatencyMillis = 0;
+        failureInterval = 0;
+        failureReply = null;
+        password = null;
+        advertiseStartTls = false;
+
+        Thread acceptor = new Thread(this::acceptConnections, "FakeSmtpServer-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }    // FakeSmtpServer()
+
+    /**
+     * Returns the port on which the server listens.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }    // getPort()
+
+    /**
+     * Sets the delay before the server greets each new connection.
+     */
+    public void setGreetingLatencyMillis(long greetingLatencyMillis) {
+        this.greetingLatencyMillis = greetingLatencyMillis;
+    }    // setGreetingLatencyMillis()
+
+    /**
+     * Sets the delay before the server responds to each message's data.
+     */
+    public void setMessageLatencyMillis(long messageLatencyMillis) {
+        this.messageLatencyMillis = messageLatencyMillis;
+    }    // setMessageLatencyMillis()
+
+    /**
+     * Makes the server reject every {@code interval}th message with the given
+     * reply, e.g. "451 4.3.0 Try again later". An interval of 0 rejects
+     * nothing.
+     */
+    public void setFailureInterval(int interval, String reply) {
+        failureReply = reply;
+        failureInterval = interval;
+    }    // setFailureInterval()
+
+    /**
+     * Sets the only password the server accepts, or null to accept any
+     * password.
+     */
+    public void setPassword(String password) {
+        this.password = password;
+    }    // setPassword()
+
+    /**
+     * Sets whether the server advertises STARTTLS. The server has no
+     * certificate, so it refuses the STARTTLS command itself with a 454
+     * reply.
+     */
+    public void setAdvertiseStartTls(boolean advertiseStartTls) {
+        this.advertiseStartTls = advertiseStartTls;
+    }    // setAdvertiseStartTls()
+
+    /**
+     * Returns the messages accepted by the server, in order of acceptance.
+     */
+    public List<ReceivedMessage> getMessages() {
+        synchronized (messages) {
+            return new ArrayList<>(messages);
+        }    // synchronized
+    }    // getMessages()
+
+    /**
+     * Returns the number of connections accepted.
+     */
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }    // getConnectionCount()
+
+    /**
+     * Returns the number of connections currently open.
+     */
+    public int getOpenConnectionCount() {
+        return openConnectionCount.get();
+    }    // getOpenConnectionCount()
+
+    /**
+     * Returns the number of successful authentications.
+     */
+    public int getAuthenticationCount() {
+        return authenticationCount.get();
+    }    // getAuthenticationCount()
+
+    /**
+     * Returns the number of STARTTLS commands received.
+     */
+    public int getStartTlsCount() {
+        return startTlsCount.get();
+    }    // getStartTlsCount()
+
+    /**
+     * Returns the number of NOOP commands received.
+     */
+    public int getNoopCount() {
+        return noopCount.get();
+    }    // getNoopCount()
+
+    /**
+     * Returns the number of messages rejected by error injection.
+     */
+    public int getRejectedCount() {
+        return rejectedCount.get();
+    }    // getRejectedCount()
+
+    /**
+     * Stops the server and closes every connection.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        connectionThreads.shutdownNow();
+        try {
+            connectionThreads.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {    // try
+            Thread.currentThread().interrupt();
+        }    // catch
+    }    // close()
+
+    /**
+     * Accepts connections until the server socket is closed.
+     */
+    private void acceptConnections() {
+        List<Socket> sockets = Collections.synchronizedList(new ArrayList<>());
+        try {
+            while (true) {
+                Socket socket = serverSocket.accept();
+                connectionCount.incrementAndGet();
+                sockets.add(socket);
+                connectionThreads.execute(() -> serve(socket));
+            }    // while
+        } catch (IOException e) {    // try
+            // The server socket has been closed.
+        } finally {    // catch
+            synchronized (sockets) {
+                for (Socket socket : sockets) {
+                    closeQuietly(socket);
+                }    // for
+            }    // synchronized
+        }    // finally
+    }    // acceptConnections()
+
+    /**
+     * Serves a single connection until the client quits or disconnects.
+     */
+    private void serve(Socket socket) {
+        openConnectionCount.incrementAndGet();
+        try (InputStream in = new BufferedInputStream(socket.getInputStream());
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+            sleep(greetingLatencyMillis);
+            reply(out, "220 localhost FakeSmtpServer ready");
+            String sender = null;
+            List<String> recipients = new ArrayList<>();
+            String line;
+            while ((line = readLine(in)) != null) {
+                String command = line.toUpperCase();
+                if (command.startsWith("EHLO")) {
+                    reply(out, "250-localhost");
+                    if (advertiseStartTls) {
+                        reply(out, "250-STARTTLS");
+                    }    // if
+                    reply(out, "250-AUTH LOGIN PLAIN");
+                    reply(out, "250 8BITMIME");
+                } else if (command.startsWith("HELO")) {    // if
+                    reply(out, "250 localhost");
+                } else if (command.equals("STARTTLS")) {    // else if
+                    startTlsCount.incrementAndGet();
+                    reply(out, "454 4.7.0 TLS not available");
+                } else if (command.startsWith("AUTH LOGIN")) {    // else if
+                    reply(out, "334 VXNlcm5hbWU6");
+                    readLine(in);
+                    reply(out, "334 UGFzc3dvcmQ6");
+                    String candidate = decode(readLine(in));
+                    reply(out, authenticate(candidate));
+                } else if (command.startsWith("AUTH PLAIN")) {    // else if
+                    String initial = line.substring("AUTH PLAIN".length()).trim();
+                    if (initial.isEmpty()) {
+                        reply(out, "334 ");
+                        initial = readLine(in);
+                    }    // if
+                    String[] fields = decode(initial).split("\u0000", -1);
+                    reply(out, authenticate(fields[fields.length - 1]));
+                } else if (command.startsWith("MAIL FROM:")) {    // else if
+                    sender = line.substring("MAIL FROM:".length()).trim();
+                    recipients.clear();
+                    reply(out, "250 2.1.0 Ok");
+                } else if (command.startsWith("RCPT TO:")) {    // else if
+                    recipients.add(line.substring("RCPT TO:".length()).trim());
+                    reply(out, "250 2.1.5 Ok");
+                } else if (command.equals("DATA")) {    // else if
+                    reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                    byte[] data = readData(in);
+                    sleep(messageLatencyMillis);
+                    int interval = failureInterval;
+                    if ((interval > 0) && (dataCount.incrementAndGet() % interval == 0)) {
+                        rejectedCount.incrementAndGet();
+                        reply(out, failureReply);
+                    } else {    // if
+                        messages.add(new ReceivedMessage(sender, recipients, data));
+                        reply(out, "250 2.0.0 Ok: queued as " + messages.size());
+                    }    // else
+                    sender = null;
+                    recipients.clear();
+                } else if (command.equals("RSET")) {    // else if
+                    sender = null;
+                    recipients.clear();
+                    reply(out, "250 2.0.0 Ok");
+                } else if (command.equals("NOOP")) {    // else if
+                    noopCount.incrementAndGet();
+                    reply(out, "250 2.0.0 Ok");
+                } else if (command.equals("QUIT")) {    // else if
+                    reply(out, "221 2.0.0 Bye");
+                    break;
+                } else {    // else if
+                    reply(out, "502 5.5.2 Command not recognized");
+                }    // else
+            }    // while
+        } catch (SocketException e) {    // try
+            // The client or the server closed the connection.
+        } catch (IOException | InterruptedException e) {    // catch
+            // Drop the connection.
+        } finally {    // catch
+            openConnectionCount.decrementAndGet();
+            closeQuietly(socket);
+        }    // finally
+    }    // serve()
+
+    /**
+     * Returns the reply to an authentication attempt with the given password.
+     */
+    private String authenticate(String candidate) {
+        String expected = password;
+        if ((expected == null) || expected.equals(candidate)) {
+            authenticationCount.incrementAndGet();
+            return AUTH_SUCCEEDED;
+        }    // if
+        return AUTH_FAILED;
+    }    // authenticate()
+
+    /**
+     * Sends a reply line.
+     */
+    private static void reply(OutputStream out, String reply) throws IOException {
+        out.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        if (reply.length() < 4 || reply.charAt(3) != '-') {
+            out.flush();
+        }    // if
+    }    // reply()
+
+    /**
+     * Reads a CRLF-terminated line, without the line terminator, or returns
+     * null at end of stream.
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '\n') {
+                byte[] bytes = line.toByteArray();
+                int length = ((bytes.length > 0) && (bytes[bytes.length - 1] == '\r')) ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }    // if
+            line.write(c);
+        }    // while
+        return null;
+    }    // readLine()
+
+    /**
+     * Reads message data up to the terminating "." line, removing
+     * dot-stuffing.
+     */
+    private static byte[] readData(InputStream in) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream(4096);
+        String line;
+        while (((line = readLine(in)) != null) && !line.equals(".")) {
+            byte[] bytes = (line.startsWith(".") ? line.substring(1) : line).getBytes(StandardCharsets.UTF_8);
+            data.write(bytes, 0, bytes.length);
+            data.write('\r');
+            data.write('\n');
+        }    // while
+        return data.toByteArray();
+    }    // readData()
+
+    /**
+     * Decodes a base-64 string.
+     */
+    private static String decode(String encoded) {
+        return (encoded == null) ? "" : new String(Base64.getDecoder().decode(encoded.trim()), StandardCharsets.UTF_8);
+    }    // decode()
+
+    /**
+     * Sleeps for the given time, if positive.
+     */
+    private static void sleep(long millis) throws InterruptedException {
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }    // if
+    }    // sleep()
+
+    /**
+     * Closes a socket, ignoring errors.
+     */
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {    // try
+            // Nothing more to do.
+        }    // catch
+    }    // closeQuietly()
+
+}    // FakeSmtpServer
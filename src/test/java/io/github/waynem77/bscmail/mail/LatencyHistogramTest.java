@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link LatencyHistogram}.
+ *
+ * @author Wayne Miller
+ */
+public class LatencyHistogramTest {
+
+    /* record */
+
+    /**
+     * Tests that {@link LatencyHistogram#record(long)} throws an
+     * IllegalArgumentException when nanos is negative.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void recordThrowsExceptionWhenNanosIsNegative() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(-1);
+    }    // recordThrowsExceptionWhenNanosIsNegative()
+
+    /**
+     * Tests that {@link LatencyHistogram#record(long)} updates the count,
+     * total, mean, and maximum.
+     */
+    @Test
+    public void recordUpdatesSummary() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(1000);
+        histogram.record(3000);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(4000, histogram.getTotalNanos());
+        assertEquals(2000.0, histogram.getMeanNanos(), 0.0);
+        assertEquals(3000, histogram.getMaximumNanos());
+    }    // recordUpdatesSummary()
+
+    /* getPercentileNanos */
+
+    /**
+     * Tests that {@link LatencyHistogram#getPercentileNanos(double)} throws
+     * an IllegalArgumentException when percentile is 0.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void getPercentileNanosThrowsExceptionWhenPercentileIsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.getPercentileNanos(0);
+    }    // getPercentileNanosThrowsExceptionWhenPercentileIsZero()
+
+    /**
+     * Tests that {@link LatencyHistogram#getPercentileNanos(double)} throws
+     * an IllegalArgumentException when percentile is more than 100.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void getPercentileNanosThrowsExceptionWhenPercentileIsTooLarge() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.getPercentileNanos(100.5);
+    }    // getPercentileNanosThrowsExceptionWhenPercentileIsTooLarge()
+
+    /**
+     * Tests that {@link LatencyHistogram#getPercentileNanos(double)} returns
+     * 0 when nothing has been recorded.
+     */
+    @Test
+    public void getPercentileNanosReturnsZeroWhenEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getPercentileNanos(50));
+    }    // getPercentileNanosReturnsZeroWhenEmpty()
+
+    /**
+     * Tests that {@link LatencyHistogram#getPercentileNanos(double)} returns
+     * a value no less than the true percentile and no more than twice it.
+     */
+    @Test
+    public void getPercentileNanosIsWithinFactorOfTwo() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; ++millis) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }    // for
+
+        long p50 = histogram.getPercentileNanos(50);
+        long p99 = histogram.getPercentileNanos(99);
+
+        assertTrue(p50 >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(p50 <= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(p99 >= TimeUnit.MILLISECONDS.toNanos(99));
+        assertTrue(p99 <= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), histogram.getPercentileNanos(100));
+    }    // getPercentileNanosIsWithinFactorOfTwo()
+
+    /* reset */
+
+    /**
+     * Tests that {@link LatencyHistogram#reset()} discards every latency.
+     */
+    @Test
+    public void resetDiscardsLatencies() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getTotalNanos());
+        assertEquals(0, histogram.getMaximumNanos());
+        assertEquals(0, histogram.getPercentileNanos(99));
+    }    // resetDiscardsLatencies()
+
+}    // LatencyHistogramTest
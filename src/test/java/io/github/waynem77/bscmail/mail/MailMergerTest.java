@@ -0,0 +1,285 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import io.github.waynem77.bscmail.persistent.EmailTemplate;
+import io.github.waynem77.bscmail.persistent.Event;
+import io.github.waynem77.bscmail.persistent.EventProperty;
+import io.github.waynem77.bscmail.persistent.Shift;
+import io.github.waynem77.bscmail.persistent.Volunteer;
+import io.github.waynem77.bscmail.util.format.TemplateCache;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link MailMerger}.
+ *
+ * @author Wayne Miller
+ */
+public class MailMergerTest {
+
+    /* helper methods */
+
+    /**
+     * Returns an email template suitable for use in unit tests.
+     *
+     * @return a test email template
+     */
+    private EmailTemplate getTestEmailTemplate() {
+        return new EmailTemplate(EmailTemplate.SendType.BCC, "Hello!", "Goodbye!", "Show on {date}", "yyyy-MM-dd");
+    }    // getTestEmailTemplate()
+
+    /**
+     * Returns an event suitable for use in unit tests. The event has a date,
+     * one event property, two shifts filled by Alice, one filled by Bob, one
+     * filled by a volunteer without an email address, and one open shift.
+     *
+     * @return a test event
+     */
+    private Event getTestEvent() {
+        Event event = new Event();
+        event.setDate(new GregorianCalendar(2020, Calendar.MARCH, 14).getTime());
+
+        EventProperty eventProperty = new EventProperty("Venue", "");
+        eventProperty.setValue("Hall");
+        event.addEventProperty(eventProperty);
+
+        Volunteer alice = new Volunteer("Alice", "alice@example.com", "555-1234", "", true, new ArrayList<>());
+        Volunteer bob = new Volunteer("Bob", "bob@example.com", "", "", true, new ArrayList<>());
+        Volunteer carol = new Volunteer("Carol", "", "", "", true, new ArrayList<>());
+        event.addShift(createShift("Door", alice));
+        event.addShift(createShift("Bar", bob));
+        event.addShift(createShift("Sound", null));
+        event.addShift(createShift("Cleanup", alice));
+        event.addShift(createShift("Kitchen", carol));
+        return event;
+    }    // getTestEvent()
+
+    /**
+     * Returns a shift with the given name and volunteer.
+     *
+     * @param name the name of the shift
+     * @param volunteer the volunteer; may be null
+     * @return a shift
+     */
+    private Shift createShift(String name, Volunteer volunteer) {
+        Shift shift = new Shift(name, new ArrayList<>(), false, false, false);
+        if (volunteer != null) {
+            shift.setVolunteer(volunteer);
+        }    // if
+        return shift;
+    }    // createShift()
+
+    /* unit tests */
+
+    /**
+     * Tests that {@link MailMerger#MailMerger(EmailTemplate)} throws a
+     * NullPointerException when emailTemplate is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenEmailTemplateIsNull() {
+        MailMerger mailMerger = new MailMerger(null);
+    }    // constructorThrowsExceptionWhenEmailTemplateIsNull()
+
+    /**
+     * Tests that
+     * {@link MailMerger#MailMerger(EmailTemplate, String, TemplateCache)}
+     * throws a NullPointerException when greetingTemplate is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenGreetingTemplateIsNull() {
+        MailMerger mailMerger = new MailMerger(getTestEmailTemplate(), null, new TemplateCache(4));
+    }    // constructorThrowsExceptionWhenGreetingTemplateIsNull()
+
+    /**
+     * Tests that
+     * {@link MailMerger#MailMerger(EmailTemplate, String, TemplateCache)}
+     * throws a NullPointerException when templateCache is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenTemplateCacheIsNull() {
+        MailMerger mailMerger = new MailMerger(getTestEmailTemplate(), "", null);
+    }    // constructorThrowsExceptionWhenTemplateCacheIsNull()
+
+    /**
+     * Tests that {@link MailMerger#merge(Event, java.util.function.Consumer)}
+     * throws a NullPointerException when event is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void mergeThrowsExceptionWhenEventIsNull() {
+        new MailMerger(getTestEmailTemplate()).merge(null, message -> {});
+    }    // mergeThrowsExceptionWhenEventIsNull()
+
+    /**
+     * Tests that {@link MailMerger#merge(Event, java.util.function.Consumer)}
+     * throws a NullPointerException when consumer is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void mergeThrowsExceptionWhenConsumerIsNull() {
+        new MailMerger(getTestEmailTemplate()).merge(getTestEvent(), null);
+    }    // mergeThrowsExceptionWhenConsumerIsNull()
+
+    /**
+     * Tests that {@link MailMerger#merge(Event, java.util.function.Consumer)}
+     * renders one message for each volunteer with an email address, naming
+     * only that volunteer's shifts.
+     */
+    @Test
+    public void mergeRendersOneMessagePerRecipient() {
+        MailMerger mailMerger = new MailMerger(getTestEmailTemplate());
+        Map<String, MailMessage> messages = new ConcurrentHashMap<>();
+
+        int count = mailMerger.merge(getTestEvent(), message -> messages.put(message.getToAddresses(), message));
+
+        assertEquals(2, count);
+        assertEquals(2, messages.size());
+        MailMessage alice = messages.get("alice@example.com");
+        assertEquals("Show on 2020-03-14", alice.getSubject());
+        assertNull(alice.getCcAddresses());
+        assertNull(alice.getBccAddresses());
+        assertTrue(alice.getBody(), alice.getBody().startsWith(
+                "Alice, you are scheduled for Door.\nAlice, you are scheduled for Cleanup.\n\nHello!\n\n"));
+        MailMessage bob = messages.get("bob@example.com");
+        assertTrue(bob.getBody(), bob.getBody().startsWith("Bob, you are scheduled for Bar.\n\nHello!\n\n"));
+        assertTrue(bob.getBody(), bob.getBody().contains("Venue: Hall\n"));
+        assertTrue(bob.getBody(), bob.getBody().contains("Door: Alice\n"));
+        assertTrue(bob.getBody(), bob.getBody().endsWith("Goodbye!\n"));
+    }    // mergeRendersOneMessagePerRecipient()
+
+    /**
+     * Tests that {@link MailMerger#merge(Event, java.util.function.Consumer)}
+     * gives each message an HTML body beginning with the recipient's escaped
+     * greeting.
+     */
+    @Test
+    public void mergeRendersHtmlBodyWithGreeting() {
+        Event event = getTestEvent();
+        Volunteer dave = new Volunteer("Dave & Co", "dave@example.com", "", "", true, new ArrayList<>());
+        event.addShift(createShift("Door", dave));
+        MailMerger mailMerger = new MailMerger(getTestEmailTemplate());
+        Map<String, MailMessage> messages = new ConcurrentHashMap<>();
+
+        mailMerger.merge(event, message -> messages.put(message.getToAddresses(), message));
+
+        String aliceHtml = messages.get("alice@example.com").getHtmlBody();
+        assertNotNull(aliceHtml);
+        assertTrue(aliceHtml, aliceHtml.contains("<body>\n"
+                + "<p>Alice, you are scheduled for Door.<br>\nAlice, you are scheduled for Cleanup.</p>\n"
+                + "<p>Hello!</p>\n"));
+        assertTrue(aliceHtml, aliceHtml.contains("<td>Bar</td><td>Bob</td>"));
+        assertTrue(aliceHtml, aliceHtml.endsWith("</html>\n"));
+        String daveHtml = messages.get("dave@example.com").getHtmlBody();
+        assertTrue(daveHtml, daveHtml.contains("<p>Dave &amp; Co, you are scheduled for Door.</p>"));
+    }    // mergeRendersHtmlBodyWithGreeting()
+
+    /**
+     * Tests that {@link MailMerger#merge(Event, java.util.function.Consumer)}
+     * produces the same shared body for every recipient of a large event.
+     */
+    @Test
+    public void mergeHandlesManyRecipients() {
+        final int RECIPIENTS = 2000;
+        Event event = new Event();
+        for (int i = 0; i < RECIPIENTS; ++i) {
+            Volunteer volunteer = new Volunteer("V" + i, "v" + i + "@example.com", "", "", true, new ArrayList<>());
+            event.addShift(createShift("Shift " + i, volunteer));
+        }    // for
+        TemplateCache templateCache = new TemplateCache(4);
+        MailMerger mailMerger = new MailMerger(getTestEmailTemplate(), MailMerger.DEFAULT_GREETING_TEMPLATE, templateCache);
+        AtomicInteger correct = new AtomicInteger();
+        List<String> failures = new ArrayList<>();
+
+        int count = mailMerger.merge(event, message -> {
+            String name = message.getToAddresses().substring(0, message.getToAddresses().indexOf('@')).toUpperCase();
+            String expectedStart = name + ", you are scheduled for Shift " + name.substring(1) + ".\n\nHello!";
+            if (message.getBody().startsWith(expectedStart) && message.getBody().endsWith("Goodbye!\n")) {
+                correct.incrementAndGet();
+            } else {    // if
+                synchronized (failures) {
+                    failures.add(message.getBody());
+                }    // synchronized
+            }    // else
+        });
+
+        assertEquals(RECIPIENTS, count);
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertEquals(RECIPIENTS, correct.get());
+        assertEquals(5, templateCache.getMisses());    // subject, body, HTML body, and both greetings
+    }    // mergeHandlesManyRecipients()
+
+    /**
+     * Tests that {@link MailMerger#merge(Event, java.util.function.Consumer)}
+     * passes the messages to the consumer one at a time, in order of each
+     * recipient's first shift.
+     */
+    @Test
+    public void mergePassesMessagesInOrder() {
+        final int RECIPIENTS = 500;
+        Event event = new Event();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < RECIPIENTS; ++i) {
+            Volunteer volunteer = new Volunteer("V" + i, "v" + i + "@example.com", "", "", true, new ArrayList<>());
+            event.addShift(createShift("Shift " + i, volunteer));
+            expected.add(volunteer.getEmail());
+        }    // for
+        MailMerger mailMerger = new MailMerger(getTestEmailTemplate());
+        AtomicInteger concurrentCalls = new AtomicInteger();
+        List<String> received = new ArrayList<>();
+
+        mailMerger.merge(event, message -> {
+            assertEquals(1, concurrentCalls.incrementAndGet());
+            received.add(message.getToAddresses());
+            concurrentCalls.decrementAndGet();
+        });
+
+        assertEquals(expected, received);
+    }    // mergePassesMessagesInOrder()
+
+    /**
+     * Tests that {@link MailMerger#countRecipients(Event)} throws a
+     * NullPointerException when event is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void countRecipientsThrowsExceptionWhenEventIsNull() {
+        new MailMerger(getTestEmailTemplate()).countRecipients(null);
+    }    // countRecipientsThrowsExceptionWhenEventIsNull()
+
+    /**
+     * Tests that {@link MailMerger#countRecipients(Event)} returns the number
+     * of messages merge renders.
+     */
+    @Test
+    public void countRecipientsReturnsNumberOfMessages() {
+        MailMerger mailMerger = new MailMerger(getTestEmailTemplate());
+
+        int received = mailMerger.countRecipients(getTestEvent());
+
+        assertEquals(mailMerger.merge(getTestEvent(), message -> {}), received);
+        assertEquals(2, received);
+    }    // countRecipientsReturnsNumberOfMessages()
+
+}    // MailMergerTest
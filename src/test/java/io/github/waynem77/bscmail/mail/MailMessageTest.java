@@ -372,4 +372,33 @@ public class MailMessageTest {
         assertEquals(expected, received);
     }    // getBodysReturnsCorrectValue()
 
+    /* getHtmlBody */
+
+    /**
+     * Tests that {@link MailMessage#getHtmlBody()} returns null for a plain
+     * text message.
+     */
+    @Test
+    public void getHtmlBodyReturnsNullForPlainTextMessage() {
+        MailMessage mailMessage = makeMailMessageFromClassVariables();
+
+        String received = mailMessage.getHtmlBody();
+
+        assertNull(received);
+    }    // getHtmlBodyReturnsNullForPlainTextMessage()
+
+    /**
+     * Tests that {@link MailMessage#getHtmlBody()} returns the correct value.
+     */
+    @Test
+    public void getHtmlBodyReturnsCorrectValue() {
+        String htmlBody = "<p>body</p>";
+        MailMessage mailMessage = new MailMessage(toAddresses, ccAddresses, bccAddresses, subject, body, htmlBody);
+
+        String received = mailMessage.getHtmlBody();
+
+        String expected = htmlBody;
+        assertEquals(expected, received);
+    }    // getHtmlBodyReturnsCorrectValue()
+
 }    // MailMessageTest
@@ -0,0 +1,251 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import io.github.waynem77.bscmail.Application;
+import io.github.waynem77.bscmail.TestApplication;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link MailQueue}.
+ *
+ * @author Wayne Miller
+ */
+public class MailQueueTest {
+
+    /**
+     * Returns an application that can be used in tests.
+     */
+    private Application getTestApplication() {
+        return new TestApplication();
+    }    // getTestApplication()
+
+    /**
+     * Returns the given number of messages.
+     */
+    private List<MailMessage> getMessages(int count) {
+        List<MailMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            messages.add(new MailMessage("foo" + i + "@example.com", "", "", "subject " + i, "body"));
+        }    // for
+        return messages;
+    }    // getMessages()
+
+    /*
+     * Unit tests
+     */
+
+    /* constructor */
+
+    /**
+     * Tests that
+     * {@link MailQueue#MailQueue(Application, String, int, TokenBucket)}
+     * throws a NullPointerException when application is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenApplicationIsNull() {
+        new MailQueue(null, "password", 1, null);
+    }    // constructorThrowsExceptionWhenApplicationIsNull()
+
+    /**
+     * Tests that
+     * {@link MailQueue#MailQueue(Application, TransportPool, String, int, TokenBucket)}
+     * throws a NullPointerException when transportPool is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenTransportPoolIsNull() {
+        new MailQueue(getTestApplication(), null, "password", 1, null);
+    }    // constructorThrowsExceptionWhenTransportPoolIsNull()
+
+    /**
+     * Tests that
+     * {@link MailQueue#MailQueue(Application, String, int, TokenBucket)}
+     * throws an IllegalArgumentException when workerCount is not positive.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorThrowsExceptionWhenWorkerCountIsZero() {
+        new MailQueue(getTestApplication(), "password", 0, null);
+    }    // constructorThrowsExceptionWhenWorkerCountIsZero()
+
+    /* submit */
+
+    /**
+     * Tests that {@link MailQueue#submit(MailMessage)} throws a
+     * NullPointerException when mailMessage is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void submitThrowsExceptionWhenMessageIsNull() throws Exception {
+        try (MailQueue queue = new MailQueue(getTestApplication(), new TestTransportPool(), "password", 1, null)) {
+            queue.submit(null);
+        }    // try
+    }    // submitThrowsExceptionWhenMessageIsNull()
+
+    /**
+     * Tests that {@link MailQueue#submit(MailMessage)} throws an
+     * IllegalStateException when the queue has been closed.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void submitThrowsExceptionWhenQueueIsClosed() throws Exception {
+        MailQueue queue = new MailQueue(getTestApplication(), new TestTransportPool(), "password", 1, null);
+        queue.close();
+
+        queue.submit(getMessages(1).get(0));
+    }    // submitThrowsExceptionWhenQueueIsClosed()
+
+    /* submitAll */
+
+    /**
+     * Tests that {@link MailQueue#submitAll(java.util.Collection)} throws a
+     * NullPointerException when mailMessages contains null, and submits
+     * nothing.
+     */
+    @Test
+    public void submitAllThrowsExceptionWhenMessagesContainsNull() throws Exception {
+        try (MailQueue queue = new MailQueue(getTestApplication(), new TestTransportPool(), "password", 1, null)) {
+            try {
+                queue.submitAll(Arrays.asList(getMessages(1).get(0), null));
+                fail("submitAll() did not throw an exception");
+            } catch (NullPointerException e) {    // try
+                assertEquals(0, queue.getSubmittedCount());
+            }    // catch
+        }    // try
+    }    // submitAllThrowsExceptionWhenMessagesContainsNull()
+
+    /**
+     * Tests that the queue sends every submitted message over no more
+     * connections than it has workers.
+     */
+    @Test
+    public void queueSendsAllMessagesOverWorkerConnections() throws Exception {
+        TestTransportPool transportPool = new TestTransportPool();
+        int workerCount = 4;
+
+        try (MailQueue queue = new MailQueue(getTestApplication(), transportPool, "password", workerCount, null)) {
+            queue.submitAll(getMessages(500));
+            assertTrue(queue.awaitCompletion(1, TimeUnit.MINUTES));
+
+            assertEquals(500, queue.getSentCount());
+            assertEquals(0, queue.getFailedCount());
+            assertEquals(0, queue.getPendingCount());
+            assertEquals(MailerStatus.MAIL_SENT, queue.getStatus());
+        }    // try
+
+        assertTrue(transportPool.getConnectionCount() <= workerCount);
+        int sent = 0;
+        for (TestTransportPool.TestTransport transport : transportPool.getTransports()) {
+            sent += transport.getMessagesSent();
+        }    // for
+        assertEquals(500, sent);
+    }    // queueSendsAllMessagesOverWorkerConnections()
+
+    /**
+     * Tests that the queue records messages that could not be sent.
+     */
+    @Test
+    public void queueRecordsFailures() throws Exception {
+        TestTransportPool transportPool = new TestTransportPool();
+        List<MailMessage> messages = getMessages(3);
+
+        try (MailQueue queue = new MailQueue(getTestApplication(), transportPool, "fail", 1, null)) {
+            queue.submitAll(messages);
+            assertTrue(queue.awaitCompletion(1, TimeUnit.MINUTES));
+
+            assertEquals(0, queue.getSentCount());
+            assertEquals(3, queue.getFailedCount());
+            assertEquals(messages, new ArrayList<>(queue.getFailures().keySet()));
+            assertNotNull(queue.getLastError());
+            assertEquals(MailerStatus.ERROR, queue.getStatus());
+        }    // try
+    }    // queueRecordsFailures()
+
+    /**
+     * Tests that the queue notifies its observers once per message.
+     */
+    @Test
+    public void queueNotifiesObserversOncePerMessage() throws Exception {
+        AtomicInteger notifications = new AtomicInteger();
+
+        try (MailQueue queue = new MailQueue(getTestApplication(), new TestTransportPool(), "password", 2, null)) {
+            queue.registerObserver(notifications::incrementAndGet);
+            queue.submitAll(getMessages(20));
+            assertTrue(queue.awaitCompletion(1, TimeUnit.MINUTES));
+        }    // try
+
+        assertEquals(20, notifications.get());
+    }    // queueNotifiesObserversOncePerMessage()
+
+    /**
+     * Tests that the queue respects its rate limiter.
+     */
+    @Test
+    public void queueRespectsRateLimiter() throws Exception {
+        TokenBucket rateLimiter = new TokenBucket(1, 600);    // one per 100 ms
+
+        long start = System.nanoTime();
+        try (MailQueue queue = new MailQueue(getTestApplication(), new TestTransportPool(), "password", 4, rateLimiter)) {
+            queue.submitAll(getMessages(4));
+        }    // try
+        long elapsed = System.nanoTime() - start;
+
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(290));
+    }    // queueRespectsRateLimiter()
+
+    /* close */
+
+    /**
+     * Tests that {@link MailQueue#close()}, when the thread is interrupted,
+     * returns at once with the thread's interrupt status set, leaving the
+     * queue to drain in the background.
+     */
+    @Test
+    public void closeRestoresInterruptStatus() throws Exception {
+        TokenBucket rateLimiter = new TokenBucket(1, 600);    // one per 100 ms
+        MailQueue queue = new MailQueue(getTestApplication(), new TestTransportPool(), "password", 1, rateLimiter);
+        queue.submitAll(getMessages(4));
+
+        Thread.currentThread().interrupt();
+        queue.close();
+
+        assertTrue(Thread.interrupted());
+        assertTrue(queue.getPendingCount() > 0);
+        assertTrue(queue.awaitCompletion(1, TimeUnit.MINUTES));
+        assertEquals(4, queue.getSentCount());
+    }    // closeRestoresInterruptStatus()
+
+    /* getStatus */
+
+    /**
+     * Tests that {@link MailQueue#getStatus()} returns NOT_STARTED before any
+     * message is submitted.
+     */
+    @Test
+    public void getStatusReturnsNotStartedBeforeSubmit() throws Exception {
+        try (MailQueue queue = new MailQueue(getTestApplication(), new TestTransportPool(), "password", 1, null)) {
+            assertEquals(MailerStatus.NOT_STARTED, queue.getStatus());
+        }    // try
+    }    // getStatusReturnsNotStartedBeforeSubmit()
+
+}    // MailQueueTest
@@ -0,0 +1,388 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import io.github.waynem77.bscmail.Application;
+import io.github.waynem77.bscmail.Benchmark;
+import io.github.waynem77.bscmail.TestApplication;
+import io.github.waynem77.bscmail.persistent.EmailServerProperties;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+/**
+ * Load and integration tests for {@link Mailer}, {@link MailQueue}, and
+ * {@link TransportPool}, run against a {@link FakeSmtpServer}. Each load test
+ * sends a batch of messages down one send path and reports its throughput,
+ * connection reuse, and latency percentiles on standard output. The load
+ * tests are {@link Benchmark benchmarks}, run only in the benchmark profile.
+ *
+ * @author Wayne Miller
+ */
+public class MailerLoadTest {
+
+    /**
+     * The results of a load run.
+     */
+    private static final class LoadReport {
+
+        private final String path;
+        private final int messageCount;
+        private final long elapsedNanos;
+        private final int connectionCount;
+        private final long[] latencyNanos;
+
+        LoadReport(String path, int messageCount, long elapsedNanos, int connectionCount, List<Long> latencyNanos) {
+            this.path = path;
+            this.messageCount = messageCount;
+            this.elapsedNanos = elapsedNanos;
+            this.connectionCount = connectionCount;
+            this.latencyNanos = new long[latencyNanos.size()];
+            for (int i = 0; i < this.latencyNanos.length; ++i) {
+                this.latencyNanos[i] = latencyNanos.get(i);
+            }    // for
+            Arrays.sort(this.latencyNanos);
+        }    // LoadReport()
+
+        double getMessagesPerSecond() {
+            return messageCount * (double)TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }    // getMessagesPerSecond()
+
+        double getMessagesPerConnection() {
+            return (double)messageCount / connectionCount;
+        }    // getMessagesPerConnection()
+
+        long getPercentileMillis(double percentile) {
+            if (latencyNanos.length == 0) {
+                return 0;
+            }    // if
+            int index = (int)Math.ceil(percentile / 100 * latencyNanos.length) - 1;
+            return TimeUnit.NANOSECONDS.toMillis(latencyNanos[Math.max(0, index)]);
+        }    // getPercentileMillis()
+
+        void print() {
+            System.out.println(String.format("%-8s %5d msgs %8.1f msg/s %5d conns %7.1f msgs/conn p50 %4d ms p99 %4d ms max %4d ms",
+                    path, messageCount, getMessagesPerSecond(), connectionCount, getMessagesPerConnection(),
+                    getPercentileMillis(50), getPercentileMillis(99), getPercentileMillis(100)));
+        }    // print()
+
+    }    // LoadReport
+
+    /**
+     * The server.
+     */
+    private FakeSmtpServer server;
+
+    /**
+     * An application whose email server is the fake server.
+     */
+    private Application application;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeSmtpServer();
+        application = new TestApplication();
+        application.setEmailServerProperties(new EmailServerProperties("127.0.0.1", Integer.toString(server.getPort()), "user", false));
+    }    // setUp()
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }    // tearDown()
+
+    /**
+     * Returns the given number of messages.
+     */
+    private List<MailMessage> getMessages(int count) {
+        List<MailMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            messages.add(new MailMessage("foo" + i + "@example.com", "", "", "subject " + i, "body " + i));
+        }    // for
+        return messages;
+    }    // getMessages()
+
+    /*
+     * Integration tests
+     */
+
+    /**
+     * Tests that a message sent by {@link Mailer#send(MailMessage, String)}
+     * reaches the server with every recipient in the envelope, but without a
+     * "Bcc" header.
+     */
+    @Test
+    public void sendDeliversMessageWithoutBccHeader() throws Exception {
+        Mailer mailer = new Mailer(application, new TransportPool(TransportPool.DEFAULT_IDLE_TIMEOUT_MILLIS, 1));
+
+        mailer.send(new MailMessage("to@example.com", "cc@example.com", "bcc@example.com", "smurf", "la la la"), "password");
+
+        assertEquals(MailerStatus.MAIL_SENT, mailer.getStatus());
+        assertTrue(mailer.getLastServerResponse().startsWith("250"));
+        List<FakeSmtpServer.ReceivedMessage> received = server.getMessages();
+        assertEquals(1, received.size());
+        assertEquals(Arrays.asList("<to@example.com>", "<cc@example.com>", "<bcc@example.com>"), received.get(0).getRecipients());
+        assertTrue(received.get(0).getData().contains("Subject: smurf"));
+        assertFalse(received.get(0).getData().contains("Bcc:"));
+        assertEquals(1, server.getAuthenticationCount());
+    }    // sendDeliversMessageWithoutBccHeader()
+
+    /**
+     * Tests that a prepared message sent twice reaches the server
+     * identically both times, without a "Bcc" header.
+     */
+    @Test
+    public void sendPreparedDeliversCachedMessage() throws Exception {
+        Mailer mailer = new Mailer(application, new TransportPool(TransportPool.DEFAULT_IDLE_TIMEOUT_MILLIS, 1));
+        PreparedMessage preparedMessage = mailer.prepare(new MailMessage("to@example.com", "", "bcc@example.com", "smurf", ".leading dot\nla la la"));
+
+        mailer.send(preparedMessage, "password");
+        mailer.send(preparedMessage, "password");
+
+        List<FakeSmtpServer.ReceivedMessage> received = server.getMessages();
+        assertEquals(2, received.size());
+        assertEquals(received.get(0).getData(), received.get(1).getData());
+        assertTrue(received.get(0).getData().contains("\r\n.leading dot\r\n"));
+        assertFalse(received.get(0).getData().contains("Bcc:"));
+        assertEquals(Arrays.asList("<to@example.com>", "<bcc@example.com>"), received.get(1).getRecipients());
+    }    // sendPreparedDeliversCachedMessage()
+
+    /**
+     * Tests that {@link Mailer#send(MailMessage, String)} reports an error
+     * when the server rejects the password.
+     */
+    @Test
+    public void sendReportsErrorWhenAuthenticationFails() {
+        server.setPassword("secret");
+        Mailer mailer = new Mailer(application, new TransportPool(TransportPool.DEFAULT_IDLE_TIMEOUT_MILLIS, 1));
+
+        mailer.send(getMessages(1).get(0), "wrong");
+
+        assertEquals(MailerStatus.ERROR, mailer.getStatus());
+        assertEquals(0, server.getMessages().size());
+    }    // sendReportsErrorWhenAuthenticationFails()
+
+    /**
+     * Tests that {@link Mailer#send(MailMessage, String)} attempts STARTTLS
+     * when the server advertises it, and reports an error when the server
+     * then refuses it.
+     */
+    @Test
+    public void sendReportsErrorWhenStartTlsIsRefused() {
+        server.setAdvertiseStartTls(true);
+        Mailer mailer = new Mailer(application, new TransportPool(TransportPool.DEFAULT_IDLE_TIMEOUT_MILLIS, 1));
+
+        mailer.send(getMessages(1).get(0), "password");
+
+        assertEquals(MailerStatus.ERROR, mailer.getStatus());
+        assertEquals(1, server.getStartTlsCount());
+    }    // sendReportsErrorWhenStartTlsIsRefused()
+
+    /**
+     * Tests that a connection on which the server rejected a message is not
+     * reused.
+     */
+    @Test
+    public void rejectedMessageDiscardsConnection() throws Exception {
+        server.setFailureInterval(2, "451 4.3.0 Try again later");
+        Mailer mailer = new Mailer(application, new TransportPool(TransportPool.DEFAULT_IDLE_TIMEOUT_MILLIS, 1));
+        List<MailMessage> messages = getMessages(3);
+
+        mailer.send(messages.get(0), "password");
+        assertEquals(MailerStatus.MAIL_SENT, mailer.getStatus());
+        mailer.send(messages.get(1), "password");
+        assertEquals(MailerStatus.ERROR, mailer.getStatus());
+        mailer.send(messages.get(2), "password");
+        assertEquals(MailerStatus.MAIL_SENT, mailer.getStatus());
+
+        assertEquals(1, server.getRejectedCount());
+        assertEquals(2, server.getConnectionCount());
+    }    // rejectedMessageDiscardsConnection()
+
+    /**
+     * Tests that the mail queue records the messages the server rejects.
+     */
+    @Test
+    public void queueRecordsInjectedFailures() throws Exception {
+        server.setFailureInterval(5, "550 5.1.1 No such user");
+        List<MailMessage> messages = getMessages(50);
+
+        try (MailQueue queue = new MailQueue(application, "password", 2, null)) {
+            queue.submitAll(messages);
+            assertTrue(queue.awaitCompletion(1, TimeUnit.MINUTES));
+
+            assertEquals(40, queue.getSentCount());
+            assertEquals(10, queue.getFailedCount());
+        }    // try
+        assertEquals(40, server.getMessages().size());
+    }    // queueRecordsInjectedFailures()
+
+    /**
+     * Tests that a mailer sends successive messages over a single pooled
+     * connection, authenticating once.
+     */
+    @Test
+    public void pooledSendReusesConnection() throws Exception {
+        List<MailMessage> messages = getMessages(10);
+        TransportPool transportPool = new TransportPool(TransportPool.DEFAULT_IDLE_TIMEOUT_MILLIS, 1);
+        Mailer mailer = new Mailer(application, transportPool);
+
+        for (MailMessage message : messages) {
+            mailer.send(message, "password");
+            assertEquals(MailerStatus.MAIL_SENT, mailer.getStatus());
+        }    // for
+        transportPool.close();
+
+        assertEquals(messages.size(), server.getMessages().size());
+        assertEquals(1, server.getConnectionCount());
+        assertEquals(1, server.getAuthenticationCount());
+    }    // pooledSendReusesConnection()
+
+    /*
+     * Load tests
+     */
+
+    /**
+     * Measures the single-send path: a new connection for every message, as
+     * before connections were pooled.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void loadSingleSend() throws Exception {
+        server.setMessageLatencyMillis(1);
+        List<MailMessage> messages = getMessages(100);
+
+        List<Long> latencies = new ArrayList<>();
+        long start = System.nanoTime();
+        for (MailMessage message : messages) {
+            Mailer mailer = new Mailer(application, new TransportPool(0, 0));
+            long sendStart = System.nanoTime();
+            mailer.send(message, "password");
+            latencies.add(System.nanoTime() - sendStart);
+            assertEquals(MailerStatus.MAIL_SENT, mailer.getStatus());
+        }    // for
+        LoadReport report = new LoadReport("single", messages.size(), System.nanoTime() - start, server.getConnectionCount(), latencies);
+        report.print();
+
+        assertEquals(messages.size(), server.getMessages().size());
+        assertEquals(messages.size(), server.getConnectionCount());
+        assertEquals(messages.size(), server.getAuthenticationCount());
+    }    // loadSingleSend()
+
+    /**
+     * Measures the pooled path: one mailer sending every message over a
+     * single reused connection.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void loadPooledSend() throws Exception {
+        server.setMessageLatencyMillis(1);
+        List<MailMessage> messages = getMessages(300);
+        TransportPool transportPool = new TransportPool(TransportPool.DEFAULT_IDLE_TIMEOUT_MILLIS, 1);
+        Mailer mailer = new Mailer(application, transportPool);
+
+        List<Long> latencies = new ArrayList<>();
+        long start = System.nanoTime();
+        for (MailMessage message : messages) {
+            long sendStart = System.nanoTime();
+            mailer.send(message, "password");
+            latencies.add(System.nanoTime() - sendStart);
+            assertEquals(MailerStatus.MAIL_SENT, mailer.getStatus());
+        }    // for
+        LoadReport report = new LoadReport("pooled", messages.size(), System.nanoTime() - start, server.getConnectionCount(), latencies);
+        report.print();
+        transportPool.close();
+
+        assertEquals(messages.size(), server.getMessages().size());
+        assertEquals(1, server.getConnectionCount());
+        assertEquals(1, server.getAuthenticationCount());
+        assertTrue(report.getPercentileMillis(99) < 1000);
+    }    // loadPooledSend()
+
+    /**
+     * Measures the queued path: a mail queue sending over several worker
+     * connections, which should outpace a single connection when the server
+     * is slow to accept each message. Since every message is submitted at
+     * once, each message's latency is measured from submission, and includes
+     * its time in the queue.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void loadQueuedSend() throws Exception {
+        int workerCount = 4;
+        server.setMessageLatencyMillis(5);
+        List<MailMessage> messages = getMessages(400);
+
+        List<Long> completions = new ArrayList<>();
+        long start = System.nanoTime();
+        try (MailQueue queue = new MailQueue(application, "password", workerCount, null)) {
+            queue.registerObserver(() -> {
+                synchronized (completions) {
+                    completions.add(System.nanoTime() - start);
+                }    // synchronized
+            });
+            queue.submitAll(messages);
+            assertTrue(queue.awaitCompletion(1, TimeUnit.MINUTES));
+            assertEquals(messages.size(), queue.getSentCount());
+        }    // try
+        long elapsed = System.nanoTime() - start;
+        LoadReport report = new LoadReport("queued", messages.size(), elapsed, server.getConnectionCount(), completions);
+        report.print();
+
+        assertEquals(messages.size(), server.getMessages().size());
+        assertTrue(server.getConnectionCount() <= workerCount);
+        // A single connection needs at least 5 ms per message.
+        assertTrue(report.getMessagesPerSecond() > 1000 / 5);
+    }    // loadQueuedSend()
+
+    /**
+     * Measures the asynchronous path: every message sent at once through
+     * {@link Mailer#sendAllAsync(java.util.Collection, String)}, with each
+     * message's latency taken from its {@link SendResult}.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void loadAsyncSend() throws Exception {
+        server.setMessageLatencyMillis(2);
+        List<MailMessage> messages = getMessages(300);
+        TransportPool transportPool = new TransportPool(TransportPool.DEFAULT_IDLE_TIMEOUT_MILLIS, Mailer.DEFAULT_ASYNC_THREADS);
+        Mailer mailer = new Mailer(application, transportPool);
+
+        long start = System.nanoTime();
+        List<SendResult> results = mailer.sendAllAsync(messages, "password").get(1, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - start;
+        List<Long> latencies = new ArrayList<>();
+        for (SendResult result : results) {
+            assertTrue(result.isSent());
+            latencies.add(result.getTotalNanos());
+        }    // for
+        LoadReport report = new LoadReport("async", messages.size(), elapsed, server.getConnectionCount(), latencies);
+        report.print();
+        transportPool.close();
+
+        assertEquals(messages.size(), server.getMessages().size());
+        assertTrue(server.getConnectionCount() <= Mailer.DEFAULT_ASYNC_THREADS);
+        assertTrue(report.getPercentileMillis(99) < 1000);
+    }    // loadAsyncSend()
+
+}    // MailerLoadTest
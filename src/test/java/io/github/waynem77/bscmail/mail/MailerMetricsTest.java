@@ -0,0 +1,184 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link MailerMetrics}.
+ *
+ * @author Wayne Miller
+ */
+public class MailerMetricsTest {
+
+    /**
+     * Returns a result with the given status, which took the given number of
+     * milliseconds in each stage up to the final one.
+     */
+    private SendResult getResult(MailerStatus status, long millisPerStage) {
+        Map<MailerStatus, Long> stageNanos = new EnumMap<>(MailerStatus.class);
+        for (MailerStatus stage : MailerMetrics.STAGES) {
+            if (stage != MailerStatus.MAIL_SENT) {
+                stageNanos.put(stage, TimeUnit.MILLISECONDS.toNanos(millisPerStage));
+            }    // if
+        }    // for
+        stageNanos.put(status, TimeUnit.MILLISECONDS.toNanos(millisPerStage));
+        Exception error = (status == MailerStatus.ERROR) ? new Exception("smurf") : null;
+        return new SendResult(new MailMessage("foo@example.com", "", "", "subject", "body"), status, null, error, stageNanos);
+    }    // getResult()
+
+    /*
+     * Unit tests
+     */
+
+    /* record */
+
+    /**
+     * Tests that {@link MailerMetrics#record(SendResult)} throws a
+     * NullPointerException when result is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void recordThrowsExceptionWhenResultIsNull() {
+        MailerMetrics metrics = new MailerMetrics();
+
+        metrics.record(null);
+    }    // recordThrowsExceptionWhenResultIsNull()
+
+    /**
+     * Tests that {@link MailerMetrics#record(SendResult)} counts sent and
+     * failed messages, and records the latency of each stage passed through.
+     */
+    @Test
+    public void recordCountsAndRecordsStages() {
+        MailerMetrics metrics = new MailerMetrics();
+
+        metrics.record(getResult(MailerStatus.MAIL_SENT, 2));
+        metrics.record(getResult(MailerStatus.ERROR, 2));
+
+        assertEquals(1, metrics.getSentCount());
+        assertEquals(1, metrics.getErrorCount());
+        assertEquals(2, metrics.getStageHistogram(MailerStatus.SENDING).getCount());
+        assertEquals(1, metrics.getStageHistogram(MailerStatus.MAIL_SENT).getCount());
+        assertEquals(2, metrics.getTotalHistogram().getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), metrics.getTotalHistogram().getMaximumNanos());
+    }    // recordCountsAndRecordsStages()
+
+    /* getStageHistogram */
+
+    /**
+     * Tests that {@link MailerMetrics#getStageHistogram(MailerStatus)} throws
+     * an IllegalArgumentException when stage is not a stage.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void getStageHistogramThrowsExceptionWhenStatusIsNotAStage() {
+        MailerMetrics metrics = new MailerMetrics();
+
+        metrics.getStageHistogram(MailerStatus.ERROR);
+    }    // getStageHistogramThrowsExceptionWhenStatusIsNotAStage()
+
+    /* getPercentileMillis */
+
+    /**
+     * Tests that {@link MailerMetrics#getPercentileMillis(String, double)}
+     * returns the percentile of the named stage, or of the whole send.
+     */
+    @Test
+    public void getPercentileMillisReturnsPercentile() {
+        MailerMetrics metrics = new MailerMetrics();
+        metrics.record(getResult(MailerStatus.MAIL_SENT, 2));
+
+        assertEquals(2.0, metrics.getPercentileMillis("SENDING", 50), 0.0);
+        assertEquals(10.0, metrics.getPercentileMillis("TOTAL", 50), 0.0);
+    }    // getPercentileMillisReturnsPercentile()
+
+    /**
+     * Tests that {@link MailerMetrics#getPercentileMillis(String, double)}
+     * throws an IllegalArgumentException when stage is not the name of a
+     * stage.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void getPercentileMillisThrowsExceptionWhenStageIsUnknown() {
+        MailerMetrics metrics = new MailerMetrics();
+
+        metrics.getPercentileMillis("smurf", 50);
+    }    // getPercentileMillisThrowsExceptionWhenStageIsUnknown()
+
+    /* getReport */
+
+    /**
+     * Tests that {@link MailerMetrics#getReport()} includes the counts and a
+     * line for each stage.
+     */
+    @Test
+    public void getReportIncludesCountsAndStages() {
+        MailerMetrics metrics = new MailerMetrics();
+        metrics.record(getResult(MailerStatus.MAIL_SENT, 1));
+
+        String report = metrics.getReport();
+
+        assertTrue(report.startsWith("Sent: 1  Errors: 0"));
+        for (MailerStatus stage : MailerMetrics.STAGES) {
+            assertTrue(report.contains(stage.name()));
+        }    // for
+        assertTrue(report.contains("TOTAL"));
+    }    // getReportIncludesCountsAndStages()
+
+    /* reset */
+
+    /**
+     * Tests that {@link MailerMetrics#reset()} discards every count and
+     * latency.
+     */
+    @Test
+    public void resetDiscardsEverything() {
+        MailerMetrics metrics = new MailerMetrics();
+        metrics.record(getResult(MailerStatus.ERROR, 1));
+
+        metrics.reset();
+
+        assertEquals(0, metrics.getErrorCount());
+        assertEquals(0, metrics.getTotalHistogram().getCount());
+        assertEquals(0, metrics.getStageHistogram(MailerStatus.SENDING).getCount());
+    }    // resetDiscardsEverything()
+
+    /* getSharedMetrics */
+
+    /**
+     * Tests that {@link MailerMetrics#getSharedMetrics()} publishes the
+     * shared metrics through JMX.
+     */
+    @Test
+    public void getSharedMetricsPublishesThroughJmx() throws Exception {
+        MailerMetrics.getSharedMetrics();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        Object sentCount = server.getAttribute(new ObjectName(MailerMetrics.OBJECT_NAME), "SentCount");
+
+        assertEquals(MailerMetrics.getSharedMetrics().getSentCount(), sentCount);
+    }    // getSharedMetricsPublishesThroughJmx()
+
+}    // MailerMetricsTest
@@ -20,8 +20,32 @@ package io.github.waynem77.bscmail.mail;
 
 import io.github.waynem77.bscmail.Application;
 import io.github.waynem77.bscmail.TestApplication;
+import com.sun.mail.smtp.SMTPSendFailedException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
 import org.junit.*;
 import static org.junit.Assert.*;
 
@@ -51,6 +75,18 @@ public class MailerTest {
         }    // getNotifications()
     }    // TestObserver
 
+    /**
+     * Returns a comma-separated list of the given number of addresses,
+     * starting with the given index.
+     */
+    private String getAddresses(int start, int count) {
+        StringBuilder addresses = new StringBuilder();
+        for (int i = start; i < start + count; ++i) {
+            addresses.append((i == start) ? "" : ",").append("user").append(i).append("@example.com");
+        }    // for
+        return addresses.toString();
+    }    // getAddresses()
+
     /**
      * Returns an application that can be used in tests.
      */
@@ -86,6 +122,18 @@ public class MailerTest {
         Mailer mailer = new Mailer(application);
     }    // constructorDoesNotThrowExceptionWhenApplicaitonIsNotNull()
 
+    /**
+     * Tests that {@link Mailer#Mailer(Application, TransportPool)} throws a
+     * NullPointerException when transportPool is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenTransportPoolIsNull() {
+        Application application = getTestApplication();
+        TransportPool transportPool = null;
+
+        Mailer mailer = new Mailer(application, transportPool);
+    }    // constructorThrowsExceptionWhenTransportPoolIsNull()
+
     /* registerObserver */
 
     /**
@@ -248,6 +296,567 @@ public class MailerTest {
         mailer.send(message, password);
     }    // sendDoesNotThrowExceptionWhenNoArgumentIsNull()
 
+    /**
+     * Tests that {@link Mailer#send(MailMessage, String)} reuses a single
+     * pooled connection for successive messages.
+     */
+    @Test
+    public void sendReusesPooledConnection() {
+        TestTransportPool transportPool = new TestTransportPool();
+        Mailer mailer = new Mailer(getTestApplication(), transportPool);
+
+        for (int i = 0; i < 500; ++i) {
+            mailer.send(new MailMessage("foo@example.com", "", "", "smurf " + i, "la"), "password");
+            assertEquals(MailerStatus.MAIL_SENT, mailer.getStatus());
+        }    // for
+
+        assertEquals(1, transportPool.getConnectionCount());
+        assertEquals(500, transportPool.getTransports().get(0).getMessagesSent());
+    }    // sendReusesPooledConnection()
+
+    /**
+     * Tests that {@link Mailer#send(MailMessage, String)} discards a pooled
+     * connection over which sending fails.
+     */
+    @Test
+    public void sendDiscardsConnectionWhenSendingFails() {
+        TestTransportPool transportPool = new TestTransportPool();
+        Mailer mailer = new Mailer(getTestApplication(), transportPool);
+        mailer.send(new MailMessage("foo@example.com", "", "", "smurf", "la"), "password");
+        TestTransportPool.TestTransport transport = transportPool.getTransports().get(0);
+        transport.setFailSend(true);
+
+        mailer.send(new MailMessage("foo@example.com", "", "", "smurf", "la"), "password");
+
+        assertEquals(MailerStatus.ERROR, mailer.getStatus());
+        assertTrue(transport.isClosed());
+        assertEquals(0, transportPool.getIdleCount());
+    }    // sendDiscardsConnectionWhenSendingFails()
+
+    /**
+     * Tests that {@link Mailer#send(MailMessage, String)} notifies observers
+     * of every status from STARTED to MAIL_SENT, in order.
+     */
+    @Test
+    public void sendNotifiesObserversOfEachStatus() {
+        Mailer mailer = new Mailer(getTestApplication(), new TestTransportPool());
+        List<MailerStatus> statuses = new ArrayList<>();
+        mailer.registerObserver(() -> statuses.add(mailer.getStatus()));
+
+        mailer.send(new MailMessage("foo@example.com", "", "", "smurf", "la"), "password");
+
+        assertEquals(Arrays.asList(MailerStatus.STARTED, MailerStatus.CREATED_PROPERTIES, MailerStatus.CREATED_SESSION,
+                MailerStatus.CREATED_MESSAGE, MailerStatus.SENDING, MailerStatus.MAIL_SENT), statuses);
+    }    // sendNotifiesObserversOfEachStatus()
+
+    /**
+     * Tests that {@link Mailer#send(MailMessage, String)} sends a message with
+     * no more recipients than the chunk size in a single transaction.
+     */
+    @Test
+    public void sendDoesNotChunkSmallRecipientList() {
+        TestTransportPool transportPool = new TestTransportPool();
+        Mailer mailer = new Mailer(getTestApplication(), transportPool);
+
+        mailer.send(new MailMessage(getAddresses(0, 50), "", getAddresses(50, 50), "smurf", "la"), "password");
+
+        assertEquals(MailerStatus.MAIL_SENT, mailer.getStatus());
+        assertEquals(1, transportPool.getTransports().get(0).getMessagesSent());
+        assertEquals(100, transportPool.getTransports().get(0).getRecipients().get(0).length);
+    }    // sendDoesNotChunkSmallRecipientList()
+
+    /**
+     * Tests that {@link Mailer#send(MailMessage, String)} sends a message with
+     * more recipients than the chunk size in chunks, sharing one message
+     * among them and reaching every recipient exactly once.
+     */
+    @Test
+    public void sendChunksLargeRecipientList() throws Exception {
+        TestTransportPool transportPool = new TestTransportPool();
+        Mailer mailer = new Mailer(getTestApplication(), transportPool);
+        mailer.setChunkSize(100);
+
+        mailer.send(new MailMessage(getAddresses(0, 10), getAddresses(10, 10), getAddresses(20, 230), "smurf", "la"), "password");
+
+        assertEquals(MailerStatus.MAIL_SENT, mailer.getStatus());
+        Set<String> reached = new HashSet<>();
+        Set<Message> messages = Collections.newSetFromMap(new IdentityHashMap<>());
+        int transactions = 0;
+        for (TestTransportPool.TestTransport transport : transportPool.getTransports()) {
+            for (Address[] chunk : transport.getRecipients()) {
+                assertTrue(chunk.length <= 100);
+                for (Address address : chunk) {
+                    assertTrue(reached.add(address.toString()));
+                }    // for
+                ++transactions;
+            }    // for
+            messages.addAll(transport.getMessages());
+        }    // for
+        assertEquals(3, transactions);
+        assertEquals(250, reached.size());
+        assertEquals(1, messages.size());
+        MimeMessage sent = (MimeMessage)messages.iterator().next();
+        assertEquals(10, sent.getRecipients(Message.RecipientType.TO).length);
+        assertEquals(10, sent.getRecipients(Message.RecipientType.CC).length);
+    }    // sendChunksLargeRecipientList()
+
+    /**
+     * Tests that {@link Mailer#send(MailMessage, String)} reports an error
+     * when a chunk cannot be sent.
+     */
+    @Test
+    public void sendReportsErrorWhenChunkFails() {
+        Mailer mailer = new Mailer(getTestApplication(), new TestTransportPool());
+        mailer.setChunkSize(10);
+
+        mailer.send(new MailMessage("", "", getAddresses(0, 25), "smurf", "la"), "fail");
+
+        assertEquals(MailerStatus.ERROR, mailer.getStatus());
+        assertNotNull(mailer.getLastError());
+    }    // sendReportsErrorWhenChunkFails()
+
+    /**
+     * Tests that {@link Mailer#sendAsync(MailMessage, String)} reports the
+     * recipients of the chunks that failed when only some chunks fail.
+     */
+    @Test
+    public void sendAsyncReportsRecipientsOfFailedChunks() throws Exception {
+        TestTransportPool transportPool = new TestTransportPool();
+        transportPool.rejectOnce("user13@example.com");
+        Mailer mailer = new Mailer(getTestApplication(), transportPool);
+        mailer.setChunkSize(10);
+
+        SendResult result = mailer.sendAsync(new MailMessage("", "", getAddresses(0, 25), "smurf", "la"), "password").get(1, TimeUnit.MINUTES);
+
+        assertFalse(result.isSent());
+        assertTrue(result.getError() instanceof SendFailedException);
+        assertEquals(15, ((SendFailedException)result.getError()).getValidSentAddresses().length);
+        assertEquals(Arrays.asList(InternetAddress.parse(getAddresses(10, 10))), result.getFailedRecipients());
+    }    // sendAsyncReportsRecipientsOfFailedChunks()
+
+    /**
+     * Tests that {@link Mailer#sendAsync(MailMessage, String)} reports only
+     * the refused recipient as failed when a chunk is partly sent.
+     */
+    @Test
+    public void sendAsyncReportsRecipientsRefusedWithinChunk() throws Exception {
+        TestTransportPool transportPool = new TestTransportPool();
+        transportPool.refuseOnce("user13@example.com");
+        Mailer mailer = new Mailer(getTestApplication(), transportPool);
+        mailer.setChunkSize(10);
+
+        SendResult result = mailer.sendAsync(new MailMessage("", "", getAddresses(0, 25), "smurf", "la"), "password").get(1, TimeUnit.MINUTES);
+
+        assertFalse(result.isSent());
+        assertEquals(24, ((SendFailedException)result.getError()).getValidSentAddresses().length);
+        assertEquals(Arrays.asList(new InternetAddress("user13@example.com")), result.getFailedRecipients());
+    }    // sendAsyncReportsRecipientsRefusedWithinChunk()
+
+    /**
+     * Tests that {@link Mailer#sendAsync(MailMessage, String)} keeps the
+     * return code of a chunk rejected with a permanent error.
+     */
+    @Test
+    public void sendAsyncKeepsReturnCodeOfRejectedChunk() throws Exception {
+        TestTransportPool transportPool = new TestTransportPool();
+        transportPool.rejectPermanentlyOnce("user13@example.com");
+        Mailer mailer = new Mailer(getTestApplication(), transportPool);
+        mailer.setChunkSize(10);
+
+        SendResult result = mailer.sendAsync(new MailMessage("", "", getAddresses(0, 25), "smurf", "la"), "password").get(1, TimeUnit.MINUTES);
+
+        assertTrue(result.getError() instanceof SMTPSendFailedException);
+        assertEquals(554, ((SMTPSendFailedException)result.getError()).getReturnCode());
+        assertTrue(Mailer.isPermanent(result.getError()));
+        assertEquals(Arrays.asList(InternetAddress.parse(getAddresses(10, 10))), result.getFailedRecipients());
+    }    // sendAsyncKeepsReturnCodeOfRejectedChunk()
+
+    /**
+     * Tests that {@link Mailer#sendAsync(MailMessage, String)} reports every
+     * recipient as failed when an unchunked message cannot be sent, and none
+     * when it is sent.
+     */
+    @Test
+    public void sendAsyncReportsFailedRecipients() throws Exception {
+        Mailer mailer = new Mailer(getTestApplication(), new TestTransportPool());
+        MailMessage message = new MailMessage(getAddresses(0, 2), getAddresses(2, 1), "", "smurf", "la");
+
+        SendResult failed = mailer.sendAsync(message, "fail").get(1, TimeUnit.MINUTES);
+        SendResult sent = mailer.sendAsync(message, "password").get(1, TimeUnit.MINUTES);
+
+        assertEquals(Arrays.asList(InternetAddress.parse(getAddresses(0, 3))), failed.getFailedRecipients());
+        assertTrue(sent.getFailedRecipients().isEmpty());
+    }    // sendAsyncReportsFailedRecipients()
+
+    /**
+     * Tests that {@link Mailer#sendAllAsync(java.util.Collection, String)}
+     * completes when chunked messages are sent from the mailer's own
+     * executor.
+     */
+    @Test
+    public void sendAllAsyncChunksWithoutDeadlock() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Mailer mailer = new Mailer(getTestApplication(), new TestTransportPool(), executor);
+            mailer.setChunkSize(5);
+            List<MailMessage> messages = new ArrayList<>();
+            for (int i = 0; i < 8; ++i) {
+                messages.add(new MailMessage("", "", getAddresses(0, 40), "smurf " + i, "la"));
+            }    // for
+
+            List<SendResult> results = mailer.sendAllAsync(messages, "password").get(1, TimeUnit.MINUTES);
+
+            for (SendResult result : results) {
+                assertTrue(result.isSent());
+            }    // for
+        } finally {    // try
+            executor.shutdown();
+        }    // finally
+    }    // sendAllAsyncChunksWithoutDeadlock()
+
+    /* setChunkSize */
+
+    /**
+     * Tests that {@link Mailer#setChunkSize(int)} throws an
+     * IllegalArgumentException when chunkSize is not positive.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void setChunkSizeThrowsExceptionWhenChunkSizeIsZero() {
+        Mailer mailer = new Mailer(getTestApplication());
+
+        mailer.setChunkSize(0);
+    }    // setChunkSizeThrowsExceptionWhenChunkSizeIsZero()
+
+    /**
+     * Tests that {@link Mailer#getChunkSize()} returns the default chunk size
+     * before it has been set, and the set chunk size afterward.
+     */
+    @Test
+    public void getChunkSizeReturnsChunkSize() {
+        Mailer mailer = new Mailer(getTestApplication());
+        assertEquals(Mailer.DEFAULT_CHUNK_SIZE, mailer.getChunkSize());
+
+        mailer.setChunkSize(42);
+
+        assertEquals(42, mailer.getChunkSize());
+    }    // getChunkSizeReturnsChunkSize()
+
+    /* prepare */
+
+    /**
+     * Tests that {@link Mailer#prepare(MailMessage)} throws a
+     * NullPointerException when mailMessage is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void prepareThrowsExceptionWhenMessageIsNull() throws Exception {
+        Mailer mailer = new Mailer(getTestApplication());
+
+        mailer.prepare(null);
+    }    // prepareThrowsExceptionWhenMessageIsNull()
+
+    /**
+     * Tests that {@link Mailer#send(PreparedMessage, String)} throws a
+     * NullPointerException when preparedMessage is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void sendPreparedThrowsExceptionWhenPreparedMessageIsNull() {
+        Mailer mailer = new Mailer(getTestApplication());
+
+        mailer.send((PreparedMessage)null, "password");
+    }    // sendPreparedThrowsExceptionWhenPreparedMessageIsNull()
+
+    /**
+     * Tests that {@link Mailer#send(PreparedMessage, String)} sends the same
+     * cached message each time, to the prepared message's recipients.
+     */
+    @Test
+    public void sendPreparedReusesCachedMessage() throws Exception {
+        TestTransportPool transportPool = new TestTransportPool();
+        Mailer mailer = new Mailer(getTestApplication(), transportPool);
+        PreparedMessage preparedMessage = mailer.prepare(new MailMessage("to@example.com", "", "bcc@example.com", "smurf", "la"));
+        PreparedMessage resent = preparedMessage.withRecipients(new InternetAddress("late@example.com"));
+
+        mailer.send(preparedMessage, "password");
+        assertEquals(MailerStatus.MAIL_SENT, mailer.getStatus());
+        mailer.send(resent, "password");
+        assertEquals(MailerStatus.MAIL_SENT, mailer.getStatus());
+
+        TestTransportPool.TestTransport transport = transportPool.getTransports().get(0);
+        assertEquals(2, transport.getMessagesSent());
+        assertSame(transport.getMessages().get(0), transport.getMessages().get(1));
+        assertSame(preparedMessage.getMimeMessage(), transport.getMessages().get(0));
+        assertEquals(2, transport.getRecipients().get(0).length);
+        assertEquals(Arrays.asList(new InternetAddress("late@example.com")), Arrays.asList(transport.getRecipients().get(1)));
+    }    // sendPreparedReusesCachedMessage()
+
+    /**
+     * Tests that {@link Mailer#send(PreparedMessage, String)} sends a
+     * prepared message with many recipients in chunks of the cached message.
+     */
+    @Test
+    public void sendPreparedChunksCachedMessage() throws Exception {
+        TestTransportPool transportPool = new TestTransportPool();
+        Mailer mailer = new Mailer(getTestApplication(), transportPool);
+        mailer.setChunkSize(10);
+        PreparedMessage preparedMessage = mailer.prepare(new MailMessage("", "", getAddresses(0, 25), "smurf", "la"));
+
+        mailer.send(preparedMessage, "password");
+
+        assertEquals(MailerStatus.MAIL_SENT, mailer.getStatus());
+        int transactions = 0;
+        for (TestTransportPool.TestTransport transport : transportPool.getTransports()) {
+            for (Message message : transport.getMessages()) {
+                assertSame(preparedMessage.getMimeMessage(), message);
+                ++transactions;
+            }    // for
+        }    // for
+        assertEquals(3, transactions);
+    }    // sendPreparedChunksCachedMessage()
+
+    /**
+     * Tests that {@link Mailer#sendAsync(PreparedMessage, String)} sends the
+     * prepared message.
+     */
+    @Test
+    public void sendAsyncPreparedSendsMessage() throws Exception {
+        Mailer mailer = new Mailer(getTestApplication(), new TestTransportPool());
+        MailMessage mailMessage = new MailMessage("foo@example.com", "", "", "smurf", "la");
+
+        SendResult result = mailer.sendAsync(mailer.prepare(mailMessage), "password").get(1, TimeUnit.MINUTES);
+
+        assertTrue(result.isSent());
+        assertSame(mailMessage, result.getMailMessage());
+    }    // sendAsyncPreparedSendsMessage()
+
+    /* setMetrics */
+
+    /**
+     * Tests that {@link Mailer#setMetrics(MailerMetrics)} throws a
+     * NullPointerException when metrics is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void setMetricsThrowsExceptionWhenMetricsIsNull() {
+        Mailer mailer = new Mailer(getTestApplication());
+
+        mailer.setMetrics(null);
+    }    // setMetricsThrowsExceptionWhenMetricsIsNull()
+
+    /**
+     * Tests that {@link Mailer#getMetrics()} returns the shared metrics
+     * before metrics have been set.
+     */
+    @Test
+    public void getMetricsReturnsSharedMetricsByDefault() {
+        Mailer mailer = new Mailer(getTestApplication());
+
+        assertSame(MailerMetrics.getSharedMetrics(), mailer.getMetrics());
+    }    // getMetricsReturnsSharedMetricsByDefault()
+
+    /**
+     * Tests that {@link Mailer#send(MailMessage, String)} records each send,
+     * successful or not, to the mailer's metrics.
+     */
+    @Test
+    public void sendRecordsToMetrics() {
+        Mailer mailer = new Mailer(getTestApplication(), new TestTransportPool());
+        MailerMetrics metrics = new MailerMetrics();
+        mailer.setMetrics(metrics);
+
+        mailer.send(new MailMessage("foo@example.com", "", "", "smurf", "la"), "password");
+        mailer.send(new MailMessage("foo@example.com", "", "", "smurf", "la"), "fail");
+
+        assertEquals(1, metrics.getSentCount());
+        assertEquals(1, metrics.getErrorCount());
+        assertEquals(2, metrics.getTotalHistogram().getCount());
+        assertEquals(2, metrics.getStageHistogram(MailerStatus.CREATED_MESSAGE).getCount());
+        assertEquals(1, metrics.getStageHistogram(MailerStatus.MAIL_SENT).getCount());
+    }    // sendRecordsToMetrics()
+
+    /**
+     * Tests that {@link Mailer#sendAsync(MailMessage, String)} records the
+     * send to the mailer's metrics.
+     */
+    @Test
+    public void sendAsyncRecordsToMetrics() throws Exception {
+        Mailer mailer = new Mailer(getTestApplication(), new TestTransportPool());
+        MailerMetrics metrics = new MailerMetrics();
+        mailer.setMetrics(metrics);
+
+        mailer.sendAsync(new MailMessage("foo@example.com", "", "", "smurf", "la"), "password").get(1, TimeUnit.MINUTES);
+
+        assertEquals(1, metrics.getSentCount());
+    }    // sendAsyncRecordsToMetrics()
+
+    /* sendAsync */
+
+    /**
+     * Tests that {@link Mailer#sendAsync(MailMessage, String)} throws a
+     * NullPointerException when mailMessage is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void sendAsyncThrowsExceptionWhenMessageIsNull() {
+        Mailer mailer = new Mailer(getTestApplication(), new TestTransportPool());
+
+        mailer.sendAsync((MailMessage)null, "password");
+    }    // sendAsyncThrowsExceptionWhenMessageIsNull()
+
+    /**
+     * Tests that {@link Mailer#sendAsync(MailMessage, String)} returns the
+     * result of sending, with a timing for every status.
+     */
+    @Test
+    public void sendAsyncReturnsResultWithTimings() throws Exception {
+        Mailer mailer = new Mailer(getTestApplication(), new TestTransportPool());
+        MailMessage message = new MailMessage("foo@example.com", "", "", "smurf", "la");
+
+        SendResult result = mailer.sendAsync(message, "password").get(1, TimeUnit.MINUTES);
+
+        assertSame(message, result.getMailMessage());
+        assertEquals(MailerStatus.MAIL_SENT, result.getStatus());
+        assertNull(result.getError());
+        assertEquals(EnumSet.range(MailerStatus.STARTED, MailerStatus.MAIL_SENT), result.getStageNanos().keySet());
+        assertTrue(result.getTotalNanos() > 0);
+    }    // sendAsyncReturnsResultWithTimings()
+
+    /**
+     * Tests that {@link Mailer#sendAsync(MailMessage, String)} completes
+     * normally with an error result when the message cannot be sent.
+     */
+    @Test
+    public void sendAsyncReturnsErrorResult() throws Exception {
+        Mailer mailer = new Mailer(getTestApplication(), new TestTransportPool());
+
+        SendResult result = mailer.sendAsync(new MailMessage("foo@example.com", "", "", "smurf", "la"), "fail").get(1, TimeUnit.MINUTES);
+
+        assertEquals(MailerStatus.ERROR, result.getStatus());
+        assertNotNull(result.getError());
+        assertTrue(result.getStageNanos().containsKey(MailerStatus.ERROR));
+        assertFalse(result.getStageNanos().containsKey(MailerStatus.SENDING));
+    }    // sendAsyncReturnsErrorResult()
+
+    /**
+     * Tests that {@link Mailer#sendAsync(MailMessage, String)} does not affect
+     * the mailer's status, its last server response, or its last error, and
+     * does not notify observers.
+     */
+    @Test
+    public void sendAsyncDoesNotAffectMailerState() throws Exception {
+        Mailer mailer = new Mailer(getTestApplication(), new TestTransportPool());
+        TestObserver observer = new TestObserver();
+        mailer.registerObserver(observer);
+
+        mailer.sendAsync(new MailMessage("foo@example.com", "", "", "smurf", "la"), "fail").get(1, TimeUnit.MINUTES);
+
+        assertEquals(MailerStatus.NOT_STARTED, mailer.getStatus());
+        assertNull(mailer.getLastError());
+        assertFalse(observer.hasBeenNotified());
+    }    // sendAsyncDoesNotAffectMailerState()
+
+    /**
+     * Tests that {@link Mailer#sendAsync(MailMessage, String)} runs on the
+     * mailer's executor.
+     */
+    @Test
+    public void sendAsyncRunsOnExecutor() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        Executor executor = runnable -> {
+            executions.incrementAndGet();
+            runnable.run();
+        };
+        Mailer mailer = new Mailer(getTestApplication(), new TestTransportPool(), executor);
+
+        mailer.sendAsync(new MailMessage("foo@example.com", "", "", "smurf", "la"), "password").get(1, TimeUnit.MINUTES);
+
+        assertEquals(1, executions.get());
+    }    // sendAsyncRunsOnExecutor()
+
+    /* sendAllAsync */
+
+    /**
+     * Tests that {@link Mailer#sendAllAsync(java.util.Collection, String)}
+     * throws a NullPointerException when mailMessages contains null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void sendAllAsyncThrowsExceptionWhenMessagesContainsNull() {
+        Mailer mailer = new Mailer(getTestApplication(), new TestTransportPool());
+
+        mailer.sendAllAsync(Arrays.asList(new MailMessage("foo@example.com", "", "", "smurf", "la"), null), "password");
+    }    // sendAllAsyncThrowsExceptionWhenMessagesContainsNull()
+
+    /**
+     * Tests that {@link Mailer#sendAllAsync(java.util.Collection, String)}
+     * sends many messages concurrently and returns their results in order.
+     */
+    @Test
+    public void sendAllAsyncReturnsResultsInOrder() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            TestTransportPool transportPool = new TestTransportPool(TransportPool.DEFAULT_IDLE_TIMEOUT_MILLIS, 8);
+            Mailer mailer = new Mailer(getTestApplication(), transportPool, executor);
+            List<MailMessage> messages = new ArrayList<>();
+            for (int i = 0; i < 200; ++i) {
+                messages.add(new MailMessage("foo" + i + "@example.com", "", "", "smurf " + i, "la"));
+            }    // for
+
+            List<SendResult> results = mailer.sendAllAsync(messages, "password").get(1, TimeUnit.MINUTES);
+
+            assertEquals(messages.size(), results.size());
+            for (int i = 0; i < messages.size(); ++i) {
+                assertSame(messages.get(i), results.get(i).getMailMessage());
+                assertTrue(results.get(i).isSent());
+            }    // for
+            assertTrue(transportPool.getConnectionCount() <= 8);
+        } finally {    // try
+            executor.shutdown();
+        }    // finally
+    }    // sendAllAsyncReturnsResultsInOrder()
+
+    /* writeMessage */
+
+    /**
+     * Tests that {@link Mailer#writeMessage(MailMessage, OutputStream)} writes
+     * a single plain text part for a message without an HTML body.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void writeMessageWritesPlainTextMessage() throws Exception {
+        MailMessage message = new MailMessage("foo@example.com", null, null, "smurf", "la");
+        Mailer mailer = new Mailer(getTestApplication());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        mailer.writeMessage(message, out);
+
+        String received = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(received, received.contains("Content-Type: text/plain"));
+        assertFalse(received, received.contains("multipart"));
+    }    // writeMessageWritesPlainTextMessage()
+
+    /**
+     * Tests that {@link Mailer#writeMessage(MailMessage, OutputStream)} writes
+     * a multipart/alternative message, text first, for a message with an HTML
+     * body.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void writeMessageWritesMultipartAlternativeMessage() throws Exception {
+        MailMessage message = new MailMessage("foo@example.com", null, null, "smurf", "la", "<p>la</p>");
+        Mailer mailer = new Mailer(getTestApplication());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        mailer.writeMessage(message, out);
+
+        MimeMessage received = new MimeMessage(Session.getInstance(new Properties()), new ByteArrayInputStream(out.toByteArray()));
+        assertTrue(received.getContentType(), received.isMimeType("multipart/alternative"));
+        MimeMultipart multipart = (MimeMultipart) received.getContent();
+        assertEquals(2, multipart.getCount());
+        assertTrue(multipart.getBodyPart(0).isMimeType("text/plain"));
+        assertEquals("la", multipart.getBodyPart(0).getContent());
+        assertTrue(multipart.getBodyPart(1).isMimeType("text/html"));
+        assertEquals("<p>la</p>", multipart.getBodyPart(1).getContent());
+    }    // writeMessageWritesMultipartAlternativeMessage()
+
     /* getStatus */
 
     /**
@@ -339,4 +948,32 @@ public class MailerTest {
         assertNull(received);
     }    // getLastErrorReturnsNullBeforeSendHasBeenCalled()
 
+    /* getSentCount and getErrorCount */
+
+    /**
+     * Tests that {@link Mailer#getSentCount()} and
+     * {@link Mailer#getErrorCount()} count the messages sent and failed by
+     * {@link Mailer#send(MailMessage, String)}, before observers are notified
+     * of the final status, and do not count asynchronous sends.
+     */
+    @Test
+    public void getSentCountAndGetErrorCountCountSends() throws Exception {
+        Mailer mailer = new Mailer(getTestApplication(), new TestTransportPool());
+        List<Long> finishedCounts = new ArrayList<>();
+        mailer.registerObserver(() -> {
+            if ((mailer.getStatus() == MailerStatus.MAIL_SENT) || (mailer.getStatus() == MailerStatus.ERROR)) {
+                finishedCounts.add(mailer.getSentCount() + mailer.getErrorCount());
+            }    // if
+        });
+
+        mailer.send(new MailMessage("foo@example.com", "", "", "smurf", "la"), "password");
+        mailer.send(new MailMessage("foo@example.com", "", "", "smurf", "la"), "password");
+        mailer.send(new MailMessage("foo@example.com", "", "", "smurf", "la"), "fail");
+        mailer.sendAsync(new MailMessage("foo@example.com", "", "", "smurf", "la"), "password").get(1, TimeUnit.MINUTES);
+
+        assertEquals(2, mailer.getSentCount());
+        assertEquals(1, mailer.getErrorCount());
+        assertEquals(Arrays.asList(1L, 2L, 3L), finishedCounts);
+    }    // getSentCountAndGetErrorCountCountSends()
+
 }
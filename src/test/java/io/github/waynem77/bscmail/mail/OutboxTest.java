@@ -0,0 +1,558 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import io.github.waynem77.bscmail.Application;
+import io.github.waynem77.bscmail.Benchmark;
+import io.github.waynem77.bscmail.TestApplication;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.mail.Address;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link Outbox}.
+ *
+ * @author Wayne Miller
+ */
+public class OutboxTest {
+
+    /**
+     * The folder holding the outbox directory.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Returns an application that can be used in tests.
+     */
+    private Application getTestApplication() {
+        return new TestApplication();
+    }    // getTestApplication()
+
+    /**
+     * Returns an outbox directory that can be used in tests.
+     */
+    private Path getDirectory() {
+        return folder.getRoot().toPath().resolve("outbox");
+    }    // getDirectory()
+
+    /**
+     * Returns an outbox on the test directory that retries at once.
+     */
+    private Outbox getOutbox(TransportPool transportPool, int maximumAttempts) throws Exception {
+        return new Outbox(getTestApplication(), getDirectory(), transportPool, maximumAttempts, 0, 0);
+    }    // getOutbox()
+
+    /**
+     * Returns the given number of messages.
+     */
+    private List<MailMessage> getMessages(int count) {
+        List<MailMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            messages.add(new MailMessage("foo" + i + "@example.com", "", "bar@example.com", "subject " + i, "body"));
+        }    // for
+        return messages;
+    }    // getMessages()
+
+    /**
+     * Returns the given number of comma-separated addresses.
+     */
+    private String getAddresses(int count) {
+        StringBuilder addresses = new StringBuilder();
+        for (int i = 0; i < count; ++i) {
+            addresses.append((i == 0) ? "" : ",").append("user").append(i).append("@example.com");
+        }    // for
+        return addresses.toString();
+    }    // getAddresses()
+
+    /**
+     * Returns the addresses reached by every transport of the given pool.
+     */
+    private List<String> getReachedAddresses(TestTransportPool transportPool) {
+        List<String> reached = new ArrayList<>();
+        for (TestTransportPool.TestTransport transport : transportPool.getTransports()) {
+            for (Address[] chunk : transport.getRecipients()) {
+                for (Address address : chunk) {
+                    reached.add(address.toString());
+                }    // for
+            }    // for
+        }    // for
+        return reached;
+    }    // getReachedAddresses()
+
+    /*
+     * Unit tests
+     */
+
+    /* constructor */
+
+    /**
+     * Tests that {@link Outbox#Outbox(Application, Path)} throws a
+     * NullPointerException when application is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenApplicationIsNull() throws Exception {
+        new Outbox(null, getDirectory());
+    }    // constructorThrowsExceptionWhenApplicationIsNull()
+
+    /**
+     * Tests that {@link Outbox#Outbox(Application, Path)} throws a
+     * NullPointerException when directory is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenDirectoryIsNull() throws Exception {
+        new Outbox(getTestApplication(), null);
+    }    // constructorThrowsExceptionWhenDirectoryIsNull()
+
+    /**
+     * Tests that
+     * {@link Outbox#Outbox(Application, Path, TransportPool, int, long, long)}
+     * throws an IllegalArgumentException when maximumAttempts is not
+     * positive.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorThrowsExceptionWhenMaximumAttemptsIsZero() throws Exception {
+        getOutbox(new TestTransportPool(), 0);
+    }    // constructorThrowsExceptionWhenMaximumAttemptsIsZero()
+
+    /**
+     * Tests that
+     * {@link Outbox#Outbox(Application, Path, TransportPool, int, long, long)}
+     * throws an IllegalArgumentException when maximumBackoffMillis is less
+     * than initialBackoffMillis.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorThrowsExceptionWhenMaximumBackoffIsLessThanInitial() throws Exception {
+        new Outbox(getTestApplication(), getDirectory(), new TestTransportPool(), 1, 1000, 999);
+    }    // constructorThrowsExceptionWhenMaximumBackoffIsLessThanInitial()
+
+    /* enqueue */
+
+    /**
+     * Tests that {@link Outbox#enqueue(MailMessage)} throws a
+     * NullPointerException when mailMessage is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void enqueueThrowsExceptionWhenMessageIsNull() throws Exception {
+        try (Outbox outbox = getOutbox(new TestTransportPool(), 1)) {
+            outbox.enqueue(null);
+        }    // try
+    }    // enqueueThrowsExceptionWhenMessageIsNull()
+
+    /**
+     * Tests that {@link Outbox#enqueue(MailMessage)} writes the message to
+     * the outbox directory and marks it queued.
+     */
+    @Test
+    public void enqueueWritesMessageFile() throws Exception {
+        try (Outbox outbox = getOutbox(new TestTransportPool(), 1)) {
+            long id = outbox.enqueue(getMessages(1).get(0));
+
+            assertEquals(Outbox.State.QUEUED, outbox.getState(id));
+            assertEquals(1, outbox.getCount(Outbox.State.QUEUED));
+            String contents = new String(Files.readAllBytes(getDirectory().resolve(id + ".eml")), StandardCharsets.UTF_8);
+            assertTrue(contents.contains("Subject: subject 0"));
+            assertTrue(contents.contains("Bcc: bar@example.com"));
+        }    // try
+    }    // enqueueWritesMessageFile()
+
+    /* enqueueAll */
+
+    /**
+     * Tests that {@link Outbox#enqueueAll(java.util.Collection)} assigns
+     * increasing identifiers.
+     */
+    @Test
+    public void enqueueAllAssignsIncreasingIdentifiers() throws Exception {
+        try (Outbox outbox = getOutbox(new TestTransportPool(), 1)) {
+            List<Long> ids = outbox.enqueueAll(getMessages(3));
+
+            assertEquals(3, ids.size());
+            assertTrue(ids.get(0) < ids.get(1));
+            assertTrue(ids.get(1) < ids.get(2));
+        }    // try
+    }    // enqueueAllAssignsIncreasingIdentifiers()
+
+    /**
+     * Tests that {@link Outbox#enqueueAll(java.util.Collection)} forces each
+     * message file to disk before the index recording it is forced, so the
+     * index never refers to a file that is not yet on disk.
+     */
+    @Test
+    public void enqueueAllForcesMessageFilesBeforeIndex() throws Exception {
+        Path index = getDirectory().resolve(Outbox.INDEX_FILE);
+        List<Path> forced = new ArrayList<>();
+        List<Long> indexedIds = new ArrayList<>();
+        Outbox outbox = new Outbox(getTestApplication(), getDirectory(), new TestTransportPool(), 1, 0, 0) {
+            @Override
+            void force(FileChannel channel, Path file) throws IOException {
+                if (file.equals(index)) {
+                    for (String line : Files.readAllLines(index, StandardCharsets.US_ASCII)) {
+                        long id = Long.parseLong(line.split(" ")[0]);
+                        assertTrue("index refers to unforced message " + id, forced.contains(getDirectory().resolve(id + ".eml")));
+                        indexedIds.add(id);
+                    }    // for
+                }    // if
+                super.force(channel, file);
+                forced.add(file);
+            }    // force()
+        };
+
+        try {
+            outbox.enqueueAll(getMessages(3));
+            outbox.enqueue(getMessages(1).get(0));
+        } finally {    // try
+            outbox.close();
+        }    // finally
+
+        assertEquals(7, indexedIds.size());    // 3, then 3 + 1
+        assertEquals(2, forced.stream().filter(index::equals).count());
+    }    // enqueueAllForcesMessageFilesBeforeIndex()
+
+    /**
+     * Benchmarks {@link Outbox#enqueueAll(java.util.Collection)}: tests that
+     * it enqueues 10,000 messages in a few seconds.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void enqueueAllIsFast() throws Exception {
+        List<MailMessage> messages = getMessages(10000);
+
+        try (Outbox outbox = getOutbox(new TestTransportPool(), 1)) {
+            long start = System.nanoTime();
+            outbox.enqueueAll(messages);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.println("Outbox.enqueueAll: " + messages.size() + " messages in " + TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+            assertEquals(messages.size(), outbox.getCount(Outbox.State.QUEUED));
+            assertTrue(elapsed < TimeUnit.SECONDS.toNanos(10));
+        }    // try
+    }    // enqueueAllIsFast()
+
+    /* start */
+
+    /**
+     * Tests that {@link Outbox#start(String, int, TokenBucket)} throws an
+     * IllegalStateException when the outbox has already been started.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void startThrowsExceptionWhenAlreadyStarted() throws Exception {
+        try (Outbox outbox = getOutbox(new TestTransportPool(), 1)) {
+            outbox.start("password", 1, null);
+            outbox.start("password", 1, null);
+        }    // try
+    }    // startThrowsExceptionWhenAlreadyStarted()
+
+    /**
+     * Tests that a started outbox sends every message and deletes its file.
+     */
+    @Test
+    public void outboxSendsAllMessages() throws Exception {
+        TestTransportPool transportPool = new TestTransportPool();
+
+        try (Outbox outbox = getOutbox(transportPool, 1)) {
+            List<Long> ids = outbox.enqueueAll(getMessages(50));
+            outbox.start("password", 2, null);
+            assertTrue(outbox.awaitDrained(1, TimeUnit.MINUTES));
+
+            assertEquals(50, outbox.getCount(Outbox.State.SENT));
+            for (long id : ids) {
+                assertEquals(Outbox.State.SENT, outbox.getState(id));
+                assertFalse(Files.exists(getDirectory().resolve(id + ".eml")));
+            }    // for
+        }    // try
+
+        int sent = 0;
+        for (TestTransportPool.TestTransport transport : transportPool.getTransports()) {
+            sent += transport.getMessagesSent();
+        }    // for
+        assertEquals(50, sent);
+    }    // outboxSendsAllMessages()
+
+    /**
+     * Tests that the outbox retries a message up to the maximum number of
+     * attempts, then marks it failed and keeps its file.
+     */
+    @Test
+    public void outboxRetriesUpToMaximumAttempts() throws Exception {
+        try (Outbox outbox = getOutbox(new TestTransportPool(), 3)) {
+            long id = outbox.enqueue(getMessages(1).get(0));
+            outbox.start("fail", 1, null);
+            assertTrue(outbox.awaitDrained(1, TimeUnit.MINUTES));
+
+            assertEquals(Outbox.State.FAILED, outbox.getState(id));
+            assertEquals(3, outbox.getAttempts(id));
+            assertNotNull(outbox.getLastError());
+            assertTrue(Files.exists(getDirectory().resolve(id + ".eml")));
+        }    // try
+    }    // outboxRetriesUpToMaximumAttempts()
+
+    /**
+     * Tests that a new outbox on the same directory resumes messages left
+     * unsent, and continues their identifiers.
+     */
+    @Test
+    public void outboxResumesUnsentMessages() throws Exception {
+        List<Long> ids;
+        try (Outbox outbox = getOutbox(new TestTransportPool(), 1)) {
+            ids = outbox.enqueueAll(getMessages(5));
+        }    // try
+
+        TestTransportPool transportPool = new TestTransportPool();
+        try (Outbox outbox = getOutbox(transportPool, 1)) {
+            assertEquals(5, outbox.getCount(Outbox.State.QUEUED));
+            long id = outbox.enqueue(getMessages(1).get(0));
+            assertTrue(id > ids.get(4));
+
+            outbox.start("password", 1, null);
+            assertTrue(outbox.awaitDrained(1, TimeUnit.MINUTES));
+            assertEquals(6, outbox.getCount(Outbox.State.SENT));
+        }    // try
+
+        try (Outbox outbox = getOutbox(new TestTransportPool(), 1)) {
+            for (long id : ids) {
+                assertNull(outbox.getState(id));
+            }    // for
+        }    // try
+    }    // outboxResumesUnsentMessages()
+
+    /**
+     * Tests that the outbox sends a message with many recipients in
+     * recipient chunks, and retries only the recipients of a chunk that
+     * failed.
+     */
+    @Test
+    public void outboxRetriesOnlyFailedChunk() throws Exception {
+        TestTransportPool transportPool = new TestTransportPool();
+        transportPool.rejectOnce("user5@example.com");
+
+        try (Outbox outbox = getOutbox(transportPool, 2)) {
+            long id = outbox.enqueue(new MailMessage("", "", getAddresses(Mailer.DEFAULT_CHUNK_SIZE + 50), "subject", "body"));
+            outbox.start("password", 1, null);
+            assertTrue(outbox.awaitDrained(1, TimeUnit.MINUTES));
+
+            assertEquals(Outbox.State.SENT, outbox.getState(id));
+            assertEquals(2, outbox.getAttempts(id));
+        }    // try
+
+        List<String> reached = getReachedAddresses(transportPool);
+        assertEquals(Mailer.DEFAULT_CHUNK_SIZE + 50, reached.size());
+        assertEquals(Mailer.DEFAULT_CHUNK_SIZE + 50, new HashSet<>(reached).size());
+    }    // outboxRetriesOnlyFailedChunk()
+
+    /**
+     * Tests that the outbox does not resend a message to the recipients of a
+     * chunk that reached them although it refused another recipient.
+     */
+    @Test
+    public void outboxRetriesOnlyRefusedRecipients() throws Exception {
+        TestTransportPool transportPool = new TestTransportPool();
+        transportPool.refuseOnce("user5@example.com");
+
+        try (Outbox outbox = getOutbox(transportPool, 2)) {
+            long id = outbox.enqueue(new MailMessage("", "", getAddresses(Mailer.DEFAULT_CHUNK_SIZE + 50), "subject", "body"));
+            outbox.start("password", 1, null);
+            assertTrue(outbox.awaitDrained(1, TimeUnit.MINUTES));
+
+            assertEquals(Outbox.State.SENT, outbox.getState(id));
+            assertEquals(2, outbox.getAttempts(id));
+        }    // try
+
+        List<String> reached = getReachedAddresses(transportPool);
+        assertEquals(Mailer.DEFAULT_CHUNK_SIZE + 50, reached.size());
+        assertEquals(Mailer.DEFAULT_CHUNK_SIZE + 50, new HashSet<>(reached).size());
+    }    // outboxRetriesOnlyRefusedRecipients()
+
+    /**
+     * Tests that the outbox does not retry a message when one of its chunks
+     * is rejected with a permanent error.
+     */
+    @Test
+    public void outboxDoesNotRetryPermanentlyRejectedChunk() throws Exception {
+        TestTransportPool transportPool = new TestTransportPool();
+        transportPool.rejectPermanentlyOnce("user5@example.com");
+
+        try (Outbox outbox = getOutbox(transportPool, 3)) {
+            long id = outbox.enqueue(new MailMessage("", "", getAddresses(Mailer.DEFAULT_CHUNK_SIZE + 50), "subject", "body"));
+            outbox.start("password", 1, null);
+            assertTrue(outbox.awaitDrained(1, TimeUnit.MINUTES));
+
+            assertEquals(Outbox.State.FAILED, outbox.getState(id));
+            assertEquals(1, outbox.getAttempts(id));
+        }    // try
+
+        assertEquals(50, getReachedAddresses(transportPool).size());
+    }    // outboxDoesNotRetryPermanentlyRejectedChunk()
+
+    /**
+     * Tests that a new outbox on the same directory resumes a partly sent
+     * message with only the recipients it has still to reach.
+     */
+    @Test
+    public void outboxResumesOnlyFailedChunk() throws Exception {
+        TestTransportPool transportPool = new TestTransportPool();
+        transportPool.rejectOnce("user5@example.com");
+        long id;
+        try (Outbox outbox = new Outbox(getTestApplication(), getDirectory(), transportPool, 2, 2000, 2000)) {
+            id = outbox.enqueue(new MailMessage("", "", getAddresses(Mailer.DEFAULT_CHUNK_SIZE + 50), "subject", "body"));
+            outbox.start("password", 1, null);
+            long deadline = System.currentTimeMillis() + 60000;
+            while ((outbox.getCount(Outbox.State.RETRYING) == 0) && (System.currentTimeMillis() < deadline)) {
+                Thread.sleep(10);
+            }    // while
+            assertEquals(Outbox.State.RETRYING, outbox.getState(id));
+        }    // try
+        assertEquals(50, getReachedAddresses(transportPool).size());
+
+        TestTransportPool resumedTransportPool = new TestTransportPool();
+        try (Outbox outbox = getOutbox(resumedTransportPool, 2)) {
+            outbox.start("password", 1, null);
+            assertTrue(outbox.awaitDrained(1, TimeUnit.MINUTES));
+            assertEquals(Outbox.State.SENT, outbox.getState(id));
+        }    // try
+
+        List<String> reached = getReachedAddresses(resumedTransportPool);
+        assertEquals(Mailer.DEFAULT_CHUNK_SIZE, reached.size());
+        assertTrue(reached.contains("user5@example.com"));
+    }    // outboxResumesOnlyFailedChunk()
+
+    /**
+     * Tests that a new outbox on the same directory keeps failed messages.
+     */
+    @Test
+    public void outboxKeepsFailedMessages() throws Exception {
+        long id;
+        try (Outbox outbox = getOutbox(new TestTransportPool(), 1)) {
+            id = outbox.enqueue(getMessages(1).get(0));
+            outbox.start("fail", 1, null);
+            assertTrue(outbox.awaitDrained(1, TimeUnit.MINUTES));
+        }    // try
+
+        try (Outbox outbox = getOutbox(new TestTransportPool(), 1)) {
+            assertEquals(Outbox.State.FAILED, outbox.getState(id));
+            assertEquals(1, outbox.getAttempts(id));
+            assertEquals(0, outbox.getCount(Outbox.State.QUEUED));
+            assertNull(outbox.getError(id));
+            assertTrue(outbox.getFailures().isEmpty());
+        }    // try
+    }    // outboxKeepsFailedMessages()
+
+    /**
+     * Tests that a new outbox on the same directory ignores an incomplete
+     * last line in the index.
+     */
+    @Test
+    public void outboxIgnoresIncompleteIndexLine() throws Exception {
+        long id;
+        try (Outbox outbox = getOutbox(new TestTransportPool(), 1)) {
+            id = outbox.enqueue(getMessages(1).get(0));
+        }    // try
+        Files.write(getDirectory().resolve(Outbox.INDEX_FILE), (id + " SE").getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+
+        try (Outbox outbox = getOutbox(new TestTransportPool(), 1)) {
+            assertEquals(Outbox.State.QUEUED, outbox.getState(id));
+        }    // try
+    }    // outboxIgnoresIncompleteIndexLine()
+
+    /**
+     * Tests that a new outbox on the same directory marks failed a queued
+     * message whose file is missing.
+     */
+    @Test
+    public void outboxFailsMessageWithMissingFile() throws Exception {
+        long id;
+        try (Outbox outbox = getOutbox(new TestTransportPool(), 1)) {
+            id = outbox.enqueue(getMessages(1).get(0));
+        }    // try
+        Files.delete(getDirectory().resolve(id + ".eml"));
+
+        try (Outbox outbox = getOutbox(new TestTransportPool(), 1)) {
+            assertEquals(Outbox.State.FAILED, outbox.getState(id));
+        }    // try
+    }    // outboxFailsMessageWithMissingFile()
+
+    /* getBackoffMillis */
+
+    /**
+     * Tests that {@link Outbox#getBackoffMillis(int)} doubles the delay with
+     * each attempt, up to the maximum.
+     */
+    @Test
+    public void getBackoffMillisDoublesUpToMaximum() throws Exception {
+        try (Outbox outbox = new Outbox(getTestApplication(), getDirectory(), new TestTransportPool(), 10, 1000, 5000)) {
+            assertEquals(1000, outbox.getBackoffMillis(1));
+            assertEquals(2000, outbox.getBackoffMillis(2));
+            assertEquals(4000, outbox.getBackoffMillis(3));
+            assertEquals(5000, outbox.getBackoffMillis(4));
+            assertEquals(5000, outbox.getBackoffMillis(100));
+        }    // try
+    }    // getBackoffMillisDoublesUpToMaximum()
+
+    /* getFailures */
+
+    /**
+     * Tests that {@link Outbox#getFailures()} reports each failed message with
+     * its own error, and no message that was sent.
+     */
+    @Test
+    public void getFailuresReportsErrorOfEachMessage() throws Exception {
+        try (Outbox outbox = getOutbox(new TestTransportPool(), 1)) {
+            List<Long> ids = outbox.enqueueAll(getMessages(3));
+            Files.delete(getDirectory().resolve(ids.get(1) + ".eml"));
+            outbox.start("password", 1, null);
+            assertTrue(outbox.awaitDrained(1, TimeUnit.MINUTES));
+
+            Map<Long, Exception> failures = outbox.getFailures();
+            assertEquals(1, failures.size());
+            assertTrue(failures.get(ids.get(1)) instanceof NoSuchFileException);
+            assertSame(failures.get(ids.get(1)), outbox.getError(ids.get(1)));
+            assertNull(outbox.getError(ids.get(0)));
+            assertNull(outbox.getError(ids.get(2)));
+        }    // try
+    }    // getFailuresReportsErrorOfEachMessage()
+
+    /* getCount */
+
+    /**
+     * Tests that {@link Outbox#getCount(Outbox.State)} throws a
+     * NullPointerException when state is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void getCountThrowsExceptionWhenStateIsNull() throws Exception {
+        try (Outbox outbox = getOutbox(new TestTransportPool(), 1)) {
+            outbox.getCount(null);
+        }    // try
+    }    // getCountThrowsExceptionWhenStateIsNull()
+
+}    // OutboxTest
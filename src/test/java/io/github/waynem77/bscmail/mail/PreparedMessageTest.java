@@ -0,0 +1,156 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import io.github.waynem77.bscmail.TestApplication;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.internet.InternetAddress;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link PreparedMessage}.
+ *
+ * @author Wayne Miller
+ */
+public class PreparedMessageTest {
+
+    /**
+     * Returns a prepared message that can be used in tests.
+     */
+    private PreparedMessage getTestPreparedMessage() throws Exception {
+        Mailer mailer = new Mailer(new TestApplication());
+        return mailer.prepare(new MailMessage("to@example.com", "cc@example.com", "bcc@example.com", "smurf", "la la la", "<p>la la la</p>"));
+    }    // getTestPreparedMessage()
+
+    /**
+     * Returns the given prepared message as it goes over the wire.
+     */
+    private String getWireForm(PreparedMessage preparedMessage) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        preparedMessage.writeTo(outputStream);
+        return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+    }    // getWireForm()
+
+    /*
+     * Unit tests
+     */
+
+    /* getRecipients */
+
+    /**
+     * Tests that {@link PreparedMessage#getRecipients()} returns every
+     * recipient, "Bcc" recipients included.
+     */
+    @Test
+    public void getRecipientsReturnsAllRecipients() throws Exception {
+        PreparedMessage preparedMessage = getTestPreparedMessage();
+
+        assertEquals(Arrays.asList(new InternetAddress("to@example.com"), new InternetAddress("cc@example.com"), new InternetAddress("bcc@example.com")),
+                preparedMessage.getRecipients());
+    }    // getRecipientsReturnsAllRecipients()
+
+    /* writeTo */
+
+    /**
+     * Tests that {@link PreparedMessage#writeTo(java.io.OutputStream)} writes
+     * the message without its "Bcc" header.
+     */
+    @Test
+    public void writeToLeavesOutBcc() throws Exception {
+        String wireForm = getWireForm(getTestPreparedMessage());
+
+        assertTrue(wireForm.contains("Subject: smurf"));
+        assertTrue(wireForm.contains("To: to@example.com"));
+        assertFalse(wireForm.contains("Bcc:"));
+        assertFalse(wireForm.contains("bcc@example.com"));
+    }    // writeToLeavesOutBcc()
+
+    /**
+     * Tests that {@link PreparedMessage#writeTo(java.io.OutputStream)} writes
+     * the same bytes each time, and that they match the cached message's own
+     * output.
+     */
+    @Test
+    public void writeToWritesCachedBytes() throws Exception {
+        PreparedMessage preparedMessage = getTestPreparedMessage();
+
+        String first = getWireForm(preparedMessage);
+        String second = getWireForm(preparedMessage);
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        preparedMessage.getMimeMessage().writeTo(sent, new String[] {"Bcc", "Content-Length"});
+
+        assertEquals(first, second);
+        assertEquals(first, new String(sent.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(first.length(), preparedMessage.getSize());
+    }    // writeToWritesCachedBytes()
+
+    /**
+     * Tests that {@link PreparedMessage#writeTo(java.io.OutputStream)} throws
+     * a NullPointerException when outputStream is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void writeToThrowsExceptionWhenOutputStreamIsNull() throws Exception {
+        getTestPreparedMessage().writeTo(null);
+    }    // writeToThrowsExceptionWhenOutputStreamIsNull()
+
+    /* withRecipients */
+
+    /**
+     * Tests that {@link PreparedMessage#withRecipients(Address...)} returns a
+     * message with the given recipients, sharing the cached message.
+     */
+    @Test
+    public void withRecipientsSharesCachedMessage() throws Exception {
+        PreparedMessage preparedMessage = getTestPreparedMessage();
+        Address lateRecipient = new InternetAddress("late@example.com");
+
+        PreparedMessage resent = preparedMessage.withRecipients(lateRecipient);
+
+        assertEquals(Arrays.asList(lateRecipient), resent.getRecipients());
+        assertSame(preparedMessage.getMimeMessage(), resent.getMimeMessage());
+        assertSame(preparedMessage.getMailMessage(), resent.getMailMessage());
+        assertEquals(3, preparedMessage.getRecipients().size());
+        assertEquals(1, resent.getMimeMessage().getRecipients(Message.RecipientType.TO).length);
+    }    // withRecipientsSharesCachedMessage()
+
+    /**
+     * Tests that {@link PreparedMessage#withRecipients(Address...)} throws a
+     * NullPointerException when recipients contains null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void withRecipientsThrowsExceptionWhenRecipientsContainsNull() throws Exception {
+        getTestPreparedMessage().withRecipients(new InternetAddress("late@example.com"), null);
+    }    // withRecipientsThrowsExceptionWhenRecipientsContainsNull()
+
+    /**
+     * Tests that {@link PreparedMessage#withRecipients(Address...)} throws an
+     * IllegalArgumentException when recipients is empty.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void withRecipientsThrowsExceptionWhenRecipientsIsEmpty() throws Exception {
+        getTestPreparedMessage().withRecipients();
+    }    // withRecipientsThrowsExceptionWhenRecipientsIsEmpty()
+
+}    // PreparedMessageTest
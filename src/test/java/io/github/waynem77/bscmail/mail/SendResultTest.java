@@ -0,0 +1,173 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import javax.mail.Address;
+import javax.mail.internet.InternetAddress;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link SendResult}.
+ *
+ * @author Wayne Miller
+ */
+public class SendResultTest {
+
+    /**
+     * Returns a message that can be used in tests.
+     */
+    private MailMessage getMessage() {
+        return new MailMessage("foo@example.com", "", "", "smurf", "la");
+    }    // getMessage()
+
+    /*
+     * Unit tests
+     */
+
+    /* constructor */
+
+    /**
+     * Tests that the constructor throws a NullPointerException when
+     * mailMessage is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenMessageIsNull() {
+        new SendResult(null, MailerStatus.MAIL_SENT, "250 OK", null, new EnumMap<>(MailerStatus.class));
+    }    // constructorThrowsExceptionWhenMessageIsNull()
+
+    /**
+     * Tests that the constructor throws a NullPointerException when status is
+     * ERROR and error is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenErrorIsMissing() {
+        new SendResult(getMessage(), MailerStatus.ERROR, null, null, new EnumMap<>(MailerStatus.class));
+    }    // constructorThrowsExceptionWhenErrorIsMissing()
+
+    /**
+     * Tests that the constructor throws an IllegalArgumentException when
+     * status is not final.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorThrowsExceptionWhenStatusIsNotFinal() {
+        new SendResult(getMessage(), MailerStatus.SENDING, null, null, new EnumMap<>(MailerStatus.class));
+    }    // constructorThrowsExceptionWhenStatusIsNotFinal()
+
+    /**
+     * Tests that the constructor throws an IllegalArgumentException when
+     * status is MAIL_SENT and error is not null.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorThrowsExceptionWhenSentResultHasError() {
+        new SendResult(getMessage(), MailerStatus.MAIL_SENT, null, new Exception(), new EnumMap<>(MailerStatus.class));
+    }    // constructorThrowsExceptionWhenSentResultHasError()
+
+    /**
+     * Tests that the constructor throws a NullPointerException when
+     * failedRecipients is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenFailedRecipientsIsNull() {
+        new SendResult(getMessage(), MailerStatus.ERROR, null, new Exception(), new EnumMap<>(MailerStatus.class), null);
+    }    // constructorThrowsExceptionWhenFailedRecipientsIsNull()
+
+    /**
+     * Tests that the constructor throws an IllegalArgumentException when a
+     * sent result has failed recipients.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorThrowsExceptionWhenSentResultHasFailedRecipients() throws Exception {
+        List<Address> failedRecipients = Collections.singletonList(new InternetAddress("foo@example.com"));
+        new SendResult(getMessage(), MailerStatus.MAIL_SENT, "250 OK", null, new EnumMap<>(MailerStatus.class), failedRecipients);
+    }    // constructorThrowsExceptionWhenSentResultHasFailedRecipients()
+
+    /* getFailedRecipients */
+
+    /**
+     * Tests that {@link SendResult#getFailedRecipients()} returns the failed
+     * recipients given, and an empty list when none are given.
+     */
+    @Test
+    public void getFailedRecipientsReturnsFailedRecipients() throws Exception {
+        List<Address> failedRecipients = Collections.singletonList(new InternetAddress("foo@example.com"));
+
+        SendResult failed = new SendResult(getMessage(), MailerStatus.ERROR, null, new Exception(), new EnumMap<>(MailerStatus.class), failedRecipients);
+        SendResult sent = new SendResult(getMessage(), MailerStatus.MAIL_SENT, "250 OK", null, new EnumMap<>(MailerStatus.class));
+
+        assertEquals(failedRecipients, failed.getFailedRecipients());
+        assertTrue(sent.getFailedRecipients().isEmpty());
+    }    // getFailedRecipientsReturnsFailedRecipients()
+
+    /* getStageNanos */
+
+    /**
+     * Tests that {@link SendResult#getStageNanos()} returns a copy of the
+     * timings, unaffected by later changes to the original.
+     */
+    @Test
+    public void getStageNanosReturnsCopy() {
+        Map<MailerStatus, Long> stageNanos = new EnumMap<>(MailerStatus.class);
+        stageNanos.put(MailerStatus.STARTED, 5L);
+        SendResult result = new SendResult(getMessage(), MailerStatus.MAIL_SENT, "250 OK", null, stageNanos);
+
+        stageNanos.put(MailerStatus.SENDING, 7L);
+
+        assertEquals(1, result.getStageNanos().size());
+        assertEquals(Long.valueOf(5), result.getStageNanos().get(MailerStatus.STARTED));
+    }    // getStageNanosReturnsCopy()
+
+    /**
+     * Tests that {@link SendResult#getStageNanos()} returns a map that may
+     * not be modified.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void getStageNanosReturnsUnmodifiableMap() {
+        Map<MailerStatus, Long> stageNanos = new EnumMap<>(MailerStatus.class);
+        stageNanos.put(MailerStatus.STARTED, 5L);
+        SendResult result = new SendResult(getMessage(), MailerStatus.MAIL_SENT, "250 OK", null, stageNanos);
+
+        result.getStageNanos().put(MailerStatus.SENDING, 7L);
+    }    // getStageNanosReturnsUnmodifiableMap()
+
+    /* getTotalNanos */
+
+    /**
+     * Tests that {@link SendResult#getTotalNanos()} returns the sum of the
+     * stage timings.
+     */
+    @Test
+    public void getTotalNanosReturnsSumOfStages() {
+        Map<MailerStatus, Long> stageNanos = new EnumMap<>(MailerStatus.class);
+        stageNanos.put(MailerStatus.STARTED, 5L);
+        stageNanos.put(MailerStatus.SENDING, 7L);
+        stageNanos.put(MailerStatus.MAIL_SENT, 11L);
+        SendResult result = new SendResult(getMessage(), MailerStatus.MAIL_SENT, "250 OK", null, stageNanos);
+
+        assertEquals(23, result.getTotalNanos());
+        assertTrue(result.isSent());
+        assertEquals("250 OK", result.getServerResponse());
+    }    // getTotalNanosReturnsSumOfStages()
+
+}    // SendResultTest
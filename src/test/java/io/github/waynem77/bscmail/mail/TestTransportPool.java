@@ -0,0 +1,203 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import com.sun.mail.smtp.SMTPSendFailedException;
+import com.sun.mail.smtp.SMTPTransport;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.URLName;
+
+/**
+ * Transport pool used in tests. Its transports do not connect to a server;
+ * they record what is done with them instead.
+ *
+ * @author Wayne Miller
+ */
+public class TestTransportPool extends TransportPool {
+
+    /**
+     * Transport used in tests.
+     */
+    public static class TestTransport extends SMTPTransport {
+        private boolean connected = false;
+        private boolean closed = false;
+        private boolean failNoop = false;
+        private boolean failSend = false;
+        private int noops = 0;
+        private int messagesSent = 0;
+        private final List<Address[]> recipients = new ArrayList<>();
+        private final List<Message> messages = new ArrayList<>();
+        private final Set<String> rejectedAddresses;
+        private final Set<String> permanentlyRejectedAddresses;
+        private final Set<String> refusedAddresses;
+
+        public TestTransport(Session session) {
+            this(session, new CopyOnWriteArraySet<>(), new CopyOnWriteArraySet<>(), new CopyOnWriteArraySet<>());
+        }    // TestTransport()
+
+        public TestTransport(Session session, Set<String> rejectedAddresses, Set<String> permanentlyRejectedAddresses, Set<String> refusedAddresses) {
+            super(session, new URLName("smtp", null, -1, null, null, null));
+            this.rejectedAddresses = rejectedAddresses;
+            this.permanentlyRejectedAddresses = permanentlyRejectedAddresses;
+            this.refusedAddresses = refusedAddresses;
+        }    // TestTransport()
+
+        @Override
+        public synchronized void connect(String host, String user, String password) throws MessagingException {
+            if ("fail".equals(password)) {
+                throw new MessagingException("authentication failed");
+            }    // if
+            connected = true;
+        }    // connect()
+
+        @Override
+        public synchronized boolean isConnected() {
+            ++noops;
+            return connected && !failNoop;
+        }    // isConnected()
+
+        @Override
+        public synchronized void sendMessage(Message message, Address[] addresses) throws MessagingException {
+            if (!connected || failSend) {
+                throw new MessagingException("unable to send");
+            }    // if
+            List<Address> delivered = new ArrayList<>();
+            List<Address> refused = new ArrayList<>();
+            for (Address address : addresses) {
+                if (rejectedAddresses.remove(address.toString())) {
+                    throw new SendFailedException("recipient rejected: " + address);
+                }    // if
+                if (permanentlyRejectedAddresses.remove(address.toString())) {
+                    throw new SMTPSendFailedException("DATA", 554, "554 message rejected", null, null, addresses, null);
+                }    // if
+                if (refusedAddresses.remove(address.toString())) {
+                    refused.add(address);
+                } else {    // if
+                    delivered.add(address);
+                }    // else
+            }    // for
+            ++messagesSent;
+            recipients.add(delivered.toArray(new Address[delivered.size()]));
+            messages.add(message);
+            if (!refused.isEmpty()) {
+                // As SMTPTransport reports a partial send.
+                throw new SMTPSendFailedException(".", 250, "250 OK", null, delivered.toArray(new Address[delivered.size()]),
+                        new Address[0], refused.toArray(new Address[refused.size()]));
+            }    // if
+        }    // sendMessage()
+
+        @Override
+        public synchronized void close() {
+            connected = false;
+            closed = true;
+        }    // close()
+
+        public synchronized boolean isClosed() {
+            return closed;
+        }    // isClosed()
+
+        public synchronized void setFailNoop(boolean failNoop) {
+            this.failNoop = failNoop;
+        }    // setFailNoop()
+
+        public synchronized void setFailSend(boolean failSend) {
+            this.failSend = failSend;
+        }    // setFailSend()
+
+        public synchronized int getNoops() {
+            return noops;
+        }    // getNoops()
+
+        public synchronized int getMessagesSent() {
+            return messagesSent;
+        }    // getMessagesSent()
+
+        public synchronized List<Address[]> getRecipients() {
+            return new ArrayList<>(recipients);
+        }    // getRecipients()
+
+        public synchronized List<Message> getMessages() {
+            return new ArrayList<>(messages);
+        }    // getMessages()
+    }    // TestTransport
+
+    private final List<TestTransport> transports = new CopyOnWriteArrayList<>();
+    private final Set<String> rejectedAddresses = new CopyOnWriteArraySet<>();
+    private final Set<String> permanentlyRejectedAddresses = new CopyOnWriteArraySet<>();
+    private final Set<String> refusedAddresses = new CopyOnWriteArraySet<>();
+
+    public TestTransportPool(long idleTimeoutMillis, int maximumIdle) {
+        super(idleTimeoutMillis, maximumIdle);
+    }    // TestTransportPool()
+
+    public TestTransportPool() {
+        this(DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_MAXIMUM_IDLE);
+    }    // TestTransportPool()
+
+    @Override
+    SMTPTransport createTransport(Session session) {
+        TestTransport transport = new TestTransport(session, rejectedAddresses, permanentlyRejectedAddresses, refusedAddresses);
+        transports.add(transport);
+        return transport;
+    }    // createTransport()
+
+    /**
+     * Makes the next transaction that includes the given address fail, on
+     * whichever of the pool's transports it is sent.
+     */
+    public void rejectOnce(String address) {
+        rejectedAddresses.add(address);
+    }    // rejectOnce()
+
+    /**
+     * Makes the next transaction that includes the given address fail with a
+     * permanent (5xx) error, on whichever of the pool's transports it is
+     * sent.
+     */
+    public void rejectPermanentlyOnce(String address) {
+        permanentlyRejectedAddresses.add(address);
+    }    // rejectPermanentlyOnce()
+
+    /**
+     * Makes the next transaction that includes the given address refuse that
+     * address alone: the message is delivered to the transaction's other
+     * recipients, and the transport reports a partial send.
+     */
+    public void refuseOnce(String address) {
+        refusedAddresses.add(address);
+    }    // refuseOnce()
+
+    /**
+     * Returns the transports created by the pool, in order of creation.
+     */
+    public List<TestTransport> getTransports() {
+        return transports;
+    }    // getTransports()
+
+}    // TestTransportPool
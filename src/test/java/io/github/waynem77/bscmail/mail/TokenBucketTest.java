@@ -0,0 +1,153 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link TokenBucket}.
+ *
+ * @author Wayne Miller
+ */
+public class TokenBucketTest {
+
+    /*
+     * Unit tests
+     */
+
+    /* constructor */
+
+    /**
+     * Tests that {@link TokenBucket#TokenBucket(int, double)} throws an
+     * IllegalArgumentException when capacity is zero.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorThrowsExceptionWhenCapacityIsZero() {
+        new TokenBucket(0, 60);
+    }    // constructorThrowsExceptionWhenCapacityIsZero()
+
+    /**
+     * Tests that {@link TokenBucket#TokenBucket(int, double)} throws an
+     * IllegalArgumentException when permitsPerMinute is zero.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorThrowsExceptionWhenPermitsPerMinuteIsZero() {
+        new TokenBucket(1, 0);
+    }    // constructorThrowsExceptionWhenPermitsPerMinuteIsZero()
+
+    /**
+     * Tests that {@link TokenBucket#TokenBucket(int, double)} throws an
+     * IllegalArgumentException when permitsPerMinute is not a number.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorThrowsExceptionWhenPermitsPerMinuteIsNaN() {
+        new TokenBucket(1, Double.NaN);
+    }    // constructorThrowsExceptionWhenPermitsPerMinuteIsNaN()
+
+    /* tryAcquire */
+
+    /**
+     * Tests that {@link TokenBucket#tryAcquire()} allows a burst of up to the
+     * bucket's capacity, and no more.
+     */
+    @Test
+    public void tryAcquireAllowsBurstOfCapacity() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(3, 60, clock::get);
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }    // tryAcquireAllowsBurstOfCapacity()
+
+    /**
+     * Tests that {@link TokenBucket#tryAcquire()} allows permits at the refill
+     * rate once the bucket is empty.
+     */
+    @Test
+    public void tryAcquireAllowsPermitsAtRefillRate() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(1, 60, clock::get);
+        assertTrue(bucket.tryAcquire());
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertFalse(bucket.tryAcquire());
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }    // tryAcquireAllowsPermitsAtRefillRate()
+
+    /**
+     * Tests that the bucket does not fill beyond its capacity.
+     */
+    @Test
+    public void bucketDoesNotFillBeyondCapacity() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(2, 60, clock::get);
+
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(10));
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }    // bucketDoesNotFillBeyondCapacity()
+
+    /* reserve */
+
+    /**
+     * Tests that {@link TokenBucket#reserve()} returns the time until each
+     * reserved permit is due.
+     */
+    @Test
+    public void reserveReturnsTimeUntilPermitIsDue() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(1, 60, clock::get);
+        long second = TimeUnit.SECONDS.toNanos(1);
+
+        assertEquals(0, bucket.reserve());
+        assertEquals(second, bucket.reserve());
+        assertEquals(2 * second, bucket.reserve());
+        clock.addAndGet(2 * second);
+        assertEquals(second, bucket.reserve());
+    }    // reserveReturnsTimeUntilPermitIsDue()
+
+    /* acquire */
+
+    /**
+     * Tests that {@link TokenBucket#acquire()} limits the rate of permits.
+     */
+    @Test
+    public void acquireLimitsRate() throws Exception {
+        TokenBucket bucket = new TokenBucket(1, 600);    // one per 100 ms
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; ++i) {
+            bucket.acquire();
+        }    // for
+        long elapsed = System.nanoTime() - start;
+
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(290));
+    }    // acquireLimitsRate()
+
+}    // TokenBucketTest
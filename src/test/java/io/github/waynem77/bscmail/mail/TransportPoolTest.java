@@ -0,0 +1,507 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.mail;
+
+import io.github.waynem77.bscmail.persistent.EmailServerProperties;
+import java.util.Properties;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link TransportPool}.
+ *
+ * @author Wayne Miller
+ */
+public class TransportPoolTest {
+
+    /**
+     * Returns email server properties that can be used in tests.
+     */
+    private EmailServerProperties getServerProperties(String hostname, String port, String username) {
+        return new EmailServerProperties(hostname, port, username, true);
+    }    // getServerProperties()
+
+    /*
+     * Unit tests
+     */
+
+    /* constructor */
+
+    /**
+     * Tests that {@link TransportPool#TransportPool(long, int)} throws an
+     * IllegalArgumentException when idleTimeoutMillis is negative.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorThrowsExceptionWhenIdleTimeoutIsNegative() {
+        new TransportPool(-1, 1);
+    }    // constructorThrowsExceptionWhenIdleTimeoutIsNegative()
+
+    /**
+     * Tests that {@link TransportPool#TransportPool(long, int)} throws an
+     * IllegalArgumentException when maximumIdle is negative.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorThrowsExceptionWhenMaximumIdleIsNegative() {
+        new TransportPool(1000, -1);
+    }    // constructorThrowsExceptionWhenMaximumIdleIsNegative()
+
+    /* getSharedPool */
+
+    /**
+     * Tests that {@link TransportPool#getSharedPool()} always returns the same
+     * pool.
+     */
+    @Test
+    public void getSharedPoolReturnsSamePool() {
+        assertNotNull(TransportPool.getSharedPool());
+        assertSame(TransportPool.getSharedPool(), TransportPool.getSharedPool());
+    }    // getSharedPoolReturnsSamePool()
+
+    /* getSession */
+
+    /**
+     * Tests that {@link TransportPool#getSession(EmailServerProperties)}
+     * throws a NullPointerException when serverProperties is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void getSessionThrowsExceptionWhenServerPropertiesIsNull() {
+        TransportPool pool = new TestTransportPool();
+
+        pool.getSession(null);
+    }    // getSessionThrowsExceptionWhenServerPropertiesIsNull()
+
+    /**
+     * Tests that {@link TransportPool#getSession(EmailServerProperties)}
+     * returns a session with the correct properties.
+     */
+    @Test
+    public void getSessionReturnsSessionWithCorrectProperties() {
+        TransportPool pool = new TestTransportPool();
+
+        Properties properties = pool.getSession(getServerProperties("smtp.example.com", "587", "foo")).getProperties();
+
+        assertEquals("smtp.example.com", properties.getProperty("mail.smtp.host"));
+        assertEquals("587", properties.getProperty("mail.smtp.port"));
+        assertEquals("true", properties.getProperty("mail.smtp.auth"));
+        assertEquals("true", properties.getProperty("mail.smtp.starttls.enable"));
+        assertEquals("smtp.example.com", properties.getProperty("mail.smtp.ssl.trust"));
+    }    // getSessionReturnsSessionWithCorrectProperties()
+
+    /**
+     * Tests that {@link TransportPool#getSession(EmailServerProperties)} does
+     * not modify the system properties.
+     */
+    @Test
+    public void getSessionDoesNotModifySystemProperties() {
+        TransportPool pool = new TestTransportPool();
+        String expected = System.getProperty("mail.smtp.host");
+
+        Properties properties = pool.getSession(getServerProperties("getSessionDoesNotModifySystemProperties.example.com", "587", "foo")).getProperties();
+
+        assertNotSame(System.getProperties(), properties);
+        assertEquals(expected, System.getProperty("mail.smtp.host"));
+    }    // getSessionDoesNotModifySystemProperties()
+
+    /**
+     * Tests that {@link TransportPool#getSession(EmailServerProperties)}
+     * returns the same session for the same host, port, and username.
+     */
+    @Test
+    public void getSessionReturnsSameSessionForSameServer() {
+        TransportPool pool = new TestTransportPool();
+
+        Session session1 = pool.getSession(getServerProperties("smtp.example.com", "587", "foo"));
+        Session session2 = pool.getSession(getServerProperties("smtp.example.com", "587", "foo"));
+
+        assertSame(session1, session2);
+    }    // getSessionReturnsSameSessionForSameServer()
+
+    /**
+     * Tests that {@link TransportPool#getSession(EmailServerProperties)}
+     * returns separate sessions, with separate properties, for different
+     * servers.
+     */
+    @Test
+    public void getSessionIsolatesPropertiesPerServer() {
+        TransportPool pool = new TestTransportPool();
+
+        Session session1 = pool.getSession(getServerProperties("smtp.example.com", "587", "foo"));
+        Session session2 = pool.getSession(getServerProperties("smtp.example.com", "25", "foo"));
+        Session session3 = pool.getSession(getServerProperties("smtp.example.com", "587", "bar"));
+
+        assertNotSame(session1, session2);
+        assertNotSame(session1, session3);
+        assertNotSame(session1.getProperties(), session2.getProperties());
+        assertEquals("587", session1.getProperties().getProperty("mail.smtp.port"));
+        assertEquals("25", session2.getProperties().getProperty("mail.smtp.port"));
+    }    // getSessionIsolatesPropertiesPerServer()
+
+    /* acquire */
+
+    /**
+     * Tests that
+     * {@link TransportPool#acquire(EmailServerProperties, String)} throws a
+     * NullPointerException when serverProperties is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void acquireThrowsExceptionWhenServerPropertiesIsNull() throws Exception {
+        TransportPool pool = new TestTransportPool();
+
+        pool.acquire(null, "password");
+    }    // acquireThrowsExceptionWhenServerPropertiesIsNull()
+
+    /**
+     * Tests that
+     * {@link TransportPool#acquire(EmailServerProperties, String)} returns a
+     * connected transport.
+     */
+    @Test
+    public void acquireReturnsConnectedTransport() throws Exception {
+        TestTransportPool pool = new TestTransportPool();
+
+        try (TransportPool.Lease lease = pool.acquire(getServerProperties("smtp.example.com", "587", "foo"), "password")) {
+            assertSame(pool.getTransports().get(0), lease.getTransport());
+            assertEquals(1, pool.getConnectionCount());
+        }    // try
+    }    // acquireReturnsConnectedTransport()
+
+    /**
+     * Tests that
+     * {@link TransportPool#acquire(EmailServerProperties, String)} throws a
+     * MessagingException when the transport cannot connect, and that the
+     * failed connection is not counted.
+     */
+    @Test
+    public void acquireThrowsExceptionWhenConnectionFails() {
+        TestTransportPool pool = new TestTransportPool();
+
+        try {
+            pool.acquire(getServerProperties("smtp.example.com", "587", "foo"), "fail");
+            fail("acquire() did not throw an exception");
+        } catch (MessagingException e) {    // try
+            assertEquals(0, pool.getConnectionCount());
+            assertEquals(0, pool.getIdleCount());
+        }    // catch
+    }    // acquireThrowsExceptionWhenConnectionFails()
+
+    /**
+     * Tests that
+     * {@link TransportPool#acquire(EmailServerProperties, String)} reuses a
+     * released connection, checking it with a NOOP first.
+     */
+    @Test
+    public void acquireReusesReleasedConnection() throws Exception {
+        TestTransportPool pool = new TestTransportPool();
+        EmailServerProperties serverProperties = getServerProperties("smtp.example.com", "587", "foo");
+
+        for (int i = 0; i < 500; ++i) {
+            try (TransportPool.Lease lease = pool.acquire(serverProperties, "password")) {
+                lease.getTransport();
+            }    // try
+        }    // for
+
+        assertEquals(1, pool.getConnectionCount());
+        assertEquals(499, pool.getReuseCount());
+        assertEquals(1, pool.getTransports().size());
+        assertEquals(499, pool.getTransports().get(0).getNoops());
+    }    // acquireReusesReleasedConnection()
+
+    /**
+     * Tests that
+     * {@link TransportPool#acquire(EmailServerProperties, String)} opens a
+     * new connection while another is leased.
+     */
+    @Test
+    public void acquireOpensNewConnectionWhileOtherIsLeased() throws Exception {
+        TestTransportPool pool = new TestTransportPool();
+        EmailServerProperties serverProperties = getServerProperties("smtp.example.com", "587", "foo");
+
+        try (TransportPool.Lease lease1 = pool.acquire(serverProperties, "password");
+                TransportPool.Lease lease2 = pool.acquire(serverProperties, "password")) {
+            assertNotSame(lease1.getTransport(), lease2.getTransport());
+        }    // try
+
+        assertEquals(2, pool.getConnectionCount());
+        assertEquals(2, pool.getIdleCount());
+    }    // acquireOpensNewConnectionWhileOtherIsLeased()
+
+    /**
+     * Tests that
+     * {@link TransportPool#acquire(EmailServerProperties, String)} does not
+     * reuse a connection for a different server or user.
+     */
+    @Test
+    public void acquireDoesNotReuseConnectionForDifferentServer() throws Exception {
+        TestTransportPool pool = new TestTransportPool();
+
+        try (TransportPool.Lease lease = pool.acquire(getServerProperties("smtp.example.com", "587", "foo"), "password")) {
+            lease.getTransport();
+        }    // try
+        try (TransportPool.Lease lease = pool.acquire(getServerProperties("smtp.example.com", "587", "bar"), "password")) {
+            lease.getTransport();
+        }    // try
+        try (TransportPool.Lease lease = pool.acquire(getServerProperties("smtp.example.com", "25", "foo"), "password")) {
+            lease.getTransport();
+        }    // try
+
+        assertEquals(3, pool.getConnectionCount());
+        assertEquals(0, pool.getReuseCount());
+    }    // acquireDoesNotReuseConnectionForDifferentServer()
+
+    /**
+     * Tests that
+     * {@link TransportPool#acquire(EmailServerProperties, String)} does not
+     * reuse a connection authenticated with a different password.
+     */
+    @Test
+    public void acquireDoesNotReuseConnectionForDifferentPassword() throws Exception {
+        TestTransportPool pool = new TestTransportPool();
+        EmailServerProperties serverProperties = getServerProperties("smtp.example.com", "587", "foo");
+
+        try (TransportPool.Lease lease = pool.acquire(serverProperties, "password")) {
+            lease.getTransport();
+        }    // try
+        try (TransportPool.Lease lease = pool.acquire(serverProperties, "other")) {
+            lease.getTransport();
+        }    // try
+        try (TransportPool.Lease lease = pool.acquire(serverProperties, null)) {
+            lease.getTransport();
+        }    // try
+
+        assertEquals(3, pool.getConnectionCount());
+        assertEquals(0, pool.getReuseCount());
+    }    // acquireDoesNotReuseConnectionForDifferentPassword()
+
+    /**
+     * Tests that
+     * {@link TransportPool#acquire(EmailServerProperties, String)} discards a
+     * pooled connection that fails its NOOP check.
+     */
+    @Test
+    public void acquireDiscardsConnectionThatFailsNoop() throws Exception {
+        TestTransportPool pool = new TestTransportPool();
+        EmailServerProperties serverProperties = getServerProperties("smtp.example.com", "587", "foo");
+        try (TransportPool.Lease lease = pool.acquire(serverProperties, "password")) {
+            lease.getTransport();
+        }    // try
+        TestTransportPool.TestTransport first = pool.getTransports().get(0);
+        first.setFailNoop(true);
+
+        try (TransportPool.Lease lease = pool.acquire(serverProperties, "password")) {
+            assertNotSame(first, lease.getTransport());
+        }    // try
+
+        assertTrue(first.isClosed());
+        assertEquals(2, pool.getConnectionCount());
+        assertEquals(0, pool.getReuseCount());
+    }    // acquireDiscardsConnectionThatFailsNoop()
+
+    /**
+     * Tests that
+     * {@link TransportPool#acquire(EmailServerProperties, String)} does not
+     * reuse a connection that has been idle longer than the idle timeout.
+     */
+    @Test
+    public void acquireDoesNotReuseExpiredConnection() throws Exception {
+        TestTransportPool pool = new TestTransportPool(0, TransportPool.DEFAULT_MAXIMUM_IDLE);
+        EmailServerProperties serverProperties = getServerProperties("smtp.example.com", "587", "foo");
+
+        try (TransportPool.Lease lease = pool.acquire(serverProperties, "password")) {
+            lease.getTransport();
+        }    // try
+        try (TransportPool.Lease lease = pool.acquire(serverProperties, "password")) {
+            lease.getTransport();
+        }    // try
+
+        assertEquals(2, pool.getConnectionCount());
+        assertTrue(pool.getTransports().get(0).isClosed());
+    }    // acquireDoesNotReuseExpiredConnection()
+
+    /* Lease */
+
+    /**
+     * Tests that closing an invalidated {@link TransportPool.Lease} closes
+     * the connection rather than returning it to the pool.
+     */
+    @Test
+    public void invalidatedLeaseClosesConnection() throws Exception {
+        TestTransportPool pool = new TestTransportPool();
+
+        try (TransportPool.Lease lease = pool.acquire(getServerProperties("smtp.example.com", "587", "foo"), "password")) {
+            lease.invalidate();
+        }    // try
+
+        assertTrue(pool.getTransports().get(0).isClosed());
+        assertEquals(0, pool.getIdleCount());
+    }    // invalidatedLeaseClosesConnection()
+
+    /**
+     * Tests that closing a {@link TransportPool.Lease} twice returns the
+     * connection to the pool only once.
+     */
+    @Test
+    public void leaseClosedTwiceIsReleasedOnce() throws Exception {
+        TestTransportPool pool = new TestTransportPool();
+        TransportPool.Lease lease = pool.acquire(getServerProperties("smtp.example.com", "587", "foo"), "password");
+
+        lease.close();
+        lease.close();
+
+        assertEquals(1, pool.getIdleCount());
+    }    // leaseClosedTwiceIsReleasedOnce()
+
+    /**
+     * Tests that the pool closes released connections in excess of the
+     * maximum number of idle connections.
+     */
+    @Test
+    public void releaseClosesConnectionsInExcessOfMaximumIdle() throws Exception {
+        TestTransportPool pool = new TestTransportPool(TransportPool.DEFAULT_IDLE_TIMEOUT_MILLIS, 1);
+        EmailServerProperties serverProperties = getServerProperties("smtp.example.com", "587", "foo");
+
+        TransportPool.Lease lease1 = pool.acquire(serverProperties, "password");
+        TransportPool.Lease lease2 = pool.acquire(serverProperties, "password");
+        lease1.close();
+        lease2.close();
+
+        assertEquals(1, pool.getIdleCount());
+        assertTrue(pool.getTransports().get(0).isClosed());
+        assertFalse(pool.getTransports().get(1).isClosed());
+    }    // releaseClosesConnectionsInExcessOfMaximumIdle()
+
+    /* evictIdle */
+
+    /**
+     * Tests that {@link TransportPool#evictIdle()} closes expired
+     * connections.
+     */
+    @Test
+    public void evictIdleClosesExpiredConnections() throws Exception {
+        TestTransportPool pool = new TestTransportPool(1, TransportPool.DEFAULT_MAXIMUM_IDLE);
+        try (TransportPool.Lease lease = pool.acquire(getServerProperties("smtp.example.com", "587", "foo"), "password")) {
+            lease.getTransport();
+        }    // try
+        Thread.sleep(10);
+
+        pool.evictIdle();
+
+        assertEquals(0, pool.getIdleCount());
+        assertTrue(pool.getTransports().get(0).isClosed());
+    }    // evictIdleClosesExpiredConnections()
+
+    /* reaper */
+
+    /**
+     * Tests that a {@link TransportPool} closes expired idle connections even
+     * if it is not used again.
+     */
+    @Test
+    public void reaperClosesExpiredConnectionsWithoutFurtherUse() throws Exception {
+        TestTransportPool pool = new TestTransportPool(20, TransportPool.DEFAULT_MAXIMUM_IDLE);
+        try (TransportPool.Lease lease = pool.acquire(getServerProperties("smtp.example.com", "587", "foo"), "password")) {
+            lease.getTransport();
+        }    // try
+
+        long deadline = System.currentTimeMillis() + 60000;
+        while ((pool.getIdleCount() > 0) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10);
+        }    // while
+
+        assertEquals(0, pool.getIdleCount());
+        assertTrue(pool.getTransports().get(0).isClosed());
+    }    // reaperClosesExpiredConnectionsWithoutFurtherUse()
+
+    /**
+     * Tests that a {@link TransportPool} keeps closing expired idle
+     * connections after its reaper has emptied the pool once.
+     */
+    @Test
+    public void reaperClosesConnectionsReturnedAfterPoolEmptied() throws Exception {
+        TestTransportPool pool = new TestTransportPool(20, TransportPool.DEFAULT_MAXIMUM_IDLE);
+        EmailServerProperties serverProperties = getServerProperties("smtp.example.com", "587", "foo");
+        for (int i = 0; i < 2; ++i) {
+            try (TransportPool.Lease lease = pool.acquire(serverProperties, "password")) {
+                lease.getTransport();
+            }    // try
+            long deadline = System.currentTimeMillis() + 60000;
+            while ((pool.getIdleCount() > 0) && (System.currentTimeMillis() < deadline)) {
+                Thread.sleep(10);
+            }    // while
+        }    // for
+
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(2, pool.getTransports().size());
+        assertTrue(pool.getTransports().get(1).isClosed());
+    }    // reaperClosesConnectionsReturnedAfterPoolEmptied()
+
+    /* close */
+
+    /**
+     * Tests that {@link TransportPool#close()} closes all idle connections.
+     */
+    @Test
+    public void closeClosesIdleConnections() throws Exception {
+        TestTransportPool pool = new TestTransportPool();
+        try (TransportPool.Lease lease = pool.acquire(getServerProperties("smtp.example.com", "587", "foo"), "password")) {
+            lease.getTransport();
+        }    // try
+
+        pool.close();
+
+        assertEquals(0, pool.getIdleCount());
+        assertTrue(pool.getTransports().get(0).isClosed());
+    }    // closeClosesIdleConnections()
+
+    /**
+     * Tests that a connection leased when {@link TransportPool#close()} is
+     * called is closed, rather than pooled, when it is returned.
+     */
+    @Test
+    public void closeClosesLeasedConnectionsWhenReturned() throws Exception {
+        TestTransportPool pool = new TestTransportPool();
+        TransportPool.Lease lease = pool.acquire(getServerProperties("smtp.example.com", "587", "foo"), "password");
+
+        pool.close();
+        lease.close();
+
+        assertEquals(0, pool.getIdleCount());
+        assertTrue(pool.getTransports().get(0).isClosed());
+    }    // closeClosesLeasedConnectionsWhenReturned()
+
+    /**
+     * Tests that a closed {@link TransportPool} may still lease connections,
+     * but closes them when they are returned.
+     */
+    @Test
+    public void closedPoolClosesConnectionsWhenReturned() throws Exception {
+        TestTransportPool pool = new TestTransportPool();
+        pool.close();
+
+        try (TransportPool.Lease lease = pool.acquire(getServerProperties("smtp.example.com", "587", "foo"), "password")) {
+            lease.getTransport();
+        }    // try
+
+        assertEquals(0, pool.getIdleCount());
+        assertTrue(pool.getTransports().get(0).isClosed());
+    }    // closedPoolClosesConnectionsWhenReturned()
+
+}    // TransportPoolTest
@@ -20,7 +20,10 @@
 package io.github.waynem77.bscmail.persistent;
 
 import io.github.waynem77.bscmail.persistent.EmailTemplate.Factory;
+import io.github.waynem77.bscmail.util.format.CompiledTemplate;
+import io.github.waynem77.bscmail.util.format.TemplateCache;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import org.junit.*;
 import static org.junit.Assert.*;
@@ -624,4 +627,90 @@ public class EmailTemplateFactoryTest {
         assertEquals(expected, received);
     }    // constructReadWritableDoesNotReturnNullWhenPropertiesHasWrongObjects()
 
+    /**
+     * Tests that {@link EmailTemplate.Factory#constructReadWritable(Map)}
+     * places a valid compiled subject line template in the shared template
+     * cache.
+     */
+    @Test
+    public void constructReadWritableInstallsCompiledSubjectLineTemplate() {
+        Factory factory = EmailTemplate.getEmailTemplateFactory();
+        String template = "Show {date} " + System.nanoTime();
+        String compiledForm = CompiledTemplate.compile(template, dateFormatString).toCompiledForm();
+        properties.put("subjectLineTemplate", template);
+        properties.put("compiledSubjectLineTemplate", compiledForm);
+        long misses = TemplateCache.getSharedCache().getMisses();
+
+        factory.constructReadWritable(properties);
+        TemplateCache.getSharedCache().get(template, dateFormatString);
+
+        assertEquals(misses, TemplateCache.getSharedCache().getMisses());
+    }    // constructReadWritableInstallsCompiledSubjectLineTemplate()
+
+    /**
+     * Tests that {@link EmailTemplate.Factory#constructReadWritable(Map)}
+     * ignores a stale compiled subject line template.
+     */
+    @Test
+    public void constructReadWritableIgnoresStaleCompiledSubjectLineTemplate() {
+        Factory factory = EmailTemplate.getEmailTemplateFactory();
+        String template = "Show {date} " + System.nanoTime();
+        String compiledForm = CompiledTemplate.compile("Old subject", dateFormatString).toCompiledForm();
+        properties.put("subjectLineTemplate", template);
+        properties.put("compiledSubjectLineTemplate", compiledForm);
+        long misses = TemplateCache.getSharedCache().getMisses();
+
+        EmailTemplate received = factory.constructReadWritable(properties);
+        TemplateCache.getSharedCache().get(template, dateFormatString);
+
+        assertEquals(template, received.getSubjectLineTemplate());
+        assertEquals(misses + 1, TemplateCache.getSharedCache().getMisses());
+    }    // constructReadWritableIgnoresStaleCompiledSubjectLineTemplate()
+
+    /**
+     * Tests that {@link EmailTemplate.Factory#constructReadWritable(Map)}
+     * reads the locale from its language tag.
+     */
+    @Test
+    public void constructReadWritableReadsLocale() {
+        Factory factory = EmailTemplate.getEmailTemplateFactory();
+        properties.put("locale", "de-DE");
+
+        EmailTemplate received = factory.constructReadWritable(properties);
+
+        assertEquals(Locale.GERMANY, received.getLocale());
+    }    // constructReadWritableReadsLocale()
+
+    /**
+     * Tests that {@link EmailTemplate.Factory#constructReadWritable(Map)}
+     * constructs an email template without a locale when the language tag is
+     * ill-formed.
+     */
+    @Test
+    public void constructReadWritableIgnoresIllFormedLocale() {
+        Factory factory = EmailTemplate.getEmailTemplateFactory();
+        properties.put("locale", "not a language");
+
+        EmailTemplate received = factory.constructReadWritable(properties);
+
+        assertNotNull(received);
+        assertNull(received.getLocale());
+    }    // constructReadWritableIgnoresIllFormedLocale()
+
+    /**
+     * Tests that {@link EmailTemplate.Factory#constructReadWritable(Map)} acts
+     * as the reverse of {@link EmailTemplate#getReadWritableProperties()} for
+     * an email template with a locale.
+     */
+    @Test
+    public void constructReadWritableWorksReflexivelyWithLocale() {
+        EmailTemplate originalEmailTemplate = new EmailTemplate(sendTypeForEmailTemplateConstructor, preScheduleText, postScheduleText, subjectLineTemplate, dateFormatString, Locale.FRANCE);
+        Factory factory = EmailTemplate.getEmailTemplateFactory();
+
+        EmailTemplate received = factory.constructReadWritable(originalEmailTemplate.getReadWritableProperties());
+
+        EmailTemplate expected = originalEmailTemplate;
+        assertEquals(expected, received);
+    }    // constructReadWritableWorksReflexivelyWithLocale()
+
 }    // EmailTemplateFactoryTest
@@ -19,6 +19,8 @@
 
 package io.github.waynem77.bscmail.persistent;
 
+import io.github.waynem77.bscmail.util.format.CompiledTemplate;
+import io.github.waynem77.bscmail.util.format.TemplateCache;
 import java.text.DateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -26,6 +28,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import org.junit.*;
 import static org.junit.Assert.*;
@@ -431,6 +434,66 @@ public class EmailTemplateTest extends ReadWritableTest {
         assertEquals(expected, received);
     }    // getDateFormatterReturnsCorrectFormatter()
 
+    /**
+     * Tests that {@link EmailTemplate#getDateFormatter()} returns a formatter
+     * that formats dates in the email template's locale.
+     */
+    @Test
+    public void getDateFormatterUsesLocale() {
+        EmailTemplate emailTemplate = new EmailTemplate(sendType, preScheduleText, postScheduleText, subjectLineTemplate, "d MMMM yyyy", Locale.FRANCE);
+
+        DateFormat formatter = emailTemplate.getDateFormatter();
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2017, 11, 25);
+        Date date = calendar.getTime();
+        String received = formatter.format(date);
+        String expected = "25 décembre 2017";
+        assertEquals(expected, received);
+    }    // getDateFormatterUsesLocale()
+
+    /* getLocale */
+
+    /**
+     * Tests that {@link EmailTemplate#getLocale()} returns null for an email
+     * template constructed without a locale.
+     */
+    @Test
+    public void getLocaleReturnsNullByDefault() {
+        EmailTemplate emailTemplate = makeEmailTemplateFromClassVariables();
+
+        assertNull(emailTemplate.getLocale());
+    }    // getLocaleReturnsNullByDefault()
+
+    /**
+     * Tests that {@link EmailTemplate#getLocale()} returns the locale passed
+     * to the constructor.
+     */
+    @Test
+    public void getLocaleReturnsCorrectValue() {
+        EmailTemplate emailTemplate = new EmailTemplate(sendType, preScheduleText, postScheduleText, subjectLineTemplate, dateFormatString, Locale.GERMANY);
+
+        Locale received = emailTemplate.getLocale();
+
+        Locale expected = Locale.GERMANY;
+        assertEquals(expected, received);
+    }    // getLocaleReturnsCorrectValue()
+
+    /* parseLocale */
+
+    /**
+     * Tests that {@link EmailTemplate#parseLocale(String)} returns the locale
+     * for a well-formed language tag, and null for an empty or ill-formed
+     * one.
+     */
+    @Test
+    public void parseLocaleReturnsCorrectValue() {
+        assertEquals(Locale.FRANCE, EmailTemplate.parseLocale("fr-FR"));
+        assertEquals(new Locale("es"), EmailTemplate.parseLocale(" es "));
+        assertNull(EmailTemplate.parseLocale(""));
+        assertNull(EmailTemplate.parseLocale("not a language"));
+    }    // parseLocaleReturnsCorrectValue()
+
     /* getReadWritableProperties */
 
     /**
@@ -449,6 +512,8 @@ public class EmailTemplateTest extends ReadWritableTest {
         expected.put("postScheduleText", postScheduleText);
         expected.put("subjectLineTemplate", subjectLineTemplate);
         expected.put("dateFormatString", dateFormatString);
+        expected.put("locale", "");
+        expected.put("compiledSubjectLineTemplate", CompiledTemplate.compile(subjectLineTemplate, dateFormatString).toCompiledForm());
         assertEquals(expected, received);
     }    // Test()
 
@@ -467,10 +532,54 @@ public class EmailTemplateTest extends ReadWritableTest {
             received.add(entry.getKey());
         }    // for
 
-        List<String> expected = Arrays.asList("sendType", "preScheduleText", "postScheduleText", "subjectLineTemplate", "dateFormatString");
+        List<String> expected = Arrays.asList("sendType", "preScheduleText", "postScheduleText", "subjectLineTemplate", "dateFormatString", "locale", "compiledSubjectLineTemplate");
         assertEquals(expected, received);
     }    // getReadWritablePropertiesHasTheCorrectIterationOrder()
 
+    /**
+     * Tests that {@link EmailTemplate#getReadWritableProperties()} stores a
+     * compiled form when the subject line template has an unclosed section,
+     * which is compiled as text.
+     */
+    @Test
+    public void getReadWritablePropertiesStoresCompiledFormForUnclosedSection() {
+        subjectLineTemplate = "{#shifts}unclosed";
+        EmailTemplate emailTemplate = makeEmailTemplateFromClassVariables();
+
+        Map<String, Object> received = emailTemplate.getReadWritableProperties();
+
+        assertNotEquals("", received.get("compiledSubjectLineTemplate"));
+    }    // getReadWritablePropertiesStoresCompiledFormForUnclosedSection()
+
+    /**
+     * Tests that {@link EmailTemplate#getReadWritableProperties()} neither
+     * consults nor fills the shared template cache.
+     */
+    @Test
+    public void getReadWritablePropertiesDoesNotUseSharedCache() {
+        subjectLineTemplate = "{date} uncached";
+        EmailTemplate emailTemplate = makeEmailTemplateFromClassVariables();
+        TemplateCache cache = TemplateCache.getSharedCache();
+        long lookups = cache.getHits() + cache.getMisses();
+
+        emailTemplate.getReadWritableProperties();
+
+        assertEquals(lookups, cache.getHits() + cache.getMisses());
+    }    // getReadWritablePropertiesDoesNotUseSharedCache()
+
+    /**
+     * Tests that {@link EmailTemplate#getReadWritableProperties()} stores the
+     * language tag of the locale.
+     */
+    @Test
+    public void getReadWritablePropertiesStoresLanguageTagOfLocale() {
+        EmailTemplate emailTemplate = new EmailTemplate(sendType, preScheduleText, postScheduleText, subjectLineTemplate, dateFormatString, Locale.FRANCE);
+
+        Map<String, Object> received = emailTemplate.getReadWritableProperties();
+
+        assertEquals("fr-FR", received.get("locale"));
+    }    // getReadWritablePropertiesStoresLanguageTagOfLocale()
+
     /* equals */
 
     /**
@@ -617,6 +726,21 @@ public class EmailTemplateTest extends ReadWritableTest {
         assertEquals(expected, received);
     }    // equalsReturnsFalseWhenArgumentHasDifferentDateFormatString()
 
+    /**
+     * Tests that {@link EmailTemplate#equals(Object)} returns false when the
+     * argument has a different locale than the caller.
+     */
+    @Test
+    public void equalsReturnsFalseWhenArgumentHasDifferentLocale() {
+        EmailTemplate emailTemplate = makeEmailTemplateFromClassVariables();
+
+        EmailTemplate obj = new EmailTemplate(sendType, preScheduleText, postScheduleText, subjectLineTemplate, dateFormatString, Locale.GERMANY);
+        boolean received = emailTemplate.equals((Object)obj);
+
+        boolean expected = false;
+        assertEquals(expected, received);
+    }    // equalsReturnsFalseWhenArgumentHasDifferentLocale()
+
     /**
      * Tests that {@link EmailTemplate#equals(Object)} returns true when the
      * argument has identical properties.
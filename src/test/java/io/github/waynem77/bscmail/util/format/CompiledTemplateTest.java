@@ -0,0 +1,599 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.util.format;
+
+import io.github.waynem77.bscmail.Benchmark;
+import io.github.waynem77.bscmail.persistent.Event;
+import io.github.waynem77.bscmail.persistent.EventProperty;
+import io.github.waynem77.bscmail.persistent.Shift;
+import io.github.waynem77.bscmail.persistent.Volunteer;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link CompiledTemplate}.
+ *
+ * @author Wayne Miller
+ */
+public class CompiledTemplateTest {
+
+    /* object properties */
+
+    /**
+     * The event used in testing.
+     */
+    private Event event;
+
+    /* helper methods */
+
+    /**
+     * Formats the given template the way {@link EmailFormatter} did before
+     * templates were compiled: by four successive regular expression passes
+     * over a list of tokens. Used as the reference for equivalence tests.
+     *
+     * @param template the template
+     * @param dateFormatString the date format
+     * @param event the event
+     * @return the formatted string
+     */
+    private String legacyFormat(String template, String dateFormatString, Event event) {
+        Token dateToken = (event.getDate() == null) ? TokenMaker.makeStringAtom("") : TokenMaker.makeDateAtom(event.getDate(), dateFormatString);
+        List<Token> tokens = Arrays.asList(TokenMaker.makeDecomposableToken(template));
+        tokens = legacyPass(tokens, "\\{\\{", TokenMaker.makeStringAtom("{"));
+        tokens = legacyPass(tokens, "\\}\\}", TokenMaker.makeStringAtom("}"));
+        tokens = legacyPass(tokens, "\\{date\\}", dateToken);
+        tokens = legacyPass(tokens, "\\{|\\}", TokenMaker.makeStringAtom(""));
+        StringBuilder builder = new StringBuilder();
+        for (Token token : tokens) {
+            builder.append(token.getStringValue());
+        }    // for
+        return builder.toString();
+    }    // legacyFormat()
+
+    /**
+     * Performs one pass of {@link #legacyFormat(String, String, Event)}.
+     *
+     * @param tokens the tokens
+     * @param regex the regular expression to replace
+     * @param replacement the replacement token
+     * @return the further decomposed tokens
+     */
+    private List<Token> legacyPass(List<Token> tokens, String regex, Token replacement) {
+        Pattern pattern = Pattern.compile(regex);
+        List<Token> result = new LinkedList<>();
+        for (Token token : tokens) {
+            if (!token.isDecomposable()) {
+                result.add(token);
+                continue;
+            }    // if
+            String value = token.getStringValue();
+            Matcher matcher = pattern.matcher(value);
+            int start = 0;
+            while (matcher.find()) {
+                result.add(TokenMaker.makeDecomposableToken(value.substring(start, matcher.start())));
+                result.add(replacement);
+                start = matcher.end();
+            }    // while
+            result.add(TokenMaker.makeDecomposableToken(value.substring(start)));
+        }    // for
+        return result;
+    }    // legacyPass()
+
+    /**
+     * Returns a random template built from braces, the word "date", and other
+     * text.
+     *
+     * @param random the random number generator
+     * @return a random template
+     */
+    private String randomTemplate(Random random) {
+        String[] pieces = {"{", "}", "date", "d", "x", " ", "{date}", "{{", "}}"};
+        StringBuilder builder = new StringBuilder();
+        int length = random.nextInt(16);
+        for (int i = 0; i < length; ++i) {
+            builder.append(pieces[random.nextInt(pieces.length)]);
+        }    // for
+        return builder.toString();
+    }    // randomTemplate()
+
+    /**
+     * Sets up the test environment before each test.
+     */
+    @Before
+    public void preTestSetup() {
+        event = new Event();
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2018, 1, 5);    // Monday, February 5, 2018
+        event.setDate(calendar.getTime());
+    }    // preTestSetup()
+
+    /**
+     * Tears down the test environment after each test.
+     */
+    @After
+    public void postTestTeardown() {
+        event = null;
+    }    // postTestTeardown()
+
+    /* unit tests */
+
+    /**
+     * Tests that {@link CompiledTemplate#compile(String, String)} throws a
+     * NullPointerException when template is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void compileThrowsExceptionWhenTemplateIsNull() {
+        CompiledTemplate.compile(null, "yyyy");
+    }    // compileThrowsExceptionWhenTemplateIsNull()
+
+    /**
+     * Tests that {@link CompiledTemplate#compile(String, String)} throws a
+     * NullPointerException when dateFormatString is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void compileThrowsExceptionWhenDateFormatStringIsNull() {
+        CompiledTemplate.compile("foo", null);
+    }    // compileThrowsExceptionWhenDateFormatStringIsNull()
+
+    /**
+     * Tests that {@link CompiledTemplate#compile(String, String)} throws an
+     * IllegalArgumentException when dateFormatString is unsuitable.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void compileThrowsExceptionWhenDateFormatStringIsUnsuitable() {
+        CompiledTemplate.compile("foo", "foo");
+    }    // compileThrowsExceptionWhenDateFormatStringIsUnsuitable()
+
+    /**
+     * Tests that {@link CompiledTemplate#render(Event)} throws a
+     * NullPointerException when event is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void renderThrowsExceptionWhenEventIsNull() {
+        CompiledTemplate.compile("foo", "yyyy").render(null);
+    }    // renderThrowsExceptionWhenEventIsNull()
+
+    /**
+     * Tests that {@link CompiledTemplate#render(Event)} produces the correct
+     * result for a mix of escapes, stray braces, and dates.
+     */
+    @Test
+    public void renderReturnsCorrectResult() {
+        CompiledTemplate template = CompiledTemplate.compile("{a{{b{{{c{{{{{{{d}e}}f}}}g}}}}}}}h{date}{date}{{date}}", "yyyy-MM-dd");
+
+        String received = template.render(event);
+
+        assertEquals("a{b{c{{{de}f}g}}}h2018-02-052018-02-05{date}", received);
+    }    // renderReturnsCorrectResult()
+
+    /**
+     * Tests that {@link CompiledTemplate#render(Event)} treats "{date}}" as
+     * "date" followed by an escaped brace's remnant, as the legacy formatter
+     * did.
+     */
+    @Test
+    public void renderDoesNotTreatDateFollowedByEscapedBraceAsPlaceholder() {
+        CompiledTemplate template = CompiledTemplate.compile("{date}}", "yyyy-MM-dd");
+
+        assertEquals("date}", template.render(event));
+    }    // renderDoesNotTreatDateFollowedByEscapedBraceAsPlaceholder()
+
+    /**
+     * Tests that {@link CompiledTemplate#render(Event)} renders nothing for
+     * "{date}" when the event has no date.
+     */
+    @Test
+    public void renderReturnsEmptyDateWhenEventDateIsUnset() {
+        event.setDate(null);
+        CompiledTemplate template = CompiledTemplate.compile("foo{date}bar", "yyyy-MM-dd");
+
+        assertEquals("foobar", template.render(event));
+    }    // renderReturnsEmptyDateWhenEventDateIsUnset()
+
+    /**
+     * Tests that {@link CompiledTemplate#render(Event)} uses the default date
+     * format when the date format string is empty.
+     */
+    @Test
+    public void renderUsesDefaultDateFormatWhenDateFormatStringIsEmpty() {
+        CompiledTemplate template = CompiledTemplate.compile("{date}", "");
+
+        assertEquals(legacyFormat("{date}", "", event), template.render(event));
+    }    // renderUsesDefaultDateFormatWhenDateFormatStringIsEmpty()
+
+    /**
+     * Tests that {@link CompiledTemplate#render(Event, Appendable)} appends to
+     * the destination.
+     */
+    @Test
+    public void renderAppendsToDestination() throws IOException {
+        CompiledTemplate template = CompiledTemplate.compile("b{date}", "yyyy");
+        StringBuilder builder = new StringBuilder("a");
+
+        template.render(event, (Appendable) builder);
+
+        assertEquals("ab2018", builder.toString());
+    }    // renderAppendsToDestination()
+
+    /**
+     * Tests that {@link CompiledTemplate#render(Event)} renders event
+     * properties by name.
+     */
+    @Test
+    public void renderReturnsEventPropertyValues() {
+        EventProperty venue = new EventProperty("Venue", "");
+        venue.setValue("Hall");
+        event.addEventProperty(venue);
+        CompiledTemplate template = CompiledTemplate.compile("At {prop:Venue}{prop:Band}.", "yyyy");
+
+        assertEquals("At Hall.", template.render(event));
+    }    // renderReturnsEventPropertyValues()
+
+    /**
+     * Tests that {@link CompiledTemplate#render(Event)} renders sections for
+     * shifts, volunteers, details, and event properties.
+     */
+    @Test
+    public void renderReturnsSections() {
+        EventProperty venue = new EventProperty("Venue", "");
+        venue.setValue("Hall");
+        event.addEventProperty(venue);
+        Shift door = new Shift("Door", new ArrayList<>(), true, false, true);
+        door.setVolunteer(new Volunteer("Alice", "alice@example.com", "555-1234", "early", true, new ArrayList<>()));
+        event.addShift(door);
+        Shift bar = new Shift("Bar", new ArrayList<>(), false, false, false);
+        bar.setVolunteer(new Volunteer("Bob", "bob@example.com", "", "", true, new ArrayList<>()));
+        event.addShift(bar);
+        event.addShift(new Shift("Sound", new ArrayList<>(), false, false, false));
+        CompiledTemplate template = CompiledTemplate.compile(
+                "{#date}[{date}]{/date}{#properties}{name}={value};{/properties}"
+                + "{#shifts}{shift}:{#volunteer} {volunteer} <{phone}>{#details} ({details}){/details}{/volunteer}|{/shifts}",
+                "yyyy");
+
+        String received = template.render(event);
+
+        String expected = "[2018]Venue=Hall;"
+                + "Door: Alice <555-1234> (alice@example.com, early)|"
+                + "Bar: Bob <>|"
+                + "Sound:|";
+        assertEquals(expected, received);
+    }    // renderReturnsSections()
+
+    /**
+     * Tests that a template compiled by
+     * {@link CompiledTemplate#compileHtml(String, String)} escapes values but
+     * not literal text.
+     */
+    @Test
+    public void compileHtmlEscapesValuesOnly() {
+        EventProperty venue = new EventProperty("Venue", "");
+        venue.setValue("Bar & Grill");
+        event.addEventProperty(venue);
+        Shift door = new Shift("Door <front>", new ArrayList<>(), true, false, false);
+        door.setVolunteer(new Volunteer("Al \"Big\" O'Neil", "al@example.com", "", "", true, new ArrayList<>()));
+        event.addShift(door);
+        CompiledTemplate template = CompiledTemplate.compileHtml(
+                "<p>{prop:Venue}</p>{#shifts}<td>{shift}</td><td>{#volunteer}{volunteer} ({details}){/volunteer}</td>{/shifts}",
+                "'<'yyyy'>'");
+
+        String received = template.render(event);
+
+        String expected = "<p>Bar &amp; Grill</p><td>Door &lt;front&gt;</td>"
+                + "<td>Al &quot;Big&quot; O&#39;Neil (al@example.com)</td>";
+        assertTrue(template.isHtml());
+        assertEquals(expected, received);
+        assertEquals("&lt;2018&gt;", CompiledTemplate.compileHtml("{date}", "'<'yyyy'>'").render(event));
+        assertFalse(CompiledTemplate.compile("{date}", "yyyy").isHtml());
+    }    // compileHtmlEscapesValuesOnly()
+
+    /**
+     * Tests that {@link CompiledTemplate#render(Event)} skips the date section
+     * when the event has no date.
+     */
+    @Test
+    public void renderSkipsDateSectionWhenEventDateIsUnset() {
+        event.setDate(null);
+        CompiledTemplate template = CompiledTemplate.compile("a{#date}b{date}{/date}c", "yyyy");
+
+        assertEquals("ac", template.render(event));
+    }    // renderSkipsDateSectionWhenEventDateIsUnset()
+
+    /**
+     * Tests that {@link CompiledTemplate#compile(String, String)} compiles
+     * templates written before sections existed as they were formatted then:
+     * a field outside its section, a stray closing placeholder, and an
+     * unclosed section are reproduced without their braces.
+     */
+    @Test
+    public void compileRendersMalformedPlaceholdersAsText() {
+        event.setDate(null);
+
+        assertEquals("Hi name on ", CompiledTemplate.compile("Hi {name} on {date}", "yyyy").render(event));
+        assertEquals("Shift shift", CompiledTemplate.compile("Shift {shift}", "yyyy").render(event));
+        assertEquals("x /shifts y", CompiledTemplate.compile("x {/shifts} y", "yyyy").render(event));
+    }    // compileRendersMalformedPlaceholdersAsText()
+
+    /**
+     * Tests that {@link CompiledTemplate#compile(String, String)} compiles an
+     * unclosed section as text, along with the fields it would have
+     * enclosed.
+     */
+    @Test
+    public void compileRendersUnclosedSectionAsText() {
+        event.addShift(new Shift("Door", new ArrayList<>(), true, false, true));
+
+        assertEquals("#shiftsshift", CompiledTemplate.compile("{#shifts}{shift}", "yyyy").render(event));
+        assertEquals("#shifts/properties", CompiledTemplate.compile("{#shifts}{/properties}", "yyyy").render(event));
+        assertEquals("#shifts[Door]#volunteer", CompiledTemplate.compile("{#shifts}{#shifts}[{shift}]{/shifts}{#volunteer}", "yyyy").render(event));
+    }    // compileRendersUnclosedSectionAsText()
+
+    /**
+     * Tests that {@link CompiledTemplate#compile(String, String)} compiles a
+     * section outside its parent section, and a field outside its own
+     * section, as text.
+     */
+    @Test
+    public void compileRendersMisplacedSectionAsText() {
+        event.addShift(new Shift("Door", new ArrayList<>(), true, false, true));
+
+        assertEquals("#volunteer/volunteer", CompiledTemplate.compile("{#volunteer}{/volunteer}", "yyyy").render(event));
+        assertEquals("email", CompiledTemplate.compile("{#shifts}{email}{/shifts}", "yyyy").render(event));
+    }    // compileRendersMisplacedSectionAsText()
+
+    /**
+     * Tests that {@link CompiledTemplate#validate(String)} throws a
+     * NullPointerException when template is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void validateThrowsExceptionWhenTemplateIsNull() {
+        CompiledTemplate.validate(null);
+    }    // validateThrowsExceptionWhenTemplateIsNull()
+
+    /**
+     * Tests that {@link CompiledTemplate#validate(String)} accepts well formed
+     * templates.
+     */
+    @Test
+    public void validateAcceptsWellFormedTemplate() {
+        CompiledTemplate.validate("Hello {date} {prop:Venue} {unknown} {{#shifts}}");
+        CompiledTemplate.validate("{#shifts}{shift}{#volunteer}{volunteer}{#details}{details}{/details}{/volunteer}{/shifts}");
+    }    // validateAcceptsWellFormedTemplate()
+
+    /**
+     * Tests that {@link CompiledTemplate#validate(String)} throws a
+     * TemplateSyntaxException for an unclosed section.
+     */
+    @Test(expected = TemplateSyntaxException.class)
+    public void validateThrowsExceptionForUnclosedSection() {
+        CompiledTemplate.validate("{#shifts}{shift}");
+    }    // validateThrowsExceptionForUnclosedSection()
+
+    /**
+     * Tests that {@link CompiledTemplate#validate(String)} throws a
+     * TemplateSyntaxException for a mismatched section end.
+     */
+    @Test(expected = TemplateSyntaxException.class)
+    public void validateThrowsExceptionForMismatchedSectionEnd() {
+        CompiledTemplate.validate("{#shifts}{/properties}");
+    }    // validateThrowsExceptionForMismatchedSectionEnd()
+
+    /**
+     * Tests that {@link CompiledTemplate#validate(String)} throws a
+     * TemplateSyntaxException for a stray section end.
+     */
+    @Test(expected = TemplateSyntaxException.class)
+    public void validateThrowsExceptionForStraySectionEnd() {
+        CompiledTemplate.validate("x {/shifts} y");
+    }    // validateThrowsExceptionForStraySectionEnd()
+
+    /**
+     * Tests that {@link CompiledTemplate#validate(String)} throws a
+     * TemplateSyntaxException for a field outside its section.
+     */
+    @Test(expected = TemplateSyntaxException.class)
+    public void validateThrowsExceptionForFieldOutsideSection() {
+        CompiledTemplate.validate("{#shifts}{email}{/shifts}");
+    }    // validateThrowsExceptionForFieldOutsideSection()
+
+    /**
+     * Tests that {@link CompiledTemplate#validate(String)} throws a
+     * TemplateSyntaxException for a section outside its parent section.
+     */
+    @Test(expected = TemplateSyntaxException.class)
+    public void validateThrowsExceptionForSectionOutsideParent() {
+        CompiledTemplate.validate("{#volunteer}{/volunteer}");
+    }    // validateThrowsExceptionForSectionOutsideParent()
+
+    /**
+     * Tests that the exception thrown by
+     * {@link CompiledTemplate#validate(String)} for a malformed template gives
+     * the position of the error.
+     */
+    @Test
+    public void validateReportsPositionOfError() {
+        try {
+            CompiledTemplate.validate("Hello {#shifts}{shift}{/properties}");
+            fail("Expected TemplateSyntaxException");
+        } catch (TemplateSyntaxException e) {    // try
+            assertEquals(22, e.getPosition());
+            assertTrue(e.getMessage(), e.getMessage().contains("at position 22"));
+        }    // catch
+    }    // validateReportsPositionOfError()
+
+    /**
+     * Tests that a template restored by
+     * {@link CompiledTemplate#fromCompiledForm(String, String, String)} from
+     * the result of {@link CompiledTemplate#toCompiledForm()} renders exactly
+     * as the original, for many random templates and for templates with
+     * sections.
+     */
+    @Test
+    public void compiledFormRoundTrips() {
+        Shift door = new Shift("Door", new ArrayList<>(), true, false, true);
+        door.setVolunteer(new Volunteer("Alice", "alice@example.com", "555-1234", "early", true, new ArrayList<>()));
+        event.addShift(door);
+        event.addShift(new Shift("Sound", new ArrayList<>(), false, false, false));
+        List<String> templates = new ArrayList<>();
+        templates.add("{#date}[{date}]{/date}{#properties}{name}={value};{/properties}"
+                + "{#shifts}{shift}:{#volunteer} {volunteer} <{phone}>{#details} ({details}){/details}{/volunteer}|{/shifts}"
+                + "{prop:Venue}: 12:34 {{x}}");
+        templates.add("");
+        Random random = new Random(38);
+        for (int i = 0; i < 2000; ++i) {
+            templates.add(randomTemplate(random));
+        }    // for
+
+        for (String template : templates) {
+            CompiledTemplate original = CompiledTemplate.compile(template, "yyyy-MM-dd");
+            CompiledTemplate restored = CompiledTemplate.fromCompiledForm(original.toCompiledForm(), template, "yyyy-MM-dd");
+
+            assertNotNull(template, restored);
+            assertEquals(template, restored.getTemplate());
+            assertEquals(template, original.render(event), restored.render(event));
+        }    // for
+        CompiledTemplate html = CompiledTemplate.compileHtml("<b>{date}</b>", "'<'yyyy");
+        CompiledTemplate restoredHtml = CompiledTemplate.fromCompiledForm(html.toCompiledForm(), "<b>{date}</b>", "'<'yyyy");
+        assertTrue(restoredHtml.isHtml());
+        assertEquals("<b>&lt;2018</b>", restoredHtml.render(event));
+    }    // compiledFormRoundTrips()
+
+    /**
+     * Tests that {@link CompiledTemplate#fromCompiledForm(String, String, String)}
+     * returns null when the compiled form was made from different template
+     * text.
+     */
+    @Test
+    public void fromCompiledFormReturnsNullWhenStale() {
+        String compiledForm = CompiledTemplate.compile("Show on {date}", "yyyy").toCompiledForm();
+
+        assertNull(CompiledTemplate.fromCompiledForm(compiledForm, "Show at {date}", "yyyy"));
+    }    // fromCompiledFormReturnsNullWhenStale()
+
+    /**
+     * Tests that a template compiled for a locale renders dates in that
+     * locale, and that the compiled form may be restored for another locale.
+     */
+    @Test
+    public void compileForLocaleRendersLocalizedDates() {
+        CompiledTemplate french = CompiledTemplate.compile("Show on {date}", "EEEE d MMMM", Locale.FRANCE);
+        CompiledTemplate german = CompiledTemplate.fromCompiledForm(french.toCompiledForm(), "Show on {date}", "EEEE d MMMM", Locale.GERMANY);
+
+        assertEquals(Locale.FRANCE, french.getLocale());
+        assertEquals("Show on lundi 5 février", french.render(event));
+        assertEquals(Locale.GERMANY, german.getLocale());
+        assertEquals("Show on Montag 5 Februar", german.render(event));
+    }    // compileForLocaleRendersLocalizedDates()
+
+    /**
+     * Tests that {@link CompiledTemplate#fromCompiledForm(String, String, String)}
+     * returns null when the compiled form is damaged, including when it
+     * describes instructions the compiler would reject.
+     */
+    @Test
+    public void fromCompiledFormReturnsNullWhenDamaged() {
+        String template = "{#shifts}{shift}{/shifts}";
+        String compiledForm = CompiledTemplate.compile(template, "yyyy").toCompiledForm();
+
+        assertNull(CompiledTemplate.fromCompiledForm(compiledForm.substring(0, compiledForm.length() - 1), template, "yyyy"));
+        assertNull(CompiledTemplate.fromCompiledForm(compiledForm + "D", template, "yyyy"));
+        assertNull(CompiledTemplate.fromCompiledForm(compiledForm.replace("5:shift", "5:email"), template, "yyyy"));
+        assertNull(CompiledTemplate.fromCompiledForm(compiledForm.replace("6:shifts", "6:detail"), template, "yyyy"));
+        assertNull(CompiledTemplate.fromCompiledForm("garbage", template, "yyyy"));
+    }    // fromCompiledFormReturnsNullWhenDamaged()
+
+    /**
+     * Tests that {@link CompiledTemplate#escape(String)} produces text that is
+     * reproduced as is.
+     */
+    @Test
+    public void escapedTextIsReproduced() {
+        String text = "{#shifts}{date}}{{x}";
+        CompiledTemplate template = CompiledTemplate.compile(CompiledTemplate.escape(text), "yyyy");
+
+        assertEquals(text, template.render(event));
+    }    // escapedTextIsReproduced()
+
+    /**
+     * Tests that {@link CompiledTemplate#render(Event)} produces the same
+     * result as the legacy formatter for many random templates, with and
+     * without an event date.
+     */
+    @Test
+    public void renderMatchesLegacyFormatter() {
+        Random random = new Random(12345);
+        Event undatedEvent = new Event();
+        for (int i = 0; i < 20000; ++i) {
+            String template = randomTemplate(random);
+            CompiledTemplate compiledTemplate = CompiledTemplate.compile(template, "yyyy-MM-dd");
+            assertEquals(template, legacyFormat(template, "yyyy-MM-dd", event), compiledTemplate.render(event));
+            assertEquals(template, legacyFormat(template, "yyyy-MM-dd", undatedEvent), compiledTemplate.render(undatedEvent));
+        }    // for
+    }    // renderMatchesLegacyFormatter()
+
+    /**
+     * Benchmarks {@link CompiledTemplate#render(Event, StringBuilder)}:
+     * compares the time taken by the legacy formatter and by a compiled
+     * template to render a typical subject line, and reports the results.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void renderPerformanceComparison() {
+        final int ITERATIONS = 20000;
+        String template = "{{BSC}} Volunteer schedule for {date}";
+        CompiledTemplate compiledTemplate = CompiledTemplate.compile(template, "EEEE MMMM d");
+        StringBuilder builder = new StringBuilder();
+
+        // Warm up both paths before timing them.
+        for (int i = 0; i < ITERATIONS; ++i) {
+            legacyFormat(template, "EEEE MMMM d", event);
+            builder.setLength(0);
+            compiledTemplate.render(event, builder);
+        }    // for
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            legacyFormat(template, "EEEE MMMM d", event);
+        }    // for
+        long legacyNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            builder.setLength(0);
+            compiledTemplate.render(event, builder);
+        }    // for
+        long compiledNanos = System.nanoTime() - start;
+
+        System.out.printf("CompiledTemplate: legacy %d ns/op, compiled %d ns/op%n",
+                legacyNanos / ITERATIONS, compiledNanos / ITERATIONS);
+        assertEquals(legacyFormat(template, "EEEE MMMM d", event), builder.toString());
+    }    // renderPerformanceComparison()
+
+}    // CompiledTemplateTest
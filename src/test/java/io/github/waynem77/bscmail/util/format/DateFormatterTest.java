@@ -0,0 +1,288 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.util.format;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link DateFormatter}.
+ *
+ * @author Wayne Miller
+ */
+public class DateFormatterTest {
+
+    /**
+     * Patterns used in testing. These include every default and example
+     * pattern in the application, patterns containing characters reserved by
+     * DateTimeFormatter, and patterns that cannot be translated.
+     */
+    private static final String[] PATTERNS = {
+        "",
+        "EEEE MMMM d",
+        "yyyy-MM-dd",
+        "EEEE, MMMM d, yyyy",
+        "E MMM dd yy",
+        "EEEEE MMMMM y yyy",
+        "h:mm a",
+        "HH:mm:ss",
+        "k K D DD DDD",
+        "M/d/yyyy '{at}' h 'o''clock'",
+        "[d] {M} #y",
+        "''yyyy''",
+        "yyyy.MM.dd G 'at' HH:mm:ss z",
+        "EEE, d MMM yyyy HH:mm:ss Z",
+        "hh 'o''clock' a, zzzz",
+        "YYYY-'W'ww-u",
+        "yyyyy.MMMMM.dd GGG hh:mm aaa",
+        "HH:mm:ss.SSS XXX",
+        "F W w",
+    };
+
+    /**
+     * Locales used in testing.
+     */
+    private static final Locale[] LOCALES = {
+        Locale.US, Locale.UK, Locale.FRANCE, Locale.GERMANY, Locale.JAPAN, new Locale("es", "ES"),
+    };
+
+    /**
+     * The default locale before each test.
+     */
+    private Locale originalLocale;
+
+    /**
+     * Saves the default locale before each test.
+     */
+    @Before
+    public void preTestSetup() {
+        originalLocale = Locale.getDefault();
+    }    // preTestSetup()
+
+    /**
+     * Restores the default locale after each test.
+     */
+    @After
+    public void postTestTeardown() {
+        Locale.setDefault(originalLocale);
+    }    // postTestTeardown()
+
+    /* forPattern */
+
+    /**
+     * Tests that {@link DateFormatter#forPattern(String)} throws a
+     * NullPointerException when pattern is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void forPatternThrowsExceptionWhenPatternIsNull() {
+        DateFormatter.forPattern(null);
+    }    // forPatternThrowsExceptionWhenPatternIsNull()
+
+    /**
+     * Tests that {@link DateFormatter#forPattern(String)} throws an
+     * IllegalArgumentException when pattern is invalid.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void forPatternThrowsExceptionWhenPatternIsInvalid() {
+        DateFormatter.forPattern("yyyy-MM-dd 'unterminated");
+    }    // forPatternThrowsExceptionWhenPatternIsInvalid()
+
+    /**
+     * Tests that {@link DateFormatter#forPattern(String)} returns the same
+     * formatter for the same pattern.
+     */
+    @Test
+    public void forPatternReturnsCachedFormatter() {
+        DateFormatter first = DateFormatter.forPattern("yyyy-MM-dd");
+        DateFormatter second = DateFormatter.forPattern(new String("yyyy-MM-dd"));
+
+        assertSame(first, second);
+        assertEquals("yyyy-MM-dd", second.getPattern());
+    }    // forPatternReturnsCachedFormatter()
+
+    /**
+     * Tests that {@link DateFormatter#forPattern(String, Locale)} throws a
+     * NullPointerException when locale is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void forPatternThrowsExceptionWhenLocaleIsNull() {
+        DateFormatter.forPattern("yyyy-MM-dd", null);
+    }    // forPatternThrowsExceptionWhenLocaleIsNull()
+
+    /**
+     * Tests that {@link DateFormatter#forPattern(String, Locale)} returns one
+     * cached formatter for each pattern and locale.
+     */
+    @Test
+    public void forPatternReturnsCachedFormatterPerLocale() {
+        DateFormatter french = DateFormatter.forPattern("EEEE d MMMM", Locale.FRANCE);
+        DateFormatter german = DateFormatter.forPattern("EEEE d MMMM", Locale.GERMANY);
+
+        assertSame(french, DateFormatter.forPattern(new String("EEEE d MMMM"), Locale.FRANCE));
+        assertNotSame(french, german);
+        assertEquals(Locale.FRANCE, french.getLocale());
+        assertEquals(Locale.GERMANY, german.getLocale());
+    }    // forPatternReturnsCachedFormatterPerLocale()
+
+    /**
+     * Tests that a formatter returned by
+     * {@link DateFormatter#forPattern(String, Locale)} gives month and day
+     * names in the language of the locale, regardless of the default locale.
+     */
+    @Test
+    public void formatUsesLocaleNames() {
+        Locale.setDefault(Locale.US);
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2018, Calendar.FEBRUARY, 5);
+        Date date = calendar.getTime();
+
+        assertEquals("lundi 5 février", DateFormatter.forPattern("EEEE d MMMM", Locale.FRANCE).format(date));
+        assertEquals("Montag 5 Februar", DateFormatter.forPattern("EEEE d MMMM", Locale.GERMANY).format(date));
+        assertEquals("lunes 5 febrero", DateFormatter.forPattern("EEEE d MMMM", new Locale("es", "ES")).format(date));
+        assertEquals("Monday 5 February", DateFormatter.forPattern("EEEE d MMMM").format(date));
+    }    // formatUsesLocaleNames()
+
+    /**
+     * Tests that the common patterns are formatted with a DateTimeFormatter.
+     */
+    @Test
+    public void commonPatternsUseDateTimeFormatter() {
+        assertTrue(DateFormatter.forPattern("EEEE MMMM d").usesDateTimeFormatter());
+        assertTrue(DateFormatter.forPattern("yyyy-MM-dd").usesDateTimeFormatter());
+        assertTrue(DateFormatter.forPattern("M/d/yyyy '{at}' h 'o''clock'").usesDateTimeFormatter());
+        assertFalse(DateFormatter.forPattern("HH:mm:ss.SSS").usesDateTimeFormatter());
+    }    // commonPatternsUseDateTimeFormatter()
+
+    /* format */
+
+    /**
+     * Tests that {@link DateFormatter#format(Date)} throws a
+     * NullPointerException when date is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void formatThrowsExceptionWhenDateIsNull() {
+        DateFormatter.forPattern("yyyy-MM-dd").format(null);
+    }    // formatThrowsExceptionWhenDateIsNull()
+
+    /**
+     * Tests that {@link DateFormatter#format(Date)} produces the same output
+     * as {@link SimpleDateFormat} for many patterns, locales, and dates.
+     */
+    @Test
+    public void formatMatchesSimpleDateFormat() {
+        Random random = new Random(35);
+        for (Locale locale : LOCALES) {
+            Locale.setDefault(locale);
+            for (String pattern : PATTERNS) {
+                SimpleDateFormat expectedFormat = new SimpleDateFormat(pattern);
+                DateFormatter formatter = DateFormatter.forPattern(pattern);
+                for (int i = 0; i < 200; ++i) {
+                    Date date = new Date(random.nextLong() % 4_000_000_000_000L + 1_000_000_000_000L);
+
+                    String expected = expectedFormat.format(date);
+                    String received = formatter.format(date);
+
+                    assertEquals(locale + " \"" + pattern + "\" " + date.getTime(), expected, received);
+                }    // for
+            }    // for
+        }    // for
+    }    // formatMatchesSimpleDateFormat()
+
+    /**
+     * Tests that {@link DateFormatter#formatTo(Date, Appendable)} appends the
+     * formatted date.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void formatToAppendsFormattedDate() throws IOException {
+        DateFormatter formatter = DateFormatter.forPattern("yyyy-MM-dd");
+        Date date = new Date();
+        StringBuilder builder = new StringBuilder("Date: ");
+
+        formatter.formatTo(date, builder);
+
+        assertEquals("Date: " + new SimpleDateFormat("yyyy-MM-dd").format(date), builder.toString());
+    }    // formatToAppendsFormattedDate()
+
+    /**
+     * Tests that a single formatter may be used from many threads at once.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void formatIsThreadSafe() throws Exception {
+        final int THREADS = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (String pattern : new String[] {"EEEE MMMM d, yyyy", "HH:mm:ss.SSS z"}) {
+                DateFormatter formatter = DateFormatter.forPattern(pattern);
+                for (int t = 0; t < THREADS; ++t) {
+                    final long seed = t;
+                    results.add(executor.submit(() -> {
+                        SimpleDateFormat expectedFormat = new SimpleDateFormat(pattern);
+                        Random random = new Random(seed);
+                        int mismatches = 0;
+                        for (int i = 0; i < 5000; ++i) {
+                            Date date = new Date(Math.abs(random.nextLong() % 4_000_000_000_000L));
+                            if (!expectedFormat.format(date).equals(formatter.format(date))) {
+                                ++mismatches;
+                            }    // if
+                        }    // for
+                        return mismatches;
+                    }));
+                }    // for
+            }    // for
+            for (Future<Integer> result : results) {
+                assertEquals(0, (int) result.get());
+            }    // for
+        } finally {    // try
+            executor.shutdownNow();
+        }    // finally
+    }    // formatIsThreadSafe()
+
+    /* toDateFormat */
+
+    /**
+     * Tests that {@link DateFormatter#toDateFormat()} returns a new, equivalent
+     * DateFormat each time.
+     */
+    @Test
+    public void toDateFormatReturnsNewEquivalentFormat() {
+        DateFormatter formatter = DateFormatter.forPattern("EEEE MMMM d");
+        Date date = new Date();
+
+        assertNotSame(formatter.toDateFormat(), formatter.toDateFormat());
+        assertEquals(new SimpleDateFormat("EEEE MMMM d").format(date), formatter.toDateFormat().format(date));
+    }    // toDateFormatReturnsNewEquivalentFormat()
+
+}    // DateFormatterTest
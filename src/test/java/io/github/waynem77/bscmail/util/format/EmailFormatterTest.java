@@ -22,6 +22,7 @@ package io.github.waynem77.bscmail.util.format;
 import io.github.waynem77.bscmail.persistent.Event;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.Locale;
 import org.junit.*;
 import static org.junit.Assert.*;
 
@@ -187,6 +188,23 @@ public class EmailFormatterTest {
         assertNotNull(received);
     }    // formatStringDoesNotReturnNull()
 
+    /**
+     * Tests that
+     * {@link EmailFormatter#formatString(java.lang.String, bscmail.Event)}
+     * formats a field outside its section, a stray closing placeholder, and
+     * an unclosed section as plain text, as it did before sections existed.
+     */
+    @Test
+    public void formatStringReproducesMisplacedPlaceholdersWithoutBraces() {
+        EmailFormatter emailFormatter = new EmailFormatter(dateFormatString);
+        event.setDate(null);
+
+        assertEquals("Hi name on ", emailFormatter.formatString("Hi {name} on {date}", event));
+        assertEquals("Shift shift", emailFormatter.formatString("Shift {shift}", event));
+        assertEquals("x /shifts y", emailFormatter.formatString("x {/shifts} y", event));
+        assertEquals("#shifts y", emailFormatter.formatString("{#shifts} y", event));
+    }    // formatStringReproducesMisplacedPlaceholdersWithoutBraces()
+
     /**
      * Tests that
      * {@link EmailFormatter#formatString(java.lang.String, bscmail.Event)}
@@ -287,6 +305,26 @@ public class EmailFormatterTest {
         assertEquals(expected, received);
     }    // formatStringReturnsCorrectResultForInputWithDateCommand()
 
+    /**
+     * Tests that
+     * {@link EmailFormatter#formatString(java.lang.String, bscmail.Event)}
+     * formats the date in the formatter's locale.
+     */
+    @Test
+    public void formatStringReturnsCorrectResultForInputWithDateCommandInLocale() {
+        dateFormatString = "EEEE d MMMM";
+        EmailFormatter emailFormatter = new EmailFormatter(dateFormatString, Locale.GERMANY);
+        format = "foo {date} bar";
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2018, 1, 5);    // Monday, February 5, 2018
+        event.setDate(calendar.getTime());
+
+        String received = emailFormatter.formatString(format, event);
+
+        String expected = "foo Montag 5 Februar bar";
+        assertEquals(expected, received);
+    }    // formatStringReturnsCorrectResultForInputWithDateCommandInLocale()
+
     /**
      * Tests that
      * {@link EmailFormatter#formatString(java.lang.String, bscmail.Event)}
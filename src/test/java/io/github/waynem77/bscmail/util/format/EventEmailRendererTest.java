@@ -0,0 +1,330 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.util.format;
+
+import io.github.waynem77.bscmail.Benchmark;
+import io.github.waynem77.bscmail.persistent.EmailTemplate;
+import io.github.waynem77.bscmail.persistent.Event;
+import io.github.waynem77.bscmail.persistent.EventProperty;
+import io.github.waynem77.bscmail.persistent.Shift;
+import io.github.waynem77.bscmail.persistent.Volunteer;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link EventEmailRenderer}.
+ *
+ * @author Wayne Miller
+ */
+public class EventEmailRendererTest {
+
+    /* helper methods */
+
+    /**
+     * Returns an email template suitable for use in unit tests.
+     *
+     * @return a test email template
+     */
+    private EmailTemplate getTestEmailTemplate() {
+        return new EmailTemplate(EmailTemplate.SendType.BCC, "Hello!", "Goodbye!", "Show on {date}", "yyyy-MM-dd");
+    }    // getTestEmailTemplate()
+
+    /**
+     * Returns an event suitable for use in unit tests. The event has a date,
+     * one event property, one filled shift displaying the volunteer's email
+     * and phone, one filled shift displaying nothing, and one open shift.
+     *
+     * @return a test event
+     */
+    private Event getTestEvent() {
+        Event event = new Event();
+        event.setDate(new GregorianCalendar(2020, Calendar.MARCH, 14).getTime());
+
+        EventProperty eventProperty = new EventProperty("Venue", "");
+        eventProperty.setValue("Hall");
+        event.addEventProperty(eventProperty);
+
+        Volunteer alice = new Volunteer("Alice", "alice@example.com", "555-1234", "notes", true, new ArrayList<>());
+        Volunteer bob = new Volunteer("Bob", "bob@example.com", "555-5678", "", true, new ArrayList<>());
+        Shift door = new Shift("Door", new ArrayList<>(), true, true, false);
+        door.setVolunteer(alice);
+        event.addShift(door);
+        Shift bar = new Shift("Bar", new ArrayList<>(), false, false, false);
+        bar.setVolunteer(bob);
+        event.addShift(bar);
+        Shift sound = new Shift("Sound", new ArrayList<>(), false, false, false);
+        event.addShift(sound);
+        Shift cleanup = new Shift("Cleanup", new ArrayList<>(), false, false, false);
+        cleanup.setVolunteer(alice);
+        event.addShift(cleanup);
+        return event;
+    }    // getTestEvent()
+
+    /* unit tests */
+
+    /**
+     * Tests that
+     * {@link EventEmailRenderer#EventEmailRenderer(EmailTemplate)} throws a
+     * NullPointerException when emailTemplate is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenEmailTemplateIsNull() {
+        EmailTemplate emailTemplate = null;
+        EventEmailRenderer renderer = new EventEmailRenderer(emailTemplate);
+    }    // constructorThrowsExceptionWhenEmailTemplateIsNull()
+
+    /**
+     * Tests that {@link EventEmailRenderer#renderRecipients(Event)} returns
+     * the distinct email addresses of the assigned volunteers.
+     */
+    @Test
+    public void renderRecipientsReturnsCorrectValue() {
+        EventEmailRenderer renderer = new EventEmailRenderer(getTestEmailTemplate());
+
+        String received = renderer.renderRecipients(getTestEvent());
+
+        String expected = "alice@example.com, bob@example.com";
+        assertEquals(expected, received);
+    }    // renderRecipientsReturnsCorrectValue()
+
+    /**
+     * Tests that {@link EventEmailRenderer#renderSubject(Event)} returns the
+     * formatted subject line template.
+     */
+    @Test
+    public void renderSubjectReturnsCorrectValue() {
+        EventEmailRenderer renderer = new EventEmailRenderer(getTestEmailTemplate());
+
+        String received = renderer.renderSubject(getTestEvent());
+
+        String expected = "Show on 2020-03-14";
+        assertEquals(expected, received);
+    }    // renderSubjectReturnsCorrectValue()
+
+    /**
+     * Tests that {@link EventEmailRenderer#renderBody(Event)} returns the
+     * correct value.
+     */
+    @Test
+    public void renderBodyReturnsCorrectValue() {
+        EventEmailRenderer renderer = new EventEmailRenderer(getTestEmailTemplate());
+
+        String received = renderer.renderBody(getTestEvent());
+
+        String expected = "Hello!\n"
+                + "\n"
+                + "Date: 2020-03-14\n"
+                + "Venue: Hall\n"
+                + "\n"
+                + "Door: Alice (alice@example.com, 555-1234)\n"
+                + "Bar: Bob\n"
+                + "Sound:\n"
+                + "Cleanup: Alice\n"
+                + "\n"
+                + "Goodbye!\n";
+        assertEquals(expected, received);
+    }    // renderBodyReturnsCorrectValue()
+
+    /**
+     * Tests that {@link EventEmailRenderer#renderBody(Event)} omits the date
+     * line when the event has no date.
+     */
+    @Test
+    public void renderBodyOmitsDateWhenEventHasNoDate() {
+        EventEmailRenderer renderer = new EventEmailRenderer(getTestEmailTemplate());
+        Event event = new Event();
+
+        String received = renderer.renderBody(event);
+
+        String expected = "Hello!\n\n\n\nGoodbye!\n";
+        assertEquals(expected, received);
+    }    // renderBodyOmitsDateWhenEventHasNoDate()
+
+    /**
+     * Tests that {@link EventEmailRenderer#renderBody(Event, Appendable)}
+     * throws a NullPointerException when out is null.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Test(expected = NullPointerException.class)
+    public void renderBodyToAppendableThrowsExceptionWhenOutIsNull() throws IOException {
+        EventEmailRenderer renderer = new EventEmailRenderer(getTestEmailTemplate());
+
+        renderer.renderBody(getTestEvent(), null);
+    }    // renderBodyToAppendableThrowsExceptionWhenOutIsNull()
+
+    /**
+     * Tests that {@link EventEmailRenderer#renderBody(Event, Appendable)}
+     * writes the same body as {@link EventEmailRenderer#renderBody(Event)}
+     * for an event with hundreds of shifts.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void renderBodyToWriterMatchesRenderBodyForLargeEvent() throws IOException {
+        Event event = getTestEvent();
+        for (int i = 0; i < 500; ++i) {
+            Shift shift = new Shift("Shift " + i, new ArrayList<>(), true, false, false);
+            shift.setVolunteer(new Volunteer("V" + i, "v" + i + "@example.com", "", "", true, new ArrayList<>()));
+            event.addShift(shift);
+        }    // for
+        EventEmailRenderer renderer = new EventEmailRenderer(getTestEmailTemplate());
+        StringWriter writer = new StringWriter();
+
+        renderer.renderBody(event, writer);
+
+        assertEquals(renderer.renderBody(event), writer.toString());
+        assertTrue(writer.toString().contains("Shift 499: V499 (v499@example.com)\n"));
+    }    // renderBodyToWriterMatchesRenderBodyForLargeEvent()
+
+    /**
+     * Tests that {@link EventEmailRenderer#renderHtmlBody(Event)} lays out the
+     * schedule as an escaped HTML table.
+     */
+    @Test
+    public void renderHtmlBodyReturnsCorrectValue() {
+        EmailTemplate emailTemplate = new EmailTemplate(EmailTemplate.SendType.BCC, "Hi & welcome!\nSee {you}.", "", "Show", "yyyy-MM-dd");
+        EventEmailRenderer renderer = new EventEmailRenderer(emailTemplate);
+
+        String received = renderer.renderHtmlBody(getTestEvent());
+
+        String expected = "<!DOCTYPE html>\n<html>\n<head><meta charset=\"UTF-8\"></head>\n<body>\n"
+                + "<p>Hi &amp; welcome!<br>\nSee {you}.</p>\n"
+                + "<p>Date: 2020-03-14</p>\n"
+                + "<p>Venue: Hall</p>\n"
+                + "<table border=\"1\" cellpadding=\"4\" cellspacing=\"0\">\n"
+                + "<tr><th>Shift</th><th>Volunteer</th><th>Details</th></tr>\n"
+                + "<tr><td>Door</td><td>Alice</td><td>alice@example.com, 555-1234</td></tr>\n"
+                + "<tr><td>Bar</td><td>Bob</td><td></td></tr>\n"
+                + "<tr><td>Sound</td><td></td><td></td></tr>\n"
+                + "<tr><td>Cleanup</td><td>Alice</td><td></td></tr>\n"
+                + "</table>\n"
+                + "</body>\n</html>\n";
+        assertEquals(expected, received);
+    }    // renderHtmlBodyReturnsCorrectValue()
+
+    /**
+     * Tests that rendering a season of events, with a new renderer for each
+     * event, compiles each distinct template only once.
+     */
+    @Test
+    public void renderingManyEventsCompilesEachTemplateOnce() {
+        TemplateCache templateCache = new TemplateCache(TemplateCache.DEFAULT_CAPACITY);
+        EmailTemplate emailTemplate = getTestEmailTemplate();
+        final int EVENTS = 52;
+
+        for (int i = 0; i < EVENTS; ++i) {
+            EventEmailRenderer renderer = new EventEmailRenderer(emailTemplate, templateCache);
+            Event event = getTestEvent();
+            renderer.renderSubject(event);
+            renderer.renderBody(event);
+            renderer.renderHtmlBody(event);
+        }    // for
+
+        assertEquals(3, templateCache.getMisses());    // subject, body, and HTML body
+        assertEquals(3 * (EVENTS - 1), templateCache.getHits());
+    }    // renderingManyEventsCompilesEachTemplateOnce()
+
+    /**
+     * Tests that {@link EventEmailRenderer#renderSubject(Event)} formats the
+     * date in the locale of the email template.
+     */
+    @Test
+    public void renderSubjectUsesLocaleOfEmailTemplate() {
+        EmailTemplate emailTemplate = new EmailTemplate(EmailTemplate.SendType.BCC, "", "", "Show on {date}", "EEEE d MMMM", Locale.FRANCE);
+        EventEmailRenderer renderer = new EventEmailRenderer(emailTemplate);
+
+        String received = renderer.renderSubject(getTestEvent());
+
+        String expected = "Show on samedi 14 mars";
+        assertEquals(expected, received);
+    }    // renderSubjectUsesLocaleOfEmailTemplate()
+
+    /**
+     * Renders the given number of emails for email templates in three
+     * languages, in rotation. Asserts that each email has its dates in the
+     * right language, and that once each template has been used, the batch
+     * creates no new templates or date formatters.
+     *
+     * @param emails the number of emails to render
+     */
+    private void renderMixedLocaleEmails(int emails) {
+        Locale[] locales = {Locale.US, Locale.FRANCE, new Locale("es", "ES")};
+        String[] expectedDates = {"Saturday 14 March 2020", "samedi 14 mars 2020", "sábado 14 marzo 2020"};
+        TemplateCache templateCache = new TemplateCache(TemplateCache.DEFAULT_CAPACITY);
+        EmailTemplate[] emailTemplates = new EmailTemplate[locales.length];
+        for (int i = 0; i < locales.length; ++i) {
+            emailTemplates[i] = new EmailTemplate(EmailTemplate.SendType.BCC, "Hello!", "Goodbye!", "Show on {date}", "EEEE d MMMM yyyy", locales[i]);
+            new EventEmailRenderer(emailTemplates[i], templateCache).renderBody(getTestEvent());
+        }    // for
+        long misses = templateCache.getMisses();
+        int formatters = DateFormatter.getCacheSize();
+        Event event = getTestEvent();
+
+        for (int i = 0; i < emails; ++i) {
+            int language = i % locales.length;
+            EventEmailRenderer renderer = new EventEmailRenderer(emailTemplates[language], templateCache);
+            String subject = renderer.renderSubject(event);
+            String body = renderer.renderBody(event);
+
+            assertEquals("Show on " + expectedDates[language], subject);
+            assertTrue(body.contains("Date: " + expectedDates[language] + "\n"));
+        }    // for
+
+        assertEquals(misses, templateCache.getMisses());
+        assertEquals(formatters, DateFormatter.getCacheSize());
+    }    // renderMixedLocaleEmails()
+
+    /**
+     * Tests that rendering emails for email templates in three languages, in
+     * rotation, gives each email its dates in the right language, and that
+     * once each template has been used, creates no new templates or date
+     * formatters.
+     */
+    @Test
+    public void renderingMixedLocaleEmailsReusesFormatters() {
+        renderMixedLocaleEmails(300);
+    }    // renderingMixedLocaleEmailsReusesFormatters()
+
+    /**
+     * Benchmarks {@link EventEmailRenderer}: renders 10,000 emails for email
+     * templates in three languages, in rotation, and reports the time taken.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void renderingMixedLocaleEmailsIsFast() {
+        final int EMAILS = 10_000;
+
+        long start = System.nanoTime();
+        renderMixedLocaleEmails(EMAILS);
+        long nanos = System.nanoTime() - start;
+
+        System.out.printf("EventEmailRenderer: %d mixed-locale emails in %d ms (%d ns/email)%n",
+                EMAILS, nanos / 1_000_000, nanos / EMAILS);
+    }    // renderingMixedLocaleEmailsIsFast()
+
+}    // EventEmailRendererTest
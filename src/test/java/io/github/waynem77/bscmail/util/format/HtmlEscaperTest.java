@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.util.format;
+
+import java.io.IOException;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link HtmlEscaper}.
+ *
+ * @author Wayne Miller
+ */
+public class HtmlEscaperTest {
+
+    /**
+     * Tests that {@link HtmlEscaper#escape(String)} throws a
+     * NullPointerException when text is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void escapeThrowsExceptionWhenTextIsNull() {
+        String text = null;
+
+        HtmlEscaper.escape(text);
+    }    // escapeThrowsExceptionWhenTextIsNull()
+
+    /**
+     * Tests that {@link HtmlEscaper#escape(CharSequence, Appendable)} throws a
+     * NullPointerException when out is null.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Test(expected = NullPointerException.class)
+    public void escapeThrowsExceptionWhenOutIsNull() throws IOException {
+        HtmlEscaper.escape("text", null);
+    }    // escapeThrowsExceptionWhenOutIsNull()
+
+    /**
+     * Tests that {@link HtmlEscaper#escape(String)} replaces the special
+     * characters and leaves all others, including non-ASCII characters,
+     * unchanged.
+     */
+    @Test
+    public void escapeReplacesSpecialCharacters() {
+        String received = HtmlEscaper.escape("<a href=\"x\">Tom & Jerry's</a> café ☃");
+
+        String expected = "&lt;a href=&quot;x&quot;&gt;Tom &amp; Jerry&#39;s&lt;/a&gt; café ☃";
+        assertEquals(expected, received);
+    }    // escapeReplacesSpecialCharacters()
+
+    /**
+     * Tests that {@link HtmlEscaper#escape(String)} returns the same string
+     * when there is nothing to escape.
+     */
+    @Test
+    public void escapeReturnsSameStringWhenNothingToEscape() {
+        String text = "Nothing to see here.";
+
+        assertSame(text, HtmlEscaper.escape(text));
+        assertEquals("", HtmlEscaper.escape(""));
+    }    // escapeReturnsSameStringWhenNothingToEscape()
+
+    /**
+     * Tests that {@link HtmlEscaper#escape(CharSequence, Appendable)} appends
+     * the escaped text to the destination.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    public void escapeAppendsToDestination() throws IOException {
+        StringBuilder builder = new StringBuilder("x");
+
+        HtmlEscaper.escape("&a<", builder);
+
+        assertEquals("x&amp;a&lt;", builder.toString());
+    }    // escapeAppendsToDestination()
+
+}    // HtmlEscaperTest
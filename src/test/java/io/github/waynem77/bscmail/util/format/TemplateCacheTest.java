@@ -0,0 +1,155 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.util.format;
+
+import java.util.Locale;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link TemplateCache}.
+ *
+ * @author Wayne Miller
+ */
+public class TemplateCacheTest {
+
+    /**
+     * Tests that {@link TemplateCache#TemplateCache(int)} throws an
+     * IllegalArgumentException when capacity is not positive.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorThrowsExceptionWhenCapacityIsNotPositive() {
+        TemplateCache cache = new TemplateCache(0);
+    }    // constructorThrowsExceptionWhenCapacityIsNotPositive()
+
+    /**
+     * Tests that {@link TemplateCache#get(String, String)} throws a
+     * NullPointerException when template is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void getThrowsExceptionWhenTemplateIsNull() {
+        new TemplateCache(4).get(null, "yyyy");
+    }    // getThrowsExceptionWhenTemplateIsNull()
+
+    /**
+     * Tests that {@link TemplateCache#get(String, String)} throws a
+     * NullPointerException when dateFormatString is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void getThrowsExceptionWhenDateFormatStringIsNull() {
+        new TemplateCache(4).get("foo", null);
+    }    // getThrowsExceptionWhenDateFormatStringIsNull()
+
+    /**
+     * Tests that {@link TemplateCache#get(String, String)} returns the same
+     * compiled template for the same key, and counts hits and misses.
+     */
+    @Test
+    public void getReturnsCachedTemplateAndCountsHitsAndMisses() {
+        TemplateCache cache = new TemplateCache(4);
+
+        CompiledTemplate first = cache.get("foo{date}", "yyyy");
+        CompiledTemplate second = cache.get("foo{date}", "yyyy");
+        CompiledTemplate third = cache.get("foo{date}", "MM");
+
+        assertSame(first, second);
+        assertNotSame(first, third);
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+    }    // getReturnsCachedTemplateAndCountsHitsAndMisses()
+
+    /**
+     * Tests that {@link TemplateCache#get(String, String)} discards the least
+     * recently used template when the cache is full.
+     */
+    @Test
+    public void getDiscardsLeastRecentlyUsedTemplate() {
+        TemplateCache cache = new TemplateCache(2);
+        CompiledTemplate a = cache.get("a", "");
+        cache.get("b", "");
+        cache.get("a", "");    // "b" is now least recently used
+        cache.get("c", "");
+
+        assertEquals(2, cache.size());
+        assertSame(a, cache.get("a", ""));
+        long misses = cache.getMisses();
+        cache.get("b", "");
+        assertEquals(misses + 1, cache.getMisses());
+    }    // getDiscardsLeastRecentlyUsedTemplate()
+
+    /**
+     * Tests that {@link TemplateCache#clear()} empties the cache and resets
+     * its statistics.
+     */
+    @Test
+    public void clearEmptiesCache() {
+        TemplateCache cache = new TemplateCache(2);
+        cache.get("a", "");
+        cache.get("a", "");
+
+        cache.clear();
+
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }    // clearEmptiesCache()
+
+    /**
+     * Tests that a template added by {@link TemplateCache#put(CompiledTemplate)}
+     * is returned by {@link TemplateCache#get(String, String)} without
+     * compiling it.
+     */
+    @Test
+    public void putTemplateIsReturnedByGet() {
+        TemplateCache templateCache = new TemplateCache(4);
+        CompiledTemplate compiledTemplate = CompiledTemplate.compile("Show on {date}", "yyyy");
+
+        templateCache.put(compiledTemplate);
+        CompiledTemplate received = templateCache.get("Show on {date}", "yyyy");
+
+        assertSame(compiledTemplate, received);
+        assertEquals(0, templateCache.getMisses());
+        assertNotSame(compiledTemplate, templateCache.getHtml("Show on {date}", "yyyy"));
+    }    // putTemplateIsReturnedByGet()
+
+    /**
+     * Tests that {@link TemplateCache#get(String, String, Locale)} compiles
+     * a template once for each locale, and that a null locale is the default
+     * locale.
+     */
+    @Test
+    public void getCompilesTemplateOncePerLocale() {
+        TemplateCache templateCache = new TemplateCache(4);
+
+        CompiledTemplate french = templateCache.get("Show on {date}", "MMMM", Locale.FRANCE);
+        CompiledTemplate german = templateCache.get("Show on {date}", "MMMM", Locale.GERMANY);
+        CompiledTemplate defaultLocale = templateCache.get("Show on {date}", "MMMM", null);
+
+        assertSame(french, templateCache.get("Show on {date}", "MMMM", Locale.FRANCE));
+        assertSame(defaultLocale, templateCache.get("Show on {date}", "MMMM"));
+        assertNotSame(french, german);
+        assertEquals(Locale.FRANCE, french.getLocale());
+        assertEquals(Locale.GERMANY, german.getLocale());
+        assertEquals(Locale.getDefault(Locale.Category.FORMAT), defaultLocale.getLocale());
+        assertEquals(3, templateCache.getMisses());
+    }    // getCompilesTemplateOncePerLocale()
+
+}    // TemplateCacheTest
@@ -0,0 +1,166 @@
+/*
+ * Copyright © 2020 its authors.  See the file "AUTHORS" for details.
+ *
+ * This file is part of BSCMail.
+ *
+ * BSCMail is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * BSCMail is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with BSCMail.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package io.github.waynem77.bscmail.util.parser;
+
+import io.github.waynem77.bscmail.persistent.Event;
+import io.github.waynem77.bscmail.persistent.Shift;
+import io.github.waynem77.bscmail.persistent.Volunteer;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import org.junit.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link ScheduleParser}.
+ *
+ * @author Wayne Miller
+ */
+public class ScheduleParserTest {
+
+    /* helper methods */
+
+    /**
+     * Returns a schedule parser suitable for use in unit tests. The parser
+     * knows the shifts "Door" and "Bar" and the volunteers "Alice" and "Bob".
+     *
+     * @return a test schedule parser
+     */
+    private ScheduleParser getTestParser() {
+        List<Shift> shifts = Arrays.asList(
+                new Shift("Door", new ArrayList<>(), false, false, false),
+                new Shift("Bar", new ArrayList<>(), false, false, false));
+        List<Volunteer> volunteers = Arrays.asList(
+                new Volunteer("Alice", "alice@example.com", "", "", true, new ArrayList<>()),
+                new Volunteer("Bob", "bob@example.com", "", "", true, new ArrayList<>()));
+        return new ScheduleParser(shifts, volunteers);
+    }    // getTestParser()
+
+    /* unit tests */
+
+    /**
+     * Tests that {@link ScheduleParser#ScheduleParser(List, List)} throws a
+     * NullPointerException when shifts is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenShiftsIsNull() {
+        ScheduleParser parser = new ScheduleParser(null, new ArrayList<>());
+    }    // constructorThrowsExceptionWhenShiftsIsNull()
+
+    /**
+     * Tests that {@link ScheduleParser#ScheduleParser(List, List)} throws a
+     * NullPointerException when volunteers is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void constructorThrowsExceptionWhenVolunteersIsNull() {
+        ScheduleParser parser = new ScheduleParser(new ArrayList<>(), null);
+    }    // constructorThrowsExceptionWhenVolunteersIsNull()
+
+    /**
+     * Tests that {@link ScheduleParser#parse(java.io.Reader)} throws a
+     * NullPointerException when reader is null.
+     */
+    @Test(expected = NullPointerException.class)
+    public void parseThrowsExceptionWhenReaderIsNull() throws IOException {
+        getTestParser().parse(null);
+    }    // parseThrowsExceptionWhenReaderIsNull()
+
+    /**
+     * Tests that {@link ScheduleParser#parse(java.io.Reader)} returns the
+     * correct events.
+     */
+    @Test
+    public void parseReturnsCorrectEvents() throws IOException {
+        String schedule = "# Spring season\n"
+                + "event,2020-03-14\n"
+                + "property,Venue,\"Hall, upstairs\"\n"
+                + "shift,Door,Alice\n"
+                + "shift,Bar,\n"
+                + "\n"
+                + "event,\n"
+                + "shift,Bar,Bob\n";
+
+        List<Event> events = getTestParser().parse(new StringReader(schedule));
+
+        assertEquals(2, events.size());
+        Event first = events.get(0);
+        assertEquals(new GregorianCalendar(2020, Calendar.MARCH, 14).getTime(), first.getDate());
+        assertEquals(1, first.getEventProperties().size());
+        assertEquals("Venue", first.getEventProperties().get(0).getPropertyName());
+        assertEquals("Hall, upstairs", first.getEventProperties().get(0).getValue());
+        assertEquals(2, first.getShifts().size());
+        assertEquals("Door", first.getShifts().get(0).getDescription());
+        assertEquals("Alice", first.getShifts().get(0).getVolunteer().getName());
+        assertTrue(first.getShifts().get(1).isOpen());
+        Event second = events.get(1);
+        assertFalse(second.hasDate());
+        assertEquals("Bob", second.getShifts().get(0).getVolunteer().getName());
+    }    // parseReturnsCorrectEvents()
+
+    /**
+     * Tests that {@link ScheduleParser#parse(java.io.Reader)} throws an
+     * IllegalArgumentException when the schedule names an undefined shift.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void parseThrowsExceptionWhenShiftIsUndefined() throws IOException {
+        getTestParser().parse(new StringReader("event,\nshift,Sound,Alice\n"));
+    }    // parseThrowsExceptionWhenShiftIsUndefined()
+
+    /**
+     * Tests that {@link ScheduleParser#parse(java.io.Reader)} throws an
+     * IllegalArgumentException when the schedule names an undefined volunteer.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void parseThrowsExceptionWhenVolunteerIsUndefined() throws IOException {
+        getTestParser().parse(new StringReader("event,\nshift,Door,Carol\n"));
+    }    // parseThrowsExceptionWhenVolunteerIsUndefined()
+
+    /**
+     * Tests that {@link ScheduleParser#parse(java.io.Reader)} throws an
+     * IllegalArgumentException when a record precedes the first event.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void parseThrowsExceptionWhenRecordPrecedesEvent() throws IOException {
+        getTestParser().parse(new StringReader("shift,Door,Alice\n"));
+    }    // parseThrowsExceptionWhenRecordPrecedesEvent()
+
+    /**
+     * Tests that {@link ScheduleParser#parse(java.io.Reader)} throws an
+     * IllegalArgumentException when a date is malformed.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void parseThrowsExceptionWhenDateIsMalformed() throws IOException {
+        getTestParser().parse(new StringReader("event,March 14\n"));
+    }    // parseThrowsExceptionWhenDateIsMalformed()
+
+    /**
+     * Tests that {@link ScheduleParser#parse(java.io.Reader)} throws an
+     * IllegalArgumentException when a record type is unknown.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void parseThrowsExceptionWhenRecordTypeIsUnknown() throws IOException {
+        getTestParser().parse(new StringReader("event,\nfoo,bar\n"));
+    }    // parseThrowsExceptionWhenRecordTypeIsUnknown()
+
+}    // ScheduleParserTest